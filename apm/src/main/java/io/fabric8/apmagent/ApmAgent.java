@@ -96,6 +96,36 @@ public class ApmAgent implements ApmAgentMBean, ApmConfigurationChangeListener {
         }
     }
 
+    public static void enterMethod(int methodId) {
+        if (INSTANCE.started.get()) {
+            INSTANCE.apmAgentContext.enterMethod(methodId);
+        }
+    }
+
+    public static void exitMethod(int methodId) {
+        if (INSTANCE.started.get()) {
+            INSTANCE.apmAgentContext.exitMethod(methodId);
+        }
+    }
+
+    public long getDroppedSamples() {
+        if (isInitialized()) {
+            return apmAgentContext.getDroppedSamples();
+        }
+        return 0;
+    }
+
+    public List<String> getCollapsedStacks() {
+        if (isInitialized()) {
+            return apmAgentContext.getCallTree().getCollapsedStacks();
+        }
+        return Collections.EMPTY_LIST;
+    }
+
+    public void resetCollapsedStacks() {
+        apmAgentContext.getCallTree().reset();
+    }
+
     public List<String> getTransformedMethods() {
         if (isInitialized()) {
             return apmAgentContext.getTransformedMethods();
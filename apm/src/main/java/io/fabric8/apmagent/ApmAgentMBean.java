@@ -34,4 +34,16 @@ public interface ApmAgentMBean {
      * @return List of all <className>@<methodName>
      */
     List<String> getAllMethods();
+
+    /**
+     * @return the number of method exits by id which could not be timed because the method was not on the call stack
+     */
+    long getDroppedSamples();
+
+    /**
+     * @return the stacks sampled by the sampling strategy in the collapsed format read by flame graph tools
+     */
+    List<String> getCollapsedStacks();
+
+    void resetCollapsedStacks();
 }
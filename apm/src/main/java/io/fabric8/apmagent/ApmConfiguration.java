@@ -23,10 +23,13 @@ import java.beans.PropertyEditorManager;
 import java.lang.reflect.Method;
 import java.net.URI;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 public class ApmConfiguration implements ApmConfigurationMBean {
     public enum STRATEGY {
@@ -51,6 +54,7 @@ public class ApmConfiguration implements ApmConfigurationMBean {
     private boolean autoStartMetrics = false;
     private boolean usePlatformMBeanServer = true;
     private boolean verifyClasses = false;
+    private boolean useMethodIds = false;
     private int methodMetricDepth = 10;
     private int threadMetricDepth = 5;
     private boolean filterChanged = false;
@@ -58,6 +62,9 @@ public class ApmConfiguration implements ApmConfigurationMBean {
     private boolean threadMetricDepthChanged = false;
     private boolean strategyChanged = false;
     private int samplingInterval = 1;
+    private int samplingMaxDepth = 64;
+    private String samplingThreadNames = "";
+    private volatile List<Pattern> samplingThreadPatterns = Collections.emptyList();
     private List<FilterItem> whiteFilterList = new ArrayList<>();
     private List<FilterItem> blackFilterList = new ArrayList<>();
     private List<ApmConfigurationChangeListener> changeListeners = new CopyOnWriteArrayList<>();
@@ -208,6 +215,21 @@ public class ApmConfiguration implements ApmConfigurationMBean {
         this.verifyClasses = verifyClasses;
     }
 
+    @Override
+    public boolean isUseMethodIds() {
+        return useMethodIds;
+    }
+
+    /**
+     * Instrument methods with an integer method id rather than their name, which records timings in
+     * thread local arrays rather than looking up the metrics of the method on every call.
+     * Only applies to classes transformed after it is changed.
+     */
+    @Override
+    public void setUseMethodIds(boolean useMethodIds) {
+        this.useMethodIds = useMethodIds;
+    }
+
     public int getThreadMetricDepth() {
         return threadMetricDepth;
     }
@@ -252,6 +274,60 @@ public class ApmConfiguration implements ApmConfigurationMBean {
         this.samplingInterval = samplingInterval;
     }
 
+    @Override
+    public int getSamplingMaxDepth() {
+        return samplingMaxDepth;
+    }
+
+    /**
+     * The number of frames from the top of the stack captured by each sample of the sampling strategy
+     */
+    @Override
+    public void setSamplingMaxDepth(int samplingMaxDepth) {
+        this.samplingMaxDepth = samplingMaxDepth;
+    }
+
+    @Override
+    public String getSamplingThreadNames() {
+        return samplingThreadNames;
+    }
+
+    /**
+     * A comma separated list of regular expressions matching the names of the threads sampled by
+     * the sampling strategy, or empty to sample all threads; the expressions are compiled once here and
+     * an invalid one is rejected with an {@link IllegalArgumentException}
+     */
+    @Override
+    public void setSamplingThreadNames(String samplingThreadNames) {
+        String names = samplingThreadNames != null ? samplingThreadNames : "";
+        List<Pattern> patterns = new ArrayList<>();
+        for (String pattern : names.split(",")) {
+            pattern = pattern.trim();
+            if (!pattern.isEmpty()) {
+                try {
+                    patterns.add(Pattern.compile(pattern));
+                } catch (PatternSyntaxException e) {
+                    throw new IllegalArgumentException("Invalid sampling thread name pattern: " + pattern, e);
+                }
+            }
+        }
+        this.samplingThreadPatterns = patterns;
+        this.samplingThreadNames = names;
+    }
+
+    public boolean isSamplingThread(String threadName) {
+        List<Pattern> patterns = samplingThreadPatterns;
+        if (patterns.isEmpty()) {
+            return true;
+        }
+        for (Pattern pattern : patterns) {
+            if (pattern.matcher(threadName).matches()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     public String getStrategy() {
         return strategy.name();
     }
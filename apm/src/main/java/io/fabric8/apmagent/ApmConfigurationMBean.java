@@ -40,6 +40,10 @@ public interface ApmConfigurationMBean {
 
     void setAsyncTransformation(boolean asyncTransformation);
 
+    boolean isUseMethodIds();
+
+    void setUseMethodIds(boolean useMethodIds);
+
     int getThreadMetricDepth();
 
     void setThreadMetricDepth(int threadMetricDepth);
@@ -48,6 +52,14 @@ public interface ApmConfigurationMBean {
 
     void setMethodMetricDepth(int methodMetricDepth);
 
+    int getSamplingMaxDepth();
+
+    void setSamplingMaxDepth(int samplingMaxDepth);
+
+    String getSamplingThreadNames();
+
+    void setSamplingThreadNames(String samplingThreadNames);
+
     String getStrategy();
 
     void setStrategy(String strategy);
@@ -32,12 +32,14 @@ import javax.management.ObjectInstance;
 import javax.management.ObjectName;
 import java.lang.management.ManagementFactory;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -46,6 +48,7 @@ public class ApmAgentContext {
     private static final Logger LOG = LoggerFactory.getLogger(ApmAgent.class);
     private final String DEFAULT_DOMAIN = "io.fabric8.apmagent";
     private final long HOUSE_KEEPING_TIME = TimeUnit.SECONDS.toMillis(2);
+    private final long MERGE_TIME = 100;
     private final ConcurrentMap<String, ClassInfo> allMethods = new ConcurrentHashMap<>();
     private AtomicBoolean initialized = new AtomicBoolean();
     private AtomicBoolean started = new AtomicBoolean();
@@ -62,6 +65,25 @@ public class ApmAgentContext {
     private AtomicBoolean doHouseKeeping = new AtomicBoolean();
     private Thread backgroundThread;
     private boolean monitorByDefault = true;
+    private final CallTree callTree = new CallTree();
+    private final ConcurrentMap<String, Integer> methodIds = new ConcurrentHashMap<>();
+    private volatile String[] methodNames = new String[256];
+    private int methodIdCount;
+    private final Collection<ThreadMethodRecorder> recorders = new ConcurrentLinkedQueue<>();
+    private final ThreadLocal<ThreadMethodRecorder> threadRecorder = new ThreadLocal<ThreadMethodRecorder>() {
+        @Override
+        protected ThreadMethodRecorder initialValue() {
+            ThreadMethodRecorder recorder = new ThreadMethodRecorder(Thread.currentThread());
+            recorders.add(recorder);
+            return recorder;
+        }
+    };
+    private final ThreadMethodRecorder.Sink recorderSink = new ThreadMethodRecorder.Sink() {
+        @Override
+        public void timings(ThreadMethodRecorder recorder, int methodId, long count, long total, long max, long[] buckets) {
+            recordTimings(recorder.getThread(), methodId, total, max, buckets);
+        }
+    };
 
     public ApmAgentContext(ApmAgent agent) {
         this.apmAgent = agent;
@@ -108,6 +130,91 @@ public class ApmAgentContext {
         }
     }
 
+    /**
+     * Records entering the method with the given id, as returned by {@link #getMethodId(String)}, on the
+     * current thread. The timing is merged into the method metrics by the background thread.
+     */
+    public void enterMethod(int methodId) {
+        threadRecorder.get().enter(methodId, System.nanoTime());
+    }
+
+    public void exitMethod(int methodId) {
+        threadRecorder.get().exit(methodId, System.nanoTime());
+    }
+
+    /**
+     * Returns the dense integer id of the given <code>className@methodSignature</code>, allocating
+     * one the first time the method is seen
+     */
+    public int getMethodId(String fullMethodName) {
+        Integer id = methodIds.get(fullMethodName);
+        if (id == null) {
+            synchronized (methodIds) {
+                id = methodIds.get(fullMethodName);
+                if (id == null) {
+                    id = methodIdCount++;
+                    String[] names = methodNames;
+                    if (id >= names.length) {
+                        names = Arrays.copyOf(names, names.length * 2);
+                    }
+                    names[id] = fullMethodName;
+                    methodNames = names;
+                    methodIds.put(fullMethodName, id);
+                }
+            }
+        }
+        return id;
+    }
+
+    public String getMethodName(int methodId) {
+        String[] names = methodNames;
+        return methodId >= 0 && methodId < names.length ? names[methodId] : null;
+    }
+
+    /**
+     * Returns the number of method exits which could not be timed because the method was not on the
+     * call stack of the thread
+     */
+    public long getDroppedSamples() {
+        long result = 0;
+        for (ThreadMethodRecorder recorder : recorders) {
+            result += recorder.getDropped();
+        }
+        return result;
+    }
+
+    void mergeRecorders() {
+        for (ThreadMethodRecorder recorder : recorders) {
+            boolean dead = !recorder.getThread().isAlive();
+            recorder.merge(recorderSink);
+            if (dead) {
+                recorders.remove(recorder);
+            }
+        }
+    }
+
+    private void recordTimings(Thread thread, int methodId, long total, long max, long[] buckets) {
+        String fullMethodName = getMethodName(methodId);
+        if (fullMethodName == null || !started.get()) {
+            return;
+        }
+        ThreadMetrics threadMetrics = threadMetricsMap.get(thread);
+        if (threadMetrics == null) {
+            threadMetrics = new ThreadMetrics(this, thread);
+            threadMetricsMap.put(thread, threadMetrics);
+        }
+        MethodMetrics methodMetrics = methodMetricsMap.get(fullMethodName);
+        if (methodMetrics == null) {
+            methodMetrics = new MethodMetrics(fullMethodName);
+            methodMetrics.setActive(isMonitorByDefault());
+            methodMetricsMap.putIfAbsent(fullMethodName, methodMetrics);
+            methodMetrics = methodMetricsMap.get(fullMethodName);
+        }
+        if (threadMetrics.update(fullMethodName, total, max, buckets)) {
+            methodMetrics.update(total, max, buckets);
+        }
+    }
+
     public void initialize() {
         if (initialized.compareAndSet(false, true)) {
             try {
@@ -127,10 +234,17 @@ public class ApmAgentContext {
                 backgroundThread = new Thread(new Runnable() {
                     @Override
                     public void run() {
+                        long lastHouseKeeping = System.currentTimeMillis();
                         while (started.get()) {
                             try {
-                                Thread.sleep(HOUSE_KEEPING_TIME);
-                                doHouseKeeping.set(true);
+                                Thread.sleep(MERGE_TIME);
+                                mergeRecorders();
+                                long now = System.currentTimeMillis();
+                                if (now - lastHouseKeeping >= HOUSE_KEEPING_TIME) {
+                                    lastHouseKeeping = now;
+                                    doHouseKeeping.set(true);
+                                    doHouseKeeping();
+                                }
                             } catch (Throwable e) {
                             }
                         }
@@ -154,6 +268,9 @@ public class ApmAgentContext {
                         threadMetricsMap.remove(tm.getThread());
                     }
                 }
+                for (MethodMetrics methodMetrics : methodMetricsMap.values()) {
+                    methodMetrics.tick();
+                }
                 monitoredMethodMetrics.calculateMethodMetrics(getMethodMetrics());
                 for (ThreadMetrics threadMetrics : threadMetricsList) {
                     threadMetrics.calculateMethodMetrics();
@@ -248,6 +365,13 @@ public class ApmAgentContext {
         return configuration;
     }
 
+    /**
+     * Returns the call tree the sampling strategy aggregates its samples into
+     */
+    public CallTree getCallTree() {
+        return callTree;
+    }
+
     public boolean isMonitorByDefault() {
         return monitorByDefault;
     }
@@ -0,0 +1,147 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.apmagent.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Aggregates sampled stack traces into a call tree, which can be exported as collapsed stacks: one line
+ * per distinct stack of the form <code>root;caller;method count</code>, as read by flame graph tools.
+ * <p/>
+ * Adding a stack whose frames are already in the tree does not allocate. Once the tree holds
+ * {@link #getMaxNodes()} frames, samples which would need new frames are dropped and counted instead.
+ */
+public class CallTree {
+    public static final int DEFAULT_MAX_NODES = 100000;
+
+    private final Node root = new Node(null, null);
+    private final int maxNodes;
+    private int nodeCount;
+    private long sampleCount;
+    private long droppedSamples;
+
+    public CallTree() {
+        this(DEFAULT_MAX_NODES);
+    }
+
+    public CallTree(int maxNodes) {
+        this.maxNodes = maxNodes;
+    }
+
+    /**
+     * Adds a sampled stack trace, with the top of the stack first as returned by {@link Thread#getStackTrace()}
+     */
+    public synchronized void add(StackTraceElement[] stack) {
+        if (stack == null || stack.length == 0) {
+            return;
+        }
+        Node node = root;
+        for (int i = stack.length - 1; i >= 0; i--) {
+            StackTraceElement element = stack[i];
+            Node child = node.getChild(element.getClassName(), element.getMethodName());
+            if (child == null) {
+                if (nodeCount >= maxNodes) {
+                    droppedSamples++;
+                    return;
+                }
+                child = node.addChild(element.getClassName(), element.getMethodName());
+                nodeCount++;
+            }
+            node = child;
+        }
+        node.count++;
+        sampleCount++;
+    }
+
+    /**
+     * Returns the sampled stacks in the collapsed format, ordered depth first
+     */
+    public synchronized List<String> getCollapsedStacks() {
+        List<String> result = new ArrayList<>();
+        StringBuilder path = new StringBuilder();
+        for (Node child : root.children) {
+            collapse(child, path, result);
+        }
+        return result;
+    }
+
+    public synchronized void reset() {
+        root.children.clear();
+        nodeCount = 0;
+        sampleCount = 0;
+        droppedSamples = 0;
+    }
+
+    public int getMaxNodes() {
+        return maxNodes;
+    }
+
+    public synchronized int getNodeCount() {
+        return nodeCount;
+    }
+
+    public synchronized long getSampleCount() {
+        return sampleCount;
+    }
+
+    public synchronized long getDroppedSamples() {
+        return droppedSamples;
+    }
+
+    private void collapse(Node node, StringBuilder path, List<String> result) {
+        int length = path.length();
+        if (length > 0) {
+            path.append(';');
+        }
+        path.append(node.className).append('.').append(node.methodName);
+        if (node.count > 0) {
+            result.add(path.toString() + " " + node.count);
+        }
+        for (Node child : node.children) {
+            collapse(child, path, result);
+        }
+        path.setLength(length);
+    }
+
+    private static class Node {
+        private final String className;
+        private final String methodName;
+        private final List<Node> children = new ArrayList<>(2);
+        private long count;
+
+        Node(String className, String methodName) {
+            this.className = className;
+            this.methodName = methodName;
+        }
+
+        Node getChild(String className, String methodName) {
+            for (int i = 0, size = children.size(); i < size; i++) {
+                Node child = children.get(i);
+                if (child.methodName.equals(methodName) && child.className.equals(className)) {
+                    return child;
+                }
+            }
+            return null;
+        }
+
+        Node addChild(String className, String methodName) {
+            Node child = new Node(className, methodName);
+            children.add(child);
+            return child;
+        }
+    }
+}
@@ -0,0 +1,298 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.apmagent.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A lock free histogram of latencies in nanoseconds using HDR style log linear buckets; each power of two range is
+ * split into {@link #SUB_BUCKET_HALF_COUNT} linear buckets so recorded values keep a relative precision of better
+ * than 3.2% from 1 nanosecond up to {@link #getHighestTrackableValue()}, above which values are clamped.
+ * <p/>
+ * The counters are striped by thread id so that threads recording the same method concurrently do not contend on
+ * the same cache lines; a stripe is only allocated the first time a thread mapping to it records a value, so a
+ * histogram only ever recorded by one thread has a single stripe. {@link #record(long)} never blocks and does not
+ * allocate once its stripe exists. Reads sum the stripes and are not an atomic snapshot of concurrent recordings.
+ */
+public class LatencyHistogram {
+    static final int SUB_BUCKET_BITS = 6;
+    static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    static final int SUB_BUCKET_HALF_COUNT = SUB_BUCKET_COUNT / 2;
+    static final int MAX_MAGNITUDE = 40;
+    static final int MAX_STRIPES = 64;
+
+    static final long HIGHEST_TRACKABLE_VALUE = (1L << (MAX_MAGNITUDE + 1)) - 1;
+    static final int BUCKET_COUNT = indexOf(HIGHEST_TRACKABLE_VALUE) + 1;
+
+    private final AtomicReferenceArray<Stripe> stripes;
+    private final int stripeMask;
+
+    public LatencyHistogram() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param stripes the maximum number of stripes, which is rounded up to a power of two
+     */
+    public LatencyHistogram(int stripes) {
+        int size = Integer.highestOneBit(Math.max(1, Math.min(MAX_STRIPES, stripes)) * 2 - 1);
+        this.stripes = new AtomicReferenceArray<>(size);
+        this.stripeMask = size - 1;
+    }
+
+    /**
+     * Records a value in nanoseconds
+     */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        } else if (value > HIGHEST_TRACKABLE_VALUE) {
+            value = HIGHEST_TRACKABLE_VALUE;
+        }
+        Stripe stripe = getStripe();
+        stripe.counts.incrementAndGet(indexOf(value));
+        stripe.totalCount.incrementAndGet();
+        stripe.totalValue.addAndGet(value);
+        long max = stripe.maxValue.get();
+        while (value > max && !stripe.maxValue.compareAndSet(max, value)) {
+            max = stripe.maxValue.get();
+        }
+    }
+
+    /**
+     * Records values which have already been counted in coarse buckets, each of which spans {@code 1 << shift}
+     * adjacent buckets of this histogram; the values of a coarse bucket are recorded in the middle of its range
+     * while their total and the maximum are kept exact
+     */
+    void recordBuckets(long[] buckets, int shift, long total, long max) {
+        Stripe stripe = getStripe();
+        long count = 0;
+        int middle = (1 << shift) >>> 1;
+        for (int i = 0; i < buckets.length; i++) {
+            long value = buckets[i];
+            if (value > 0) {
+                stripe.counts.addAndGet(Math.min((i << shift) + middle, BUCKET_COUNT - 1), value);
+                count += value;
+            }
+        }
+        if (count > 0) {
+            stripe.totalCount.addAndGet(count);
+        }
+        if (total > 0) {
+            stripe.totalValue.addAndGet(total);
+        }
+        max = Math.min(max, HIGHEST_TRACKABLE_VALUE);
+        long current = stripe.maxValue.get();
+        while (max > current && !stripe.maxValue.compareAndSet(current, max)) {
+            current = stripe.maxValue.get();
+        }
+    }
+
+    public long getCount() {
+        long answer = 0;
+        for (int i = 0, size = stripes.length(); i < size; i++) {
+            Stripe stripe = stripes.get(i);
+            if (stripe != null) {
+                answer += stripe.totalCount.get();
+            }
+        }
+        return answer;
+    }
+
+    /**
+     * Returns the sum of all the recorded values
+     */
+    public long getTotal() {
+        long answer = 0;
+        for (int i = 0, size = stripes.length(); i < size; i++) {
+            Stripe stripe = stripes.get(i);
+            if (stripe != null) {
+                answer += stripe.totalValue.get();
+            }
+        }
+        return answer;
+    }
+
+    /**
+     * Returns a snapshot of all the values recorded so far
+     */
+    public Snapshot getSnapshot() {
+        long[] counts = new long[BUCKET_COUNT];
+        long count = 0;
+        long total = 0;
+        long max = 0;
+        for (int i = 0, size = stripes.length(); i < size; i++) {
+            Stripe stripe = stripes.get(i);
+            if (stripe != null) {
+                for (int j = 0; j < BUCKET_COUNT; j++) {
+                    long c = stripe.counts.get(j);
+                    counts[j] += c;
+                    count += c;
+                }
+                total += stripe.totalValue.get();
+                max = Math.max(max, stripe.maxValue.get());
+            }
+        }
+        return new Snapshot(counts, count, total, max);
+    }
+
+    public long getHighestTrackableValue() {
+        return HIGHEST_TRACKABLE_VALUE;
+    }
+
+    private Stripe getStripe() {
+        int index = (int) Thread.currentThread().getId() & stripeMask;
+        Stripe stripe = stripes.get(index);
+        if (stripe == null) {
+            Stripe newStripe = new Stripe();
+            if (stripes.compareAndSet(index, null, newStripe)) {
+                stripe = newStripe;
+            } else {
+                stripe = stripes.get(index);
+            }
+        }
+        return stripe;
+    }
+
+    static int indexOf(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int magnitude = 63 - Long.numberOfLeadingZeros(value);
+        int shift = magnitude - (SUB_BUCKET_BITS - 1);
+        int subBucket = (int) (value >>> shift);
+        return SUB_BUCKET_COUNT + (shift - 1) * SUB_BUCKET_HALF_COUNT + (subBucket - SUB_BUCKET_HALF_COUNT);
+    }
+
+    static long lowestEquivalentValue(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int offset = index - SUB_BUCKET_COUNT;
+        int shift = offset / SUB_BUCKET_HALF_COUNT + 1;
+        long subBucket = offset % SUB_BUCKET_HALF_COUNT + SUB_BUCKET_HALF_COUNT;
+        return subBucket << shift;
+    }
+
+    static long highestEquivalentValue(int index) {
+        return lowestEquivalentValue(index + 1) - 1;
+    }
+
+    private static class Stripe {
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+        private final AtomicLong totalCount = new AtomicLong();
+        private final AtomicLong totalValue = new AtomicLong();
+        private final AtomicLong maxValue = new AtomicLong();
+    }
+
+    /**
+     * An immutable copy of the bucket counts of a histogram
+     */
+    public static class Snapshot {
+        static final Snapshot EMPTY = new Snapshot(new long[BUCKET_COUNT], 0, 0, 0);
+
+        private final long[] counts;
+        private final long count;
+        private final long total;
+        private final long max;
+
+        Snapshot(long[] counts, long count, long total, long max) {
+            this.counts = counts;
+            this.count = count;
+            this.total = total;
+            this.max = max;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getTotal() {
+            return total;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        public long getMin() {
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] > 0) {
+                    return lowestEquivalentValue(i);
+                }
+            }
+            return 0;
+        }
+
+        public double getMean() {
+            return count > 0 ? (double) total / count : 0;
+        }
+
+        public double getStdDev() {
+            if (count == 0) {
+                return 0;
+            }
+            double mean = getMean();
+            double sum = 0;
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] > 0) {
+                    double delta = medianEquivalentValue(i) - mean;
+                    sum += delta * delta * counts[i];
+                }
+            }
+            return Math.sqrt(sum / count);
+        }
+
+        /**
+         * Returns the value at the given percentile (between 0 and 100) of the recorded values
+         */
+        public long getValueAtPercentile(double percentile) {
+            if (count == 0) {
+                return 0;
+            }
+            long target = Math.max(1, (long) Math.ceil(Math.min(100.0, Math.max(0.0, percentile)) / 100.0 * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= target) {
+                    return Math.min(highestEquivalentValue(i), max);
+                }
+            }
+            return max;
+        }
+
+        /**
+         * Returns the values recorded since the given earlier snapshot of the same histogram
+         */
+        Snapshot minus(Snapshot other) {
+            long[] answer = new long[counts.length];
+            long highest = 0;
+            for (int i = 0; i < counts.length; i++) {
+                answer[i] = counts[i] - other.counts[i];
+                if (answer[i] > 0) {
+                    highest = highestEquivalentValue(i);
+                }
+            }
+            return new Snapshot(answer, count - other.count, total - other.total, Math.min(highest, max));
+        }
+
+        private static double medianEquivalentValue(int index) {
+            return (lowestEquivalentValue(index) + highestEquivalentValue(index)) / 2.0;
+        }
+    }
+}
@@ -15,34 +15,66 @@
  */
 package io.fabric8.apmagent.metrics;
 
-import com.codahale.metrics.Timer;
-
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
+/**
+ * The timings of a method, recorded in a striped {@link LatencyHistogram} so that threads calling the same method
+ * concurrently do not contend with each other.
+ * <p/>
+ * The cumulative statistics cover every call since the metrics were created up to the last {@link #tick()}, which
+ * the {@link ApmAgentContext} calls on each house keeping run and which also updates the interval statistics, the
+ * load and the one, five and fifteen minute rates. Only the call count is read live from the histogram. A tick
+ * takes a single snapshot of the histogram, and none at all if no call was recorded since the previous one.
+ */
 public class MethodMetrics {
-    protected final Timer timer;
+    private static final double ONE_MINUTE = 60.0;
+    private static final double FIVE_MINUTES = 5 * ONE_MINUTE;
+    private static final double FIFTEEN_MINUTES = 15 * ONE_MINUTE;
+
+    protected final LatencyHistogram histogram;
     private final String name;
     private final double rateFactor;
     private final double durationFactor;
+    private final long startTime;
     private int percentage;
     private boolean active = true;
 
+    private long lastTickTime;
+    private long lastTickCount;
+    private boolean ratesInitialized;
+    private volatile double oneMinuteRate;
+    private volatile double fiveMinuteRate;
+    private volatile double fifteenMinuteRate;
+    private volatile double decayedTotal;
+    private volatile LatencyHistogram.Snapshot snapshot;
+    private volatile LatencyHistogram.Snapshot intervalSnapshot;
+
     /**
      * Constructor.
      *
      * @param name - the fully qualified method name
      */
     public MethodMetrics(String name) {
+        this(name, new LatencyHistogram());
+    }
+
+    protected MethodMetrics(String name, LatencyHistogram histogram) {
         this.name = name;
-        this.timer = new Timer();
+        this.histogram = histogram;
 
         this.rateFactor = TimeUnit.SECONDS.toSeconds(1);
         this.durationFactor = 1.0 / TimeUnit.MILLISECONDS.toNanos(1);
+        this.startTime = System.nanoTime();
+        this.lastTickTime = startTime;
+        this.snapshot = LatencyHistogram.Snapshot.EMPTY;
+        this.intervalSnapshot = LatencyHistogram.Snapshot.EMPTY;
     }
 
     public String getName() {
@@ -58,72 +90,105 @@ public class MethodMetrics {
     }
 
     public long getCount() {
-        return timer.getCount();
+        return histogram.getCount();
     }
 
     public double getMeanRate() {
-        return timer.getMeanRate() * rateFactor;
+        long count = getCount();
+        if (count == 0) {
+            return 0;
+        }
+        double elapsed = (double) (System.nanoTime() - startTime) / TimeUnit.SECONDS.toNanos(1);
+        return elapsed > 0 ? count / elapsed * rateFactor : 0;
     }
 
     public double getOneMinuteRate() {
-        return timer.getOneMinuteRate() * rateFactor;
+        return oneMinuteRate * rateFactor;
     }
 
     public double getFiveMinuteRate() {
-        return timer.getFiveMinuteRate() * rateFactor;
+        return fiveMinuteRate * rateFactor;
     }
 
     public double getFifteenMinuteRate() {
-        return timer.getFifteenMinuteRate() * rateFactor;
+        return fifteenMinuteRate * rateFactor;
     }
 
     public double getMin() {
-        return timer.getSnapshot().getMin() * durationFactor;
+        return snapshot.getMin() * durationFactor;
     }
 
     public double getMax() {
-        return timer.getSnapshot().getMax() * durationFactor;
+        return snapshot.getMax() * durationFactor;
     }
 
     public double getMean() {
-        return timer.getSnapshot().getMean() * durationFactor;
+        return snapshot.getMean() * durationFactor;
     }
 
     public double getStdDev() {
-        return timer.getSnapshot().getStdDev() * durationFactor;
+        return snapshot.getStdDev() * durationFactor;
     }
 
     public double get50thPercentile() {
-        return timer.getSnapshot().getMedian() * durationFactor;
+        return getPercentile(50);
     }
 
     public double get75thPercentile() {
-        return timer.getSnapshot().get75thPercentile() * durationFactor;
+        return getPercentile(75);
+    }
+
+    public double get90thPercentile() {
+        return getPercentile(90);
     }
 
     public double get95thPercentile() {
-        return timer.getSnapshot().get95thPercentile() * durationFactor;
+        return getPercentile(95);
     }
 
     public double get98thPercentile() {
-        return timer.getSnapshot().get98thPercentile() * durationFactor;
+        return getPercentile(98);
     }
 
     public double get99thPercentile() {
-        return timer.getSnapshot().get99thPercentile() * durationFactor;
+        return getPercentile(99);
     }
 
     public double get999thPercentile() {
-        return timer.getSnapshot().get999thPercentile() * durationFactor;
+        return getPercentile(99.9);
+    }
+
+    public double getPercentile(double percentile) {
+        return snapshot.getValueAtPercentile(percentile) * durationFactor;
+    }
+
+    /**
+     * @return the number of calls in the last house keeping interval
+     */
+    public long getIntervalCount() {
+        return intervalSnapshot.getCount();
+    }
+
+    public double getIntervalMean() {
+        return intervalSnapshot.getMean() * durationFactor;
+    }
+
+    public double getIntervalMax() {
+        return intervalSnapshot.getMax() * durationFactor;
+    }
+
+    public double getIntervalPercentile(double percentile) {
+        return intervalSnapshot.getValueAtPercentile(percentile) * durationFactor;
     }
 
     /**
-     * average amount of time for a method multiplied by the number of times called
+     * The time spent in the method in milliseconds, with the weight of each house keeping interval decaying over
+     * five minutes so that the methods which are expensive now rank above those which were expensive once
      *
      * @return estimated load
      */
     public double getLoad() {
-        return timer.getSnapshot().size() * getMean();
+        return decayedTotal * durationFactor;
     }
 
     public int getPercentage() {
@@ -134,16 +199,73 @@ public class MethodMetrics {
         this.percentage = percentage;
     }
 
+    /**
+     * @return the values in nanoseconds at each whole percentile from 0 to 100
+     */
     public long[] values() {
-        return timer.getSnapshot().getValues();
+        LatencyHistogram.Snapshot snapshot = this.snapshot;
+        long[] answer = new long[101];
+        if (snapshot.getCount() > 0) {
+            for (int i = 0; i < answer.length; i++) {
+                answer[i] = snapshot.getValueAtPercentile(i);
+            }
+        }
+        return answer;
     }
 
     public void update(long elapsed) {
         if (elapsed >= 0) {
-            timer.update(elapsed, TimeUnit.NANOSECONDS);
+            histogram.record(elapsed);
         }
     }
 
+    /**
+     * Records the calls merged from a {@link ThreadMethodRecorder}
+     */
+    void update(long total, long max, long[] buckets) {
+        histogram.recordBuckets(buckets, ThreadMethodRecorder.BUCKET_SHIFT, total, max);
+    }
+
+    /**
+     * Rolls the interval statistics over and updates the moving average rates
+     */
+    public synchronized void tick() {
+        long now = System.nanoTime();
+        double seconds = (double) (now - lastTickTime) / TimeUnit.SECONDS.toNanos(1);
+        if (seconds <= 0) {
+            return;
+        }
+        long count = getCount();
+        double rate = (count - lastTickCount) / seconds;
+        if (ratesInitialized) {
+            oneMinuteRate += alpha(seconds, ONE_MINUTE) * (rate - oneMinuteRate);
+            fiveMinuteRate += alpha(seconds, FIVE_MINUTES) * (rate - fiveMinuteRate);
+            fifteenMinuteRate += alpha(seconds, FIFTEEN_MINUTES) * (rate - fifteenMinuteRate);
+        } else {
+            oneMinuteRate = rate;
+            fiveMinuteRate = rate;
+            fifteenMinuteRate = rate;
+            ratesInitialized = true;
+        }
+        double decay = Math.exp(-seconds / FIVE_MINUTES);
+        if (count != lastTickCount) {
+            LatencyHistogram.Snapshot current = histogram.getSnapshot();
+            LatencyHistogram.Snapshot interval = current.minus(snapshot);
+            decayedTotal = decayedTotal * decay + interval.getTotal();
+            snapshot = current;
+            intervalSnapshot = interval;
+        } else {
+            decayedTotal *= decay;
+            intervalSnapshot = LatencyHistogram.Snapshot.EMPTY;
+        }
+        lastTickTime = now;
+        lastTickCount = count;
+    }
+
+    private static double alpha(double seconds, double window) {
+        return 1 - Math.exp(-seconds / window);
+    }
+
     public String toString() {
         return "MethodMetrics:" + getName();
     }
@@ -151,19 +273,23 @@ public class MethodMetrics {
     public static List<? extends MethodMetrics> sortedMetrics(Collection<? extends MethodMetrics> collection) {
         ArrayList<? extends MethodMetrics> list = new ArrayList<>(collection);
 
+        //read each load once so a concurrent tick cannot change the order while sorting
+        final Map<MethodMetrics, Double> loads = new IdentityHashMap<>();
+        double totalLoad = 0;
+        for (MethodMetrics m : list) {
+            double load = m.getLoad();
+            loads.put(m, load);
+            totalLoad += load;
+        }
         Collections.sort(list, new Comparator<MethodMetrics>() {
             @Override
             public int compare(MethodMetrics methodMetrics1, MethodMetrics methodMetrics2) {
-                return (int) ((int) methodMetrics2.getLoad() - (int) methodMetrics1.getLoad());
+                return Double.compare(loads.get(methodMetrics2), loads.get(methodMetrics1));
             }
         });
         //calculate the percentage
-        int totalLoad = 0;
-        for (MethodMetrics m : list) {
-            totalLoad += m.getLoad();
-        }
         for (MethodMetrics m : list) {
-            int percentage = (int) ((m.getLoad() * 100) / totalLoad);
+            int percentage = totalLoad > 0 ? (int) ((loads.get(m) * 100) / totalLoad) : 0;
             m.setPercentage(percentage);
         }
         return list;
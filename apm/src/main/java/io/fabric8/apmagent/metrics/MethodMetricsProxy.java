@@ -94,6 +94,12 @@ public class MethodMetricsProxy implements MethodMetricsProxyMBean {
         return mm != null ? mm.get75thPercentile() : 0;
     }
 
+    @Override
+    public double get90thPercentile() {
+        MethodMetrics mm = this.methodMetrics;
+        return mm != null ? mm.get90thPercentile() : 0;
+    }
+
     @Override
     public double get95thPercentile() {
         MethodMetrics mm = this.methodMetrics;
@@ -118,6 +124,48 @@ public class MethodMetricsProxy implements MethodMetricsProxyMBean {
         return mm != null ? mm.get999thPercentile() : 0;
     }
 
+    @Override
+    public long getIntervalCount() {
+        MethodMetrics mm = this.methodMetrics;
+        return mm != null ? mm.getIntervalCount() : 0;
+    }
+
+    @Override
+    public double getIntervalMean() {
+        MethodMetrics mm = this.methodMetrics;
+        return mm != null ? mm.getIntervalMean() : 0;
+    }
+
+    @Override
+    public double getIntervalMax() {
+        MethodMetrics mm = this.methodMetrics;
+        return mm != null ? mm.getIntervalMax() : 0;
+    }
+
+    @Override
+    public double getInterval50thPercentile() {
+        MethodMetrics mm = this.methodMetrics;
+        return mm != null ? mm.getIntervalPercentile(50) : 0;
+    }
+
+    @Override
+    public double getInterval90thPercentile() {
+        MethodMetrics mm = this.methodMetrics;
+        return mm != null ? mm.getIntervalPercentile(90) : 0;
+    }
+
+    @Override
+    public double getInterval99thPercentile() {
+        MethodMetrics mm = this.methodMetrics;
+        return mm != null ? mm.getIntervalPercentile(99) : 0;
+    }
+
+    @Override
+    public double getInterval999thPercentile() {
+        MethodMetrics mm = this.methodMetrics;
+        return mm != null ? mm.getIntervalPercentile(99.9) : 0;
+    }
+
     @Override
     public long[] values() {
         MethodMetrics mm = this.methodMetrics;
@@ -45,6 +45,8 @@ public interface MethodMetricsProxyMBean {
 
     double get75thPercentile();
 
+    double get90thPercentile();
+
     double get95thPercentile();
 
     double get98thPercentile();
@@ -53,6 +55,20 @@ public interface MethodMetricsProxyMBean {
 
     double get999thPercentile();
 
+    long getIntervalCount();
+
+    double getIntervalMean();
+
+    double getIntervalMax();
+
+    double getInterval50thPercentile();
+
+    double getInterval90thPercentile();
+
+    double getInterval99thPercentile();
+
+    double getInterval999thPercentile();
+
     long[] values();
 
 }
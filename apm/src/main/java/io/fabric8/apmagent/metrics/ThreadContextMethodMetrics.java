@@ -15,17 +15,16 @@
  */
 package io.fabric8.apmagent.metrics;
 
-import com.codahale.metrics.Timer;
-
 import java.util.concurrent.atomic.AtomicReference;
 
 public class ThreadContextMethodMetrics extends MethodMetrics {
     private final Thread thread;
     private final AtomicReference<ThreadContextMethodMetricsStack> stackRef;
-    private Timer.Context timerContext;
+    private long startTime;
 
     public ThreadContextMethodMetrics(Thread thread, AtomicReference<ThreadContextMethodMetricsStack> stackRef, String name) {
-        super(name);
+        //only ever recorded by the one thread so a single stripe will do
+        super(name, new LatencyHistogram(1));
         this.thread = thread;
         this.stackRef = stackRef;
     }
@@ -39,7 +38,7 @@ public class ThreadContextMethodMetrics extends MethodMetrics {
     }
 
     public void onEnter() {
-        timerContext = timer.time();
+        startTime = System.nanoTime();
         stackRef.get().push(this);
     }
 
@@ -47,21 +46,27 @@ public class ThreadContextMethodMetrics extends MethodMetrics {
         long result = -1;
         ThreadContextMethodMetrics last = stackRef.get().pop();
         if (last == this) {
-            result = timerContext.stop();
+            result = stop();
         } else {
             //the exit could have jumped a few methods if its
             //caused by an exception
             while (last != null && last != this) {
-                result = last.timerContext.stop();
+                result = last.stop();
                 last = stackRef.get().pop();
             }
             if (last == this) {
-                result = timerContext.stop();
+                result = stop();
             }
         }
         return result;
     }
 
+    private long stop() {
+        long elapsed = System.nanoTime() - startTime;
+        update(elapsed);
+        return elapsed;
+    }
+
     public String toString() {
         return "ThreadContextMethodMetrics:" + getName();
     }
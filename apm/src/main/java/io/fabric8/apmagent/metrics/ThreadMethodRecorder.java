@@ -0,0 +1,194 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.apmagent.metrics;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records the method timings of a single thread for methods instrumented with integer method ids.
+ * <p/>
+ * Only the owning thread calls {@link #enter(int, long)} and {@link #exit(int, long)}, which keep the call
+ * stack in primitive arrays and add each completed call to primitive counters indexed by method id: the number
+ * of calls, their total and maximum time and the calls in each of a set of coarse latency buckets, which line up
+ * with every {@code 1 << BUCKET_SHIFT} buckets of a {@link LatencyHistogram}. Recording never locks, hashes or
+ * allocates once the counters of a method exist, and never drops a timing however fast the thread calls.
+ * <p/>
+ * A single background thread calls {@link #merge(Sink)} to pass on what has been recorded since its previous
+ * call. The counters are read without locking so a merge may miss a call which is still being recorded, in
+ * which case the next merge picks it up.
+ */
+public class ThreadMethodRecorder {
+    static final int BUCKET_SHIFT = 3;
+    static final int BUCKET_COUNT = (LatencyHistogram.BUCKET_COUNT + (1 << BUCKET_SHIFT) - 1) >>> BUCKET_SHIFT;
+
+    private static final int TOTAL = 0;
+    private static final int MAX = 1;
+    private static final int FIRST_BUCKET = 2;
+    private static final int SLOTS = FIRST_BUCKET + BUCKET_COUNT;
+
+    private final Thread thread;
+    private final AtomicLong recorded = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile long[][] methods = new long[16][];
+
+    // only accessed by the owning thread
+    private int[] stackIds = new int[32];
+    private long[] stackTimes = new long[32];
+    private int depth;
+    private long recordedCount;
+
+    // only accessed by the merging thread
+    private long[][] merged = new long[16][];
+    private final long[] bucketDeltas = new long[BUCKET_COUNT];
+    private long mergedCount;
+
+    public ThreadMethodRecorder(Thread thread) {
+        this.thread = thread;
+    }
+
+    public Thread getThread() {
+        return thread;
+    }
+
+    /**
+     * Returns the number of method exits which could not be timed because the method was not on the call stack
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    public void enter(int methodId, long now) {
+        if (depth == stackIds.length) {
+            stackIds = Arrays.copyOf(stackIds, depth * 2);
+            stackTimes = Arrays.copyOf(stackTimes, depth * 2);
+        }
+        stackIds[depth] = methodId;
+        stackTimes[depth] = now;
+        depth++;
+    }
+
+    public void exit(int methodId, long now) {
+        int index = depth - 1;
+        while (index >= 0 && stackIds[index] != methodId) {
+            index--;
+        }
+        if (index < 0) {
+            dropped.lazySet(dropped.get() + 1);
+            return;
+        }
+        //the exit could have jumped a few methods if its
+        //caused by an exception
+        while (depth > index) {
+            depth--;
+            record(stackIds[depth], now - stackTimes[depth]);
+        }
+        recorded.lazySet(recordedCount);
+    }
+
+    private void record(int methodId, long elapsed) {
+        long[][] current = methods;
+        long[] slots = methodId < current.length ? current[methodId] : null;
+        if (slots == null) {
+            slots = createSlots(methodId);
+        }
+        if (elapsed < 0) {
+            elapsed = 0;
+        }
+        slots[TOTAL] += elapsed;
+        if (elapsed > slots[MAX]) {
+            slots[MAX] = elapsed;
+        }
+        slots[FIRST_BUCKET + bucketOf(elapsed)]++;
+        recordedCount++;
+    }
+
+    private long[] createSlots(int methodId) {
+        long[][] current = methods;
+        if (methodId >= current.length) {
+            current = Arrays.copyOf(current, Math.max(current.length * 2, methodId + 1));
+        }
+        long[] answer = new long[SLOTS];
+        current[methodId] = answer;
+        methods = current;
+        return answer;
+    }
+
+    static int bucketOf(long elapsed) {
+        return LatencyHistogram.indexOf(Math.min(elapsed, LatencyHistogram.HIGHEST_TRACKABLE_VALUE)) >>> BUCKET_SHIFT;
+    }
+
+    /**
+     * Passes the timings recorded for each method since the last call to the sink; must only be called from
+     * one thread at a time
+     *
+     * @return the number of calls merged
+     */
+    public long merge(Sink sink) {
+        long count = recorded.get();
+        if (count == mergedCount) {
+            return 0;
+        }
+        long[][] current = methods;
+        if (merged.length < current.length) {
+            merged = Arrays.copyOf(merged, current.length);
+        }
+        for (int methodId = 0; methodId < current.length; methodId++) {
+            long[] slots = current[methodId];
+            if (slots == null) {
+                continue;
+            }
+            long[] last = merged[methodId];
+            if (last == null) {
+                last = new long[SLOTS];
+                merged[methodId] = last;
+            }
+            long calls = 0;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                long value = slots[FIRST_BUCKET + i];
+                long delta = value - last[FIRST_BUCKET + i];
+                last[FIRST_BUCKET + i] = value;
+                bucketDeltas[i] = delta;
+                calls += delta;
+            }
+            long total = slots[TOTAL];
+            long totalDelta = total - last[TOTAL];
+            last[TOTAL] = total;
+            if (calls > 0 || totalDelta > 0) {
+                sink.timings(this, methodId, calls, totalDelta, slots[MAX], bucketDeltas);
+            }
+        }
+        long answer = count - mergedCount;
+        mergedCount = count;
+        return answer;
+    }
+
+    public String toString() {
+        return "ThreadMethodRecorder:" + thread.getName() + "[" + thread.getId() + "]";
+    }
+
+    public interface Sink {
+        /**
+         * Receives the calls of a method since the last merge
+         *
+         * @param count   the number of calls
+         * @param total   the total time of the calls in nanoseconds
+         * @param max     the longest call the thread has ever made to the method in nanoseconds
+         * @param buckets the number of calls in each coarse bucket, which is only valid during the call
+         */
+        void timings(ThreadMethodRecorder recorder, int methodId, long count, long total, long max, long[] buckets);
+    }
+}
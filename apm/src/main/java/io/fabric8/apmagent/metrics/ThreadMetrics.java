@@ -100,6 +100,28 @@ public class ThreadMetrics {
         return result;
     }
 
+    /**
+     * Updates the metrics of the given method with the calls merged from a {@link ThreadMethodRecorder}
+     *
+     * @return true if the method is active, so that the calls were recorded
+     */
+    public boolean update(String methodName, long total, long max, long[] buckets) {
+        ThreadContextMethodMetrics threadContextMethodMetrics = methods.get(methodName);
+        if (threadContextMethodMetrics == null) {
+            threadContextMethodMetrics = new ThreadContextMethodMetrics(thread, this.methodStackRef, methodName);
+            threadContextMethodMetrics.setActive(apmAgentContext.isMonitorByDefault());
+            ThreadContextMethodMetrics existing = methods.putIfAbsent(methodName, threadContextMethodMetrics);
+            if (existing != null) {
+                threadContextMethodMetrics = existing;
+            }
+        }
+        if (threadContextMethodMetrics.isActive()) {
+            threadContextMethodMetrics.update(total, max, buckets);
+            return true;
+        }
+        return false;
+    }
+
     public String toString() {
         return "ThreadMetrics:" + getName();
     }
@@ -114,6 +136,9 @@ public class ThreadMetrics {
     }
 
     public void calculateMethodMetrics() {
+        for (ThreadContextMethodMetrics methodMetrics : methods.values()) {
+            methodMetrics.tick();
+        }
         List<ThreadContextMethodMetrics> list = (List<ThreadContextMethodMetrics>) MethodMetrics.sortedMetrics(this.methods.values());
         monitoredThreadMethodMetrics.calculateMethodMetrics(list);
     }
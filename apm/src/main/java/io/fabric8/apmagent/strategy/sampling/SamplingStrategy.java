@@ -18,24 +18,37 @@ package io.fabric8.apmagent.strategy.sampling;
 import io.fabric8.apmagent.ApmConfiguration;
 import io.fabric8.apmagent.Strategy;
 import io.fabric8.apmagent.metrics.ApmAgentContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.lang.management.ManagementFactory;
 import java.lang.management.ThreadInfo;
 import java.lang.management.ThreadMXBean;
-import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
 
+/**
+ * Samples the stacks of the threads selected by {@link ApmConfiguration#getSamplingThreadNames()} every
+ * sampling interval using {@link ThreadMXBean#getThreadInfo(long[], int)}, which only captures the top
+ * {@link ApmConfiguration#getSamplingMaxDepth()} frames of those threads.
+ * <p/>
+ * The top frame of each sample updates the method metrics and the whole sample is added to the
+ * {@link ApmAgentContext#getCallTree() call tree}.
+ */
 public class SamplingStrategy implements Strategy, Runnable {
+    private static final Logger LOG = LoggerFactory.getLogger(SamplingStrategy.class);
     private static final long CLEANUP_INTERVAL = 1000;
     private ApmAgentContext context;
     private ApmConfiguration configuration;
     private AtomicBoolean initialized = new AtomicBoolean();
     private AtomicBoolean started = new AtomicBoolean();
     private Thread samplingThread;
-    private final Map<Long, String> currentMethods = new HashMap<>();
+    private final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+    private final Map<Long, String> currentMethods = new ConcurrentHashMap<>();
+    private final Map<Long, Thread> sampledThreads = new HashMap<>();
+    private long[] sampledThreadIds = new long[0];
 
     public SamplingStrategy(ApmAgentContext context) {
         this.context = context;
@@ -85,51 +98,65 @@ public class SamplingStrategy implements Strategy, Runnable {
         long lastTime = 0;
         while (started.get()) {
             try {
-                for (Map.Entry<Thread, StackTraceElement[]> threadEntry : Thread.getAllStackTraces().entrySet()) {
-                    if (threadEntry.getKey() != Thread.currentThread()) {
-                        addMeasurement(threadEntry.getKey(), threadEntry.getValue());
-                    }
-                }
                 long currentTime = System.currentTimeMillis();
-
                 if ((currentTime - lastTime) > CLEANUP_INTERVAL) {
                     cleanup();
                     lastTime = currentTime;
                 }
+                if (sampledThreadIds.length > 0) {
+                    ThreadInfo[] threadInfos = threadMXBean.getThreadInfo(sampledThreadIds, Math.max(1, configuration.getSamplingMaxDepth()));
+                    for (ThreadInfo threadInfo : threadInfos) {
+                        if (threadInfo != null) {
+                            addMeasurement(sampledThreads.get(threadInfo.getThreadId()), threadInfo.getStackTrace());
+                        }
+                    }
+                }
                 Thread.sleep(configuration.getSamplingInterval());
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
+            } catch (RuntimeException e) {
+                // keep sampling, the next round may well succeed
+                LOG.warn("Failed to sample threads: " + e.getMessage(), e);
             }
         }
     }
 
+    /**
+     * Refreshes the threads to sample, without taking their stacks, and forgets the ones which have terminated
+     */
     private void cleanup() {
-        List<ThreadInfo> removeList = null;
-        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
-        for (Long id : currentMethods.keySet()) {
-            ThreadInfo threadInfo = threadMXBean.getThreadInfo(id);
-            if (threadInfo != null) {
-                if (threadInfo.getThreadState() == Thread.State.TERMINATED) {
-                    if (removeList == null) {
-                        removeList = new ArrayList<>();
-                    }
-                    removeList.add(threadInfo);
-                }
-            }
+        ThreadGroup group = Thread.currentThread().getThreadGroup();
+        while (group.getParent() != null) {
+            group = group.getParent();
         }
-        if (removeList != null) {
-            for (ThreadInfo threadInfo : removeList) {
-                currentMethods.remove(threadInfo.getThreadId());
+        Thread[] threads = new Thread[group.activeCount() + 16];
+        int count;
+        while ((count = group.enumerate(threads, true)) == threads.length) {
+            threads = new Thread[threads.length * 2];
+        }
+        sampledThreads.clear();
+        for (int i = 0; i < count; i++) {
+            Thread thread = threads[i];
+            if (thread != Thread.currentThread() && configuration.isSamplingThread(thread.getName())) {
+                sampledThreads.put(thread.getId(), thread);
             }
         }
+        long[] ids = new long[sampledThreads.size()];
+        int i = 0;
+        for (Long id : sampledThreads.keySet()) {
+            ids[i++] = id;
+        }
+        sampledThreadIds = ids;
+        currentMethods.keySet().retainAll(sampledThreads.keySet());
     }
 
     private void addMeasurement(Thread thread, StackTraceElement[] stackTraceElements) {
         if (thread != null && thread.isAlive() &&
                 stackTraceElements != null && stackTraceElements.length > 0) {
+            context.getCallTree().add(stackTraceElements);
             StackTraceElement topOfStack = stackTraceElements[0];
-            String currentMethod = getCurrentMethod(topOfStack);
             if (configuration.isAudit(topOfStack.getClassName(), topOfStack.getMethodName())) {
+                String currentMethod = getCurrentMethod(topOfStack);
                 String lastMethod = currentMethods.put(thread.getId(), currentMethod);
                 if (lastMethod == null) {
                     context.enterMethod(thread, currentMethod, true);
@@ -148,4 +175,3 @@ public class SamplingStrategy implements Strategy, Runnable {
         return stringBuilder.toString();
     }
 }
-
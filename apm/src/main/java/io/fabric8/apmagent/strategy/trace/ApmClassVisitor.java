@@ -58,7 +58,13 @@ public class ApmClassVisitor extends ClassVisitor {
             if (canProfileMethod(name, desc) && traceStrategy.isAudit(classInfo.getClassName(), name)) {
                 MethodVisitor mv = super.visitMethod(access, name, desc, signature, exceptions);
 
-                ApmMethodVisitor methodVisitor = new ApmMethodVisitor(mv, classInfo.getClassName(), name + methodDescription);
+                ApmMethodVisitor methodVisitor;
+                if (traceStrategy.isUseMethodIds()) {
+                    String fullMethodName = classInfo.getClassName() + "@" + name + methodDescription;
+                    methodVisitor = new ApmMethodVisitor(mv, traceStrategy.getContext().getMethodId(fullMethodName));
+                } else {
+                    methodVisitor = new ApmMethodVisitor(mv, classInfo.getClassName(), name + methodDescription);
+                }
                 classInfo.addTransformedMethod(name, methodDescription);
                 return methodVisitor;
             }
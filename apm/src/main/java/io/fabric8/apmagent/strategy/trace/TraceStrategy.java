@@ -106,6 +106,10 @@ public class TraceStrategy implements Strategy, ClassFileTransformer {
         return configuration.isAudit(className, methodName);
     }
 
+    public boolean isUseMethodIds() {
+        return configuration.isUseMethodIds();
+    }
+
     @Override
     public byte[] transform(ClassLoader loader, String className, Class<?> classBeingRedefined, ProtectionDomain protectionDomain, byte[] classfileBuffer) throws IllegalClassFormatException {
         byte[] buffer = null;
@@ -0,0 +1,75 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.apmagent.metrics;
+
+/**
+ * Measures the cost of recording a timing on a single {@link MethodMetrics} shared by 1 to 64 threads, comparing
+ * a histogram striped by thread with one which has a single stripe that every thread contends on.
+ * <p/>
+ * Not run as part of the build; run its main method from the IDE. The striping only pays off with as many cores
+ * as threads, on a machine with fewer cores the threads mostly take turns.
+ */
+public class LatencyHistogramBenchmark {
+
+    static final int ITERATIONS = 2000000;
+    static final int MAX_THREADS = 64;
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("==============================================================");
+        System.out.println("Perf testing");
+        System.out.println("==============================================================");
+        System.out.println("available processors: " + Runtime.getRuntime().availableProcessors());
+
+        // warm up
+        run(new MethodMetrics("warmUp", new LatencyHistogram(MAX_THREADS)), 2, ITERATIONS / 4);
+        run(new MethodMetrics("warmUp", new LatencyHistogram(1)), 2, ITERATIONS / 4);
+
+        for (int threads = 1; threads <= MAX_THREADS; threads *= 2) {
+            int iterations = ITERATIONS / threads;
+            MethodMetrics striped = new MethodMetrics("striped", new LatencyHistogram(MAX_THREADS));
+            MethodMetrics single = new MethodMetrics("single", new LatencyHistogram(1));
+            long stripedTime = run(striped, threads, iterations);
+            long singleTime = run(single, threads, iterations);
+            long calls = (long) iterations * threads;
+            striped.tick();
+            System.out.println(String.format("threads: %2d, striped: %5.1f ns/call, single stripe: %5.1f ns/call, count: %d, p99: %.4f ms",
+                    threads, (double) stripedTime / calls, (double) singleTime / calls, striped.getCount(), striped.get99thPercentile()));
+        }
+    }
+
+    static long run(final MethodMetrics methodMetrics, int threads, final int iterations) throws InterruptedException {
+        Thread[] workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < iterations; i++) {
+                        // a spread of timings from 1us to about 1ms
+                        methodMetrics.update(1000 + (i & 1023) * (i & 1023));
+                    }
+                }
+            }, "LatencyHistogramBenchmark-" + i);
+        }
+        long start = System.nanoTime();
+        for (Thread worker : workers) {
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return System.nanoTime() - start;
+    }
+}
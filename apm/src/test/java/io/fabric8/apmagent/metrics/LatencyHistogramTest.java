@@ -0,0 +1,107 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.apmagent.metrics;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testBucketBoundaries() throws Exception {
+        for (int i = 0; i < LatencyHistogram.SUB_BUCKET_COUNT; i++) {
+            assertEquals(i, LatencyHistogram.indexOf(i));
+            assertEquals(i, LatencyHistogram.lowestEquivalentValue(i));
+        }
+        for (int i = 0; i < LatencyHistogram.BUCKET_COUNT - 1; i++) {
+            long highest = LatencyHistogram.highestEquivalentValue(i);
+            assertEquals("bucket " + i, highest + 1, LatencyHistogram.lowestEquivalentValue(i + 1));
+            assertEquals(i, LatencyHistogram.indexOf(highest));
+            assertEquals(i + 1, LatencyHistogram.indexOf(highest + 1));
+        }
+        assertEquals(LatencyHistogram.BUCKET_COUNT - 1, LatencyHistogram.indexOf(LatencyHistogram.HIGHEST_TRACKABLE_VALUE));
+        for (long value = LatencyHistogram.SUB_BUCKET_COUNT; value < LatencyHistogram.HIGHEST_TRACKABLE_VALUE; value = value * 3 + 7) {
+            int index = LatencyHistogram.indexOf(value);
+            long lowest = LatencyHistogram.lowestEquivalentValue(index);
+            long highest = LatencyHistogram.highestEquivalentValue(index);
+            assertTrue(value + " in bucket " + index, lowest <= value && value <= highest);
+            assertTrue(value + " precision", (double) (highest - lowest + 1) / lowest <= 1.0 / LatencyHistogram.SUB_BUCKET_HALF_COUNT);
+        }
+    }
+
+    @Test
+    public void testOutOfRangeValuesAreClamped() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram(1);
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE);
+
+        LatencyHistogram.Snapshot snapshot = histogram.getSnapshot();
+        assertEquals(2, snapshot.getCount());
+        assertEquals(0, snapshot.getMin());
+        assertEquals(histogram.getHighestTrackableValue(), snapshot.getMax());
+        assertEquals(histogram.getHighestTrackableValue(), snapshot.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void testPercentiles() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram(4);
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000L);
+        }
+
+        LatencyHistogram.Snapshot snapshot = histogram.getSnapshot();
+        assertEquals(1000, snapshot.getCount());
+        assertEquals(500500000L, snapshot.getTotal());
+        assertEquals(500500.0, snapshot.getMean(), 0.0);
+        assertEquals(1000000L, snapshot.getMax());
+        assertWithinPrecision(1000, snapshot.getMin());
+        assertWithinPrecision(500000, snapshot.getValueAtPercentile(50));
+        assertWithinPrecision(900000, snapshot.getValueAtPercentile(90));
+        assertWithinPrecision(990000, snapshot.getValueAtPercentile(99));
+        assertEquals(1000000L, snapshot.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void testIntervalSubtraction() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram(4);
+        for (int i = 0; i < 100; i++) {
+            histogram.record(1000);
+        }
+        LatencyHistogram.Snapshot first = histogram.getSnapshot();
+        for (int i = 0; i < 50; i++) {
+            histogram.record(2000000);
+        }
+        LatencyHistogram.Snapshot second = histogram.getSnapshot();
+
+        LatencyHistogram.Snapshot interval = second.minus(first);
+        assertEquals(50, interval.getCount());
+        assertEquals(50 * 2000000L, interval.getTotal());
+        assertWithinPrecision(2000000, interval.getMin());
+        assertWithinPrecision(2000000, interval.getValueAtPercentile(50));
+        assertEquals(2000000L, interval.getMax());
+
+        LatencyHistogram.Snapshot empty = second.minus(second);
+        assertEquals(0, empty.getCount());
+        assertEquals(0, empty.getValueAtPercentile(99));
+        assertEquals(0, empty.getMax());
+    }
+
+    private static void assertWithinPrecision(long expected, long actual) {
+        assertEquals(expected, actual, expected * 1.0 / LatencyHistogram.SUB_BUCKET_HALF_COUNT);
+    }
+}
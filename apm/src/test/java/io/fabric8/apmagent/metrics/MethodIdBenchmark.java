@@ -0,0 +1,126 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.apmagent.metrics;
+
+import io.fabric8.apmagent.ApmAgent;
+
+/**
+ * Measures the overhead the trace strategy adds to each call of an instrumented method, comparing the calls
+ * the transformer injects by method name with the ones it injects by method id when
+ * {@link io.fabric8.apmagent.ApmConfiguration#setUseMethodIds(boolean)} is enabled.
+ * <p/>
+ * Each iteration enters and exits a method nested three deep inside two others, like a tight loop calling
+ * small instrumented methods would. The time the background thread takes to merge the timings recorded by id
+ * is reported separately. Not run as part of the build; run its main method from the IDE.
+ */
+public class MethodIdBenchmark {
+
+    static final int METHODS = 64;
+    static final int ITERATIONS = 2000000;
+    static final int THREADS = 4;
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("==============================================================");
+        System.out.println("Perf testing");
+        System.out.println("==============================================================");
+
+        final ApmAgentContext context = new ApmAgentContext(ApmAgent.INSTANCE);
+        context.initialize();
+        context.start();
+
+        final String[] names = new String[METHODS];
+        final int[] ids = new int[METHODS];
+        for (int i = 0; i < METHODS; i++) {
+            names[i] = "io.fabric8.testApp.TestLoad" + (i % 8) + "@load" + i + "(io.fabric8.testApp.TestValues) void";
+            ids[i] = context.getMethodId(names[i]);
+        }
+
+        // warm up
+        runByName(context, names, ITERATIONS / 4);
+        runById(context, ids, ITERATIONS / 4);
+
+        for (int threads = 1; threads <= THREADS; threads *= 2) {
+            long byName = run(threads, new Runnable() {
+                @Override
+                public void run() {
+                    runByName(context, names, ITERATIONS);
+                }
+            });
+            long byId = run(threads, new Runnable() {
+                @Override
+                public void run() {
+                    runById(context, ids, ITERATIONS);
+                }
+            });
+            long mergeStart = System.nanoTime();
+            context.mergeRecorders();
+            long merge = System.nanoTime() - mergeStart;
+            System.out.println(String.format("threads: %d, by name: %6d ns/call, by id: %6d ns/call, merge: %6d us",
+                    threads, byName / (ITERATIONS * 3L), byId / (ITERATIONS * 3L), merge / 1000));
+        }
+        context.mergeRecorders();
+        long dropped = context.getDroppedSamples();
+        System.out.println("dropped samples: " + dropped);
+        context.shutDown();
+        if (dropped != 0) {
+            throw new AssertionError("Expected no dropped samples but was " + dropped);
+        }
+    }
+
+    static long run(int threads, Runnable task) throws InterruptedException {
+        Thread[] workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Thread(task, "MethodIdBenchmark-" + i);
+        }
+        long start = System.nanoTime();
+        for (Thread worker : workers) {
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return System.nanoTime() - start;
+    }
+
+    static void runByName(ApmAgentContext context, String[] names, int iterations) {
+        Thread thread = Thread.currentThread();
+        for (int i = 0; i < iterations; i++) {
+            String outer = names[i & 7];
+            String middle = names[8 + (i & 7)];
+            String inner = names[i & (METHODS - 1)];
+            context.enterMethod(thread, outer, false);
+            context.enterMethod(thread, middle, false);
+            context.enterMethod(thread, inner, false);
+            context.exitMethod(thread, inner, false);
+            context.exitMethod(thread, middle, false);
+            context.exitMethod(thread, outer, false);
+        }
+    }
+
+    static void runById(ApmAgentContext context, int[] ids, int iterations) {
+        for (int i = 0; i < iterations; i++) {
+            int outer = ids[i & 7];
+            int middle = ids[8 + (i & 7)];
+            int inner = ids[i & (METHODS - 1)];
+            context.enterMethod(outer);
+            context.enterMethod(middle);
+            context.enterMethod(inner);
+            context.exitMethod(inner);
+            context.exitMethod(middle);
+            context.exitMethod(outer);
+        }
+    }
+}
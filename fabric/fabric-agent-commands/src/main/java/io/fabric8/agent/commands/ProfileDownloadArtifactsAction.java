@@ -105,6 +105,9 @@ public class ProfileDownloadArtifactsAction extends AbstractAction {
 
         ProfileDownloader downloader = new ProfileDownloader(fabricService, target, force, executorService);
         downloader.setStopOnFailure(stopOnFailure);
+        if (threadPoolSize > 1) {
+            downloader.setMaxConcurrentDownloads(threadPoolSize);
+        }
         // we do not want to download the files from within the profile itself, only the dependencies
         downloader.setDownloadFilesFromProfile(false);
         if (verbose) {
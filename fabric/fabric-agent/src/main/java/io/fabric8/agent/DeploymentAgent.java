@@ -44,9 +44,12 @@ import java.util.concurrent.locks.ReentrantLock;
 import io.fabric8.agent.download.DownloadCallback;
 import io.fabric8.agent.download.DownloadManager;
 import io.fabric8.agent.download.DownloadManagers;
+import io.fabric8.agent.download.DownloadProgress;
 import io.fabric8.agent.download.Downloader;
 import io.fabric8.agent.download.StreamProvider;
 import io.fabric8.agent.internal.Macro;
+import io.fabric8.agent.region.ResolutionCache;
+import io.fabric8.agent.resolver.ResourceIndex;
 import io.fabric8.agent.service.Agent;
 import io.fabric8.agent.service.Constants;
 import io.fabric8.agent.service.FeatureConfigInstaller;
@@ -107,11 +110,14 @@ public class DeploymentAgent implements ManagedService {
     private static final String LIB_ENDORSED_PATH = LIB_PATH + File.separator + "endorsed";
 
     private static final String STATE_FILE = "state.json";
+    private static final String RESOLUTION_CACHE_DIR = "resolution-cache";
+    private static final String RESOURCE_INDEX_FILE = "resource-index.bin";
 
     private ServiceTracker<FabricService, FabricService> fabricService;
 
     private final ExecutorService executor;
     private final ScheduledExecutorService downloadExecutor;
+    private final ResourceIndex resourceIndex;
 
     private final BundleContext bundleContext;
     private final BundleContext systemBundleContext;
@@ -163,6 +169,7 @@ public class DeploymentAgent implements ManagedService {
         deploymentAgentId = String.format("fabric-agent-%s.%s", revision, agentCounter++);
         this.executor = Executors.newSingleThreadExecutor(new NamedThreadFactory(deploymentAgentId));
         this.downloadExecutor = createDownloadExecutor();
+        this.resourceIndex = new ResourceIndex(bundleContext.getDataFile(RESOURCE_INDEX_FILE));
 
         fabricService = new ServiceTracker<>(systemBundleContext, FabricService.class, new ServiceTrackerCustomizer<FabricService, FabricService>() {
             @Override
@@ -257,6 +264,7 @@ public class DeploymentAgent implements ManagedService {
             executor.shutdown();
         }
         downloadExecutor.shutdown();
+        resourceIndex.close();
         fabricService.close();
     }
 
@@ -422,11 +430,13 @@ public class DeploymentAgent implements ManagedService {
         addMavenProxies(properties, httpUrl, mavenRepoURIs);
         final MavenResolver resolver = MavenResolvers.createMavenResolver(properties, "org.ops4j.pax.url.mvn");
         final DownloadManager manager = DownloadManagers.createDownloadManager(resolver, getDownloadExecutor());
+        final DownloadProgress progress = new DownloadProgress();
         manager.addListener(new DownloadCallback() {
             @Override
             public void downloaded(StreamProvider provider) throws Exception {
+                progress.completed(provider.getFile());
                 int pending = manager.pending();
-                updateStatus(pending > 0 ? "downloading (" + pending + " pending)" : "downloading", null);
+                updateStatus(pending > 0 ? "downloading (" + progress.toString(pending) + ")" : "downloading", null);
             }
         });
 
@@ -735,6 +745,8 @@ public class DeploymentAgent implements ManagedService {
             }
         };
         agent.setDeploymentAgentId(deploymentAgentId);
+        agent.setResolutionCache(new ResolutionCache(bundleContext.getDataFile(RESOLUTION_CACHE_DIR)));
+        agent.setResourceIndex(resourceIndex);
         agent.provision(
                 getPrefixedProperties(properties, "repository."),
                 getPrefixedProperties(properties, "feature."),
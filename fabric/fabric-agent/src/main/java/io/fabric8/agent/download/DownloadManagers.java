@@ -23,6 +23,7 @@ import java.util.Set;
 import java.util.concurrent.ScheduledExecutorService;
 
 import io.fabric8.agent.download.impl.MavenDownloadManager;
+import io.fabric8.agent.download.impl.SharedDownloadCache;
 import io.fabric8.agent.utils.AgentUtils;
 import io.fabric8.api.Constants;
 import io.fabric8.api.FabricService;
@@ -58,10 +59,10 @@ public final class DownloadManagers {
     }
 
     /**
-     * Creates a DownloadManager
+     * Creates a DownloadManager which shares the artifacts it downloads with the other containers of the host
      */
     public static DownloadManager createDownloadManager(MavenResolver resolver, ScheduledExecutorService executorService) {
-        return new MavenDownloadManager(resolver, executorService);
+        return new MavenDownloadManager(resolver, executorService, SharedDownloadCache.getDefault());
     }
 
     /**
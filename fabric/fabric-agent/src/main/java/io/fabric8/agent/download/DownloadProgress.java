@@ -0,0 +1,118 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.agent.download;
+
+import java.io.File;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps track of the number of artifacts and bytes downloaded since it was created
+ * so that the throughput and the time left for the remaining downloads can be reported.
+ */
+public class DownloadProgress {
+
+    private final long startTime = System.nanoTime();
+    private final AtomicInteger completed = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private final AtomicLong bytes = new AtomicLong();
+
+    public void completed(File file) {
+        completed.incrementAndGet();
+        if (file != null) {
+            bytes.addAndGet(file.length());
+        }
+    }
+
+    public void failed() {
+        failed.incrementAndGet();
+    }
+
+    public int getCompleted() {
+        return completed.get();
+    }
+
+    public int getFailed() {
+        return failed.get();
+    }
+
+    public long getBytes() {
+        return bytes.get();
+    }
+
+    public long getElapsedTime() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+    }
+
+    /**
+     * Returns the number of bytes downloaded per second
+     */
+    public long getThroughput() {
+        long elapsed = getElapsedTime();
+        return elapsed > 0 ? bytes.get() * 1000 / elapsed : 0;
+    }
+
+    /**
+     * Returns the estimated time in milliseconds to download the given number of remaining artifacts
+     * based on the rate so far, or -1 if nothing has been downloaded yet
+     */
+    public long getEstimatedTimeRemaining(int remaining) {
+        int done = completed.get() + failed.get();
+        if (done == 0) {
+            return -1;
+        }
+        return getElapsedTime() * remaining / done;
+    }
+
+    /**
+     * Returns a short human readable summary, such as <code>12 pending, 1.2 MB/s, eta 35s</code>
+     */
+    public String toString(int remaining) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(remaining).append(" pending, ").append(formatBytes(getThroughput())).append("/s");
+        long eta = getEstimatedTimeRemaining(remaining);
+        if (eta >= 0) {
+            sb.append(", eta ").append(formatTime(eta));
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        return completed.get() + " downloaded, " + failed.get() + " failed, "
+                + formatBytes(bytes.get()) + " in " + formatTime(getElapsedTime())
+                + " (" + formatBytes(getThroughput()) + "/s)";
+    }
+
+    static String formatBytes(long bytes) {
+        if (bytes < 1024) {
+            return bytes + " B";
+        }
+        int unit = (63 - Long.numberOfLeadingZeros(bytes)) / 10;
+        return String.format(Locale.ENGLISH, "%.1f %sB", bytes / (double) (1L << (unit * 10)), "KMGTPE".charAt(unit - 1));
+    }
+
+    static String formatTime(long millis) {
+        long seconds = (millis + 999) / 1000;
+        if (seconds < 60) {
+            return seconds + "s";
+        }
+        return seconds / 60 + "m " + seconds % 60 + "s";
+    }
+
+}
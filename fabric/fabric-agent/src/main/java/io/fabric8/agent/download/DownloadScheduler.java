@@ -0,0 +1,282 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.agent.download;
+
+import java.io.File;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
+
+import static io.fabric8.agent.download.impl.DownloadManagerHelper.stripInlinedMavenRepositoryUrl;
+import static io.fabric8.agent.download.impl.DownloadManagerHelper.stripUrl;
+
+/**
+ * Schedules the download of a set of artifacts through a {@link DownloadManager}.
+ * <p/>
+ * Each location is only downloaded once however many times it is scheduled. Locations are queued per
+ * repository, so that no more than {@link #getMaxConcurrentDownloads()} downloads are in flight against
+ * the same repository, and handed to the download manager lowest priority first, so that scheduling
+ * bundles with their start level as the priority gets the bundles needed first downloaded first.
+ * Locations can be scheduled while earlier ones are still downloading.
+ */
+public class DownloadScheduler {
+
+    /**
+     * The priority of bundles which have no start level, which is the default bundle start level in karaf
+     */
+    public static final int DEFAULT_PRIORITY = 80;
+
+    public static final int DEFAULT_MAX_CONCURRENT_DOWNLOADS = 4;
+
+    private final Downloader downloader;
+    private final int maxConcurrentDownloads;
+    private final DownloadProgress progress = new DownloadProgress();
+    private final Map<String, Entry> entries = new HashMap<>();
+    private final Map<String, Repository> repositories = new HashMap<>();
+    private final Map<String, File> files = new HashMap<>();
+    private final Map<String, Exception> errors = new HashMap<>();
+    private final Queue<Entry> ready = new ArrayDeque<>();
+    private long sequence;
+    private int remaining;
+    private boolean dispatching;
+
+    public DownloadScheduler(DownloadManager manager) {
+        this(manager, DEFAULT_MAX_CONCURRENT_DOWNLOADS);
+    }
+
+    public DownloadScheduler(DownloadManager manager, int maxConcurrentDownloads) {
+        if (maxConcurrentDownloads < 1) {
+            throw new IllegalArgumentException("maxConcurrentDownloads must be at least 1");
+        }
+        this.downloader = manager.createDownloader();
+        this.maxConcurrentDownloads = maxConcurrentDownloads;
+    }
+
+    public int getMaxConcurrentDownloads() {
+        return maxConcurrentDownloads;
+    }
+
+    public DownloadProgress getProgress() {
+        return progress;
+    }
+
+    /**
+     * Returns the number of scheduled locations which are queued or being downloaded
+     */
+    public synchronized int getRemaining() {
+        return remaining;
+    }
+
+    /**
+     * Schedules the download of the given location. If the location has already been scheduled
+     * and is still queued, it is moved up the queue if the given priority is lower.
+     */
+    public void schedule(String location, int priority) {
+        synchronized (this) {
+            Entry entry = entries.get(location);
+            if (entry == null) {
+                entry = new Entry(location, priority, sequence++);
+                entries.put(location, entry);
+                getRepository(entry.repository).queue.add(entry);
+                remaining++;
+            } else if (priority < entry.priority && !entry.dispatched) {
+                Repository repository = getRepository(entry.repository);
+                repository.queue.remove(entry);
+                entry.priority = priority;
+                repository.queue.add(entry);
+            }
+            poll(repositories.get(entry.repository));
+        }
+        dispatch();
+    }
+
+    /**
+     * Waits until all the scheduled locations have been downloaded or have failed
+     */
+    public synchronized void await() throws InterruptedException {
+        while (remaining > 0) {
+            wait();
+        }
+    }
+
+    /**
+     * Returns the downloaded files keyed by location
+     */
+    public synchronized Map<String, File> getFiles() {
+        return Collections.unmodifiableMap(new HashMap<>(files));
+    }
+
+    /**
+     * Returns the exceptions of the failed downloads keyed by location
+     */
+    public synchronized Map<String, Exception> getErrors() {
+        return Collections.unmodifiableMap(new HashMap<>(errors));
+    }
+
+    @Override
+    public String toString() {
+        return progress.toString(getRemaining());
+    }
+
+    private Repository getRepository(String key) {
+        Repository repository = repositories.get(key);
+        if (repository == null) {
+            repository = new Repository();
+            repositories.put(key, repository);
+        }
+        return repository;
+    }
+
+    private void poll(Repository repository) {
+        while (repository.inFlight < maxConcurrentDownloads && !repository.queue.isEmpty()) {
+            Entry entry = repository.queue.poll();
+            entry.dispatched = true;
+            repository.inFlight++;
+            ready.add(entry);
+        }
+    }
+
+    /**
+     * Hands the ready entries to the downloader. Downloads which are already available complete
+     * synchronously, so the thread already dispatching picks up the entries they make ready
+     * rather than recursing.
+     */
+    private void dispatch() {
+        synchronized (this) {
+            if (dispatching) {
+                return;
+            }
+            dispatching = true;
+        }
+        boolean done = false;
+        try {
+            while (true) {
+                final Entry entry;
+                synchronized (this) {
+                    entry = ready.poll();
+                    if (entry == null) {
+                        dispatching = false;
+                        done = true;
+                        return;
+                    }
+                }
+                try {
+                    downloader.download(entry.location, new DownloadFailureCallback() {
+                        @Override
+                        public void downloaded(StreamProvider provider) throws Exception {
+                            File file = provider.getFile();
+                            progress.completed(file);
+                            done(entry, file, null);
+                        }
+
+                        @Override
+                        public void failed(String location, Exception cause) throws Exception {
+                            progress.failed();
+                            done(entry, null, cause);
+                        }
+                    });
+                } catch (Exception e) {
+                    progress.failed();
+                    done(entry, null, e);
+                }
+            }
+        } finally {
+            if (!done) {
+                synchronized (this) {
+                    dispatching = false;
+                }
+            }
+        }
+    }
+
+    private void done(Entry entry, File file, Exception cause) {
+        synchronized (this) {
+            if (file != null) {
+                files.put(entry.location, file);
+            } else {
+                errors.put(entry.location, cause);
+            }
+            Repository repository = repositories.get(entry.repository);
+            repository.inFlight--;
+            poll(repository);
+            if (--remaining == 0) {
+                notifyAll();
+            }
+        }
+        dispatch();
+    }
+
+    /**
+     * Returns the key of the repository the given location will be downloaded from. Maven locations
+     * which do not have an inlined repository all share the configured maven repositories.
+     */
+    static String getRepositoryKey(String location) {
+        String url = stripUrl(location);
+        String repository = stripInlinedMavenRepositoryUrl(url);
+        if (repository != null) {
+            return repository;
+        }
+        if (url.startsWith("mvn:")) {
+            return "mvn:";
+        }
+        try {
+            URI uri = new URI(url);
+            if (uri.getHost() != null) {
+                return uri.getScheme() + "://" + uri.getAuthority();
+            }
+            if (uri.getScheme() != null) {
+                return uri.getScheme() + ":";
+            }
+        } catch (URISyntaxException e) {
+            // ignore
+        }
+        return "";
+    }
+
+    private static class Repository {
+        private final PriorityQueue<Entry> queue = new PriorityQueue<>();
+        private int inFlight;
+    }
+
+    private static class Entry implements Comparable<Entry> {
+        private final String location;
+        private final String repository;
+        private final long sequence;
+        private int priority;
+        private boolean dispatched;
+
+        Entry(String location, int priority, long sequence) {
+            this.location = location;
+            this.repository = getRepositoryKey(location);
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(Entry o) {
+            if (priority != o.priority) {
+                return priority < o.priority ? -1 : 1;
+            }
+            return sequence < o.sequence ? -1 : sequence == o.sequence ? 0 : 1;
+        }
+    }
+
+}
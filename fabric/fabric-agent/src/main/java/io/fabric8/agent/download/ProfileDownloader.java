@@ -17,15 +17,17 @@ package io.fabric8.agent.download;
 
 import java.io.File;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ScheduledExecutorService;
 
+import io.fabric8.agent.model.BundleInfo;
 import io.fabric8.agent.model.Feature;
 import io.fabric8.agent.utils.AgentUtils;
 import io.fabric8.api.FabricService;
@@ -33,6 +35,7 @@ import io.fabric8.api.Profile;
 import io.fabric8.api.ProfileService;
 import io.fabric8.api.Version;
 import io.fabric8.common.util.Files;
+import io.fabric8.common.util.MultiException;
 import io.fabric8.maven.util.Parser;
 import io.fabric8.service.VersionPropertyPointerResolver;
 import org.slf4j.Logger;
@@ -51,6 +54,7 @@ public class ProfileDownloader {
     private final Set<File> processedFiles = new HashSet<File>();
     private boolean stopOnFailure;
     private boolean downloadFilesFromProfile = true;
+    private int maxConcurrentDownloads = DownloadScheduler.DEFAULT_MAX_CONCURRENT_DOWNLOADS;
     private ProfileDownloaderListener listener;
     private final Map<String,Exception> errors = new HashMap<String, Exception>();
 
@@ -85,8 +89,23 @@ public class ProfileDownloader {
         this.downloadFilesFromProfile = downloadFilesFromProfile;
     }
 
+    public int getMaxConcurrentDownloads() {
+        return maxConcurrentDownloads;
+    }
+
+    /**
+     * Sets the maximum number of artifacts downloaded at the same time from each repository
+     */
+    public void setMaxConcurrentDownloads(int maxConcurrentDownloads) {
+        this.maxConcurrentDownloads = maxConcurrentDownloads;
+    }
+
     /**
-     * Downloads the bundles, features and FABs for all the profiles in this version
+     * Downloads the bundles, features and FABs for all the profiles in this version.
+     * <p/>
+     * The artifacts of all the profiles are scheduled on a single {@link DownloadScheduler} so that
+     * artifacts shared by several profiles are only downloaded once, and are downloaded while the
+     * features of the following profiles are still being resolved.
      */
     public void downloadVersion(Version version) throws Exception {
         List<Profile> profiles = version.getProfiles();
@@ -94,22 +113,25 @@ public class ProfileDownloader {
         if (listener != null) {
             listener.beforeDownloadProfiles(prfarray);
         }
+        DownloadManager downloadManager = DownloadManagers.createDownloadManager(fabricService, executorService);
+        DownloadScheduler scheduler = new DownloadScheduler(downloadManager, maxConcurrentDownloads);
+        Map<Profile, Set<String>> locations = new LinkedHashMap<Profile, Set<String>>();
         for (Profile profile : profiles) {
             try {
-                downloadProfile(profile);
+                locations.put(profile, scheduleProfile(downloadManager, scheduler, profile));
             } catch (Exception e) {
-                if (listener != null) {
-                    listener.onError(profile, e);
-                }
-                if (!stopOnFailure) {
-                    String id = profile.getId();
-                    errors.put(id, e);
-                    LOG.error("Failed to download profile " + id + " due " + e.getMessage(), e);
-                } else {
-                    throw e;
-                }
+                onError(profile, e);
+            }
+        }
+        scheduler.await();
+        for (Map.Entry<Profile, Set<String>> entry : locations.entrySet()) {
+            try {
+                copyFiles(scheduler, entry.getKey(), entry.getValue());
+            } catch (Exception e) {
+                onError(entry.getKey(), e);
             }
         }
+        LOG.info("Downloaded the artifacts of version " + version.getId() + ": " + scheduler.getProgress());
         if (listener != null) {
             listener.afterDownloadProfiles(prfarray);
         }
@@ -119,6 +141,31 @@ public class ProfileDownloader {
      * Downloads the bundles, features and FABs for this profile.
      */
     public void downloadProfile(Profile profile) throws Exception {
+        DownloadManager downloadManager = DownloadManagers.createDownloadManager(fabricService, executorService);
+        DownloadScheduler scheduler = new DownloadScheduler(downloadManager, maxConcurrentDownloads);
+        Set<String> locations = scheduleProfile(downloadManager, scheduler, profile);
+        scheduler.await();
+        copyFiles(scheduler, profile, locations);
+    }
+
+    protected void onError(Profile profile, Exception e) throws Exception {
+        if (listener != null) {
+            listener.onError(profile, e);
+        }
+        if (!stopOnFailure) {
+            String id = profile.getId();
+            errors.put(id, e);
+            LOG.error("Failed to download profile " + id + " due " + e.getMessage(), e);
+        } else {
+            throw e;
+        }
+    }
+
+    /**
+     * Schedules the download of the bundles, features and FABs for this profile, with the bundles
+     * of the lowest start levels first, returning the scheduled locations
+     */
+    protected Set<String> scheduleProfile(DownloadManager downloadManager, DownloadScheduler scheduler, Profile profile) throws Exception {
         if (listener != null) {
             listener.beforeDownloadProfile(profile);
         }
@@ -128,21 +175,58 @@ public class ProfileDownloader {
             profile = profileService.getOverlayProfile(profile);
         }
 
-        DownloadManager downloadManager = DownloadManagers.createDownloadManager(fabricService, executorService);
-
         Set<String> bundles = new LinkedHashSet<String>();
         Set<Feature> features = new LinkedHashSet<Feature>();
         addMavenBundles(fabricService, profile, bundles, profile.getBundles());
         addMavenBundles(fabricService, profile, bundles, profile.getFabs());
         AgentUtils.addFeatures(features, fabricService, downloadManager, profile);
 
-        Map<String, File> files = AgentUtils.downloadBundles(downloadManager, features, bundles,
-                Collections.<String>emptySet(), !isDownloadFilesFromProfile());
-        Set<Map.Entry<String, File>> entries = files.entrySet();
-        for (Map.Entry<String, File> entry : entries) {
-            String name = entry.getKey();
-            File file = entry.getValue();
-            if (processedFiles.add(file)) {
+        Map<String, Integer> locations = new LinkedHashMap<String, Integer>();
+        for (Feature feature : features) {
+            for (BundleInfo bundle : feature.getBundles()) {
+                int startLevel = bundle.getStartLevel() > 0 ? bundle.getStartLevel() : DownloadScheduler.DEFAULT_PRIORITY;
+                Integer previous = locations.get(bundle.getLocation());
+                if (previous == null || startLevel < previous) {
+                    locations.put(bundle.getLocation(), startLevel);
+                }
+            }
+        }
+        for (String bundle : bundles) {
+            if (!locations.containsKey(bundle)) {
+                locations.put(bundle, DownloadScheduler.DEFAULT_PRIORITY);
+            }
+        }
+        if (!isDownloadFilesFromProfile()) {
+            for (Iterator<String> it = locations.keySet().iterator(); it.hasNext(); ) {
+                if (it.next().startsWith("profile:")) {
+                    it.remove();
+                }
+            }
+        }
+        for (Map.Entry<String, Integer> entry : locations.entrySet()) {
+            scheduler.schedule(entry.getKey(), entry.getValue());
+        }
+        return locations.keySet();
+    }
+
+    /**
+     * Copies the downloaded files of this profile to the target directory
+     */
+    protected void copyFiles(DownloadScheduler scheduler, Profile profile, Set<String> locations) throws Exception {
+        Map<String, File> files = scheduler.getFiles();
+        Map<String, Exception> failures = scheduler.getErrors();
+        MultiException exception = new MultiException("Error downloading artifacts of profile " + profile.getId());
+        for (String location : locations) {
+            Exception failure = failures.get(location);
+            if (failure != null) {
+                exception.addCause(failure);
+            }
+        }
+        exception.throwIfCauses();
+
+        for (String name : locations) {
+            File file = files.get(name);
+            if (file != null && processedFiles.add(file)) {
                 String fileName = file.getName();
                 String mvnCoords = getMavenCoords(name);
 
@@ -167,7 +251,6 @@ public class ProfileDownloader {
         }
     }
 
-
     /**
      * Returns the mvn coordinates URL from the URI string, stripping any prefix like "wrap:" or "war: " or whatnot; or return null if there is no maven URL inside the URI
      */
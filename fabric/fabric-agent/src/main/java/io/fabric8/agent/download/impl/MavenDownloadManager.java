@@ -26,6 +26,7 @@ import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ScheduledExecutorService;
 
 import io.fabric8.agent.download.DownloadCallback;
+import io.fabric8.agent.download.DownloadFailureCallback;
 import io.fabric8.agent.download.DownloadManager;
 import io.fabric8.agent.download.Downloader;
 import io.fabric8.agent.download.StreamProvider;
@@ -40,6 +41,8 @@ public class MavenDownloadManager implements DownloadManager {
 
     private final ScheduledExecutorService executorService;
 
+    private final SharedDownloadCache cache;
+
     private File tmpPath;
 
     private final Map<String, AbstractDownloadTask> downloaded = new HashMap<>();
@@ -53,8 +56,13 @@ public class MavenDownloadManager implements DownloadManager {
     private volatile int allPending = 0;
 
     public MavenDownloadManager(MavenResolver mavenResolver, ScheduledExecutorService executorService) {
+        this(mavenResolver, executorService, null);
+    }
+
+    public MavenDownloadManager(MavenResolver mavenResolver, ScheduledExecutorService executorService, SharedDownloadCache cache) {
         this.mavenResolver = mavenResolver;
         this.executorService = executorService;
+        this.cache = cache;
 
         String karafRoot = System.getProperty("karaf.home", "karaf");
         String karafData = System.getProperty("karaf.data", karafRoot + "/data");
@@ -137,8 +145,10 @@ public class MavenDownloadManager implements DownloadManager {
             task.addListener(new FutureListener<AbstractDownloadTask>() {
                 @Override
                 public void operationComplete(AbstractDownloadTask future) {
+                    boolean fetched = false;
                     try {
                         downloadTask.getFile();
+                        fetched = true;
                         if (downloadCallback != null) {
                             downloadCallback.downloaded(downloadTask);
                         }
@@ -147,6 +157,13 @@ public class MavenDownloadManager implements DownloadManager {
                         }
                     } catch (Exception e) {
                         exception.addCause(e);
+                        if (!fetched && downloadCallback instanceof DownloadFailureCallback) {
+                            try {
+                                ((DownloadFailureCallback) downloadCallback).failed(location, e);
+                            } catch (Exception e2) {
+                                exception.addCause(e2);
+                            }
+                        }
                     } finally {
                         synchronized (lock) {
                             downloading.remove(location);
@@ -167,7 +184,7 @@ public class MavenDownloadManager implements DownloadManager {
                 if (!mvnUrl.equals(url)) {
                     return new ChainedDownloadTask(executorService, url, mvnUrl);
                 } else {
-                    return new MavenDownloadTask(executorService, mavenResolver, mvnUrl);
+                    return new MavenDownloadTask(executorService, mavenResolver, mvnUrl, cache);
                 }
             } else {
                 return new SimpleDownloadTask(executorService, url, tmpPath);
@@ -16,6 +16,7 @@
 package io.fabric8.agent.download.impl;
 
 import java.io.File;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ScheduledExecutorService;
 
 import io.fabric8.maven.MavenResolver;
@@ -23,13 +24,27 @@ import io.fabric8.maven.MavenResolver;
 public class MavenDownloadTask extends AbstractRetryableDownloadTask {
 
     private final MavenResolver resolver;
+    private final SharedDownloadCache cache;
 
     public MavenDownloadTask(ScheduledExecutorService executor, MavenResolver resolver, String url) {
+        this(executor, resolver, url, null);
+    }
+
+    public MavenDownloadTask(ScheduledExecutorService executor, MavenResolver resolver, String url, SharedDownloadCache cache) {
         super(executor, url);
         this.resolver = resolver;
+        this.cache = cache;
     }
 
     protected File download() throws Exception {
+        if (cache != null) {
+            return cache.download(url, new Callable<File>() {
+                @Override
+                public File call() throws Exception {
+                    return resolver.download(url);
+                }
+            });
+        }
         return resolver.download(url);
     }
 
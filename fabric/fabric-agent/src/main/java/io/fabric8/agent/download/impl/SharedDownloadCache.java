@@ -0,0 +1,296 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.agent.download.impl;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.fabric8.api.Constants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A content addressed store of downloaded artifacts shared by the containers of a host, so that a host running
+ * many child containers downloads and stores each artifact only once.
+ * <p/>
+ * The shared directory contains:
+ * <ul>
+ *     <li><code>content/xx/&lt;sha-256&gt;</code>: the artifacts, stored once per content and read only</li>
+ *     <li><code>index/&lt;sha-1 of location&gt;</code>: the digest and file name of the content of a location</li>
+ *     <li><code>locks/&lt;sha-1 of location&gt;</code>: locked while a process downloads the location</li>
+ * </ul>
+ * Artifacts are materialized in a directory of the container by hard links, or copies when the file system
+ * does not support them. Concurrent downloads of the same location are coalesced: within a JVM the first
+ * caller downloads while the others wait for its result, and across processes the file lock makes the others
+ * wait and then find the artifact in the index.
+ * <p/>
+ * Only released maven artifacts are cached, as the content of a snapshot or of another url may change.
+ */
+public class SharedDownloadCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SharedDownloadCache.class);
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String DEFAULT_DIRECTORY = "download-cache";
+    private static final String LOCAL_DIRECTORY = "downloads";
+
+    private static final ConcurrentMap<File, SharedDownloadCache> CACHES = new ConcurrentHashMap<>();
+
+    private final File directory;
+    private final File localDirectory;
+    private final ConcurrentMap<String, FutureTask<File>> inflight = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    public SharedDownloadCache(File directory, File localDirectory) {
+        this.directory = directory;
+        this.localDirectory = localDirectory;
+    }
+
+    /**
+     * Returns the cache of this container, which is located by the {@link Constants#DOWNLOAD_CACHE_PROPERTY}
+     * system property or in the karaf data directory, or null if the cache is disabled
+     */
+    public static SharedDownloadCache getDefault() {
+        String karafRoot = System.getProperty("karaf.home", "karaf");
+        String karafData = System.getProperty("karaf.data", karafRoot + "/data");
+        String path = System.getProperty(Constants.DOWNLOAD_CACHE_PROPERTY, new File(karafData, DEFAULT_DIRECTORY).getPath());
+        if (path.trim().isEmpty()) {
+            return null;
+        }
+        File directory = new File(path).getAbsoluteFile();
+        SharedDownloadCache cache = CACHES.get(directory);
+        if (cache == null) {
+            SharedDownloadCache newCache = new SharedDownloadCache(directory, new File(karafData, LOCAL_DIRECTORY).getAbsoluteFile());
+            cache = CACHES.putIfAbsent(directory, newCache);
+            if (cache == null) {
+                cache = newCache;
+            }
+        }
+        return cache;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getCoalesced() {
+        return coalesced.get();
+    }
+
+    /**
+     * Returns the file for the given location, from the cache if it has already been downloaded on this host
+     * or using the given downloader, whose result is then added to the cache
+     */
+    public File download(final String location, final Callable<File> downloader) throws Exception {
+        if (!isCacheable(location)) {
+            return downloader.call();
+        }
+        final String key = digest("SHA-1", location.getBytes(UTF_8));
+        File file = materialize(key);
+        if (file != null) {
+            hits.incrementAndGet();
+            return file;
+        }
+        FutureTask<File> task = new FutureTask<>(new Callable<File>() {
+            @Override
+            public File call() throws Exception {
+                return fetch(key, location, downloader);
+            }
+        });
+        FutureTask<File> existing = inflight.putIfAbsent(key, task);
+        if (existing == null) {
+            try {
+                task.run();
+            } finally {
+                inflight.remove(key, task);
+            }
+            existing = task;
+        } else {
+            coalesced.incrementAndGet();
+        }
+        try {
+            return existing.get();
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        }
+    }
+
+    protected boolean isCacheable(String location) {
+        return location.startsWith("mvn:") && !location.contains("SNAPSHOT");
+    }
+
+    private File fetch(String key, String location, Callable<File> downloader) throws Exception {
+        File lockFile = new File(directory, "locks/" + key);
+        if (!lockFile.getParentFile().isDirectory() && !lockFile.getParentFile().mkdirs()) {
+            LOGGER.warn("Unable to create download cache directory " + lockFile.getParentFile());
+            return downloader.call();
+        }
+        try (
+                RandomAccessFile raf = new RandomAccessFile(lockFile, "rw");
+                FileLock lock = raf.getChannel().lock()
+        ) {
+            // another container may have downloaded it while we were waiting for the lock
+            File file = materialize(key);
+            if (file != null) {
+                hits.incrementAndGet();
+                return file;
+            }
+            misses.incrementAndGet();
+            File downloaded = downloader.call();
+            try {
+                store(key, downloaded);
+                file = materialize(key);
+            } catch (IOException e) {
+                LOGGER.warn("Unable to add " + location + " to the download cache: " + e);
+            }
+            return file != null ? file : downloaded;
+        } catch (OverlappingFileLockException e) {
+            // the lock is held by another copy of this class in the same jvm
+            return downloader.call();
+        }
+    }
+
+    private void store(String key, File file) throws IOException {
+        String digest = digest(file);
+        File content = getContentFile(digest);
+        if (!content.isFile()) {
+            File tmp = createTempFile(content);
+            Files.copy(file.toPath(), tmp.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            tmp.setWritable(false, false);
+            move(tmp, content);
+        }
+        File index = new File(directory, "index/" + key);
+        File tmp = createTempFile(index);
+        Files.write(tmp.toPath(), (digest + "\n" + file.getName() + "\n").getBytes(UTF_8));
+        move(tmp, index);
+    }
+
+    /**
+     * Returns the file of the given location in the local directory, linking it from the cache if needed,
+     * or null if the location is not cached
+     */
+    private File materialize(String key) throws IOException {
+        File index = new File(directory, "index/" + key);
+        if (!index.isFile()) {
+            return null;
+        }
+        List<String> lines = Files.readAllLines(index.toPath(), UTF_8);
+        if (lines.size() < 2) {
+            return null;
+        }
+        File content = getContentFile(lines.get(0));
+        if (!content.isFile()) {
+            return null;
+        }
+        File target = new File(localDirectory, lines.get(0) + "/" + lines.get(1));
+        if (target.isFile()) {
+            return target;
+        }
+        File tmp = createTempFile(target);
+        try {
+            Files.createLink(tmp.toPath(), content.toPath());
+        } catch (IOException | UnsupportedOperationException e) {
+            LOGGER.debug("Unable to link {}, copying it instead: {}", content, e.toString());
+            Files.copy(content.toPath(), tmp.toPath());
+        }
+        move(tmp, target);
+        return target;
+    }
+
+    private File getContentFile(String digest) {
+        return new File(directory, "content/" + digest.substring(0, 2) + "/" + digest);
+    }
+
+    private static File createTempFile(File file) throws IOException {
+        File dir = file.getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory()) {
+            throw new IOException("Unable to create directory " + dir);
+        }
+        return new File(dir, file.getName() + "." + UUID.randomUUID() + ".tmp");
+    }
+
+    private static void move(File source, File target) throws IOException {
+        try {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            if (target.isFile()) {
+                // someone else was faster
+                source.delete();
+            } else {
+                throw e;
+            }
+        }
+    }
+
+    private static String digest(File file) throws IOException {
+        try (InputStream is = new BufferedInputStream(new FileInputStream(file))) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = is.read(buffer)) > 0) {
+                digest.update(buffer, 0, read);
+            }
+            return toHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private static String digest(String algorithm, byte[] data) {
+        try {
+            return toHex(MessageDigest.getInstance(algorithm).digest(data));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(String.format("%02x", b & 0xff));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,328 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.agent.region;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.osgi.framework.wiring.BundleRevision;
+import org.osgi.resource.Capability;
+import org.osgi.resource.Requirement;
+import org.osgi.resource.Resource;
+import org.osgi.resource.Wire;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Persists the wiring computed by the resolver so that a deployment whose inputs have not changed since an
+ * earlier one, such as after a container restart or a profile refresh which does not change the features,
+ * can reuse it rather than running the resolver again.
+ * <p/>
+ * Entries are keyed by a digest of the requirements, overrides and feature resolution range together with the
+ * capabilities, requirements and sharing policies of every candidate resource, which covers the feature
+ * repositories, the downloaded bundle metadata and the unmanaged bundles. Wires are stored as positions in the
+ * list of candidates and in their capabilities and requirements, so a wiring which involves a resource that is
+ * not a candidate (e.g. one found in the global repository) is not cached.
+ */
+public class ResolutionCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ResolutionCache.class);
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int FORMAT_VERSION = 1;
+    private static final String SUFFIX = ".wiring";
+
+    public static final int DEFAULT_MAX_ENTRIES = 8;
+
+    private final File directory;
+    private final int maxEntries;
+
+    public ResolutionCache(File directory) {
+        this(directory, DEFAULT_MAX_ENTRIES);
+    }
+
+    public ResolutionCache(File directory, int maxEntries) {
+        this.directory = directory;
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Computes the key of the resolution of the given candidates
+     */
+    public static String computeKey(Map<String, Set<String>> requirements,
+                                    Set<String> overrides,
+                                    String featureResolutionRange,
+                                    List<Resource> candidates) throws Exception {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        update(digest, "requirements", sorted(requirements));
+        update(digest, "overrides", overrides != null ? new TreeSet<>(overrides).toString() : "");
+        update(digest, "range", String.valueOf(featureResolutionRange));
+        for (Resource resource : candidates) {
+            if (resource instanceof BundleRevision) {
+                BundleRevision revision = (BundleRevision) resource;
+                update(digest, "revision", revision.getBundle().getBundleId() + "@" + revision.getBundle().getLastModified());
+            } else {
+                update(digest, "resource", resource.getClass().getName());
+            }
+            if (resource instanceof Subsystem) {
+                Subsystem subsystem = (Subsystem) resource;
+                update(digest, "import", sorted(subsystem.getImportPolicy()));
+                update(digest, "export", sorted(subsystem.getExportPolicy()));
+            }
+            for (Capability cap : resource.getCapabilities(null)) {
+                update(digest, "cap", cap.getNamespace() + new TreeMap<>(cap.getDirectives()) + new TreeMap<>(cap.getAttributes()));
+            }
+            for (Requirement req : resource.getRequirements(null)) {
+                update(digest, "req", req.getNamespace() + new TreeMap<>(req.getDirectives()) + new TreeMap<>(req.getAttributes()));
+            }
+        }
+        StringBuilder sb = new StringBuilder();
+        for (byte b : digest.digest()) {
+            sb.append(String.format("%02x", b & 0xff));
+        }
+        return sb.toString();
+    }
+
+    private static String sorted(Map<String, Set<String>> map) {
+        Map<String, Set<String>> sorted = new TreeMap<>();
+        for (Map.Entry<String, Set<String>> entry : map.entrySet()) {
+            sorted.put(entry.getKey(), new TreeSet<>(entry.getValue()));
+        }
+        return sorted.toString();
+    }
+
+    private static void update(MessageDigest digest, String tag, String value) {
+        digest.update(tag.getBytes(UTF_8));
+        digest.update((byte) 0);
+        digest.update(value.getBytes(UTF_8));
+        digest.update((byte) 0);
+    }
+
+    /**
+     * Returns the cached wiring of the candidates for the given key or null if there is none.
+     * The returned wiring is a new mutable map which the caller may modify.
+     */
+    public Map<Resource, List<Wire>> load(String key, List<Resource> candidates) {
+        File file = new File(directory, key + SUFFIX);
+        if (!file.isFile()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != FORMAT_VERSION || in.readInt() != candidates.size()) {
+                return null;
+            }
+            int count = in.readInt();
+            Map<Resource, List<Wire>> wiring = new HashMap<>(count * 2);
+            for (int i = 0; i < count; i++) {
+                Resource resource = candidates.get(in.readInt());
+                int wireCount = in.readInt();
+                List<Wire> wires = new ArrayList<>(wireCount);
+                for (int j = 0; j < wireCount; j++) {
+                    Resource requirer = candidates.get(in.readInt());
+                    Requirement requirement = requirer.getRequirements(null).get(in.readInt());
+                    Resource provider = candidates.get(in.readInt());
+                    Capability capability = provider.getCapabilities(null).get(in.readInt());
+                    wires.add(new CachedWire(requirer, requirement, provider, capability));
+                }
+                wiring.put(resource, wires);
+            }
+            // mark the entry as recently used
+            file.setLastModified(System.currentTimeMillis());
+            return wiring;
+        } catch (IOException | IndexOutOfBoundsException e) {
+            LOGGER.warn("Ignoring unreadable resolution cache entry " + file + ": " + e);
+            file.delete();
+            return null;
+        }
+    }
+
+    /**
+     * Stores the wiring of the candidates under the given key, unless it involves resources or capabilities
+     * which can not be found again from the candidates.
+     */
+    public void save(String key, List<Resource> candidates, Map<Resource, List<Wire>> wiring) {
+        Map<Resource, Integer> indexes = new IdentityHashMap<>();
+        for (int i = 0; i < candidates.size(); i++) {
+            indexes.put(candidates.get(i), i);
+        }
+        List<int[]> entries = new ArrayList<>();
+        for (Map.Entry<Resource, List<Wire>> entry : wiring.entrySet()) {
+            Integer resource = indexes.get(entry.getKey());
+            if (resource == null) {
+                LOGGER.debug("Not caching the resolution as it involves {} which is not a candidate", entry.getKey());
+                return;
+            }
+            int[] values = new int[2 + entry.getValue().size() * 4];
+            values[0] = resource;
+            values[1] = entry.getValue().size();
+            int pos = 2;
+            for (Wire wire : entry.getValue()) {
+                Integer requirer = indexes.get(wire.getRequirer());
+                Integer provider = indexes.get(wire.getProvider());
+                int requirement = requirer != null ? indexOf(wire.getRequirer().getRequirements(null), wire.getRequirement()) : -1;
+                int capability = provider != null ? indexOf(wire.getProvider().getCapabilities(null), wire.getCapability()) : -1;
+                if (requirement < 0 || capability < 0) {
+                    LOGGER.debug("Not caching the resolution as {} can not be found again from the candidates", wire);
+                    return;
+                }
+                values[pos++] = requirer;
+                values[pos++] = requirement;
+                values[pos++] = provider;
+                values[pos++] = capability;
+            }
+            entries.add(values);
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            LOGGER.warn("Unable to create resolution cache directory " + directory);
+            return;
+        }
+        File file = new File(directory, key + SUFFIX);
+        File tmp = new File(directory, key + SUFFIX + ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+                out.writeInt(FORMAT_VERSION);
+                out.writeInt(candidates.size());
+                out.writeInt(entries.size());
+                for (int[] values : entries) {
+                    out.writeInt(values[0]);
+                    out.writeInt(values[1]);
+                    for (int i = 2; i < values.length; i++) {
+                        out.writeInt(values[i]);
+                    }
+                }
+            }
+            if (!tmp.renameTo(file)) {
+                file.delete();
+                if (!tmp.renameTo(file)) {
+                    throw new IOException("Unable to rename " + tmp + " to " + file);
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Unable to write resolution cache entry " + file + ": " + e);
+            tmp.delete();
+            return;
+        }
+        prune();
+    }
+
+    /**
+     * Removes all the cached resolutions
+     */
+    public void clear() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.getName().endsWith(SUFFIX)) {
+                    file.delete();
+                }
+            }
+        }
+    }
+
+    private void prune() {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        List<File> entries = new ArrayList<>();
+        for (File file : files) {
+            if (file.getName().endsWith(SUFFIX)) {
+                entries.add(file);
+            }
+        }
+        if (entries.size() > maxEntries) {
+            File[] sorted = entries.toArray(new File[entries.size()]);
+            Arrays.sort(sorted, new Comparator<File>() {
+                @Override
+                public int compare(File f1, File f2) {
+                    return Long.compare(f2.lastModified(), f1.lastModified());
+                }
+            });
+            for (int i = maxEntries; i < sorted.length; i++) {
+                sorted[i].delete();
+            }
+        }
+    }
+
+    private static <T> int indexOf(Collection<T> list, T value) {
+        int index = 0;
+        for (T t : list) {
+            if (t == value) {
+                return index;
+            }
+            index++;
+        }
+        return -1;
+    }
+
+    private static class CachedWire implements Wire {
+        private final Resource requirer;
+        private final Requirement requirement;
+        private final Resource provider;
+        private final Capability capability;
+
+        CachedWire(Resource requirer, Requirement requirement, Resource provider, Capability capability) {
+            this.requirer = requirer;
+            this.requirement = requirement;
+            this.provider = provider;
+            this.capability = capability;
+        }
+
+        @Override
+        public Capability getCapability() {
+            return capability;
+        }
+
+        @Override
+        public Requirement getRequirement() {
+            return requirement;
+        }
+
+        @Override
+        public Resource getProvider() {
+            return provider;
+        }
+
+        @Override
+        public Resource getRequirer() {
+            return requirer;
+        }
+
+        @Override
+        public String toString() {
+            return requirement + " -> " + capability;
+        }
+    }
+}
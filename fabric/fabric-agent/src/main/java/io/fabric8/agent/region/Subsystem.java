@@ -23,7 +23,11 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import io.fabric8.agent.download.DownloadCallback;
 import io.fabric8.agent.download.DownloadManager;
@@ -353,6 +357,7 @@ public class Subsystem extends ResourceImpl {
             downloader.download(loc, callback);
         }
         downloader.await();
+        callback.await();
         Overrides.override(bundles, overrides);
         if (feature != null) {
             // Add conditionals
@@ -412,16 +417,35 @@ public class Subsystem extends ResourceImpl {
     class ResourceBuilderCallback implements DownloadCallback {
         final Map<String, ResourceImpl> bundles;
         final MetadataBuilder builder;
+        final Collection<Future<Void>> futures = new ConcurrentLinkedQueue<>();
         ResourceBuilderCallback(Map<String, ResourceImpl> bundles, MetadataBuilder builder) {
             this.bundles = bundles;
             this.builder = builder;
         }
         @Override
-        public void downloaded(StreamProvider provider) throws Exception {
-            String loc = provider.getUrl();
-            Map<String, String> headers = builder.getMetadata(provider.getUrl(), provider.getFile());
-            ResourceImpl res = createResource(loc, headers);
-            bundles.put(loc, res);
+        public void downloaded(final StreamProvider provider) throws Exception {
+            // build the resources on the metadata builder threads so that bundles
+            // which are already downloaded are not parsed one after the other
+            futures.add(builder.parse(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    String loc = provider.getUrl();
+                    Map<String, String> headers = builder.getMetadata(provider.getUrl(), provider.getFile());
+                    ResourceImpl res = createResource(builder, loc, headers);
+                    bundles.put(loc, res);
+                    return null;
+                }
+            }));
+        }
+        void await() throws Exception {
+            for (Future<Void> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    throw cause instanceof Exception ? (Exception) cause : e;
+                }
+            }
         }
     }
 
@@ -485,9 +509,9 @@ public class Subsystem extends ResourceImpl {
         return policy;
     }
 
-    ResourceImpl createResource(String uri, Map<String, String> headers) throws Exception {
+    ResourceImpl createResource(MetadataBuilder builder, String uri, Map<String, String> headers) throws Exception {
         try {
-            return ResourceBuilder.build(uri, headers);
+            return builder.build(uri, headers);
         } catch (BundleException e) {
             throw new Exception("Unable to create resource for bundle " + uri, e);
         }
@@ -15,9 +15,11 @@
  */
 package io.fabric8.agent.region;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -73,6 +75,8 @@ public class SubsystemResolver {
     private RegionDigraph digraph;
     private Subsystem root;
     private Map<Resource, List<Wire>> wiring;
+    private Map<String, Set<String>> requirements;
+    private ResolutionCache resolutionCache;
 
     // Cached computed results
     private ResourceImpl environmentResource;
@@ -88,11 +92,16 @@ public class SubsystemResolver {
         this.manager = manager;
     }
 
+    public void setResolutionCache(ResolutionCache resolutionCache) {
+        this.resolutionCache = resolutionCache;
+    }
+
     public void prepare(
             Collection<Feature> allFeatures,
             Map<String, Set<String>> requirements,
             Map<String, Set<BundleRevision>> system
     ) throws Exception {
+        this.requirements = requirements;
         // Build subsystems on the fly
         for (Map.Entry<String, Set<String>> entry : requirements.entrySet()) {
             String[] parts = entry.getKey().split("/");
@@ -185,10 +194,25 @@ public class SubsystemResolver {
         digraph = new StandardRegionDigraph(null, null);
         populateDigraph(digraph, root);
 
-        Resolver resolver = new ResolverImpl(new Slf4jResolverLog(LOGGER));
-        Downloader downloader = manager.createDownloader();
-        wiring = resolver.resolve(new SubsystemResolveContext(root, digraph, globalRepository, downloader));
-        downloader.await();
+        List<Resource> candidates = null;
+        String key = null;
+        if (resolutionCache != null) {
+            candidates = getCandidates();
+            key = ResolutionCache.computeKey(requirements, overrides, featureResolutionRange, candidates);
+            wiring = resolutionCache.load(key, candidates);
+            if (wiring != null) {
+                LOGGER.debug("Using the cached resolution {}", key);
+            }
+        }
+        if (wiring == null) {
+            Resolver resolver = new ResolverImpl(new Slf4jResolverLog(LOGGER));
+            Downloader downloader = manager.createDownloader();
+            wiring = resolver.resolve(new SubsystemResolveContext(root, digraph, globalRepository, downloader));
+            downloader.await();
+            if (resolutionCache != null) {
+                resolutionCache.save(key, candidates, wiring);
+            }
+        }
 
         // Remove wiring to the fake environment resource
         if (environmentResource != null) {
@@ -208,6 +232,30 @@ public class SubsystemResolver {
         return wiring;
     }
 
+    /**
+     * Returns the resources the resolver can choose from, in the order the subsystems are visited
+     */
+    private List<Resource> getCandidates() {
+        Set<Resource> candidates = Collections.newSetFromMap(new IdentityHashMap<Resource, Boolean>());
+        List<Resource> answer = new ArrayList<>();
+        addCandidates(root, candidates, answer);
+        return answer;
+    }
+
+    private void addCandidates(Subsystem subsystem, Set<Resource> candidates, List<Resource> answer) {
+        if (candidates.add(subsystem)) {
+            answer.add(subsystem);
+        }
+        for (Resource resource : subsystem.getInstallable()) {
+            if (candidates.add(resource)) {
+                answer.add(resource);
+            }
+        }
+        for (Subsystem child : subsystem.getChildren()) {
+            addCandidates(child, candidates, answer);
+        }
+    }
+
     public Map<String, Map<String, BundleInfo>> getBundleInfos() {
         if (bundleInfos == null) {
             bundleInfos = new HashMap<>();
@@ -18,6 +18,7 @@ package io.fabric8.agent.repository;
 import java.util.Map;
 
 import io.fabric8.agent.resolver.ResourceBuilder;
+import io.fabric8.agent.resolver.ResourceIndex;
 import org.osgi.resource.Resource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -29,10 +30,16 @@ public class MetadataRepository extends BaseRepository {
     private static final Logger LOGGER = LoggerFactory.getLogger(MetadataRepository.class);
 
     public MetadataRepository(MetadataProvider provider) {
+        this(provider, null);
+    }
+
+    public MetadataRepository(MetadataProvider provider, ResourceIndex index) {
         Map<String, Map<String, String>> metadatas = provider.getMetadatas();
         for (Map.Entry<String, Map<String, String>> metadata : metadatas.entrySet()) {
             try {
-                Resource resource = ResourceBuilder.build(metadata.getKey(), metadata.getValue());
+                Resource resource = index != null
+                        ? index.build(metadata.getKey(), metadata.getValue())
+                        : ResourceBuilder.build(metadata.getKey(), metadata.getValue());
                 addResource(resource);
             } catch (Exception e) {
                 LOGGER.info("Unable to build resource for " + metadata.getKey(), e);
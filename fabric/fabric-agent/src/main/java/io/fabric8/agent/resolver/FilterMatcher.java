@@ -0,0 +1,412 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.agent.resolver;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.osgi.framework.Version;
+
+/**
+ * The compiled form of a {@link SimpleFilter}, as returned by {@link SimpleFilter#getMatcher()}.
+ * <p/>
+ * Compiling a filter resolves its structure once rather than on every evaluation: the operands of the
+ * comparisons are converted to the type of the attribute they are compared with only once per type (so
+ * versions are parsed once rather than for each capability), and the bounds on a version attribute which
+ * make up a version range are evaluated together against the attribute.
+ * <p/>
+ * The results are the same as the interpretation of the filter by {@link CapabilitySet} used to give.
+ */
+public abstract class FilterMatcher {
+
+    private static final Class<?>[] STRING_CLASS = new Class[] { String.class };
+    private static final Object COERCION_FAILED = new Object();
+
+    private static final FilterMatcher MATCH_ALL = new FilterMatcher() {
+        @Override
+        public boolean matches(Map<String, Object> attrs) {
+            return true;
+        }
+    };
+
+    private static final FilterMatcher MATCH_NONE = new FilterMatcher() {
+        @Override
+        public boolean matches(Map<String, Object> attrs) {
+            return false;
+        }
+    };
+
+    /**
+     * Returns true if the given capability attributes match the filter
+     */
+    public abstract boolean matches(Map<String, Object> attrs);
+
+    @SuppressWarnings("unchecked")
+    public static FilterMatcher compile(SimpleFilter sf) {
+        switch (sf.getOperation()) {
+            case SimpleFilter.MATCH_ALL:
+                return MATCH_ALL;
+            case SimpleFilter.AND:
+                return compileAnd((List<SimpleFilter>) sf.getValue());
+            case SimpleFilter.OR:
+                List<SimpleFilter> sfs = (List<SimpleFilter>) sf.getValue();
+                if (sfs.isEmpty()) {
+                    return MATCH_NONE;
+                }
+                return sfs.size() == 1 ? compile(sfs.get(0)) : new Or(compile(sfs));
+            case SimpleFilter.NOT:
+                // only the last operand of a not is taken into account
+                sfs = (List<SimpleFilter>) sf.getValue();
+                return sfs.isEmpty() ? MATCH_ALL : new Not(compile(sfs.get(sfs.size() - 1)));
+            default:
+                return new Comparison(sf.getName(), sf.getOperation(), sf.getValue());
+        }
+    }
+
+    private static FilterMatcher[] compile(List<SimpleFilter> sfs) {
+        FilterMatcher[] matchers = new FilterMatcher[sfs.size()];
+        for (int i = 0; i < matchers.length; i++) {
+            matchers[i] = compile(sfs.get(i));
+        }
+        return matchers;
+    }
+
+    private static FilterMatcher compileAnd(List<SimpleFilter> sfs) {
+        List<FilterMatcher> matchers = new ArrayList<>();
+        Map<String, List<SimpleFilter>> bounds = new LinkedHashMap<>();
+        for (SimpleFilter sf : sfs) {
+            String name = getVersionBoundName(sf);
+            if (name != null) {
+                List<SimpleFilter> list = bounds.get(name);
+                if (list == null) {
+                    list = new ArrayList<>();
+                    bounds.put(name, list);
+                }
+                list.add(sf);
+            } else {
+                matchers.add(compile(sf));
+            }
+        }
+        for (Map.Entry<String, List<SimpleFilter>> entry : bounds.entrySet()) {
+            matchers.add(new VersionBounds(entry.getKey(), entry.getValue()));
+        }
+        if (matchers.isEmpty()) {
+            return MATCH_ALL;
+        }
+        return matchers.size() == 1 ? matchers.get(0) : new And(matchers.toArray(new FilterMatcher[matchers.size()]));
+    }
+
+    /**
+     * Returns the attribute name if the given filter is a lower or upper bound on a version,
+     * such as the ones created by {@link SimpleFilter#convert(Map)} for a version range
+     */
+    @SuppressWarnings("unchecked")
+    private static String getVersionBoundName(SimpleFilter sf) {
+        if (sf.getOperation() == SimpleFilter.NOT) {
+            List<SimpleFilter> sfs = (List<SimpleFilter>) sf.getValue();
+            return sfs.size() == 1 && sfs.get(0).getOperation() != SimpleFilter.NOT ? getVersionBoundName(sfs.get(0)) : null;
+        }
+        if ((sf.getOperation() == SimpleFilter.GTE || sf.getOperation() == SimpleFilter.LTE)
+                && sf.getName() != null && isVersionLike(sf.getValue())
+                && toVersion((String) sf.getValue()) != null) {
+            return sf.getName();
+        }
+        return null;
+    }
+
+    private static Version toVersion(String value) {
+        Object version = coerce(Version.emptyVersion, value);
+        return version instanceof Version ? (Version) version : null;
+    }
+
+    private static final class And extends FilterMatcher {
+        private final FilterMatcher[] matchers;
+
+        And(FilterMatcher[] matchers) {
+            this.matchers = matchers;
+        }
+
+        @Override
+        public boolean matches(Map<String, Object> attrs) {
+            for (FilterMatcher matcher : matchers) {
+                if (!matcher.matches(attrs)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static final class Or extends FilterMatcher {
+        private final FilterMatcher[] matchers;
+
+        Or(FilterMatcher[] matchers) {
+            this.matchers = matchers;
+        }
+
+        @Override
+        public boolean matches(Map<String, Object> attrs) {
+            for (FilterMatcher matcher : matchers) {
+                if (matcher.matches(attrs)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static final class Not extends FilterMatcher {
+        private final FilterMatcher matcher;
+
+        Not(FilterMatcher matcher) {
+            this.matcher = matcher;
+        }
+
+        @Override
+        public boolean matches(Map<String, Object> attrs) {
+            return !matcher.matches(attrs);
+        }
+    }
+
+    /**
+     * The lower and upper bounds on a single version attribute, compared directly with
+     * pre-parsed versions when the attribute is a {@link Version}
+     */
+    private static final class VersionBounds extends FilterMatcher {
+        private final String name;
+        private final Version[] versions;
+        private final boolean[] lower;
+        private final boolean[] negated;
+        private final FilterMatcher fallback;
+
+        @SuppressWarnings("unchecked")
+        VersionBounds(String name, List<SimpleFilter> bounds) {
+            int size = bounds.size();
+            this.name = name;
+            this.versions = new Version[size];
+            this.lower = new boolean[size];
+            this.negated = new boolean[size];
+            FilterMatcher[] matchers = new FilterMatcher[size];
+            for (int i = 0; i < size; i++) {
+                SimpleFilter sf = bounds.get(i);
+                matchers[i] = compile(sf);
+                if (sf.getOperation() == SimpleFilter.NOT) {
+                    negated[i] = true;
+                    sf = ((List<SimpleFilter>) sf.getValue()).get(0);
+                }
+                versions[i] = toVersion((String) sf.getValue());
+                lower[i] = sf.getOperation() == SimpleFilter.GTE;
+            }
+            this.fallback = size == 1 ? matchers[0] : new And(matchers);
+        }
+
+        @Override
+        public boolean matches(Map<String, Object> attrs) {
+            Object lhs = attrs.get(name);
+            if (lhs == null || lhs.getClass() != Version.class) {
+                return fallback.matches(attrs);
+            }
+            Version version = (Version) lhs;
+            for (int i = 0; i < versions.length; i++) {
+                int result = version.compareTo(versions[i]);
+                boolean matched = lower[i] ? result >= 0 : result <= 0;
+                if (matched == negated[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * A comparison of an attribute with a value, which is converted to the type of the attribute once
+     * and kept for the following capabilities whose attribute has the same type
+     */
+    private static final class Comparison extends FilterMatcher {
+        private final String name;
+        private final int op;
+        private final Object value;
+        private final String approx;
+        private volatile Coerced coerced;
+
+        Comparison(String name, int op, Object value) {
+            this.name = name;
+            this.op = op;
+            this.value = value;
+            this.approx = op == SimpleFilter.APPROX && value instanceof String ? removeWhitespace((String) value) : null;
+            if (op != SimpleFilter.SUBSTRING && op != SimpleFilter.PRESENT && isVersionLike(value)) {
+                // pre-parse the operand of the comparisons made on versions
+                coerced = new Coerced(Version.class, coerce(Version.emptyVersion, (String) value));
+            }
+        }
+
+        @Override
+        public boolean matches(Map<String, Object> attrs) {
+            Object lhs = attrs.get(name);
+            return lhs != null && compare(lhs);
+        }
+
+        @SuppressWarnings("unchecked")
+        private boolean compare(Object lhs) {
+            // If this is a PRESENT operation, then just return true immediately
+            // since we wouldn't be here if the attribute wasn't present.
+            if (op == SimpleFilter.PRESENT) {
+                return true;
+            }
+
+            if (lhs instanceof Comparable) {
+                // Spec says SUBSTRING is false for all types other than string.
+                if (op == SimpleFilter.SUBSTRING) {
+                    return lhs instanceof String && SimpleFilter.compareSubstring((List<String>) value, (String) lhs);
+                }
+                Object rhs = coerceOperand(lhs);
+                if (rhs == COERCION_FAILED) {
+                    return false;
+                }
+                if (op == SimpleFilter.APPROX) {
+                    return compareApproximate(lhs, rhs);
+                }
+                int result;
+                try {
+                    result = ((Comparable) lhs).compareTo(rhs);
+                } catch (Exception ex) {
+                    return false;
+                }
+                switch (op) {
+                    case SimpleFilter.EQ:
+                        return result == 0;
+                    case SimpleFilter.GTE:
+                        return result >= 0;
+                    case SimpleFilter.LTE:
+                        return result <= 0;
+                    default:
+                        throw new RuntimeException("Unknown comparison operator: " + op);
+                }
+            }
+
+            // If LHS is an array or a collection, then call compare() on each
+            // element until a match is found.
+            if (lhs.getClass().isArray()) {
+                for (int i = 0, length = Array.getLength(lhs); i < length; i++) {
+                    Object item = Array.get(lhs, i);
+                    if (item != null && compare(item)) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+            if (lhs instanceof Collection) {
+                for (Object item : (Collection) lhs) {
+                    if (item != null && compare(item)) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+
+            // Spec says SUBSTRING is false for all types other than string.
+            if (op == SimpleFilter.SUBSTRING) {
+                return false;
+            }
+
+            // Since we cannot identify the LHS type, then we can only perform
+            // equality comparison.
+            Object rhs = coerceOperand(lhs);
+            return rhs != COERCION_FAILED && lhs.equals(rhs);
+        }
+
+        private Object coerceOperand(Object lhs) {
+            if (!(value instanceof String)) {
+                return COERCION_FAILED;
+            }
+            if (lhs instanceof String) {
+                return value;
+            }
+            Coerced coerced = this.coerced;
+            if (coerced == null || coerced.type != lhs.getClass()) {
+                coerced = new Coerced(lhs.getClass(), coerce(lhs, (String) value));
+                this.coerced = coerced;
+            }
+            return coerced.value;
+        }
+
+        private boolean compareApproximate(Object lhs, Object rhs) {
+            if (rhs instanceof String) {
+                return removeWhitespace((String) lhs).equalsIgnoreCase(approx != null ? approx : removeWhitespace((String) rhs));
+            } else if (rhs instanceof Character) {
+                return Character.toLowerCase((Character) lhs) == Character.toLowerCase((Character) rhs);
+            }
+            return lhs.equals(rhs);
+        }
+    }
+
+    private static boolean isVersionLike(Object value) {
+        return value instanceof String && !((String) value).isEmpty() && Character.isDigit(((String) value).charAt(0));
+    }
+
+    private static final class Coerced {
+        private final Class<?> type;
+        private final Object value;
+
+        Coerced(Class<?> type, Object value) {
+            this.type = type;
+            this.value = value;
+        }
+    }
+
+    /**
+     * Converts the given string to the type of the given attribute value using its string constructor,
+     * or returns {@link #COERCION_FAILED} if it can not be converted
+     */
+    private static Object coerce(Object lhs, String rhsString) {
+        // If the LHS expects a string, then we can just return
+        // the RHS since it is a string.
+        if (lhs.getClass() == String.class) {
+            return rhsString;
+        }
+        try {
+            // The Character class is a special case, since its constructor
+            // does not take a string, so handle it separately.
+            if (lhs instanceof Character) {
+                return rhsString.charAt(0);
+            }
+            // Spec says we should trim number types.
+            if ((lhs instanceof Number) || (lhs instanceof Boolean)) {
+                rhsString = rhsString.trim();
+            }
+            Constructor ctor = lhs.getClass().getConstructor(STRING_CLASS);
+            ctor.setAccessible(true);
+            return ctor.newInstance(rhsString);
+        } catch (Exception ex) {
+            return COERCION_FAILED;
+        }
+    }
+
+    private static String removeWhitespace(String s) {
+        StringBuilder sb = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            if (!Character.isWhitespace(s.charAt(i))) {
+                sb.append(s.charAt(i));
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,488 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.agent.resolver;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.fabric8.utils.NamedThreadFactory;
+import org.apache.felix.utils.version.VersionRange;
+import org.osgi.framework.BundleException;
+import org.osgi.framework.Version;
+import org.osgi.resource.Capability;
+import org.osgi.resource.Requirement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A persistent index of the resources built by {@link ResourceBuilder} so that the agent does not need to open
+ * every bundle again and parse its <code>Import-Package</code> / <code>Export-Package</code> headers on each
+ * deployment or restart.
+ * <p/>
+ * Two kinds of entries are kept:
+ * <ul>
+ *     <li>the main manifest headers of downloaded files, keyed by path, size and last modification time</li>
+ *     <li>the capabilities and requirements of built resources, keyed by a digest of the uri and headers</li>
+ * </ul>
+ * Resources are kept in a compact binary form and a new {@link ResourceImpl} is decoded on each lookup, as
+ * the resolver adds requirements to the resources it is given. Resources with attribute values of a type
+ * which can not be encoded are simply not indexed.
+ * <p/>
+ * The index also owns a pool of threads sized to the number of cores which callers use to build the
+ * resources missing from the index in parallel.
+ */
+public class ResourceIndex {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ResourceIndex.class);
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int MAGIC = 0x46524958;
+    private static final int FORMAT_VERSION = 1;
+
+    private static final byte TYPE_NULL = 0;
+    private static final byte TYPE_STRING = 1;
+    private static final byte TYPE_VERSION = 2;
+    private static final byte TYPE_VERSION_RANGE = 3;
+    private static final byte TYPE_LONG = 4;
+    private static final byte TYPE_DOUBLE = 5;
+    private static final byte TYPE_LIST = 6;
+    private static final byte TYPE_FILTER = 7;
+
+    public static final int DEFAULT_MAX_ENTRIES = 4096;
+
+    private final File file;
+    private final int maxEntries;
+    private final Map<String, byte[]> resources = new ConcurrentHashMap<>();
+    private final Map<String, Map<String, String>> manifests = new ConcurrentHashMap<>();
+    private final Set<String> used = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final ExecutorService executor;
+    private volatile boolean loaded;
+    private volatile boolean dirty;
+
+    public ResourceIndex(File file) {
+        this(file, DEFAULT_MAX_ENTRIES);
+    }
+
+    public ResourceIndex(File file, int maxEntries) {
+        this.file = file;
+        this.maxEntries = maxEntries;
+        this.executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new NamedThreadFactory("fabric-agent-parser"));
+    }
+
+    /**
+     * Returns the executor used to build the resources in parallel
+     */
+    public ExecutorService getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Returns the resource for the given uri and headers, building it with {@link ResourceBuilder} and adding
+     * it to the index if it is not already known
+     */
+    public ResourceImpl build(String uri, Map<String, String> headers) throws BundleException {
+        load();
+        String key = computeKey(uri, headers);
+        byte[] data = resources.get(key);
+        if (data != null) {
+            try {
+                ResourceImpl resource = decode(data);
+                used.add(key);
+                hits.incrementAndGet();
+                return resource;
+            } catch (IOException e) {
+                LOGGER.debug("Ignoring unreadable index entry for {}: {}", uri, e.toString());
+                resources.remove(key);
+            }
+        }
+        misses.incrementAndGet();
+        ResourceImpl resource = ResourceBuilder.build(uri, headers);
+        data = encode(resource);
+        if (data != null) {
+            resources.put(key, data);
+            used.add(key);
+            dirty = true;
+        }
+        return resource;
+    }
+
+    /**
+     * Returns the manifest headers previously read from the given file or null if the file is unknown or has
+     * changed since. The returned map is a copy which the caller may modify.
+     */
+    public Map<String, String> getHeaders(File file) {
+        load();
+        String key = fileKey(file);
+        Map<String, String> headers = manifests.get(key);
+        if (headers != null) {
+            used.add(key);
+            return new HashMap<>(headers);
+        }
+        return null;
+    }
+
+    /**
+     * Records the manifest headers read from the given file
+     */
+    public void putHeaders(File file, Map<String, String> headers) {
+        load();
+        String key = fileKey(file);
+        manifests.put(key, new HashMap<>(headers));
+        used.add(key);
+        dirty = true;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public int size() {
+        return resources.size();
+    }
+
+    /**
+     * Writes the index to disk if it has changed. When it holds more than the maximum number of entries,
+     * those which have not been used since the index was loaded are dropped.
+     */
+    public synchronized void save() {
+        if (resources.size() + manifests.size() > maxEntries) {
+            resources.keySet().retainAll(used);
+            manifests.keySet().retainAll(used);
+            dirty = true;
+        }
+        LOGGER.debug("Resource index has {} entries ({} hits, {} misses)", resources.size(), hits.get(), misses.get());
+        if (!dirty) {
+            return;
+        }
+        File dir = file.getParentFile();
+        if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+            LOGGER.warn("Unable to create resource index directory " + dir);
+            return;
+        }
+        File tmp = new File(file.getPath() + ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                Map<String, Map<String, String>> manifests = new HashMap<>(this.manifests);
+                out.writeInt(manifests.size());
+                for (Map.Entry<String, Map<String, String>> entry : manifests.entrySet()) {
+                    writeString(out, entry.getKey());
+                    writeMap(out, entry.getValue());
+                }
+                Map<String, byte[]> resources = new HashMap<>(this.resources);
+                out.writeInt(resources.size());
+                for (Map.Entry<String, byte[]> entry : resources.entrySet()) {
+                    writeString(out, entry.getKey());
+                    out.writeInt(entry.getValue().length);
+                    out.write(entry.getValue());
+                }
+            }
+            if (!tmp.renameTo(file)) {
+                file.delete();
+                if (!tmp.renameTo(file)) {
+                    throw new IOException("Unable to rename " + tmp + " to " + file);
+                }
+            }
+            dirty = false;
+        } catch (IOException e) {
+            LOGGER.warn("Unable to write resource index " + file + ": " + e);
+            tmp.delete();
+        }
+    }
+
+    /**
+     * Stops the threads used to build the resources
+     */
+    public void close() {
+        executor.shutdown();
+    }
+
+    private void load() {
+        if (loaded) {
+            return;
+        }
+        synchronized (this) {
+            if (loaded) {
+                return;
+            }
+            if (file.isFile()) {
+                try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+                    if (in.readInt() == MAGIC && in.readInt() == FORMAT_VERSION) {
+                        int count = in.readInt();
+                        for (int i = 0; i < count; i++) {
+                            String key = readString(in);
+                            manifests.put(key, readMap(in, new HashMap<String, String>()));
+                        }
+                        count = in.readInt();
+                        for (int i = 0; i < count; i++) {
+                            String key = readString(in);
+                            byte[] data = new byte[in.readInt()];
+                            in.readFully(data);
+                            resources.put(key, data);
+                        }
+                    }
+                } catch (IOException e) {
+                    LOGGER.warn("Ignoring unreadable resource index " + file + ": " + e);
+                    manifests.clear();
+                    resources.clear();
+                    file.delete();
+                }
+            }
+            loaded = true;
+        }
+    }
+
+    private static String fileKey(File file) {
+        return file.getAbsolutePath() + "|" + file.length() + "|" + file.lastModified();
+    }
+
+    static String computeKey(String uri, Map<String, String> headers) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            digest.update(String.valueOf(uri).getBytes(UTF_8));
+            for (Map.Entry<String, String> entry : new TreeMap<>(headers).entrySet()) {
+                digest.update((byte) 0);
+                digest.update(entry.getKey().getBytes(UTF_8));
+                digest.update((byte) 0);
+                digest.update(String.valueOf(entry.getValue()).getBytes(UTF_8));
+            }
+            StringBuilder sb = new StringBuilder();
+            for (byte b : digest.digest()) {
+                sb.append(String.format("%02x", b & 0xff));
+            }
+            return sb.toString();
+        } catch (Exception e) {
+            throw new IllegalStateException("Unable to compute resource index key", e);
+        }
+    }
+
+    //
+    // Encoding
+    //
+
+    /**
+     * Encodes the capabilities and requirements of the given resource or returns null if it can not be encoded
+     */
+    static byte[] encode(ResourceImpl resource) {
+        if (resource.getClass() != ResourceImpl.class) {
+            return null;
+        }
+        try {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(baos);
+            List<Capability> caps = resource.getCapabilities(null);
+            out.writeInt(caps.size());
+            for (Capability cap : caps) {
+                if (cap.getClass() != CapabilityImpl.class) {
+                    return null;
+                }
+                writeString(out, cap.getNamespace());
+                writeMap(out, cap.getDirectives());
+                writeAttributes(out, cap.getAttributes());
+            }
+            List<Requirement> reqs = resource.getRequirements(null);
+            out.writeInt(reqs.size());
+            for (Requirement req : reqs) {
+                if (req.getClass() != RequirementImpl.class) {
+                    return null;
+                }
+                writeString(out, req.getNamespace());
+                writeMap(out, req.getDirectives());
+                writeAttributes(out, req.getAttributes());
+                writeValue(out, ((RequirementImpl) req).getFilter());
+            }
+            out.flush();
+            return baos.toByteArray();
+        } catch (UnsupportedTypeException e) {
+            LOGGER.debug("Not indexing {}: {}", resource, e.getMessage());
+            return null;
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static ResourceImpl decode(byte[] data) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        ResourceImpl resource = new ResourceImpl();
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            String namespace = readString(in);
+            Map<String, String> dirs = readMap(in, new LinkedHashMap<String, String>());
+            Map<String, Object> attrs = readAttributes(in);
+            resource.addCapability(new CapabilityImpl(resource, namespace, dirs, attrs));
+        }
+        count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            String namespace = readString(in);
+            Map<String, String> dirs = readMap(in, new LinkedHashMap<String, String>());
+            Map<String, Object> attrs = readAttributes(in);
+            SimpleFilter filter = (SimpleFilter) readValue(in);
+            resource.addRequirement(new RequirementImpl(resource, namespace, dirs, attrs, filter));
+        }
+        return resource;
+    }
+
+    private static void writeString(DataOutput out, String value) throws IOException {
+        byte[] bytes = value.getBytes(UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    private static void writeMap(DataOutput out, Map<String, String> map) throws IOException {
+        out.writeInt(map.size());
+        for (Map.Entry<String, String> entry : map.entrySet()) {
+            writeString(out, entry.getKey());
+            writeString(out, entry.getValue());
+        }
+    }
+
+    private static Map<String, String> readMap(DataInput in, Map<String, String> map) throws IOException {
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            String key = readString(in);
+            map.put(key, readString(in));
+        }
+        return map;
+    }
+
+    private static void writeAttributes(DataOutput out, Map<String, Object> attrs) throws IOException {
+        out.writeInt(attrs.size());
+        for (Map.Entry<String, Object> entry : attrs.entrySet()) {
+            writeString(out, entry.getKey());
+            writeValue(out, entry.getValue());
+        }
+    }
+
+    private static Map<String, Object> readAttributes(DataInput in) throws IOException {
+        int count = in.readInt();
+        Map<String, Object> attrs = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            String key = readString(in);
+            attrs.put(key, readValue(in));
+        }
+        return attrs;
+    }
+
+    private static void writeValue(DataOutput out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(TYPE_NULL);
+        } else if (value instanceof String) {
+            out.writeByte(TYPE_STRING);
+            writeString(out, (String) value);
+        } else if (value instanceof Version) {
+            out.writeByte(TYPE_VERSION);
+            writeString(out, value.toString());
+        } else if (value instanceof VersionRange) {
+            out.writeByte(TYPE_VERSION_RANGE);
+            writeString(out, value.toString());
+        } else if (value instanceof Long) {
+            out.writeByte(TYPE_LONG);
+            out.writeLong((Long) value);
+        } else if (value instanceof Double) {
+            out.writeByte(TYPE_DOUBLE);
+            out.writeDouble((Double) value);
+        } else if (value instanceof List) {
+            List<?> list = (List<?>) value;
+            out.writeByte(TYPE_LIST);
+            out.writeInt(list.size());
+            for (Object item : list) {
+                writeValue(out, item);
+            }
+        } else if (value instanceof SimpleFilter) {
+            SimpleFilter filter = (SimpleFilter) value;
+            out.writeByte(TYPE_FILTER);
+            out.writeInt(filter.getOperation());
+            writeValue(out, filter.getName());
+            writeValue(out, filter.getValue());
+        } else {
+            throw new UnsupportedTypeException(value.getClass().getName());
+        }
+    }
+
+    private static Object readValue(DataInput in) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+        case TYPE_NULL:
+            return null;
+        case TYPE_STRING:
+            return readString(in);
+        case TYPE_VERSION:
+            return Version.parseVersion(readString(in));
+        case TYPE_VERSION_RANGE:
+            return VersionRange.parseVersionRange(readString(in));
+        case TYPE_LONG:
+            return in.readLong();
+        case TYPE_DOUBLE:
+            return in.readDouble();
+        case TYPE_LIST:
+            int count = in.readInt();
+            List<Object> list = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                list.add(readValue(in));
+            }
+            return list;
+        case TYPE_FILTER:
+            int op = in.readInt();
+            String name = (String) readValue(in);
+            return new SimpleFilter(name, readValue(in), op);
+        default:
+            throw new IOException("Unknown value type " + type);
+        }
+    }
+
+    private static class UnsupportedTypeException extends IOException {
+        UnsupportedTypeException(String type) {
+            super("unsupported attribute type " + type);
+        }
+    }
+}
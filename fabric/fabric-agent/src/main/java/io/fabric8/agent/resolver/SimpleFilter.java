@@ -38,6 +38,7 @@ public class SimpleFilter
     private final String m_name;
     private final Object m_value;
     private final int m_op;
+    private volatile FilterMatcher m_matcher;
 
     public SimpleFilter(String attr, Object value, int op)
     {
@@ -61,6 +62,20 @@ public class SimpleFilter
         return m_op;
     }
 
+    /**
+     * Returns the compiled form of this filter, which is created on first use
+     */
+    public FilterMatcher getMatcher()
+    {
+        FilterMatcher matcher = m_matcher;
+        if (matcher == null)
+        {
+            matcher = FilterMatcher.compile(this);
+            m_matcher = matcher;
+        }
+        return matcher;
+    }
+
     public String toString()
     {
         String s = null;
@@ -44,8 +44,9 @@ import io.fabric8.agent.download.Downloader;
 import io.fabric8.agent.download.StreamProvider;
 import io.fabric8.agent.model.Feature;
 import io.fabric8.agent.model.Repository;
+import io.fabric8.agent.region.ResolutionCache;
 import io.fabric8.agent.repository.StaticRepository;
-import io.fabric8.agent.resolver.ResourceBuilder;
+import io.fabric8.agent.resolver.ResourceIndex;
 import io.fabric8.api.gravia.ServiceLocator;
 import io.fabric8.common.util.ChecksumUtils;
 import io.fabric8.common.util.MultiException;
@@ -119,6 +120,8 @@ public class Agent {
     private EnumSet<Option> options = EnumSet.noneOf(Option.class);
 
     private String deploymentAgentId;
+    private ResolutionCache resolutionCache;
+    private ResourceIndex resourceIndex;
 
     public Agent(Bundle serviceBundle, BundleContext systemBundleContext, DownloadManager manager) {
         this(serviceBundle, systemBundleContext, manager, null, null, DEFAULT_FEATURE_RESOLUTION_RANGE, DEFAULT_BUNDLE_UPDATE_RANGE, UPDATE_SNAPSHOTS_CRC, null, Constants.BUNDLE_START_TIMEOUT);
@@ -213,7 +216,7 @@ public class Agent {
     ) throws Exception {
 
 
-        Callable<Map<String, Resource>> res = loadResources(manager, metadata, optionals);
+        Callable<Map<String, Resource>> res = loadResources(manager, metadata, optionals, resourceIndex);
 
         // TODO: requirements should be able to be assigned to a region
         Map<String, Set<String>> requirements = new HashMap<>();
@@ -367,6 +370,8 @@ public class Agent {
 
                 Deployer deployer = new Deployer(manager, callback);
                 deployer.setDeploymentAgentId(deploymentAgentId);
+                deployer.setResolutionCache(resolutionCache);
+                deployer.setResourceIndex(resourceIndex);
                 deployer.deploy(dstate, request);
                 break;
             } catch (Deployer.PartialDeploymentException e) {
@@ -377,6 +382,9 @@ public class Agent {
                 }
             }
         }
+        if (resourceIndex != null) {
+            resourceIndex.save();
+        }
     }
 
     protected <T> void awaitService(Class<T> serviceClass, String filterspec, int timeout, TimeUnit timeUnit) {
@@ -411,6 +419,20 @@ public class Agent {
         this.deploymentAgentId = deploymentAgentId;
     }
 
+    /**
+     * Sets the cache used to skip the resolution when the deployment inputs have not changed
+     */
+    public void setResolutionCache(ResolutionCache resolutionCache) {
+        this.resolutionCache = resolutionCache;
+    }
+
+    /**
+     * Sets the index used to avoid parsing again the manifests of the bundles which have already been seen
+     */
+    public void setResourceIndex(ResourceIndex resourceIndex) {
+        this.resourceIndex = resourceIndex;
+    }
+
     abstract class BaseDeployCallback implements Deployer.DeployCallback {
 
         public void print(String message, int display) {
@@ -626,15 +648,24 @@ public class Agent {
                 Map<String, Map<VersionRange, Map<String, String>>> metadata,
                 Set<String> uris)
             throws MultiException, InterruptedException, MalformedURLException {
+        return loadResources(manager, metadata, uris, null);
+    }
+
+    public static Callable<Map<String, Resource>> loadResources(
+                DownloadManager manager,
+                Map<String, Map<VersionRange, Map<String, String>>> metadata,
+                Set<String> uris,
+                ResourceIndex index)
+            throws MultiException, InterruptedException, MalformedURLException {
         final Map<String, Resource> resources = new HashMap<>();
         final Downloader downloader = manager.createDownloader();
-        final MetadataBuilder builder = new MetadataBuilder(metadata);
+        final MetadataBuilder builder = new MetadataBuilder(metadata, index);
         final DownloadCallback callback = new DownloadCallback() {
             @Override
             public void downloaded(StreamProvider provider) throws Exception {
                 String uri = provider.getUrl();
                 Map<String, String> headers = builder.getMetadata(uri, provider.getFile());
-                Resource resource = ResourceBuilder.build(uri, headers);
+                Resource resource = builder.build(uri, headers);
                 synchronized (resources) {
                     resources.put(uri, resource);
                 }
@@ -29,8 +29,10 @@ import io.fabric8.agent.internal.MapUtils;
 import io.fabric8.agent.model.BundleInfo;
 import io.fabric8.agent.model.ConfigFile;
 import io.fabric8.agent.model.Feature;
+import io.fabric8.agent.region.ResolutionCache;
 import io.fabric8.agent.region.SubsystemResolver;
 import io.fabric8.agent.resolver.FeatureResource;
+import io.fabric8.agent.resolver.ResourceIndex;
 import io.fabric8.agent.utils.OsgiUtils;
 import io.fabric8.common.util.ChecksumUtils;
 import io.fabric8.common.util.MultiException;
@@ -178,6 +180,8 @@ public class Deployer {
     private final DeployCallback callback;
 
     private String deploymentAgentId;
+    private ResolutionCache resolutionCache;
+    private ResourceIndex resourceIndex;
 
     public Deployer(DownloadManager manager, DeployCallback callback) {
         this.manager = manager;
@@ -188,6 +192,14 @@ public class Deployer {
         this.deploymentAgentId = deploymentAgentId;
     }
 
+    public void setResolutionCache(ResolutionCache resolutionCache) {
+        this.resolutionCache = resolutionCache;
+    }
+
+    public void setResourceIndex(ResourceIndex resourceIndex) {
+        this.resourceIndex = resourceIndex;
+    }
+
     /**
      *
      * @param dstate  deployment state
@@ -219,6 +231,7 @@ public class Deployer {
 
         // Resolve
         SubsystemResolver resolver = new SubsystemResolver(manager);
+        resolver.setResolutionCache(resolutionCache);
         resolver.prepare(
                 dstate.features.values(),
                 request.requirements,
@@ -271,7 +284,7 @@ public class Deployer {
         callback.phase("resolving");
 
         resolver.resolve(
-                new MetadataBuilder(request.metadata),
+                new MetadataBuilder(request.metadata, resourceIndex),
                 request.overrides,
                 request.featureResolutionRange,
                 request.globalRepository);
@@ -22,13 +22,20 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.jar.Attributes;
 import java.util.jar.Manifest;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 
+import io.fabric8.agent.resolver.ResourceBuilder;
+import io.fabric8.agent.resolver.ResourceImpl;
+import io.fabric8.agent.resolver.ResourceIndex;
 import org.apache.felix.utils.version.VersionRange;
 import org.apache.felix.utils.version.VersionTable;
+import org.osgi.framework.BundleException;
 import org.osgi.framework.Constants;
 import org.osgi.framework.Version;
 
@@ -37,12 +44,49 @@ import static java.util.jar.JarFile.MANIFEST_NAME;
 public class MetadataBuilder {
 
     private final Map<String, Map<VersionRange, Map<String, String>>> metadata;
+    private final ResourceIndex index;
 
     public MetadataBuilder(Map<String, Map<VersionRange, Map<String, String>>> metadata) {
+        this(metadata, null);
+    }
+
+    public MetadataBuilder(Map<String, Map<VersionRange, Map<String, String>>> metadata, ResourceIndex index) {
         this.metadata = metadata;
+        this.index = index;
     }
 
     public Map<String, String> getMetadata(String url, File file) throws IOException {
+        Map<String, String> headers = index != null ? index.getHeaders(file) : null;
+        if (headers == null) {
+            headers = readManifest(url, file);
+            if (index != null) {
+                index.putHeaders(file, headers);
+            }
+        }
+        return overrideHeaders(headers);
+    }
+
+    /**
+     * Builds the resource for the given headers, reusing the one from the index if it has already been built
+     */
+    public ResourceImpl build(String uri, Map<String, String> headers) throws BundleException {
+        return index != null ? index.build(uri, headers) : ResourceBuilder.build(uri, headers);
+    }
+
+    /**
+     * Runs the given task on the index threads so that resources can be built in parallel,
+     * or in the calling thread if there is no index
+     */
+    public <T> Future<T> parse(Callable<T> task) {
+        if (index != null) {
+            return index.getExecutor().submit(task);
+        }
+        FutureTask<T> future = new FutureTask<>(task);
+        future.run();
+        return future;
+    }
+
+    private Map<String, String> readManifest(String url, File file) throws IOException {
         try (
                 InputStream is = new BufferedInputStream(new FileInputStream(file))
         ) {
@@ -55,7 +99,7 @@ public class MetadataBuilder {
                     for (Map.Entry attr : attributes.entrySet()) {
                         headers.put(attr.getKey().toString(), attr.getValue().toString());
                     }
-                    return overrideHeaders(headers);
+                    return headers;
                 }
             }
         }
@@ -0,0 +1,183 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.agent.download;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.fabric8.common.util.MultiException;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DownloadSchedulerTest {
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(8);
+    private final List<String> started = Collections.synchronizedList(new ArrayList<String>());
+    private final Map<String, AtomicInteger> inFlight = new HashMap<>();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testLowestPriorityFirst() throws Exception {
+        DownloadScheduler scheduler = new DownloadScheduler(new TestDownloadManager(), 1);
+        // the first one is dispatched straight away, the others are queued behind it
+        scheduler.schedule("mvn:org.acme/first/1.0", 80);
+        scheduler.schedule("mvn:org.acme/late/1.0", 80);
+        scheduler.schedule("mvn:org.acme/early/1.0", 10);
+        scheduler.schedule("mvn:org.acme/middle/1.0", 50);
+        scheduler.schedule("mvn:org.acme/late/1.0", 30);
+        scheduler.await();
+
+        assertEquals(Arrays.asList("mvn:org.acme/first/1.0", "mvn:org.acme/early/1.0",
+                "mvn:org.acme/late/1.0", "mvn:org.acme/middle/1.0"), started);
+        assertEquals(4, scheduler.getFiles().size());
+        assertEquals(4, scheduler.getProgress().getCompleted());
+    }
+
+    @Test
+    public void testConcurrencyIsBoundedPerRepository() throws Exception {
+        DownloadScheduler scheduler = new DownloadScheduler(new TestDownloadManager(), 2);
+        for (int i = 0; i < 10; i++) {
+            scheduler.schedule("mvn:org.acme/artifact" + i + "/1.0", 80);
+            scheduler.schedule("mvn:http://repo.acme.org/maven2!org.acme/artifact" + i + "/1.0", 80);
+        }
+        scheduler.await();
+
+        assertEquals(20, scheduler.getFiles().size());
+        assertEquals(2, maxInFlight.get());
+    }
+
+    @Test
+    public void testFailures() throws Exception {
+        DownloadScheduler scheduler = new DownloadScheduler(new TestDownloadManager(), 1);
+        scheduler.schedule("mvn:org.acme/missing/1.0", 80);
+        scheduler.schedule("mvn:org.acme/artifact/1.0", 80);
+        scheduler.await();
+
+        assertEquals(1, scheduler.getFiles().size());
+        assertEquals(1, scheduler.getErrors().size());
+        assertTrue(scheduler.getErrors().get("mvn:org.acme/missing/1.0") instanceof IOException);
+        assertEquals(0, scheduler.getRemaining());
+    }
+
+    @Test
+    public void testRepositoryKey() {
+        assertEquals("mvn:", DownloadScheduler.getRepositoryKey("mvn:org.acme/artifact/1.0"));
+        assertEquals("mvn:", DownloadScheduler.getRepositoryKey("wrap:mvn:org.acme/artifact/1.0"));
+        assertEquals("http://repo.acme.org/maven2", DownloadScheduler.getRepositoryKey("mvn:http://repo.acme.org/maven2!org.acme/artifact/1.0"));
+        assertEquals("http://repo.acme.org:8080", DownloadScheduler.getRepositoryKey("http://repo.acme.org:8080/artifact.jar"));
+        assertEquals("profile:", DownloadScheduler.getRepositoryKey("profile:artifact.jar"));
+    }
+
+    private class TestDownloadManager implements DownloadManager {
+
+        @Override
+        public int pending() {
+            return 0;
+        }
+
+        @Override
+        public Downloader createDownloader() {
+            return new Downloader() {
+                @Override
+                public int pending() {
+                    return 0;
+                }
+
+                @Override
+                public void await() throws InterruptedException, MultiException {
+                }
+
+                @Override
+                public void download(final String location, final DownloadCallback callback) throws MalformedURLException {
+                    started.add(location);
+                    final AtomicInteger counter = getCounter(DownloadScheduler.getRepositoryKey(location));
+                    int count = counter.incrementAndGet();
+                    synchronized (maxInFlight) {
+                        maxInFlight.set(Math.max(maxInFlight.get(), count));
+                    }
+                    executor.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            try {
+                                Thread.sleep(20);
+                                counter.decrementAndGet();
+                                if (location.contains("missing")) {
+                                    ((DownloadFailureCallback) callback).failed(location, new IOException("Not found"));
+                                } else {
+                                    callback.downloaded(new StreamProvider() {
+                                        @Override
+                                        public String getUrl() {
+                                            return location;
+                                        }
+
+                                        @Override
+                                        public File getFile() throws IOException {
+                                            return new File("target/" + location.replaceAll("[^a-z0-9.]", "_"));
+                                        }
+                                    });
+                                }
+                            } catch (Exception e) {
+                                throw new RuntimeException(e);
+                            }
+                        }
+                    });
+                }
+            };
+        }
+
+        @Override
+        public Map<String, StreamProvider> getProviders() {
+            return Collections.emptyMap();
+        }
+
+        @Override
+        public void addListener(DownloadCallback listener) {
+        }
+
+        @Override
+        public void removeListener(DownloadCallback listener) {
+        }
+    }
+
+    private AtomicInteger getCounter(String repository) {
+        synchronized (inFlight) {
+            AtomicInteger counter = inFlight.get(repository);
+            if (counter == null) {
+                counter = new AtomicInteger();
+                inFlight.put(repository, counter);
+            }
+            return counter;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.agent.download;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.fabric8.agent.download.impl.SharedDownloadCache;
+import io.fabric8.common.util.Files;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SharedDownloadCacheTest {
+
+    private File directory;
+    private File artifact;
+    private final AtomicInteger downloads = new AtomicInteger();
+
+    @Before
+    public void setUp() throws Exception {
+        directory = new File("target/shared-download-cache-test");
+        Files.recursiveDelete(directory);
+        artifact = new File(directory, "repository/artifact-1.0.jar");
+        Files.writeToFile(artifact, "content".getBytes("UTF-8"));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Files.recursiveDelete(directory);
+    }
+
+    @Test
+    public void testSharedBetweenContainers() throws Exception {
+        SharedDownloadCache container1 = createCache("container1");
+        SharedDownloadCache container2 = createCache("container2");
+
+        File file1 = container1.download("mvn:org.acme/artifact/1.0", downloader(0));
+        File file2 = container2.download("mvn:org.acme/artifact/1.0", downloader(0));
+
+        assertEquals(1, downloads.get());
+        assertEquals(1, container2.getHits());
+        assertFalse(file1.equals(file2));
+        assertEquals("artifact-1.0.jar", file2.getName());
+        assertEquals("content", Files.toString(file2));
+    }
+
+    @Test
+    public void testConcurrentDownloadsAreCoalesced() throws Exception {
+        final SharedDownloadCache cache = createCache("container1");
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<File>> futures = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                futures.add(executor.submit(new Callable<File>() {
+                    @Override
+                    public File call() throws Exception {
+                        return cache.download("mvn:org.acme/artifact/1.0", downloader(500));
+                    }
+                }));
+            }
+            for (Future<File> future : futures) {
+                assertTrue(future.get().isFile());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(1, downloads.get());
+    }
+
+    @Test
+    public void testSnapshotsAreNotCached() throws Exception {
+        SharedDownloadCache cache = createCache("container1");
+        assertEquals(artifact, cache.download("mvn:org.acme/artifact/1.0-SNAPSHOT", downloader(0)));
+        assertEquals(artifact, cache.download("mvn:org.acme/artifact/1.0-SNAPSHOT", downloader(0)));
+        assertEquals(2, downloads.get());
+    }
+
+    private SharedDownloadCache createCache(String container) {
+        return new SharedDownloadCache(new File(directory, "shared"), new File(directory, container));
+    }
+
+    private Callable<File> downloader(final long delay) {
+        return new Callable<File>() {
+            @Override
+            public File call() throws Exception {
+                downloads.incrementAndGet();
+                Thread.sleep(delay);
+                return artifact;
+            }
+        };
+    }
+}
@@ -0,0 +1,175 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.agent.region;
+
+import io.fabric8.agent.resolver.CapabilityImpl;
+import io.fabric8.agent.resolver.RequirementImpl;
+import io.fabric8.agent.resolver.ResourceImpl;
+import junit.framework.TestCase;
+import org.osgi.framework.Version;
+import org.osgi.framework.namespace.PackageNamespace;
+import org.osgi.resource.Capability;
+import org.osgi.resource.Requirement;
+import org.osgi.resource.Resource;
+import org.osgi.resource.Wire;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static io.fabric8.common.util.Files.recursiveDelete;
+
+public class ResolutionCacheTest extends TestCase {
+
+    private File directory;
+    private ResolutionCache cache;
+
+    @Override
+    protected void setUp() throws Exception {
+        directory = new File("target/resolution-cache-test");
+        recursiveDelete(directory);
+        cache = new ResolutionCache(directory, 2);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        recursiveDelete(directory);
+    }
+
+    public void testSaveAndLoad() throws Exception {
+        ResourceImpl provider = createResource("provider", "org.acme.api", null);
+        ResourceImpl requirer = createResource("requirer", null, "org.acme.api");
+        List<Resource> candidates = Arrays.<Resource>asList(provider, requirer);
+        String key = computeKey(candidates);
+
+        assertNull(cache.load(key, candidates));
+        cache.save(key, candidates, wire(requirer, provider));
+
+        Map<Resource, List<Wire>> wiring = cache.load(key, candidates);
+        assertNotNull(wiring);
+        assertEquals(2, wiring.size());
+        assertTrue(wiring.get(provider).isEmpty());
+        List<Wire> wires = wiring.get(requirer);
+        assertEquals(1, wires.size());
+        Wire wire = wires.get(0);
+        assertSame(requirer, wire.getRequirer());
+        assertSame(requirer.getRequirements(null).get(0), wire.getRequirement());
+        assertSame(provider, wire.getProvider());
+        assertSame(provider.getCapabilities(null).get(1), wire.getCapability());
+
+        // the wiring can be post processed by the caller
+        wires.clear();
+        assertEquals(1, cache.load(key, candidates).get(requirer).size());
+    }
+
+    public void testKeyChangesWithCandidates() throws Exception {
+        List<Resource> candidates = Arrays.<Resource>asList(
+                createResource("provider", "org.acme.api", null),
+                createResource("requirer", null, "org.acme.api"));
+        List<Resource> same = Arrays.<Resource>asList(
+                createResource("provider", "org.acme.api", null),
+                createResource("requirer", null, "org.acme.api"));
+        List<Resource> changed = Arrays.<Resource>asList(
+                createResource("provider", "org.acme.api.v2", null),
+                createResource("requirer", null, "org.acme.api"));
+
+        assertEquals(computeKey(candidates), computeKey(same));
+        assertFalse(computeKey(candidates).equals(computeKey(changed)));
+        assertFalse(computeKey(candidates).equals(ResolutionCache.computeKey(
+                Collections.singletonMap("root", Collections.singleton("feature:other")),
+                Collections.<String>emptySet(), "[====,====]", candidates)));
+    }
+
+    public void testWiringToUnknownResourceIsNotCached() throws Exception {
+        ResourceImpl provider = createResource("provider", "org.acme.api", null);
+        ResourceImpl requirer = createResource("requirer", null, "org.acme.api");
+        List<Resource> candidates = Collections.<Resource>singletonList(requirer);
+        String key = computeKey(candidates);
+
+        cache.save(key, candidates, wire(requirer, provider));
+        assertNull(cache.load(key, candidates));
+    }
+
+    public void testOldEntriesArePruned() throws Exception {
+        ResourceImpl provider = createResource("provider", "org.acme.api", null);
+        ResourceImpl requirer = createResource("requirer", null, "org.acme.api");
+        List<Resource> candidates = Arrays.<Resource>asList(provider, requirer);
+
+        for (String key : Arrays.asList("a", "b", "c")) {
+            cache.save(key, candidates, wire(requirer, provider));
+            new File(directory, key + ".wiring").setLastModified(System.currentTimeMillis() - 10000 + key.charAt(0));
+        }
+        assertNull(cache.load("a", candidates));
+        assertNotNull(cache.load("b", candidates));
+        assertNotNull(cache.load("c", candidates));
+    }
+
+    private static String computeKey(List<Resource> candidates) throws Exception {
+        Map<String, Set<String>> requirements = Collections.singletonMap("root", Collections.singleton("feature:test"));
+        return ResolutionCache.computeKey(requirements, Collections.<String>emptySet(), "[====,====]", candidates);
+    }
+
+    private static ResourceImpl createResource(String name, String exportedPackage, String importedPackage) {
+        ResourceImpl resource = new ResourceImpl(name, "osgi.bundle", Version.emptyVersion);
+        if (exportedPackage != null) {
+            Map<String, Object> attrs = new HashMap<>();
+            attrs.put(PackageNamespace.PACKAGE_NAMESPACE, exportedPackage);
+            resource.addCapability(new CapabilityImpl(resource, PackageNamespace.PACKAGE_NAMESPACE,
+                    Collections.<String, String>emptyMap(), attrs));
+        }
+        if (importedPackage != null) {
+            Map<String, Object> attrs = new HashMap<>();
+            attrs.put(PackageNamespace.PACKAGE_NAMESPACE, importedPackage);
+            resource.addRequirement(new RequirementImpl(resource, PackageNamespace.PACKAGE_NAMESPACE,
+                    Collections.<String, String>emptyMap(), attrs));
+        }
+        return resource;
+    }
+
+    private static Map<Resource, List<Wire>> wire(final Resource requirer, final Resource provider) {
+        final Requirement requirement = requirer.getRequirements(PackageNamespace.PACKAGE_NAMESPACE).get(0);
+        final Capability capability = provider.getCapabilities(PackageNamespace.PACKAGE_NAMESPACE).get(0);
+        Map<Resource, List<Wire>> wiring = new HashMap<>();
+        wiring.put(provider, new ArrayList<Wire>());
+        wiring.put(requirer, new ArrayList<Wire>(Collections.singletonList(new Wire() {
+            @Override
+            public Capability getCapability() {
+                return capability;
+            }
+
+            @Override
+            public Requirement getRequirement() {
+                return requirement;
+            }
+
+            @Override
+            public Resource getProvider() {
+                return provider;
+            }
+
+            @Override
+            public Resource getRequirer() {
+                return requirer;
+            }
+        })));
+        return wiring;
+    }
+}
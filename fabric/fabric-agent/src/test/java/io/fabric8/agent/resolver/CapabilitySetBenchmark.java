@@ -0,0 +1,141 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.agent.resolver;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import io.fabric8.agent.repository.StaticRepository;
+import org.junit.Test;
+import org.osgi.framework.Constants;
+import org.osgi.resource.Capability;
+import org.osgi.resource.Requirement;
+import org.osgi.resource.Resource;
+
+/**
+ * Measures the cost of finding the providers of every requirement of a repository of the size of a Karaf
+ * container running Camel (a few hundred bundles exporting a few thousand packages), which is what the
+ * resolver spends most of its time doing, both through the {@link CapabilitySet} indices and by matching
+ * each requirement against every capability.
+ * <p/>
+ * The bundles are generated so that the benchmark does not need to download the real feature repositories.
+ * Not run as part of the normal build; run it with <code>mvn test -Dtest=CapabilitySetBenchmark</code>
+ */
+public class CapabilitySetBenchmark {
+
+    final int BUNDLES = 400;
+    final int EXPORTS = 12;
+    final int IMPORTS = 30;
+    final int ITERATIONS = 20;
+
+    @Test
+    public void testFindProviders() throws Exception {
+        System.out.println("==============================================================");
+        System.out.println("Perf testing");
+        System.out.println("==============================================================");
+
+        List<Resource> resources = createResources();
+        List<Requirement> requirements = new ArrayList<>();
+        List<Capability> capabilities = new ArrayList<>();
+        for (Resource resource : resources) {
+            requirements.addAll(resource.getRequirements(null));
+            capabilities.addAll(resource.getCapabilities(null));
+        }
+        StaticRepository repository = new StaticRepository(resources);
+
+        // warm up
+        long blackhole = findProviders(repository, requirements, ITERATIONS / 4);
+        blackhole += matchAll(requirements, capabilities, 1);
+
+        long start = System.nanoTime();
+        blackhole += findProviders(repository, requirements, ITERATIONS);
+        long duration = System.nanoTime() - start;
+        System.out.println(String.format("bundles: %d, requirements: %d, findProviders: %8d ns/requirement (%d)",
+                resources.size(), requirements.size(), duration / (ITERATIONS * (long) requirements.size()), blackhole));
+
+        start = System.nanoTime();
+        blackhole += matchAll(requirements, capabilities, 1);
+        duration = System.nanoTime() - start;
+        System.out.println(String.format("bundles: %d, capabilities: %d, matches:       %8d ns/requirement (%d)",
+                resources.size(), capabilities.size(), duration / requirements.size(), blackhole));
+    }
+
+    private long findProviders(StaticRepository repository, List<Requirement> requirements, int iterations) {
+        long answer = 0;
+        for (int i = 0; i < iterations; i++) {
+            for (Collection<Capability> providers : repository.findProviders(requirements).values()) {
+                answer += providers.size();
+            }
+        }
+        return answer;
+    }
+
+    private long matchAll(List<Requirement> requirements, List<Capability> capabilities, int iterations) {
+        long answer = 0;
+        for (int i = 0; i < iterations; i++) {
+            for (Requirement requirement : requirements) {
+                for (Capability capability : capabilities) {
+                    if (requirement.getNamespace().equals(capability.getNamespace())
+                            && ((RequirementImpl) requirement).matches(capability)) {
+                        answer++;
+                    }
+                }
+            }
+        }
+        return answer;
+    }
+
+    private List<Resource> createResources() throws Exception {
+        Random random = new Random(0);
+        List<Resource> resources = new ArrayList<>();
+        for (int i = 0; i < BUNDLES; i++) {
+            String version = (i % 4 + 1) + "." + (i % 7) + ".0";
+            StringBuilder exports = new StringBuilder();
+            for (int j = 0; j < EXPORTS; j++) {
+                if (j > 0) {
+                    exports.append(",");
+                }
+                exports.append("org.acme.bundle").append(i).append(".pkg").append(j)
+                        .append(";version=\"").append(version).append("\"");
+            }
+            StringBuilder imports = new StringBuilder();
+            for (int j = 0; j < IMPORTS; j++) {
+                if (j > 0) {
+                    imports.append(",");
+                }
+                int other = random.nextInt(BUNDLES);
+                int major = other % 4 + 1;
+                imports.append("org.acme.bundle").append(other).append(".pkg").append(random.nextInt(EXPORTS))
+                        .append(";version=\"[").append(major).append(",").append(major + 1).append(")\"");
+                if (j % 5 == 0) {
+                    imports.append(";resolution:=optional");
+                }
+            }
+            Map<String, String> headers = new HashMap<>();
+            headers.put(Constants.BUNDLE_MANIFESTVERSION, "2");
+            headers.put(Constants.BUNDLE_SYMBOLICNAME, "org.acme.bundle" + i);
+            headers.put(Constants.BUNDLE_VERSION, version);
+            headers.put(Constants.EXPORT_PACKAGE, exports.toString());
+            headers.put(Constants.IMPORT_PACKAGE, imports.toString());
+            resources.add(ResourceBuilder.build("mvn:org.acme/bundle" + i + "/" + version, headers));
+        }
+        return resources;
+    }
+}
@@ -0,0 +1,129 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.agent.resolver;
+
+import junit.framework.TestCase;
+import org.osgi.framework.Constants;
+import org.osgi.resource.Capability;
+import org.osgi.resource.Requirement;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static io.fabric8.common.util.Files.recursiveDelete;
+
+public class ResourceIndexTest extends TestCase {
+
+    private File directory;
+
+    @Override
+    protected void setUp() throws Exception {
+        directory = new File("target/resource-index-test");
+        recursiveDelete(directory);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        recursiveDelete(directory);
+    }
+
+    public void testEncodeDecode() throws Exception {
+        ResourceImpl expected = ResourceBuilder.build("mvn:org.acme/acme/1.0", createHeaders());
+        ResourceImpl actual = ResourceIndex.decode(ResourceIndex.encode(expected));
+        assertSameResource(expected, actual);
+    }
+
+    public void testSaveAndLoad() throws Exception {
+        File file = new File(directory, "resource-index.bin");
+        Map<String, String> headers = createHeaders();
+
+        ResourceIndex index = new ResourceIndex(file);
+        ResourceImpl built = index.build("mvn:org.acme/acme/1.0", headers);
+        assertEquals(0, index.getHits());
+        assertEquals(1, index.getMisses());
+        index.save();
+        index.close();
+        assertTrue(file.isFile());
+
+        index = new ResourceIndex(file);
+        ResourceImpl loaded = index.build("mvn:org.acme/acme/1.0", headers);
+        assertEquals(1, index.getHits());
+        assertEquals(0, index.getMisses());
+        assertNotSame(built, loaded);
+        assertSameResource(built, loaded);
+
+        // a change to the headers is a different entry
+        headers.put(Constants.IMPORT_PACKAGE, "org.osgi.framework;version=\"[1.7,2)\"");
+        index.build("mvn:org.acme/acme/1.0", headers);
+        assertEquals(1, index.getMisses());
+        index.close();
+    }
+
+    public void testHeaders() throws Exception {
+        File file = new File(directory, "resource-index.bin");
+        File jar = new File(directory, "acme.jar");
+        directory.mkdirs();
+        jar.createNewFile();
+
+        ResourceIndex index = new ResourceIndex(file);
+        assertNull(index.getHeaders(jar));
+        index.putHeaders(jar, createHeaders());
+        index.save();
+        index.close();
+
+        index = new ResourceIndex(file);
+        assertEquals(createHeaders(), index.getHeaders(jar));
+        jar.setLastModified(jar.lastModified() - 10000);
+        assertNull(index.getHeaders(jar));
+        index.close();
+    }
+
+    private static Map<String, String> createHeaders() {
+        Map<String, String> headers = new HashMap<>();
+        headers.put(Constants.BUNDLE_MANIFESTVERSION, "2");
+        headers.put(Constants.BUNDLE_SYMBOLICNAME, "org.acme");
+        headers.put(Constants.BUNDLE_VERSION, "1.0.0");
+        headers.put(Constants.IMPORT_PACKAGE, "org.osgi.framework;version=\"[1.6,2)\",org.slf4j;resolution:=optional");
+        headers.put(Constants.EXPORT_PACKAGE, "org.acme.api;version=1.0.0;uses:=\"org.osgi.framework\",org.acme.spi;version=1.0.0");
+        headers.put(Constants.PROVIDE_CAPABILITY, "org.acme.feature;names:List<String>=\"a,b\";rank:Long=5");
+        return headers;
+    }
+
+    private static void assertSameResource(ResourceImpl expected, ResourceImpl actual) {
+        List<Capability> expectedCaps = expected.getCapabilities(null);
+        List<Capability> actualCaps = actual.getCapabilities(null);
+        assertEquals(expectedCaps.size(), actualCaps.size());
+        for (int i = 0; i < expectedCaps.size(); i++) {
+            assertEquals(expectedCaps.get(i).getNamespace(), actualCaps.get(i).getNamespace());
+            assertEquals(expectedCaps.get(i).getDirectives(), actualCaps.get(i).getDirectives());
+            assertEquals(expectedCaps.get(i).getAttributes(), actualCaps.get(i).getAttributes());
+            assertSame(actual, actualCaps.get(i).getResource());
+        }
+        List<Requirement> expectedReqs = expected.getRequirements(null);
+        List<Requirement> actualReqs = actual.getRequirements(null);
+        assertEquals(expectedReqs.size(), actualReqs.size());
+        for (int i = 0; i < expectedReqs.size(); i++) {
+            assertEquals(expectedReqs.get(i).getNamespace(), actualReqs.get(i).getNamespace());
+            assertEquals(expectedReqs.get(i).getDirectives(), actualReqs.get(i).getDirectives());
+            assertEquals(expectedReqs.get(i).getAttributes().toString(), actualReqs.get(i).getAttributes().toString());
+            assertEquals(((RequirementImpl) expectedReqs.get(i)).getFilter().toString(),
+                    ((RequirementImpl) actualReqs.get(i)).getFilter().toString());
+            assertSame(actual, actualReqs.get(i).getResource());
+        }
+    }
+}
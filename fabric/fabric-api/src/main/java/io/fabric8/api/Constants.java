@@ -59,6 +59,11 @@ public interface Constants {
      * The PID of the context paths; mapping of group/artifact id -> context path mappings
      */
     String WEB_CONTEXT_PATHS_PID = "io.fabric8.web.contextPath";
+    /**
+     * The system property giving the directory of the download cache shared by the containers of a host;
+     * an empty value disables the cache
+     */
+    String DOWNLOAD_CACHE_PROPERTY = "fabric8.download.cache";
     /**
      * The Fabric8 management domain
      */
@@ -0,0 +1,73 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.api;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An immutable view of the registry state of a single container as read by {@link DataStore#getContainerSnapshots()}
+ */
+public class ContainerSnapshot {
+    private final String id;
+    private final String parentId;
+    private final String versionId;
+    private final List<String> profileIds;
+    private final boolean alive;
+    private final String provisionStatus;
+
+    public ContainerSnapshot(String id, String parentId, String versionId, List<String> profileIds, boolean alive, String provisionStatus) {
+        this.id = id;
+        this.parentId = parentId != null ? parentId : "";
+        this.versionId = versionId;
+        this.profileIds = profileIds != null ? Collections.unmodifiableList(profileIds) : Collections.<String>emptyList();
+        this.alive = alive;
+        this.provisionStatus = provisionStatus;
+    }
+
+    @Override
+    public String toString() {
+        return "ContainerSnapshot[" + id + ": parent=" + parentId + ", version=" + versionId + ", profiles=" + profileIds
+                + ", alive=" + alive + ", provisionStatus=" + provisionStatus + "]";
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * Returns the id of the parent container or an empty string for a root container
+     */
+    public String getParentId() {
+        return parentId;
+    }
+
+    public String getVersionId() {
+        return versionId;
+    }
+
+    public List<String> getProfileIds() {
+        return profileIds;
+    }
+
+    public boolean isAlive() {
+        return alive;
+    }
+
+    public String getProvisionStatus() {
+        return provisionStatus;
+    }
+}
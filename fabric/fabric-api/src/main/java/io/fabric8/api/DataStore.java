@@ -18,6 +18,7 @@ package io.fabric8.api;
 import java.io.IOException;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 
 /**
  * The Zookeeper based data store
@@ -38,12 +39,30 @@ public interface DataStore {
     void trackConfiguration(Runnable callback);
     void untrackConfiguration(Runnable callback);
 
+    /**
+     * Calls the given task with the reads it makes on this data store going straight to the registry after
+     * synchronizing with it, rather than being answered from the local caches, for callers which must see
+     * every change committed before the call.
+     */
+    <T> T callWithSyncReads(Callable<T> task) throws Exception;
+
     //
     // Container management
     //
 
     List<String> getContainers();
 
+    /**
+     * Returns a snapshot of the parent, version, profiles, liveness and provision status of every container,
+     * read in bulk rather than one container at a time
+     */
+    List<ContainerSnapshot> getContainerSnapshots();
+
+    /**
+     * Returns the ids of the containers of the given version which have the given profile assigned directly
+     */
+    List<String> getContainerIdsForProfile(String versionId, String profileId);
+
     boolean hasContainer(String containerId);
 
     String getContainerParent(String containerId);
@@ -23,6 +23,7 @@ import com.fasterxml.jackson.databind.node.ObjectNode;
 import io.fabric8.api.AutoScaleStatus;
 import io.fabric8.api.Constants;
 import io.fabric8.api.Container;
+import io.fabric8.api.ContainerSnapshot;
 import io.fabric8.api.ContainerProvider;
 import io.fabric8.api.CreateContainerBasicMetadata;
 import io.fabric8.api.CreateContainerBasicOptions;
@@ -358,14 +359,13 @@ public final class FabricManager implements FabricManagerMBean {
 
     @Override
     public void deleteVersion(String versionId) {
-        Container[] containers = fabricService.getContainers();
         StringBuilder sb = new StringBuilder();
-        for (Container container : fabricService.getContainers()) {
-            if (versionId.equals(container.getVersionId())) {
+        for (ContainerSnapshot snapshot : getDataStore().getContainerSnapshots()) {
+            if (versionId.equals(snapshot.getVersionId())) {
                 if (sb.length() > 0) {
                     sb.append(", ");
                 }
-                sb.append(container.getId());
+                sb.append(snapshot.getId());
             }
         }
         IllegalStateAssertion.assertTrue(sb.length() == 0, "Version " + versionId + " is still used by the following containers: " + sb.toString());
@@ -665,10 +665,7 @@ public final class FabricManager implements FabricManagerMBean {
 
     @Override
     public String[] containerIds() {
-        List<String> answer = new ArrayList<String>();
-        for (Container container : fabricService.getContainers()) {
-            answer.add(container.getId());
-        }
+        List<String> answer = getDataStore().getContainers();
         return answer.toArray(new String[answer.size()]);
     }
 
@@ -710,21 +707,34 @@ public final class FabricManager implements FabricManagerMBean {
         Profile profile = version != null ? version.getRequiredProfile(profileId) : null;
         Set<Map<String, Object>> answer = new LinkedHashSet<Map<String, Object>>();
         if (profile != null) {
-            for (Container c : fabricService.getContainers()) {
-                for (Profile p : c.getProfiles()) {
-                    if (p.equals(profile)) {
-                        answer.add(BeanUtils.convertContainerToMap(fabricService, c, fields));
-                    } else if (checkParents) {
+            Set<String> containerIds = new HashSet<>();
+            if (checkParents) {
+                for (ContainerSnapshot snapshot : getDataStore().getContainerSnapshots()) {
+                    if (!versionId.equals(snapshot.getVersionId())) {
+                        continue;
+                    }
+                    for (String containerProfileId : snapshot.getProfileIds()) {
+                        Profile p = version.getProfile(containerProfileId);
+                        if (p == null) {
+                            continue;
+                        }
+                        if (p.equals(profile)) {
+                            containerIds.add(snapshot.getId());
+                            break;
+                        }
                         HashSet<Profile> profileIDs = new HashSet<>();
                         getAllParentProfiles(version, p, profileIDs);
-                        for (Profile pprofile : profileIDs) {
-                            if (pprofile.equals(profile)) {
-                                answer.add(BeanUtils.convertContainerToMap(fabricService, c, fields));
-                                break;
-                            }
+                        if (profileIDs.contains(profile)) {
+                            containerIds.add(snapshot.getId());
+                            break;
                         }
                     }
                 }
+            } else {
+                containerIds.addAll(getDataStore().getContainerIdsForProfile(versionId, profileId));
+            }
+            for (Container c : getContainers(containerIds)) {
+                answer.add(BeanUtils.convertContainerToMap(fabricService, c, fields));
             }
         }
         return new ArrayList<>(answer);
@@ -764,15 +774,38 @@ public final class FabricManager implements FabricManagerMBean {
         Version version = profileService.getVersion(versionId);
         List<Map<String, Object>> answer = new ArrayList<Map<String, Object>>();
         if (version != null) {
+            Set<String> containerIds = new HashSet<>();
+            for (ContainerSnapshot snapshot : getDataStore().getContainerSnapshots()) {
+                if (versionId.equals(snapshot.getVersionId())) {
+                    containerIds.add(snapshot.getId());
+                }
+            }
+            for (Container c : getContainers(containerIds)) {
+                answer.add(BeanUtils.convertContainerToMap(fabricService, c, fields));
+            }
+        }
+        return answer;
+    }
+
+    /**
+     * Returns the containers with the given ids, whose ids and parents the data store answers from its caches
+     */
+    private List<Container> getContainers(Set<String> containerIds) {
+        List<Container> answer = new ArrayList<>();
+        if (!containerIds.isEmpty()) {
             for (Container c : fabricService.getContainers()) {
-                if (c.getVersion().equals(version)) {
-                    answer.add(BeanUtils.convertContainerToMap(fabricService, c, fields));
+                if (containerIds.contains(c.getId())) {
+                    answer.add(c);
                 }
             }
         }
         return answer;
     }
 
+    private DataStore getDataStore() {
+        return fabricService.adapt(DataStore.class);
+    }
+
     @Override
     public void setContainerProperty(String containerId, String property, Object value) {
         Container container = fabricService.getContainer(containerId);
@@ -0,0 +1,188 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.internal;
+
+import io.fabric8.api.Profile;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.felix.utils.properties.Properties;
+
+/**
+ * Caches the overlay profiles built by {@link ProfileServiceImpl} together with the parsed properties files of the
+ * profiles they inherit from, so that the overlays of deep hierarchies are not rebuilt and re-parsed on every call.
+ * <p/>
+ * Profiles are immutable and the registry hands out the same instances until a profile changes, so an overlay is
+ * keyed by the identity of every profile in its inheritance chain along with the environment. A changed profile can
+ * therefore never hit a stale overlay; the cache is still cleared on every data store change so that replaced
+ * profiles are not retained.
+ */
+final class OverlayProfileCache {
+
+    static final int DEFAULT_MAX_OVERLAYS = 1024;
+    static final int DEFAULT_MAX_PROPERTIES = 8192;
+
+    private final ConcurrentMap<OverlayKey, Profile> overlays = new ConcurrentHashMap<>();
+    private final ConcurrentMap<ContentKey, Properties> properties = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final int maxOverlays;
+    private final int maxProperties;
+
+    OverlayProfileCache() {
+        this(DEFAULT_MAX_OVERLAYS, DEFAULT_MAX_PROPERTIES);
+    }
+
+    OverlayProfileCache(int maxOverlays, int maxProperties) {
+        this.maxOverlays = maxOverlays;
+        this.maxProperties = maxProperties;
+    }
+
+    Profile get(OverlayKey key) {
+        Profile answer = overlays.get(key);
+        if (answer != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+        }
+        return answer;
+    }
+
+    /**
+     * Caches the given overlay returning the one cached by a concurrent caller if there is one
+     */
+    Profile putIfAbsent(OverlayKey key, Profile overlay) {
+        if (overlays.size() >= maxOverlays) {
+            overlays.clear();
+        }
+        Profile answer = overlays.putIfAbsent(key, overlay);
+        return answer != null ? answer : overlay;
+    }
+
+    /**
+     * Returns the parsed properties of the given file content which are shared by all the overlays and so
+     * must not be modified
+     */
+    Properties getProperties(byte[] data) {
+        ContentKey key = new ContentKey(data);
+        Properties answer = properties.get(key);
+        if (answer == null) {
+            if (properties.size() >= maxProperties) {
+                properties.clear();
+            }
+            Properties parsed = ProfileUtils.toProperties(data);
+            answer = properties.putIfAbsent(key, parsed);
+            if (answer == null) {
+                answer = parsed;
+            }
+        }
+        return answer;
+    }
+
+    void clear() {
+        overlays.clear();
+        properties.clear();
+    }
+
+    int size() {
+        return overlays.size();
+    }
+
+    long getHits() {
+        return hits.get();
+    }
+
+    long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Identifies an overlay by the profiles it is built from, compared by identity
+     */
+    static final class OverlayKey {
+        private final String versionId;
+        private final String profileId;
+        private final String environment;
+        private final Profile[] profiles;
+        private final int hashCode;
+
+        OverlayKey(String versionId, String profileId, String environment, List<Profile> profiles) {
+            this.versionId = versionId;
+            this.profileId = profileId;
+            this.environment = environment;
+            this.profiles = profiles.toArray(new Profile[profiles.size()]);
+            int result = versionId.hashCode();
+            result = 31 * result + profileId.hashCode();
+            result = 31 * result + (environment != null ? environment.hashCode() : 0);
+            for (Profile profile : this.profiles) {
+                result = 31 * result + System.identityHashCode(profile);
+            }
+            this.hashCode = result;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) return true;
+            if (!(obj instanceof OverlayKey)) return false;
+            OverlayKey other = (OverlayKey) obj;
+            if (hashCode != other.hashCode || profiles.length != other.profiles.length) {
+                return false;
+            }
+            for (int i = 0; i < profiles.length; i++) {
+                if (profiles[i] != other.profiles[i]) {
+                    return false;
+                }
+            }
+            return versionId.equals(other.versionId) && profileId.equals(other.profileId)
+                    && (environment != null ? environment.equals(other.environment) : other.environment == null);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public String toString() {
+            return "OverlayKey[version=" + versionId + ",profile=" + profileId + ",environment=" + environment
+                    + ",inherited=" + profiles.length + "]";
+        }
+    }
+
+    /**
+     * Identifies file content by the identity of its byte array which profiles share until they are changed
+     */
+    private static final class ContentKey {
+        private final byte[] data;
+
+        ContentKey(byte[] data) {
+            this.data = data;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof ContentKey && ((ContentKey) obj).data == data;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(data);
+        }
+    }
+}
@@ -16,6 +16,7 @@
 package io.fabric8.internal;
 
 import io.fabric8.api.Container;
+import io.fabric8.api.DataStore;
 import io.fabric8.api.FabricException;
 import io.fabric8.api.FabricRequirements;
 import io.fabric8.api.FabricService;
@@ -37,8 +38,10 @@ import io.fabric8.utils.DataStoreUtils;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import io.fabric8.utils.FabricValidations;
 import org.apache.felix.scr.annotations.Activate;
@@ -63,6 +66,16 @@ public final class ProfileServiceImpl extends AbstractProtectedComponent<Profile
     private final ValidatingReference<ProfileRegistry> profileRegistry = new ValidatingReference<>();
     @Reference(referenceInterface = RuntimeProperties.class)
     private final ValidatingReference<RuntimeProperties> runtimeProperties = new ValidatingReference<>();
+    @Reference(referenceInterface = DataStore.class)
+    private final ValidatingReference<DataStore> dataStore = new ValidatingReference<>();
+
+    private final OverlayProfileCache overlayCache = new OverlayProfileCache();
+    private final Runnable overlayCacheInvalidator = new Runnable() {
+        @Override
+        public void run() {
+            overlayCache.clear();
+        }
+    };
 
     static class OverlayAudit {
         Map<String, Profile> overlayProfiles = new HashMap<String, Profile>();
@@ -72,6 +85,7 @@ public final class ProfileServiceImpl extends AbstractProtectedComponent<Profile
     @VisibleForExternal
     public void activate() throws Exception {
         getOverlayAudit();
+        dataStore.get().trackConfiguration(overlayCacheInvalidator);
         activateComponent(PERMIT, this);
     }
 
@@ -89,6 +103,8 @@ public final class ProfileServiceImpl extends AbstractProtectedComponent<Profile
     @Deactivate
     void deactivate() {
         deactivateComponent(PERMIT);
+        dataStore.get().untrackConfiguration(overlayCacheInvalidator);
+        overlayCache.clear();
     }
 
     @Override
@@ -182,35 +198,38 @@ public final class ProfileServiceImpl extends AbstractProtectedComponent<Profile
     public Profile getOverlayProfile(Profile profile) {
         assertValid();
         Profile overlayProfile;
-        synchronized (this) {
-            if (profile.isOverlay()) {
-                LOGGER.debug("getOverlayProfile, given profile is already an overlay: " + profile);
-                overlayProfile = profile;
-            } else {
-                String profileId = profile.getId();
-                String environment = runtimeProperties.get().getProperty(SystemProperties.FABRIC_ENVIRONMENT);
-                if (environment == null) {
-                    // lets default to the environment from the current active
-                    // set of profiles (e.g. docker or openshift)
-                    environment = System.getProperty(SystemProperties.FABRIC_PROFILE_ENVIRONMENT);
-                }
-                Version version = getRequiredVersion(profile.getVersion());
+        if (profile.isOverlay()) {
+            LOGGER.debug("getOverlayProfile, given profile is already an overlay: " + profile);
+            overlayProfile = profile;
+        } else {
+            String profileId = profile.getId();
+            String environment = runtimeProperties.get().getProperty(SystemProperties.FABRIC_ENVIRONMENT);
+            if (environment == null) {
+                // lets default to the environment from the current active
+                // set of profiles (e.g. docker or openshift)
+                environment = System.getProperty(SystemProperties.FABRIC_PROFILE_ENVIRONMENT);
+            }
+            Version version = getRequiredVersion(profile.getVersion());
+            List<Profile> inheritedProfiles = OverlayOptionsProvider.getInheritedProfiles(version, profile);
+            OverlayProfileCache.OverlayKey key = new OverlayProfileCache.OverlayKey(profile.getVersion(), profileId, environment, inheritedProfiles);
+            overlayProfile = overlayCache.get(key);
+            if (overlayProfile == null) {
                 ProfileBuilder builder = ProfileBuilder.Factory.create(profile.getVersion(), profileId);
-                builder.addOptions(new OverlayOptionsProvider(version, profile, environment));
-                overlayProfile = builder.getProfile();
-
-                // Log the overlay profile difference
-                if (LOGGER.isDebugEnabled()) {
-                    OverlayAudit audit = getOverlayAudit();
-                    synchronized (audit) {
-                        Profile lastOverlay = audit.overlayProfiles.get(profileId);
-                        if (lastOverlay == null) {
-                            LOGGER.debug("Overlay" + Profiles.getProfileInfo(overlayProfile));
-                            audit.overlayProfiles.put(profileId, overlayProfile);
-                        } else if (!lastOverlay.equals(overlayProfile)) {
-                            LOGGER.debug("Overlay" + Profiles.getProfileDifference(lastOverlay, overlayProfile));
-                            audit.overlayProfiles.put(profileId, overlayProfile);
-                        }
+                builder.addOptions(new OverlayOptionsProvider(version, profile, environment, inheritedProfiles, overlayCache));
+                overlayProfile = overlayCache.putIfAbsent(key, builder.getProfile());
+            }
+
+            // Log the overlay profile difference
+            if (LOGGER.isDebugEnabled()) {
+                OverlayAudit audit = getOverlayAudit();
+                synchronized (audit) {
+                    Profile lastOverlay = audit.overlayProfiles.get(profileId);
+                    if (lastOverlay == null) {
+                        LOGGER.debug("Overlay" + Profiles.getProfileInfo(overlayProfile));
+                        audit.overlayProfiles.put(profileId, overlayProfile);
+                    } else if (!lastOverlay.equals(overlayProfile)) {
+                        LOGGER.debug("Overlay" + Profiles.getProfileDifference(lastOverlay, overlayProfile));
+                        audit.overlayProfiles.put(profileId, overlayProfile);
                     }
                 }
             }
@@ -266,72 +285,73 @@ public final class ProfileServiceImpl extends AbstractProtectedComponent<Profile
         private final Version version;
         private final Profile self;
         private final String environment;
+        private final List<Profile> inheritedProfiles;
+        private final OverlayProfileCache cache;
 
         private static class SupplementControl {
             byte[] data;
             Properties props;
+            // the props are shared with other overlays until they are first modified
+            boolean shared;
         }
 
-        OverlayOptionsProvider(Version version, Profile self, String environment) {
+        OverlayOptionsProvider(Version version, Profile self, String environment, List<Profile> inheritedProfiles, OverlayProfileCache cache) {
             this.version = version;
             this.self = self;
             this.environment = environment;
+            this.inheritedProfiles = inheritedProfiles;
+            this.cache = cache;
         }
 
         @Override
         public ProfileBuilder addOptions(ProfileBuilder builder) {
+            Map<String, SupplementControl> aggregate = getAggregate();
             builder.setAttributes(self.getAttributes());
-            builder.setFileConfigurations(getFileConfigurations());
-            builder.setConfigurations(getConfigurations());
+            builder.setFileConfigurations(getFileConfigurations(aggregate));
+            builder.setConfigurations(getConfigurations(aggregate));
             builder.setLastModified(getLastModified());
             builder.setOverlay(true);
             return builder;
         }
 
-        private Map<String, byte[]> getFileConfigurations() {
+        private Map<String, SupplementControl> getAggregate() {
             try {
                 Map<String, SupplementControl> aggregate = new HashMap<String, SupplementControl>();
-                for (Profile profile : getInheritedProfiles()) {
+                for (Profile profile : inheritedProfiles) {
                     supplement(profile, aggregate);
                 }
-
-                Map<String, byte[]> rc = new HashMap<String, byte[]>();
-                for (Map.Entry<String, SupplementControl> entry : aggregate.entrySet()) {
-                    SupplementControl ctrl = entry.getValue();
-                    if (ctrl.props != null) {
-                        ctrl.data = DataStoreUtils.toBytes(ctrl.props);
-                    }
-                    rc.put(entry.getKey(), ctrl.data);
-                }
-                return rc;
+                return aggregate;
             } catch (Exception e) {
                 throw FabricException.launderThrowable(e);
             }
         }
 
-        private Map<String, Map<String, String>> getConfigurations() {
-            try {
-                Map<String, SupplementControl> aggregate = new HashMap<String, SupplementControl>();
-                for (Profile profile : getInheritedProfiles()) {
-                    supplement(profile, aggregate);
+        private Map<String, byte[]> getFileConfigurations(Map<String, SupplementControl> aggregate) {
+            Map<String, byte[]> rc = new HashMap<String, byte[]>();
+            for (Map.Entry<String, SupplementControl> entry : aggregate.entrySet()) {
+                SupplementControl ctrl = entry.getValue();
+                // properties files are written from the configurations
+                if (ctrl.props == null) {
+                    rc.put(entry.getKey(), ctrl.data);
                 }
+            }
+            return rc;
+        }
 
-                Map<String, Map<String, String>> rc = new HashMap<String, Map<String, String>>();
-                for (Map.Entry<String, SupplementControl> entry : aggregate.entrySet()) {
-                    SupplementControl ctrl = entry.getValue();
-                    if (ctrl.props != null) {
-                        rc.put(DataStoreUtils.stripSuffix(entry.getKey(), ".properties"), ctrl.props);
-                    }
+        private Map<String, Map<String, String>> getConfigurations(Map<String, SupplementControl> aggregate) {
+            Map<String, Map<String, String>> rc = new HashMap<String, Map<String, String>>();
+            for (Map.Entry<String, SupplementControl> entry : aggregate.entrySet()) {
+                SupplementControl ctrl = entry.getValue();
+                if (ctrl.props != null) {
+                    rc.put(DataStoreUtils.stripSuffix(entry.getKey(), ".properties"), ctrl.props);
                 }
-                return rc;
-            } catch (Exception e) {
-                throw FabricException.launderThrowable(e);
             }
+            return rc;
         }
 
-        private List<Profile> getInheritedProfiles() {
+        static List<Profile> getInheritedProfiles(Version version, Profile self) {
             List<Profile> profiles = new ArrayList<>();
-            fillParentProfiles(self, profiles);
+            fillParentProfiles(version, self, profiles, new HashSet<String>());
             // always prepend "default" as first profile
             if(profiles.size() > 0){
                 if(!"default".equals(profiles.get(0).getId())){
@@ -341,11 +361,11 @@ public final class ProfileServiceImpl extends AbstractProtectedComponent<Profile
             return profiles;
         }
 
-        private void fillParentProfiles(Profile profile, List<Profile> profiles) {
-            if (!profiles.contains(profile)) {
+        private static void fillParentProfiles(Version version, Profile profile, List<Profile> profiles, Set<String> visited) {
+            if (visited.add(profile.getId())) {
                 for (String parentId : profile.getParentIds()) {
                     Profile parent = version.getRequiredProfile(parentId);
-                    fillParentProfiles(parent, profiles);
+                    fillParentProfiles(version, parent, profiles, visited);
                 }
                 profiles.add(profile);
             }
@@ -370,13 +390,22 @@ public final class ProfileServiceImpl extends AbstractProtectedComponent<Profile
                     SupplementControl ctrl = aggregate.get(fileName);
                     if (ctrl != null) {
                         // we can update the file..
-                        Properties childMap = ProfileUtils.toProperties(value);
-                        if (childMap.remove(Profile.DELETED) != null) {
+                        Properties childMap = cache.getProperties(value);
+                        if (ctrl.shared) {
+                            Properties props = new Properties(false);
+                            props.putAll(ctrl.props);
+                            ctrl.props = props;
+                            ctrl.shared = false;
+                        }
+                        if (childMap.containsKey(Profile.DELETED)) {
                             ctrl.props.clear();
                         }
 
                         // Update the entries...
                         for (Map.Entry<String, String> p : childMap.entrySet()) {
+                            if (Profile.DELETED.equals(p.getKey())) {
+                                continue;
+                            }
                             if (Profile.DELETED.equals(p.getValue())) {
                                 ctrl.props.remove(p.getKey());
                             } else {
@@ -387,7 +416,8 @@ public final class ProfileServiceImpl extends AbstractProtectedComponent<Profile
                     } else {
                         // new file..
                         ctrl = new SupplementControl();
-                        ctrl.props = ProfileUtils.toProperties(value);
+                        ctrl.props = cache.getProperties(value);
+                        ctrl.shared = true;
                         aggregate.put(fileName, ctrl);
                     }
                 } else {
@@ -427,4 +457,13 @@ public final class ProfileServiceImpl extends AbstractProtectedComponent<Profile
     void unbindRuntimeProperties(RuntimeProperties service) {
         this.runtimeProperties.unbind(service);
     }
+
+    @VisibleForExternal
+    public void bindDataStore(DataStore service) {
+        this.dataStore.bind(service);
+    }
+
+    void unbindDataStore(DataStore service) {
+        this.dataStore.unbind(service);
+    }
 }
@@ -0,0 +1,177 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.service;
+
+import static io.fabric8.zookeeper.utils.ZooKeeperUtils.getChildrenSafe;
+import io.fabric8.api.ContainerSnapshot;
+import io.fabric8.api.FabricException;
+import io.fabric8.common.util.Strings;
+import io.fabric8.zookeeper.ZkPath;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.api.BackgroundCallback;
+import org.apache.curator.framework.api.CuratorEvent;
+import org.apache.zookeeper.KeeperException;
+
+/**
+ * Reads a {@link ContainerSnapshot} of every container using pipelined asynchronous ZooKeeper reads, so that a
+ * snapshot of the whole fabric costs a handful of round trips rather than several synchronous reads per container.
+ * <p/>
+ * A reader is good for a single {@link #read(long)}.
+ */
+class ContainerSnapshotReader implements BackgroundCallback {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private enum Field {
+        PARENT, VERSION, PROFILES, ALIVE, PROVISION_STATUS
+    }
+
+    private final CuratorFramework curator;
+    // starts at one so that the reads completing while others are still being issued can not finish the snapshot
+    private final AtomicInteger pending = new AtomicInteger(1);
+    private final CountDownLatch done = new CountDownLatch(1);
+    private volatile Exception failure;
+
+    ContainerSnapshotReader(CuratorFramework curator) {
+        this.curator = curator;
+    }
+
+    List<ContainerSnapshot> read(long timeout) throws Exception {
+        List<String> containerIds = getChildrenSafe(curator, ZkPath.CONFIGS_CONTAINERS.getPath());
+        List<Entry> entries = new ArrayList<Entry>(containerIds.size());
+        for (String containerId : containerIds) {
+            Entry entry = new Entry(containerId);
+            entries.add(entry);
+            read(entry, Field.PARENT, ZkPath.CONTAINER_PARENT.getPath(containerId));
+            read(entry, Field.VERSION, ZkPath.CONFIG_CONTAINER.getPath(containerId));
+            read(entry, Field.ALIVE, ZkPath.CONTAINER_ALIVE.getPath(containerId));
+            read(entry, Field.PROVISION_STATUS, ZkPath.CONTAINER_PROVISION_RESULT.getPath(containerId));
+        }
+        completed();
+        if (!done.await(timeout, TimeUnit.MILLISECONDS)) {
+            throw new FabricException("Timed out reading the snapshot of " + containerIds.size() + " containers");
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        List<ContainerSnapshot> answer = new ArrayList<ContainerSnapshot>(entries.size());
+        for (Entry entry : entries) {
+            answer.add(entry.toSnapshot());
+        }
+        return answer;
+    }
+
+    private void read(Entry entry, Field field, String path) throws Exception {
+        pending.incrementAndGet();
+        Read read = new Read(entry, field);
+        try {
+            if (field == Field.ALIVE) {
+                curator.checkExists().inBackground(this, read).forPath(path);
+            } else {
+                curator.getData().inBackground(this, read).forPath(path);
+            }
+        } catch (Exception e) {
+            completed();
+            throw e;
+        }
+    }
+
+    @Override
+    public void processResult(CuratorFramework client, CuratorEvent event) throws Exception {
+        try {
+            Read read = (Read) event.getContext();
+            int resultCode = event.getResultCode();
+            if (resultCode == KeeperException.Code.OK.intValue()) {
+                read.completed(event.getData());
+            } else if (resultCode != KeeperException.Code.NONODE.intValue()) {
+                failure = KeeperException.create(KeeperException.Code.get(resultCode), event.getPath());
+            }
+        } catch (Exception e) {
+            failure = e;
+        } finally {
+            completed();
+        }
+    }
+
+    private void completed() {
+        if (pending.decrementAndGet() == 0) {
+            done.countDown();
+        }
+    }
+
+    private class Read {
+        private final Entry entry;
+        private final Field field;
+
+        Read(Entry entry, Field field) {
+            this.entry = entry;
+            this.field = field;
+        }
+
+        void completed(byte[] data) throws Exception {
+            String value = data != null ? new String(data, UTF_8) : null;
+            switch (field) {
+                case PARENT:
+                    entry.parentId = value != null ? value.trim() : "";
+                    break;
+                case VERSION:
+                    entry.versionId = value;
+                    if (Strings.isNotBlank(value)) {
+                        // issued before this read completes so the snapshot can not finish without it
+                        read(entry, Field.PROFILES, ZkPath.CONFIG_VERSIONS_CONTAINER.getPath(value, entry.id));
+                    }
+                    break;
+                case PROFILES:
+                    entry.profileIds = value == null || value.trim().isEmpty()
+                            ? Collections.<String>emptyList() : Arrays.asList(value.trim().split(" +"));
+                    break;
+                case ALIVE:
+                    entry.alive = true;
+                    break;
+                case PROVISION_STATUS:
+                    entry.provisionStatus = value;
+                    break;
+            }
+        }
+    }
+
+    private static class Entry {
+        private final String id;
+        private volatile String parentId;
+        private volatile String versionId;
+        private volatile List<String> profileIds;
+        private volatile boolean alive;
+        private volatile String provisionStatus;
+
+        Entry(String id) {
+            this.id = id;
+        }
+
+        ContainerSnapshot toSnapshot() {
+            return new ContainerSnapshot(id, parentId, versionId, profileIds, alive, provisionStatus);
+        }
+    }
+}
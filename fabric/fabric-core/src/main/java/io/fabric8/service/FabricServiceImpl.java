@@ -18,7 +18,6 @@ package io.fabric8.service;
 import java.io.IOException;
 import java.net.URI;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -275,9 +274,10 @@ public final class FabricServiceImpl extends AbstractComponent implements Fabric
     public Container[] getContainers() {
         assertValid();
         Map<String, Container> containers = new HashMap<String, Container>();
-        List<String> containerIds = dataStore.get().getContainers();
-        for (String containerId : containerIds) {
-            String parentId = dataStore.get().getContainerParent(containerId);
+        // only the id and parent are needed here, which the data store answers from its caches
+        DataStore store = dataStore.get();
+        for (String containerId : store.getContainers()) {
+            String parentId = store.getContainerParent(containerId);
             if (parentId.isEmpty()) {
                 if (!containers.containsKey(containerId)) {
                     Container container = new ContainerImpl(null, containerId, this);
@@ -299,13 +299,14 @@ public final class FabricServiceImpl extends AbstractComponent implements Fabric
 	@Override
 	public Container[] getAssociatedContainers(String versionId, String profileId) {
 		assertValid();
+        Set<String> containerIds = new HashSet<>(dataStore.get().getContainerIdsForProfile(versionId, profileId));
         List<Container> containers = new ArrayList<>();
-        for (Container container : getContainers()) {
-        	for (Profile profile : Arrays.asList(container.getProfiles())) {
-                if (profile.getId().equals(profileId) && profile.getVersion().equals(versionId)) {
+        if (!containerIds.isEmpty()) {
+            for (Container container : getContainers()) {
+                if (containerIds.contains(container.getId())) {
                     containers.add(container);
-            	}
-        	}
+                }
+            }
         }
         return containers.toArray(new Container[containers.size()]);
 	}
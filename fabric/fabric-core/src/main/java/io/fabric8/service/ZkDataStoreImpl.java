@@ -20,10 +20,14 @@ import static io.fabric8.zookeeper.utils.ZooKeeperUtils.deleteSafe;
 import static io.fabric8.zookeeper.utils.ZooKeeperUtils.exists;
 import static io.fabric8.zookeeper.utils.ZooKeeperUtils.getByteData;
 import static io.fabric8.zookeeper.utils.ZooKeeperUtils.getChildrenSafe;
+import static io.fabric8.zookeeper.utils.ZooKeeperUtils.getData;
 import static io.fabric8.zookeeper.utils.ZooKeeperUtils.getStringData;
+import static io.fabric8.zookeeper.utils.ZooKeeperUtils.getStringDataSafe;
+import static io.fabric8.zookeeper.utils.ZooKeeperUtils.getSubstitutedData;
 import static io.fabric8.zookeeper.utils.ZooKeeperUtils.getSubstitutedPath;
 import static io.fabric8.zookeeper.utils.ZooKeeperUtils.setData;
 import io.fabric8.api.AutoScaleStatus;
+import io.fabric8.api.ContainerSnapshot;
 import io.fabric8.api.CreateContainerMetadata;
 import io.fabric8.api.CreateContainerOptions;
 import io.fabric8.api.DataStore;
@@ -53,19 +57,27 @@ import java.io.ObjectStreamClass;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.api.BackgroundCallback;
+import org.apache.curator.framework.api.CuratorEvent;
 import org.apache.curator.framework.recipes.cache.ChildData;
 import org.apache.curator.framework.recipes.cache.PathChildrenCacheEvent;
 import org.apache.curator.framework.recipes.cache.PathChildrenCacheListener;
 import org.apache.curator.framework.recipes.cache.TreeCache;
+import org.apache.curator.framework.recipes.cache.TreeData;
 import org.apache.felix.scr.annotations.Activate;
 import org.apache.felix.scr.annotations.Component;
 import org.apache.felix.scr.annotations.ConfigurationPolicy;
@@ -79,6 +91,10 @@ import org.slf4j.LoggerFactory;
 
 /**
  * A Zookeeper based implementation of {@link DataStore}.
+ * <p/>
+ * Reads of the container registry and configuration are answered from the {@link TreeCache}s of their subtrees,
+ * which load any node they do not hold from ZooKeeper, and only fall back to querying ZooKeeper directly when a
+ * node does not exist. Callers which need linearizable reads can use {@link #callWithSyncReads(Callable)}.
  */
 @ThreadSafe
 @Component(label = "Fabric8 DataStore", policy = ConfigurationPolicy.IGNORE, immediate = true, metatype = true)
@@ -89,6 +105,7 @@ public class ZkDataStoreImpl extends AbstractComponent implements DataStore, Pat
     
     private static final String JVM_OPTIONS_PATH = "/fabric/configs/io.fabric8.containers.jvmOptions";
     private static final String REQUIREMENTS_JSON_PATH = "/fabric/configs/io.fabric8.requirements.json";
+    private static final long SYNC_TIMEOUT = 30000L;
     
     @Reference(referenceInterface = CuratorFramework.class)
     private final ValidatingReference<CuratorFramework> curator = new ValidatingReference<CuratorFramework>();
@@ -100,6 +117,10 @@ public class ZkDataStoreImpl extends AbstractComponent implements DataStore, Pat
     private final ExecutorService callbacksExecutor = Executors.newSingleThreadExecutor(new NamedThreadFactory("zk-datastore"));
     private TreeCache configCache;
     private TreeCache containerCache;
+    private final ThreadLocal<Boolean> syncReads = new ThreadLocal<Boolean>();
+    // the containers of each version/profile, rebuilt from the next snapshot after any assignment changes
+    private volatile Map<String, List<String>> profileContainers;
+    private final AtomicLong profileContainersGeneration = new AtomicLong();
 
     @Activate
     void activate() throws Exception {
@@ -153,6 +174,10 @@ public class ZkDataStoreImpl extends AbstractComponent implements DataStore, Pat
                 data = childData.getData();
             }
 
+            if (path != null && (path.startsWith(ZkPath.CONFIGS_CONTAINERS.getPath()) || path.startsWith(ZkPath.CONFIG_VERSIONS.getPath()))) {
+                invalidateProfileContainers();
+            }
+
             PathChildrenCacheEvent.Type type = event.getType();
             switch (type) {
                 case CHILD_ADDED:
@@ -232,27 +257,115 @@ public class ZkDataStoreImpl extends AbstractComponent implements DataStore, Pat
         callbacks.remove(callback);
     }
 
+    @Override
+    public <T> T callWithSyncReads(Callable<T> task) throws Exception {
+        assertValid();
+        Boolean previous = syncReads.get();
+        if (previous == null) {
+            sync(ZkPath.CONFIGS.getPath());
+            syncReads.set(Boolean.TRUE);
+        }
+        try {
+            return task.call();
+        } finally {
+            if (previous == null) {
+                syncReads.remove();
+            }
+        }
+    }
+
     @Override
     public List<String> getContainers() {
         assertValid();
         try {
-            return getChildrenSafe(curator.get(), ZkPath.CONFIGS_CONTAINERS.getPath());
+            String path = ZkPath.CONFIGS_CONTAINERS.getPath();
+            TreeData data = getCachedData(configCache, path);
+            if (data != null) {
+                return new ArrayList<String>(data.getChildren());
+            }
+            return getChildrenSafe(curator.get(), path);
+        } catch (Exception e) {
+            throw FabricException.launderThrowable(e);
+        }
+    }
+
+    @Override
+    public List<ContainerSnapshot> getContainerSnapshots() {
+        assertValid();
+        try {
+            long generation = profileContainersGeneration.get();
+            List<ContainerSnapshot> snapshots = new ContainerSnapshotReader(curator.get()).read(SYNC_TIMEOUT);
+            Map<String, List<String>> index = indexContainersByProfile(snapshots);
+            // only publish the index if no assignment changed while we were reading
+            synchronized (profileContainersGeneration) {
+                if (generation == profileContainersGeneration.get()) {
+                    profileContainers = index;
+                }
+            }
+            return snapshots;
         } catch (Exception e) {
             throw FabricException.launderThrowable(e);
         }
     }
 
+    @Override
+    public List<String> getContainerIdsForProfile(String versionId, String profileId) {
+        assertValid();
+        Map<String, List<String>> index = profileContainers;
+        if (index == null || isSyncReads()) {
+            index = indexContainersByProfile(getContainerSnapshots());
+        }
+        List<String> answer = index.get(versionId + "/" + profileId);
+        return answer != null ? Collections.unmodifiableList(answer) : Collections.<String>emptyList();
+    }
+
+    /**
+     * Indexes the container ids by <code>version/profile</code>; a container without any profile is indexed under the
+     * {@link ZkDefs#DEFAULT_PROFILE default} profile of its version in the same way as {@link io.fabric8.api.Container#getProfiles()}
+     */
+    static Map<String, List<String>> indexContainersByProfile(List<ContainerSnapshot> snapshots) {
+        Map<String, List<String>> index = new HashMap<String, List<String>>();
+        for (ContainerSnapshot snapshot : snapshots) {
+            List<String> profileIds = snapshot.getProfileIds();
+            if (profileIds.isEmpty()) {
+                profileIds = Collections.singletonList(ZkDefs.DEFAULT_PROFILE);
+            }
+            for (String profileId : profileIds) {
+                String key = snapshot.getVersionId() + "/" + profileId;
+                List<String> containerIds = index.get(key);
+                if (containerIds == null) {
+                    containerIds = new ArrayList<String>();
+                    index.put(key, containerIds);
+                }
+                containerIds.add(snapshot.getId());
+            }
+        }
+        return index;
+    }
+
+    private void invalidateProfileContainers() {
+        synchronized (profileContainersGeneration) {
+            profileContainersGeneration.incrementAndGet();
+            profileContainers = null;
+        }
+    }
+
     @Override
     public boolean hasContainer(String containerId) {
         assertValid();
-        return getContainers().contains(containerId);
+        try {
+            String path = ZkPath.CONFIG_CONTAINER.getPath(containerId);
+            return getCachedData(configCache, path) != null || exists(curator.get(), path) != null;
+        } catch (Exception e) {
+            throw FabricException.launderThrowable(e);
+        }
     }
 
     @Override
     public String getContainerParent(String containerId) {
         assertValid();
         try {
-            String parentName = getStringData(curator.get(), ZkPath.CONTAINER_PARENT.getPath(containerId));
+            String parentName = getCachedStringData(containerCache, ZkPath.CONTAINER_PARENT.getPath(containerId));
             return parentName != null ? parentName.trim() : "";
         } catch (KeeperException.NoNodeException e) {
             // Ignore
@@ -281,6 +394,7 @@ public class ZkDataStoreImpl extends AbstractComponent implements DataStore, Pat
             deleteSafe(curator.get(), ZkPath.CONTAINER_PROVISION.getPath(containerId));
             deleteSafe(curator.get(), ZkPath.CONTAINER_STATUS.getPath(containerId));
             deleteSafe(curator.get(), ZkPath.AUTHENTICATION_CONTAINER.getPath(containerId));
+            invalidateProfileContainers();
         } catch (Exception e) {
             throw FabricException.launderThrowable(e);
         }
@@ -305,6 +419,7 @@ public class ZkDataStoreImpl extends AbstractComponent implements DataStore, Pat
             setData(curator.get(), ZkPath.CONFIG_CONTAINER.getPath(containerId), versionId);
             setData(curator.get(), ZkPath.CONFIG_VERSIONS_CONTAINER.getPath(versionId, containerId), sb.toString());
             setData(curator.get(), ZkPath.CONTAINER_PARENT.getPath(containerId), parent);
+            invalidateProfileContainers();
         } catch (Exception e) {
             throw FabricException.launderThrowable(e);
         }
@@ -369,7 +484,8 @@ public class ZkDataStoreImpl extends AbstractComponent implements DataStore, Pat
     public CreateContainerMetadata getContainerMetadata(String containerId, final ClassLoader classLoader) {
         assertValid();
         try {
-            byte[] encoded = getByteData(configCache, ZkPath.CONTAINER_METADATA.getPath(containerId));
+            String path = ZkPath.CONTAINER_METADATA.getPath(containerId);
+            byte[] encoded = isSyncReads() ? getData(curator.get(), path) : getByteData(configCache, path);
             if (encoded == null) {
                 return null;
             }
@@ -407,7 +523,8 @@ public class ZkDataStoreImpl extends AbstractComponent implements DataStore, Pat
     public String getContainerVersion(String containerId) {
         assertValid();
         try {
-            return getStringData(configCache, ZkPath.CONFIG_CONTAINER.getPath(containerId));
+            String path = ZkPath.CONFIG_CONTAINER.getPath(containerId);
+            return isSyncReads() ? getStringDataSafe(curator.get(), path) : getStringData(configCache, path);
         } catch (Exception e) {
             throw FabricException.launderThrowable(e);
         }
@@ -422,6 +539,7 @@ public class ZkDataStoreImpl extends AbstractComponent implements DataStore, Pat
 
             setData(curator.get(), ZkPath.CONFIG_VERSIONS_CONTAINER.getPath(versionId, containerId), oldProfileIds);
             setData(curator.get(), ZkPath.CONFIG_CONTAINER.getPath(containerId), versionId);
+            invalidateProfileContainers();
         } catch (Exception e) {
             throw FabricException.launderThrowable(e);
         }
@@ -433,9 +551,10 @@ public class ZkDataStoreImpl extends AbstractComponent implements DataStore, Pat
         try {
             String str = null;
             if (Strings.isNotBlank(containerId)) {
-                String versionId = getStringData(configCache, ZkPath.CONFIG_CONTAINER.getPath(containerId));
+                String versionId = getContainerVersion(containerId);
                 if (Strings.isNotBlank(versionId)) {
-                    str = getStringData(configCache, ZkPath.CONFIG_VERSIONS_CONTAINER.getPath(versionId, containerId));
+                    String path = ZkPath.CONFIG_VERSIONS_CONTAINER.getPath(versionId, containerId);
+                    str = isSyncReads() ? getStringDataSafe(curator.get(), path) : getStringData(configCache, path);
                 }
             }
             return str == null || str.isEmpty() ? Collections.<String> emptyList() : Arrays.asList(str.trim().split(" +"));
@@ -462,6 +581,7 @@ public class ZkDataStoreImpl extends AbstractComponent implements DataStore, Pat
                 idset.add(profileId);
             }
             setData(curator.get(), ZkPath.CONFIG_VERSIONS_CONTAINER.getPath(versionId, containerId), sb.toString());
+            invalidateProfileContainers();
         } catch (Exception e) {
             throw FabricException.launderThrowable(e);
         }
@@ -515,10 +635,18 @@ public class ZkDataStoreImpl extends AbstractComponent implements DataStore, Pat
             }
         } else {
             try {
-                if (substituted) {
-                    return getSubstitutedPath(curator.get(), getAttributePath(containerId, attribute));
+                String path = getAttributePath(containerId, attribute);
+                TreeData data = path.startsWith(ZkPath.CONTAINERS.getPath() + "/") ? getCachedData(containerCache, path) : null;
+                if (data != null) {
+                    String value = data.getData() != null ? new String(data.getData(), "UTF-8") : null;
+                    if (substituted) {
+                        return value != null && value.length() > 0 ? getSubstitutedData(curator.get(), value) : null;
+                    }
+                    return value;
+                } else if (substituted) {
+                    return getSubstitutedPath(curator.get(), path);
                 } else {
-                    return getStringData(curator.get(), getAttributePath(containerId, attribute));
+                    return getStringData(curator.get(), path);
                 }
             } catch (KeeperException.NoNodeException e) {
                 if (mandatory) {
@@ -579,6 +707,43 @@ public class ZkDataStoreImpl extends AbstractComponent implements DataStore, Pat
         }
     }
 
+    private boolean isSyncReads() {
+        return syncReads.get() != null;
+    }
+
+    /**
+     * Returns the node from the given cache, which loads it from ZooKeeper if it is not cached yet, or null
+     * if the node does not exist or the caller asked for sync reads
+     */
+    private TreeData getCachedData(TreeCache cache, String path) {
+        return isSyncReads() ? null : cache.getCurrentData(path);
+    }
+
+    private String getCachedStringData(TreeCache cache, String path) throws Exception {
+        TreeData data = getCachedData(cache, path);
+        if (data != null) {
+            return data.getData() != null ? new String(data.getData(), "UTF-8") : null;
+        }
+        return getStringData(curator.get(), path);
+    }
+
+    /**
+     * Waits for the ZooKeeper server of our session to catch up with the leader so that the reads which follow
+     * see every change committed before the sync
+     */
+    private void sync(String path) throws Exception {
+        final CountDownLatch latch = new CountDownLatch(1);
+        curator.get().sync().inBackground(new BackgroundCallback() {
+            @Override
+            public void processResult(CuratorFramework client, CuratorEvent event) throws Exception {
+                latch.countDown();
+            }
+        }).forPath(path);
+        if (!latch.await(SYNC_TIMEOUT, TimeUnit.MILLISECONDS)) {
+            throw new FabricException("Timed out syncing with ZooKeeper on " + path);
+        }
+    }
+
     private String getAttributePath(String containerId, ContainerAttribute attribute) {
         switch (attribute) {
         case BlueprintStatus:
@@ -437,6 +437,13 @@ public final class ChildContainerProvider extends AbstractComponent implements C
             jvmOptsBuilder.append(" -D" + ZkDefs.MANUAL_IP + "=" + options.getManualIp());
         }
 
+        // let the child containers share the downloads of this one
+        if (options.getJvmOpts() == null || !options.getJvmOpts().contains("-D" + Constants.DOWNLOAD_CACHE_PROPERTY + "=")) {
+            String karafData = System.getProperty("karaf.data", System.getProperty("karaf.home", "karaf") + "/data");
+            String downloadCache = System.getProperty(Constants.DOWNLOAD_CACHE_PROPERTY, new File(karafData, "download-cache").getAbsolutePath());
+            jvmOptsBuilder.append(" -D" + Constants.DOWNLOAD_CACHE_PROPERTY + "=\"" + downloadCache + "\"");
+        }
+
         for (Map.Entry<String, String> dataStoreEntries : options.getDataStoreProperties().entrySet()) {
             String key = dataStoreEntries.getKey();
             String value = dataStoreEntries.getValue();
@@ -0,0 +1,46 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.service;
+
+import io.fabric8.api.ContainerSnapshot;
+import io.fabric8.api.ZkDefs;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ZkDataStoreImplTest {
+
+    @Test
+    public void testContainersWithoutProfilesAreIndexedUnderTheDefaultProfile() throws Exception {
+        List<ContainerSnapshot> snapshots = Arrays.asList(
+                new ContainerSnapshot("root", null, "1.0", Collections.<String>emptyList(), true, "success"),
+                new ContainerSnapshot("child", "root", "1.0", Arrays.asList("mq-default"), true, "success"),
+                new ContainerSnapshot("other", null, "1.1", null, true, "success"));
+
+        Map<String, List<String>> index = ZkDataStoreImpl.indexContainersByProfile(snapshots);
+
+        assertEquals(Collections.singletonList("root"), index.get("1.0/" + ZkDefs.DEFAULT_PROFILE));
+        assertEquals(Collections.singletonList("child"), index.get("1.0/mq-default"));
+        assertEquals(Collections.singletonList("other"), index.get("1.1/" + ZkDefs.DEFAULT_PROFILE));
+        assertNull(index.get("1.1/mq-default"));
+    }
+}
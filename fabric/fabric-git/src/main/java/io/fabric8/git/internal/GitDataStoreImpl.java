@@ -95,14 +95,19 @@ import org.apache.zookeeper.KeeperException;
 import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.api.errors.GitAPIException;
 import org.eclipse.jgit.internal.storage.file.LockFile;
+import org.eclipse.jgit.lib.ObjectReader;
 import org.eclipse.jgit.lib.PersonIdent;
 import org.eclipse.jgit.lib.Ref;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.lib.StoredConfig;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
 import org.eclipse.jgit.transport.CredentialsProvider;
 import org.eclipse.jgit.transport.PushResult;
 import org.eclipse.jgit.transport.RefSpec;
 import org.eclipse.jgit.transport.UsernamePasswordCredentialsProvider;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.PathFilter;
 import org.gitective.core.RepositoryUtils;
 import io.fabric8.api.gravia.IllegalArgumentAssertion;
 import io.fabric8.api.gravia.IllegalStateAssertion;
@@ -487,36 +492,8 @@ public final class GitDataStoreImpl extends AbstractComponent implements GitData
     }
 
     private Version getVersionFromCache(String versionId, String profileId) {
-        Version result = getVersionFromCacheRO(versionId, profileId);
-        if (result == null) {
-            return getVersionFromCacheRW(versionId, profileId);
-        }
-        return result;
-    }
-    
-    private Version getVersionFromCacheRO(String versionId, String profileId){
+        // versions are loaded from the object database so concurrent readers do not need the write lock
         LockHandle readLock = aquireReadLock();
-        try {
-            assertValid();
-            String branch = GitHelpers.getProfileBranch(versionId, profileId);
-            if (GitHelpers.localBranchExists(getGit(), branch)) {
-                if( versionCache.asMap().containsKey(versionId) ) {
-                    return versionCache.asMap().get(versionId);
-                } else {
-                    return null;
-                }
-            } else {
-                return null;
-            }
-        } catch (Exception e) {
-            throw FabricException.launderThrowable(e);
-        } finally {
-            readLock.unlock();
-        }
-    }
-
-    private Version getVersionFromCacheRW(String versionId, String profileId){
-        LockHandle writeLock = aquireWriteLock();
         try {
             assertValid();
             String branch = GitHelpers.getProfileBranch(versionId, profileId);
@@ -528,7 +505,7 @@ public final class GitDataStoreImpl extends AbstractComponent implements GitData
         } catch (Exception e) {
             throw FabricException.launderThrowable(e);
         } finally {
-            writeLock.unlock();
+            readLock.unlock();
         }
     }
 
@@ -1781,108 +1758,80 @@ public final class GitDataStoreImpl extends AbstractComponent implements GitData
         }
     }
     
+    /**
+     * Loads a version from the commits its branch and the master branch point at, reading the profiles
+     * straight from the object database so that the working tree is left alone and only a read lock is needed.
+     */
     class VersionCacheLoader extends CacheLoader<String, Version> {
-        
+
+        private final String profilesPath = GitHelpers.CONFIGS + "/profiles";
+
         @Override
         public Version load(final String versionId) {
-            assertWriteLock();
+            assertReadLock();
             GitOperation<Version> gitop = new GitOperation<Version>() {
                 public Version call(Git git, GitContext context) throws Exception {
                     String revision = git.getRepository().getRefDatabase().getRef(versionId).getObjectId().getName();
                     return loadVersion(git, context, versionId, revision);
                 }
             };
-            GitContext context = new GitContext();
-            return executeInternal(context, null, gitop);
+            return executeInternal(newGitReadContext(), null, gitop);
         }
         
         private Version loadVersion(Git git, GitContext context, String versionId, String revision) throws Exception {
             VersionBuilder vbuilder = VersionBuilder.Factory.create(versionId).setRevision(revision);
             vbuilder.setAttributes(getVersionAttributes(git, context, versionId));
-            populateVersionBuilder(git, context, vbuilder, GitHelpers.MASTER_BRANCH, versionId);
-            populateVersionBuilder(git, context, vbuilder, versionId, versionId);
+            try (ObjectReader reader = git.getRepository().newObjectReader()) {
+                populateVersionBuilder(git, reader, vbuilder, GitHelpers.MASTER_BRANCH, versionId);
+                populateVersionBuilder(git, reader, vbuilder, versionId, versionId);
+            }
             return vbuilder.getVersion();
         }
 
-        private void populateVersionBuilder(Git git, GitContext context, VersionBuilder builder, String branch, String versionId) throws GitAPIException, IOException {
-            checkoutRequiredProfileBranch(git, context, branch, null);
-            File profilesDir = GitHelpers.getProfilesDirectory(git);
-            if (profilesDir.exists()) {
-                String[] files = profilesDir.list();
-                if (files != null) {
-                    for (String childName : files) {
-                        Path childPath = profilesDir.toPath().resolve(childName);
-                        if (childPath.toFile().isDirectory()) {
-                            populateProfile(git, builder, branch, versionId, childPath.toFile(), "");
-
-                        }
-                    }
-                }
+        private void populateVersionBuilder(Git git, ObjectReader reader, VersionBuilder builder, String branch, String versionId) throws IOException {
+            Ref ref = git.getRepository().getRef("refs/heads/" + branch);
+            IllegalStateAssertion.assertNotNull(ref, "Cannot find profile branch: " + branch);
+            RevCommit commit;
+            try (RevWalk revWalk = new RevWalk(reader)) {
+                commit = revWalk.parseCommit(ref.getObjectId());
             }
-        }
 
-        private void populateProfile(Git git, VersionBuilder versionBuilder, String branch, String versionId, File profileFile, String prefix) throws IOException {
-            String profileName = profileFile.getName();
-            String profileId = profileName;
-            if (profileId.endsWith(Profiles.PROFILE_FOLDER_SUFFIX)) {
-                profileId = prefix + profileId.substring(0, profileId.length() - Profiles.PROFILE_FOLDER_SUFFIX.length());
-            } else {
-                // lets recurse all children
-                File[] files = profileFile.listFiles();
-                if (files != null) {
-                    for (File childFile : files) {
-                        if (childFile.isDirectory()) {
-                            populateProfile(git, versionBuilder, branch, versionId, childFile, prefix + profileFile.getName() + "-");
-                        }
+            // profile ids in tree order mapped to their file configurations
+            Map<String, Map<String, byte[]>> profiles = new LinkedHashMap<>();
+            try (TreeWalk treeWalk = new TreeWalk(reader)) {
+                treeWalk.addTree(commit.getTree());
+                treeWalk.setRecursive(true);
+                treeWalk.setFilter(PathFilter.create(profilesPath));
+                while (treeWalk.next()) {
+                    String path = treeWalk.getPathString();
+                    if (path.length() <= profilesPath.length()) {
+                        continue;
                     }
-                }
-                return;
-            }
-
-            Map<String, byte[]> fileConfigurations = doGetFileConfigurations(git, profileId);
-            
-            ProfileBuilder profileBuilder = ProfileBuilder.Factory.create(versionId, profileId);
-            profileBuilder.setFileConfigurations(fileConfigurations);
-            versionBuilder.addProfile(profileBuilder.getProfile());
-        }
-
-        private Map<String, byte[]> doGetFileConfigurations(Git git, String profileId) throws IOException {
-            Map<String, byte[]> configurations = new HashMap<String, byte[]>();
-            File profileDirectory = GitHelpers.getProfileDirectory(git, profileId);
-            populateFileConfigurations(configurations, profileDirectory, profileDirectory);
-            return configurations;
-        }
-
-        private void populateFileConfigurations(Map<String, byte[]> configurations, File profileDirectory, File directory) throws IOException {
-            File[] files = directory.listFiles();
-            if (files != null) {
-                for (File file : files) {
-                    if (file.isFile()) {
-                        String relativePath = getFilePattern(profileDirectory, file);
-                        configurations.put(relativePath, loadFileConfiguration(file));
-                    } else if (file.isDirectory()) {
-                        populateFileConfigurations(configurations, profileDirectory, file);
+                    String[] segments = path.substring(profilesPath.length() + 1).split("/");
+                    StringBuilder profileId = new StringBuilder();
+                    for (int i = 0; i < segments.length - 1; i++) {
+                        String segment = segments[i];
+                        if (segment.endsWith(Profiles.PROFILE_FOLDER_SUFFIX)) {
+                            profileId.append(segment, 0, segment.length() - Profiles.PROFILE_FOLDER_SUFFIX.length());
+                            String relativePath = Strings.join(Arrays.asList(segments).subList(i + 1, segments.length), "/");
+                            Map<String, byte[]> fileConfigurations = profiles.get(profileId.toString());
+                            if (fileConfigurations == null) {
+                                fileConfigurations = new HashMap<>();
+                                profiles.put(profileId.toString(), fileConfigurations);
+                            }
+                            fileConfigurations.put(relativePath, reader.open(treeWalk.getObjectId(0)).getBytes());
+                            break;
+                        }
+                        profileId.append(segment).append('-');
                     }
                 }
             }
-        }
 
-        private byte[] loadFileConfiguration(File file) throws IOException {
-            if (file.isDirectory()) {
-                // Not sure why we do this, but for directory pids, lets recurse...
-                StringBuilder buf = new StringBuilder();
-                File[] files = file.listFiles();
-                if (files != null) {
-                    for (File child : files) {
-                        String value = Files.toString(child);
-                        buf.append(String.format("%s = %s\n", child.getName(), value));
-                    }
-                }
-                return buf.toString().getBytes();
-            } else if (file.exists() && file.isFile()) {
-                return Files.readBytes(file);
+            for (Map.Entry<String, Map<String, byte[]>> entry : profiles.entrySet()) {
+                ProfileBuilder profileBuilder = ProfileBuilder.Factory.create(versionId, entry.getKey());
+                profileBuilder.setFileConfigurations(entry.getValue());
+                builder.addProfile(profileBuilder.getProfile());
             }
-            return null;
         }
     }
 
@@ -136,6 +136,41 @@ public class GitDataStoreImplBenchmark extends GitDataStoreImplTestSupport {
     }
 
 
+    @Test
+    public void testColdVersionLoad() throws Exception {
+        System.out.println("==============================================================");
+        System.out.println("Activating GitDataStoreImpl");
+        System.out.println("==============================================================");
+        final GitDataStoreImpl gitDataStore = createGitDataStore();
+
+        final String versionId = "cold";
+        VersionBuilder versionBuilder = VersionBuilder.Factory.create(versionId);
+        for (int i = 0; i < 500; i++) {
+            versionBuilder.addProfile(ProfileBuilder.Factory.create(versionId, "profile-" + i)
+                    .addConfiguration("foo", "bar", "value:" + i)
+                    .getProfile());
+        }
+        gitDataStore.createVersion(versionBuilder.getVersion());
+
+        System.out.println("==============================================================");
+        System.out.println("Perf testing");
+        System.out.println("==============================================================");
+
+        for (int i = 0; i < 20; i++) {
+            // updating a profile invalidates the cached version so the next read loads it cold
+            Profile profile = ProfileBuilder.Factory.createFrom(gitDataStore.getProfile(versionId, "profile-0"))
+                    .addConfiguration("foo", "iteration", "" + i)
+                    .getProfile();
+            gitDataStore.updateProfile(profile);
+
+            long start = System.nanoTime();
+            Version version = gitDataStore.getVersion(versionId);
+            long d1 = (System.nanoTime() - start) / 1000000;
+            System.out.println("Cold load of " + version.getProfiles().size() + " profiles: " + d1 + " ms");
+        }
+    }
+
+
     private GitDataStoreImpl setup() throws Exception {
         System.out.println("==============================================================");
         System.out.println("Activating GitDataStoreImpl");
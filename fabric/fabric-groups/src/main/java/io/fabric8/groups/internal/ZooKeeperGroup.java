@@ -19,6 +19,7 @@ import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Function;
+import com.google.common.collect.ForwardingConcurrentMap;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
@@ -50,6 +51,7 @@ import java.io.IOException;
 import java.io.InterruptedIOException;
 import java.util.*;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -57,6 +59,7 @@ import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * <p>A utility that attempts to keep all data from all children of a ZK path locally cached. This class
@@ -79,8 +82,12 @@ public class ZooKeeperGroup<T extends NodeState> implements Group<T> {
     private final ExecutorService executorService;
     private final EnsurePath ensurePath;
     private final BlockingQueue<Operation> operations = new LinkedBlockingQueue<Operation>();
+    // the operations currently in the queue, so that duplicates can be dropped without scanning it
+    private final Set<Operation> queuedOperations = Collections.newSetFromMap(new ConcurrentHashMap<Operation, Boolean>());
     private final ListenerContainer<GroupListener<T>> listeners = new ListenerContainer<GroupListener<T>>();
-    protected final ConcurrentMap<String, ChildData<T>> currentData = Maps.newConcurrentMap();
+    private final AtomicLong currentDataVersion = new AtomicLong();
+    protected final ConcurrentMap<String, ChildData<T>> currentData = new CurrentDataMap();
+    private volatile MemberView<T> memberView = new MemberView<T>(-1, Collections.<ChildData<T>>emptyList());
     private final AtomicBoolean started = new AtomicBoolean();
     private final AtomicBoolean connected = new AtomicBoolean();
     protected final SequenceComparator sequenceComparator = new SequenceComparator();
@@ -295,41 +302,24 @@ public class ZooKeeperGroup<T extends NodeState> implements Group<T> {
 
     @Override
     public Map<String, T> members() {
-        List<ChildData<T>> children = getActiveChildren();
-        Collections.sort(children, sequenceComparator);
-        Map<String, T> members = new LinkedHashMap<String, T>();
-        for (ChildData<T> child : children) {
-            members.put(child.getPath(), child.getNode());
-        }
-        return members;
+        return getMemberView().members;
     }
 
     @Override
     public boolean isMaster() {
-        List<ChildData<T>> children = getActiveChildren();
-        Collections.sort(children, sequenceComparator);
-        return (!children.isEmpty() && children.get(0).getPath().equals(id));
+        ChildData<T> master = getMemberView().master;
+        return master != null && master.getPath().equals(id);
     }
 
     @Override
     public T master() {
-        List<ChildData<T>> children = getActiveChildren();
-        Collections.sort(children, sequenceComparator);
-        if (children.isEmpty()) {
-            return null;
-        }
-        return children.get(0).getNode();
+        ChildData<T> master = getMemberView().master;
+        return master != null ? master.getNode() : null;
     }
 
     @Override
     public List<T> slaves() {
-        List<ChildData<T>> children = getActiveChildren();
-        Collections.sort(children, sequenceComparator);
-        List<T> slaves = new ArrayList<T>();
-        for (int i = 1; i < children.size(); i++) {
-            slaves.add(children.get(i).getNode());
-        }
-        return slaves;
+        return getMemberView().slaves;
     }
 
     /**
@@ -338,15 +328,42 @@ public class ZooKeeperGroup<T extends NodeState> implements Group<T> {
      * @return list of active children and data
      */
     protected List<ChildData<T>> getActiveChildren() {
+        return new ArrayList<>(getMemberView().children);
+    }
+
+    /**
+     * Returns the path of the first active child in sequence order which has the given node id or null if there is none
+     */
+    protected String getFirstPathForNodeId(String nodeId) {
+        return getMemberView().firstPathByNodeId.get(nodeId);
+    }
+
+    /**
+     * Returns the view of the active members for the current data, rebuilding it only if the data has changed
+     * since it was last built. Views are immutable so they can be shared by any number of readers.
+     */
+    private MemberView<T> getMemberView() {
+        MemberView<T> view = memberView;
+        long version = currentDataVersion.get();
+        if (view.version != version) {
+            view = new MemberView<T>(version, filterActiveChildren(currentData.values()));
+            memberView = view;
+        }
+        return view;
+    }
+
+    private List<ChildData<T>> filterActiveChildren(Collection<ChildData<T>> children) {
         Map<String, ChildData<T>> filtered = new HashMap<>();
-        for (ChildData<T> child : currentData.values()) {
+        for (ChildData<T> child : children) {
             T node = child.getNode();
             if (!filtered.containsKey(node.getContainer())
                     || filtered.get(node.getContainer()).getPath().compareTo(child.getPath()) < 0) {
                 filtered.put(node.getContainer(), child);
             }
         }
-        return new ArrayList<>(filtered.values());
+        List<ChildData<T>> answer = new ArrayList<>(filtered.values());
+        Collections.sort(answer, sequenceComparator);
+        return answer;
     }
 
     @Override
@@ -560,7 +577,10 @@ public class ZooKeeperGroup<T extends NodeState> implements Group<T> {
     private void mainLoop() {
         while (started.get() && !Thread.currentThread().isInterrupted()) {
             try {
-                operations.take().invoke();
+                Operation operation = operations.take();
+                // an equal operation offered from now on must run again as it may have missed this one's changes
+                queuedOperations.remove(operation);
+                operation.invoke();
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
                 break;
@@ -589,7 +609,7 @@ public class ZooKeeperGroup<T extends NodeState> implements Group<T> {
     }
 
     private void offerOperation(Operation operation) {
-        if (!operations.contains(operation)) {
+        if (queuedOperations.add(operation)) {
             operations.offer(operation);
         }
 //        operations.remove(operation);   // avoids herding for refresh operations
@@ -614,4 +634,113 @@ public class ZooKeeperGroup<T extends NodeState> implements Group<T> {
     void setId(String id) {
         this.id = id;
     }
+
+    /**
+     * The current data which counts its modifications so that the member view can tell when it is stale.
+     * The key, value and entry views are read only so that every modification goes through this map.
+     */
+    private class CurrentDataMap extends ForwardingConcurrentMap<String, ChildData<T>> {
+        private final ConcurrentMap<String, ChildData<T>> delegate = Maps.newConcurrentMap();
+
+        @Override
+        protected ConcurrentMap<String, ChildData<T>> delegate() {
+            return delegate;
+        }
+
+        private <V> V modified(V result) {
+            currentDataVersion.incrementAndGet();
+            return result;
+        }
+
+        @Override
+        public ChildData<T> put(String key, ChildData<T> value) {
+            return modified(delegate.put(key, value));
+        }
+
+        @Override
+        public void putAll(Map<? extends String, ? extends ChildData<T>> map) {
+            delegate.putAll(map);
+            modified(null);
+        }
+
+        @Override
+        public ChildData<T> putIfAbsent(String key, ChildData<T> value) {
+            return modified(delegate.putIfAbsent(key, value));
+        }
+
+        @Override
+        public ChildData<T> remove(Object key) {
+            return modified(delegate.remove(key));
+        }
+
+        @Override
+        public boolean remove(Object key, Object value) {
+            return modified(delegate.remove(key, value));
+        }
+
+        @Override
+        public ChildData<T> replace(String key, ChildData<T> value) {
+            return modified(delegate.replace(key, value));
+        }
+
+        @Override
+        public boolean replace(String key, ChildData<T> oldValue, ChildData<T> newValue) {
+            return modified(delegate.replace(key, oldValue, newValue));
+        }
+
+        @Override
+        public void clear() {
+            delegate.clear();
+            modified(null);
+        }
+
+        @Override
+        public Set<String> keySet() {
+            return Collections.unmodifiableSet(delegate.keySet());
+        }
+
+        @Override
+        public Collection<ChildData<T>> values() {
+            return Collections.unmodifiableCollection(delegate.values());
+        }
+
+        @Override
+        public Set<Map.Entry<String, ChildData<T>>> entrySet() {
+            return Collections.unmodifiableSet(delegate.entrySet());
+        }
+    }
+
+    /**
+     * An immutable view of the active members sorted by sequence, built from a version of the current data
+     */
+    private static class MemberView<T extends NodeState> {
+        private final long version;
+        private final List<ChildData<T>> children;
+        private final ChildData<T> master;
+        private final Map<String, T> members;
+        private final List<T> slaves;
+        private final Map<String, String> firstPathByNodeId;
+
+        MemberView(long version, List<ChildData<T>> children) {
+            this.version = version;
+            this.children = Collections.unmodifiableList(children);
+            this.master = children.isEmpty() ? null : children.get(0);
+            Map<String, T> members = new LinkedHashMap<String, T>();
+            List<T> slaves = new ArrayList<T>(Math.max(0, children.size() - 1));
+            Map<String, String> firstPathByNodeId = new HashMap<String, String>();
+            for (ChildData<T> child : children) {
+                members.put(child.getPath(), child.getNode());
+                if (child != master) {
+                    slaves.add(child.getNode());
+                }
+                String nodeId = child.getNode().id;
+                if (nodeId != null && !firstPathByNodeId.containsKey(nodeId)) {
+                    firstPathByNodeId.put(nodeId, child.getPath());
+                }
+            }
+            this.members = Collections.unmodifiableMap(members);
+            this.slaves = Collections.unmodifiableList(slaves);
+            this.firstPathByNodeId = firstPathByNodeId;
+        }
+    }
 }
@@ -21,8 +21,6 @@ import io.fabric8.groups.NodeState;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Collections;
-import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ThreadFactory;
 
@@ -43,18 +41,7 @@ public class ZooKeeperMultiGroup<T extends NodeState> extends ZooKeeperGroup<T>
 
     @Override
     public boolean isMaster(String name) {
-        List<ChildData<T>> children = getActiveChildren();
-        Collections.sort(children, sequenceComparator);
-        for (ChildData child : children) {
-            NodeState node = (NodeState) child.getNode();
-            if (node.id.equals(name)) {
-                if (child.getPath().equals(getId())) {
-                    return true;
-                } else {
-                    return false;
-                }
-            }
-        }
-        return false;
+        String path = getFirstPathForNodeId(name);
+        return path != null && path.equals(getId());
     }
 }
@@ -0,0 +1,129 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.groups.internal;
+
+import io.fabric8.groups.NodeState;
+
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.retry.RetryOneTime;
+import org.apache.zookeeper.data.Stat;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Measures the cost of the {@link ZooKeeperGroup} member queries for groups of different sizes, both when the
+ * membership is unchanged between calls and when every call follows a change.
+ * <p/>
+ * Not run as part of the normal build; run it with <code>mvn test -Dtest=ZooKeeperGroupBenchmark</code>
+ */
+public class ZooKeeperGroupBenchmark {
+
+    private static final String PATH = "/singletons/test/" + ZooKeeperGroupBenchmark.class.getSimpleName();
+
+    final int[] GROUP_SIZES = {10, 100, 1000};
+    final int ITERATIONS = 1000000;
+    final int CHANGING_ITERATIONS = 10000;
+
+    private CuratorFramework curator;
+
+    @Before
+    public void setUp() throws Exception {
+        // the group is never started so the client does not have to connect
+        curator = CuratorFrameworkFactory.builder()
+                .connectString("localhost:2181")
+                .retryPolicy(new RetryOneTime(1))
+                .build();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        curator.close();
+    }
+
+    @Test
+    public void testMemberQueries() throws Exception {
+        System.out.println("==============================================================");
+        System.out.println("Perf testing");
+        System.out.println("==============================================================");
+
+        for (int size : GROUP_SIZES) {
+            ZooKeeperGroup<NodeState> group = createGroup(size);
+            try {
+                // warm up
+                query(group, ITERATIONS / 10);
+
+                long start = System.nanoTime();
+                long blackhole = query(group, ITERATIONS);
+                long duration = System.nanoTime() - start;
+                System.out.println(String.format("members: %5d, unchanged: %8d ns/query (%d)",
+                        size, duration / (ITERATIONS * 4L), blackhole));
+
+                String path = memberPath(size);
+                start = System.nanoTime();
+                for (int i = 0; i < CHANGING_ITERATIONS; i++) {
+                    putChildData(group, path, "container" + size);
+                    blackhole += query(group, 1);
+                }
+                duration = System.nanoTime() - start;
+                System.out.println(String.format("members: %5d, changing:  %8d ns/query (%d)",
+                        size, duration / (CHANGING_ITERATIONS * 4L), blackhole));
+            } finally {
+                group.close();
+            }
+        }
+    }
+
+    private long query(ZooKeeperGroup<NodeState> group, int iterations) {
+        long answer = 0;
+        for (int i = 0; i < iterations; i++) {
+            if (group.isMaster()) {
+                answer++;
+            }
+            NodeState master = group.master();
+            List<NodeState> slaves = group.slaves();
+            Map<String, NodeState> members = group.members();
+            answer += master.getContainer().length() + slaves.size() + members.size();
+        }
+        return answer;
+    }
+
+    private ZooKeeperGroup<NodeState> createGroup(int size) throws Exception {
+        ZooKeeperGroup<NodeState> group = new ZooKeeperGroup<>(curator, PATH, NodeState.class);
+        for (int i = 0; i < size; i++) {
+            putChildData(group, memberPath(i), "container" + i);
+        }
+        group.setId(memberPath(size / 2));
+        return group;
+    }
+
+    private static String memberPath(int index) {
+        return String.format("%s/%010d", PATH, index);
+    }
+
+    private static void putChildData(ZooKeeperGroup<NodeState> group, String path, String container) throws Exception {
+        NodeState node = new NodeState("test", container);
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        ZooKeeperGroup.MAPPER.writeValue(data, node);
+        ChildData<NodeState> child = new ChildData<>(path, new Stat(), data.toByteArray(), node);
+        group.currentData.put(path, child);
+    }
+}
@@ -226,4 +226,27 @@ public class ZooKeeperGroupTest {
         assertThat(slaves.get(1).getContainer(), equalTo("container3"));
     }
 
+    @Test
+    public void testMembers_afterChanges() throws Exception {
+        putChildData(group, PATH + "/001", "container1");
+        putChildData(group, PATH + "/002", "container2");
+
+        group.setId(PATH + "/002");
+        assertThat(group.members().size(), equalTo(2));
+        assertThat(group.isMaster(), equalTo(false));
+
+        group.currentData.remove(PATH + "/001");
+        assertThat(group.members().size(), equalTo(1));
+        assertThat(group.isMaster(), equalTo(true));
+        assertThat(group.slaves().size(), equalTo(0));
+
+        putChildData(group, PATH + "/003", "container3");
+        assertThat(group.members().size(), equalTo(2));
+        assertThat(group.slaves().get(0).getContainer(), equalTo("container3"));
+
+        group.clear();
+        assertThat(group.members().size(), equalTo(0));
+        assertThat(group.master(), equalTo(null));
+    }
+
 }
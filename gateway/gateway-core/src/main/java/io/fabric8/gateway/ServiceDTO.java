@@ -53,6 +53,30 @@ public class ServiceDTO implements ServiceDetails {
                 '}';
     }
 
+    /**
+     * Services are equal if they have the same id and container so that the copy created on each
+     * update of a service can be used to look up state kept for the previous copy, such as by a load balancer
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        ServiceDTO that = (ServiceDTO) o;
+
+        if (id != null ? !id.equals(that.id) : that.id != null) return false;
+        if (container != null ? !container.equals(that.container) : that.container != null) return false;
+
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = id != null ? id.hashCode() : 0;
+        result = 31 * result + (container != null ? container.hashCode() : 0);
+        return result;
+    }
+
     public String getId() {
         return id;
     }
@@ -18,7 +18,9 @@ package io.fabric8.gateway;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
 
 /**
  * Maintains a mapping of services which is then use by the proxy to update in process
@@ -26,6 +28,14 @@ import java.util.concurrent.ConcurrentHashMap;
  */
 public class ServiceMap {
     private ConcurrentHashMap<String, Map<String, ServiceDetails>> map = new ConcurrentHashMap<String, Map<String, ServiceDetails>>();
+    private Set<Listener> listeners = new CopyOnWriteArraySet<Listener>();
+
+    /**
+     * Listens to services being removed from the map
+     */
+    public interface Listener {
+        void serviceRemoved(String path, ServiceDetails service);
+    }
 
     /**
      * Returns a list of all the current services for the given path
@@ -56,9 +66,22 @@ public class ServiceMap {
      * When a service is added or updated
      */
     public void serviceRemoved(String path, ServiceDetails service) {
-        getPathMap(path).remove(service.getId());
+        ServiceDetails removed = getPathMap(path).remove(service.getId());
 
         // lets update any in progress proxy handlers using this service
+        if (removed != null) {
+            for (Listener listener : listeners) {
+                listener.serviceRemoved(path, removed);
+            }
+        }
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
     }
 
     protected Map<String, ServiceDetails> getPathMap(String path) {
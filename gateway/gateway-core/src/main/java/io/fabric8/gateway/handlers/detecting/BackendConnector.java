@@ -0,0 +1,337 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.handlers.detecting;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.vertx.java.core.AsyncResult;
+import org.vertx.java.core.Context;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.Vertx;
+import org.vertx.java.core.net.NetClient;
+import org.vertx.java.core.net.NetSocket;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Opens the backend connections for the {@link DetectingGateway}.
+ * <p/>
+ * A single {@link NetClient} is shared by all the connections routed to the same broker endpoint
+ * from the same vert.x context, so that backend sockets are handled by the event loop of the client
+ * connection they are pumped to. When {@link #setPrewarmedConnections(int)} is greater than zero, a
+ * small number of already connected backend sockets is kept per endpoint so that a newly detected
+ * client can be handed a socket without waiting for the TCP handshake.
+ * <p/>
+ * Sockets are handed out paused, so any bytes the broker sends first are not lost; the caller must
+ * {@link NetSocket#resume() resume} the socket once it has set up its handlers. Pre-warmed sockets are
+ * discarded once they are older than {@link #getPrewarmedConnectionMaxAge()} milliseconds since brokers
+ * will time out connections which never send a protocol header.
+ */
+public class BackendConnector {
+
+    private static final transient Logger LOG = LoggerFactory.getLogger(BackendConnector.class);
+
+    private final Vertx vertx;
+    private static final Object NO_CONTEXT = new Object();
+
+    private final ConcurrentMap<Object, ConcurrentMap<String, Endpoint>> endpoints = new ConcurrentHashMap<Object, ConcurrentMap<String, Endpoint>>();
+    private final AtomicLong poolHits = new AtomicLong();
+    private final AtomicLong poolMisses = new AtomicLong();
+    private final LatencySamples connectLatency = new LatencySamples(1024);
+
+    private int prewarmedConnections;
+    private long prewarmedConnectionMaxAge = 10000;
+
+    public BackendConnector(Vertx vertx) {
+        this.vertx = vertx;
+    }
+
+    /**
+     * Connects to the given backend URI, using a pre-warmed socket if one is available. The socket is
+     * passed to the handler paused.
+     */
+    public void connect(URI url, final Handler<AsyncResult<NetSocket>> handler) {
+        final Endpoint endpoint = getEndpoint(url);
+        NetSocket socket = endpoint.poll(prewarmedConnectionMaxAge);
+        if (socket != null) {
+            poolHits.incrementAndGet();
+            endpoint.refill();
+            handler.handle(new ConnectResult(socket, null));
+            return;
+        }
+        if (prewarmedConnections > 0) {
+            poolMisses.incrementAndGet();
+        }
+        endpoint.connect(new Handler<AsyncResult<NetSocket>>() {
+            @Override
+            public void handle(AsyncResult<NetSocket> event) {
+                if (event.succeeded()) {
+                    event.result().pause();
+                }
+                handler.handle(event);
+                if (event.succeeded()) {
+                    endpoint.refill();
+                }
+            }
+        });
+    }
+
+    /**
+     * Closes all the pooled sockets and shared clients
+     */
+    public void close() {
+        for (ConcurrentMap<String, Endpoint> contextEndpoints : endpoints.values()) {
+            for (Endpoint endpoint : contextEndpoints.values()) {
+                endpoint.close();
+            }
+        }
+        endpoints.clear();
+    }
+
+    /**
+     * Returns the endpoint for the given URI on the current vert.x context
+     */
+    protected Endpoint getEndpoint(URI url) {
+        Context context = vertx.currentContext();
+        Object contextKey = context != null ? context : NO_CONTEXT;
+        ConcurrentMap<String, Endpoint> contextEndpoints = endpoints.get(contextKey);
+        if (contextEndpoints == null) {
+            ConcurrentMap<String, Endpoint> map = new ConcurrentHashMap<String, Endpoint>();
+            contextEndpoints = endpoints.putIfAbsent(contextKey, map);
+            if (contextEndpoints == null) {
+                contextEndpoints = map;
+            }
+        }
+        String key = url.getHost() + ":" + url.getPort();
+        Endpoint answer = contextEndpoints.get(key);
+        if (answer == null) {
+            Endpoint endpoint = new Endpoint(url.getHost(), url.getPort());
+            answer = contextEndpoints.putIfAbsent(key, endpoint);
+            if (answer == null) {
+                answer = endpoint;
+            } else {
+                endpoint.close();
+            }
+        }
+        return answer;
+    }
+
+    // Statistics
+    //-------------------------------------------------------------------------
+
+    public long getPoolHits() {
+        return poolHits.get();
+    }
+
+    public long getPoolMisses() {
+        return poolMisses.get();
+    }
+
+    public double getPoolHitRate() {
+        long hits = poolHits.get();
+        long total = hits + poolMisses.get();
+        return total > 0 ? (double) hits / total : 0.0;
+    }
+
+    public long getConnectLatencyPercentile(double percentile) {
+        return connectLatency.percentile(percentile);
+    }
+
+    public int getPooledConnections() {
+        int answer = 0;
+        for (ConcurrentMap<String, Endpoint> contextEndpoints : endpoints.values()) {
+            for (Endpoint endpoint : contextEndpoints.values()) {
+                answer += endpoint.idle.size();
+            }
+        }
+        return answer;
+    }
+
+    // Properties
+    //-------------------------------------------------------------------------
+
+    public int getPrewarmedConnections() {
+        return prewarmedConnections;
+    }
+
+    public void setPrewarmedConnections(int prewarmedConnections) {
+        this.prewarmedConnections = prewarmedConnections;
+    }
+
+    public long getPrewarmedConnectionMaxAge() {
+        return prewarmedConnectionMaxAge;
+    }
+
+    public void setPrewarmedConnectionMaxAge(long prewarmedConnectionMaxAge) {
+        this.prewarmedConnectionMaxAge = prewarmedConnectionMaxAge;
+    }
+
+    /**
+     * The shared client and the pre-warmed sockets of a single broker endpoint on one vert.x context
+     */
+    protected class Endpoint {
+        private final String host;
+        private final int port;
+        private final NetClient client;
+        private final Queue<PooledSocket> idle = new ConcurrentLinkedQueue<PooledSocket>();
+        private final AtomicInteger warming = new AtomicInteger();
+
+        Endpoint(String host, int port) {
+            this.host = host;
+            this.port = port;
+            this.client = vertx.createNetClient();
+        }
+
+        void connect(final Handler<AsyncResult<NetSocket>> handler) {
+            final long start = System.nanoTime();
+            client.connect(port, host, new Handler<AsyncResult<NetSocket>>() {
+                @Override
+                public void handle(AsyncResult<NetSocket> event) {
+                    if (event.succeeded()) {
+                        connectLatency.record(System.nanoTime() - start);
+                    }
+                    handler.handle(event);
+                }
+            });
+        }
+
+        NetSocket poll(long maxAge) {
+            long now = System.currentTimeMillis();
+            PooledSocket pooled;
+            while ((pooled = idle.poll()) != null) {
+                if (now - pooled.created < maxAge) {
+                    pooled.socket.closeHandler(null);
+                    return pooled.socket;
+                }
+                pooled.socket.close();
+            }
+            return null;
+        }
+
+        void refill() {
+            int needed = prewarmedConnections - idle.size() - warming.get();
+            for (int i = 0; i < needed; i++) {
+                warming.incrementAndGet();
+                connect(new Handler<AsyncResult<NetSocket>>() {
+                    @Override
+                    public void handle(AsyncResult<NetSocket> event) {
+                        warming.decrementAndGet();
+                        if (event.succeeded()) {
+                            final PooledSocket pooled = new PooledSocket(event.result());
+                            pooled.socket.pause();
+                            pooled.socket.closeHandler(new Handler<Void>() {
+                                @Override
+                                public void handle(Void event) {
+                                    idle.remove(pooled);
+                                }
+                            });
+                            idle.add(pooled);
+                        } else {
+                            LOG.debug("Could not pre-warm a connection to {}:{}", host, port);
+                        }
+                    }
+                });
+            }
+        }
+
+        void close() {
+            PooledSocket pooled;
+            while ((pooled = idle.poll()) != null) {
+                pooled.socket.close();
+            }
+            client.close();
+        }
+    }
+
+    private static class PooledSocket {
+        private final NetSocket socket;
+        private final long created = System.currentTimeMillis();
+
+        PooledSocket(NetSocket socket) {
+            this.socket = socket;
+        }
+    }
+
+    private static class ConnectResult implements AsyncResult<NetSocket> {
+        private final NetSocket result;
+        private final Throwable cause;
+
+        ConnectResult(NetSocket result, Throwable cause) {
+            this.result = result;
+            this.cause = cause;
+        }
+
+        @Override
+        public NetSocket result() {
+            return result;
+        }
+
+        @Override
+        public Throwable cause() {
+            return cause;
+        }
+
+        @Override
+        public boolean succeeded() {
+            return cause == null;
+        }
+
+        @Override
+        public boolean failed() {
+            return cause != null;
+        }
+    }
+
+    /**
+     * Keeps the most recent latency samples in a ring so that percentiles can be calculated on demand;
+     * samples may be recorded from any event loop
+     */
+    static class LatencySamples {
+        private final AtomicLongArray samples;
+        private final AtomicLong count = new AtomicLong();
+
+        LatencySamples(int size) {
+            this.samples = new AtomicLongArray(size);
+        }
+
+        void record(long value) {
+            long index = count.getAndIncrement();
+            samples.set((int) (index % samples.length()), value);
+        }
+
+        long percentile(double percentile) {
+            int size = (int) Math.min(count.get(), samples.length());
+            if (size == 0) {
+                return 0;
+            }
+            long[] copy = new long[size];
+            for (int i = 0; i < size; i++) {
+                copy[i] = samples.get(i);
+            }
+            Arrays.sort(copy);
+            int index = (int) Math.ceil(percentile / 100.0 * size) - 1;
+            return copy[Math.max(0, Math.min(size - 1, index))];
+        }
+    }
+}
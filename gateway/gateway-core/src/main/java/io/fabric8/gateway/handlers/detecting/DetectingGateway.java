@@ -25,6 +25,7 @@ import io.fabric8.gateway.handlers.detecting.protocol.ssl.SslSocketWrapper;
 import io.fabric8.gateway.handlers.loadbalancer.ClientRequestFacadeFactory;
 import io.fabric8.gateway.handlers.loadbalancer.ConnectionParameters;
 import io.fabric8.gateway.loadbalancer.ClientRequestFacade;
+import io.fabric8.gateway.loadbalancer.LoadAwareLoadBalancer;
 import io.fabric8.gateway.loadbalancer.LoadBalancer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -32,7 +33,6 @@ import org.vertx.java.core.AsyncResult;
 import org.vertx.java.core.Handler;
 import org.vertx.java.core.Vertx;
 import org.vertx.java.core.buffer.Buffer;
-import org.vertx.java.core.net.NetClient;
 import org.vertx.java.core.net.NetServer;
 import org.vertx.java.core.net.NetSocket;
 import org.vertx.java.core.streams.Pump;
@@ -60,7 +60,6 @@ public class DetectingGateway implements DetectingGatewayMBean {
     LoadBalancer serviceLoadBalancer;
     String defaultVirtualHost;
     ArrayList<Protocol> protocols;
-    int maxProtocolIdentificationLength;
     ClientRequestFacadeFactory clientRequestFacadeFactory = new ClientRequestFacadeFactory("PROTOCOL_SESSION_ID, PROTOCOL_CLIENT_ID, REMOTE_ADDRESS");
     final AtomicReference<InetSocketAddress> httpGateway = new AtomicReference<InetSocketAddress>();
     SslConfig sslConfig;
@@ -76,6 +75,19 @@ public class DetectingGateway implements DetectingGatewayMBean {
     private int port;
     private String host;
     private NetServer server;
+    private BackendConnector backendConnector;
+    private int prewarmedConnections;
+    private long prewarmedConnectionMaxAge = 10000;
+
+    private final ServiceMap.Listener serviceRemovedListener = new ServiceMap.Listener() {
+        @Override
+        public void serviceRemoved(String path, ServiceDetails service) {
+            LoadAwareLoadBalancer loadAware = getLoadAwareLoadBalancer();
+            if (loadAware != null) {
+                loadAware.removeService(service);
+            }
+        }
+    };
 
     private FutureHandler<AsyncResult<NetServer>> listenFuture = new FutureHandler<AsyncResult<NetServer>>() {
         @Override
@@ -98,6 +110,10 @@ public class DetectingGateway implements DetectingGatewayMBean {
 
 
     public void init() {
+        getBackendConnector();
+        if (serviceMap != null) {
+            serviceMap.addListener(serviceRemovedListener);
+        }
         server = vertx.createNetServer().connectHandler(new DetectingGatewayNetSocketHandler(this));
         if (host != null) {
             server = server.listen(port, host, listenFuture);
@@ -108,12 +124,18 @@ public class DetectingGateway implements DetectingGatewayMBean {
 
     public void destroy() {
         server.close();
+        if (serviceMap != null) {
+            serviceMap.removeListener(serviceRemovedListener);
+        }
         for (SocketWrapper socket : new ArrayList<>(socketsConnecting)) {
             handleConnectFailure(socket, null);
         }
         for (ConnectedSocketInfo socket : new ArrayList<>(socketsConnected)) {
             handleShutdown(socket);
         }
+        if (backendConnector != null) {
+            backendConnector.close();
+        }
     }
 
     public String getHost() {
@@ -162,13 +184,6 @@ public class DetectingGateway implements DetectingGatewayMBean {
 
     public void setProtocols(ArrayList<Protocol> protocols) {
         this.protocols = new ArrayList<Protocol>(protocols);
-        int max = 0;
-        for (Protocol protocol : protocols) {
-            if( protocol.getMaxIdentificationLength() > max ) {
-                max = protocol.getMaxIdentificationLength();
-            }
-        }
-        maxProtocolIdentificationLength = max;
     }
 
     public Collection<String> getProtocolNames() {
@@ -192,13 +207,15 @@ public class DetectingGateway implements DetectingGatewayMBean {
         private final ConnectionParameters params;
         private final URI url;
         private final SocketWrapper from;
-        private final NetClient to;
+        private final NetSocket to;
+        private final ServiceDetails service;
 
-        public ConnectedSocketInfo(ConnectionParameters params, URI url, SocketWrapper from, NetClient to) {
+        public ConnectedSocketInfo(ConnectionParameters params, URI url, SocketWrapper from, NetSocket to, ServiceDetails service) {
             this.params = params;
             this.url = url;
             this.from = from;
             this.to = to;
+            this.service = service;
         }
     }
 
@@ -239,85 +256,84 @@ public class DetectingGateway implements DetectingGatewayMBean {
             }
         });
         readStream.dataHandler(new Handler<Buffer>() {
-            Buffer received = new Buffer();
+            final ProtocolDetector detector = new ProtocolDetector(protocols);
+            final Buffer received = detector.getReceived();
 
             @Override
             public void handle(Buffer event) {
-                received.appendBuffer(event);
-                for (final Protocol protocol : protocols) {
-                    if (protocol.matches(received)) {
-                        if ("ssl".equals(protocol.getProtocolName())) {
-
-                            LOG.info(String.format("SSL Connection from '%s'", socket.remoteAddress()));
-                            String disabledCypherSuites=null;
-                            String enabledCipherSuites=null;
-                            if (sslConfig != null) {
-                                disabledCypherSuites = sslConfig.getDisabledCypherSuites();
-                                enabledCipherSuites = sslConfig.getEnabledCipherSuites();
-                            }
-                            if (sslContext == null) {
-                                try {
-                                    if (sslConfig != null) {
-                                        sslContext = SSLContext.getInstance(sslConfig.getProtocol());
-                                        sslContext.init(sslConfig.getKeyManagers(), sslConfig.getTrustManagers(), null);
-                                    } else {
-                                        sslContext = SSLContext.getDefault();
-                                    }
-                                } catch (Exception e) {
-                                    handleConnectFailure(socket, "Could initialize SSL: " + e);
-                                    return;
+                final Protocol protocol = detector.detect(event);
+                if (protocol != null) {
+                    if ("ssl".equals(protocol.getProtocolName())) {
+
+                        LOG.info(String.format("SSL Connection from '%s'", socket.remoteAddress()));
+                        String disabledCypherSuites=null;
+                        String enabledCipherSuites=null;
+                        if (sslConfig != null) {
+                            disabledCypherSuites = sslConfig.getDisabledCypherSuites();
+                            enabledCipherSuites = sslConfig.getEnabledCipherSuites();
+                        }
+                        if (sslContext == null) {
+                            try {
+                                if (sslConfig != null) {
+                                    sslContext = SSLContext.getInstance(sslConfig.getProtocol());
+                                    sslContext.init(sslConfig.getKeyManagers(), sslConfig.getTrustManagers(), null);
+                                } else {
+                                    sslContext = SSLContext.getDefault();
                                 }
+                            } catch (Exception e) {
+                                handleConnectFailure(socket, "Could initialize SSL: " + e);
+                                return;
                             }
+                        }
 
-                            // lets wrap it up in a SslSocketWrapper.
-                            SslSocketWrapper sslSocketWrapper = new SslSocketWrapper(socket);
-                            sslSocketWrapper.putBackHeader(received);
-                            sslSocketWrapper.initServer(sslContext, clientAuth, disabledCypherSuites, enabledCipherSuites);
+                        // lets wrap it up in a SslSocketWrapper.
+                        SslSocketWrapper sslSocketWrapper = new SslSocketWrapper(socket);
+                        sslSocketWrapper.putBackHeader(received);
+                        sslSocketWrapper.initServer(sslContext, clientAuth, disabledCypherSuites, enabledCipherSuites);
 
-                            // Undo initial connection accounting since we will be redoing @ the SSL level.
-                            boolean removed = socketsConnecting.remove(socket);
-                            assert removed;
-                            receivedConnectionAttempts.decrementAndGet();
+                        // Undo initial connection accounting since we will be redoing @ the SSL level.
+                        boolean removed = socketsConnecting.remove(socket);
+                        assert removed;
+                        receivedConnectionAttempts.decrementAndGet();
 
-                            DetectingGateway.this.handle(sslSocketWrapper);
-                            return;
+                        DetectingGateway.this.handle(sslSocketWrapper);
+                        return;
 
-                        } else if ("http".equals(protocol.getProtocolName())) {
-                            InetSocketAddress target = getHttpGateway();
-                            if (target != null) {
-                                try {
-                                    URI url = new URI("http://" + target.getHostString() + ":" + target.getPort());
-                                    LOG.info(String.format("Connecting '%s' to '%s:%d' using the http protocol",
-                                            socket.remoteAddress(), url.getHost(), url.getPort()));
-                                    ConnectionParameters params = new ConnectionParameters();
-                                    params.protocol = "http";
-                                    createClient(params, socket, url, received);
-                                    return;
-                                } catch (URISyntaxException e) {
-                                    handleConnectFailure(socket, "Could not build valid connect URI: "+e);
-                                    return;
-                                }
-                            } else {
-                                handleConnectFailure(socket, "No http gateway available for the http protocol");
+                    } else if ("http".equals(protocol.getProtocolName())) {
+                        InetSocketAddress target = getHttpGateway();
+                        if (target != null) {
+                            try {
+                                URI url = new URI("http://" + target.getHostString() + ":" + target.getPort());
+                                LOG.info(String.format("Connecting '%s' to '%s:%d' using the http protocol",
+                                        socket.remoteAddress(), url.getHost(), url.getPort()));
+                                ConnectionParameters params = new ConnectionParameters();
+                                params.protocol = "http";
+                                createClient(params, socket, url, received, null);
+                                return;
+                            } catch (URISyntaxException e) {
+                                handleConnectFailure(socket, "Could not build valid connect URI: "+e);
                                 return;
                             }
                         } else {
-                            protocol.snoopConnectionParameters(socket, received, new Handler<ConnectionParameters>() {
-                                @Override
-                                public void handle(ConnectionParameters connectionParameters) {
-                                    // this will install a new dataHandler on the socket.
-                                    if (connectionParameters.protocol == null)
-                                        connectionParameters.protocol = protocol.getProtocolName();
-                                    if (connectionParameters.protocolSchemes == null)
-                                        connectionParameters.protocolSchemes = protocol.getProtocolSchemes();
-                                    route(socket, connectionParameters, received);
-                                }
-                            });
+                            handleConnectFailure(socket, "No http gateway available for the http protocol");
                             return;
                         }
+                    } else {
+                        protocol.snoopConnectionParameters(socket, received, new Handler<ConnectionParameters>() {
+                            @Override
+                            public void handle(ConnectionParameters connectionParameters) {
+                                // this will install a new dataHandler on the socket.
+                                if (connectionParameters.protocol == null)
+                                    connectionParameters.protocol = protocol.getProtocolName();
+                                if (connectionParameters.protocolSchemes == null)
+                                    connectionParameters.protocolSchemes = protocol.getProtocolSchemes();
+                                route(socket, connectionParameters, received);
+                            }
+                        });
+                        return;
                     }
                 }
-                if (received.length() >= maxProtocolIdentificationLength) {
+                if (detector.isRejected()) {
                     handleConnectFailure(socket, "Connection did not use one of the enabled protocols " + getProtocolNames());
                 }
             }
@@ -336,7 +352,7 @@ public class DetectingGateway implements DetectingGatewayMBean {
     }
 
     public void route(final SocketWrapper socket, ConnectionParameters params, final Buffer received) {
-        NetClient client = null;
+        boolean connecting = false;
 
         if( params.protocolVirtualHost==null ) {
             params.protocolVirtualHost = defaultVirtualHost;
@@ -376,7 +392,8 @@ public class DetectingGateway implements DetectingGatewayMBean {
                                           ));
                                     }
 
-                                    client = createClient(params, socket, uri, received);
+                                    createClient(params, socket, uri, received, serviceDetails);
+                                    connecting = true;
                                     break;
                                 }
                             } catch (URISyntaxException e) {
@@ -388,18 +405,19 @@ public class DetectingGateway implements DetectingGatewayMBean {
             }
         }
 
-        if (client == null) {
+        if (!connecting) {
             // failed to route
             handleConnectFailure(socket, String.format("No endpoint available for virtual host '%s' and protocol %s", params.protocolVirtualHost, params.protocol));
         }
     }
 
     /**
-     * Creates a new client for the given URL and handler
+     * Connects the client socket to the backend at the given URL using the shared {@link BackendConnector}
+     * notifying the service load balancer if it is {@link LoadAwareLoadBalancer load aware}
      */
-    private NetClient createClient(final ConnectionParameters params, final SocketWrapper socketFromClient, final URI url, final Buffer received) {
-        final NetClient netClient = vertx.createNetClient();
-        return netClient.connect(url.getPort(), url.getHost(), new Handler<AsyncResult<NetSocket>>() {
+    private void createClient(final ConnectionParameters params, final SocketWrapper socketFromClient, final URI url, final Buffer received, final ServiceDetails service) {
+        final long connectStart = System.nanoTime();
+        getBackendConnector().connect(url, new Handler<AsyncResult<NetSocket>>() {
             public void handle(final AsyncResult<NetSocket> asyncSocket) {
 
                 if( !asyncSocket.succeeded() ) {
@@ -411,9 +429,14 @@ public class DetectingGateway implements DetectingGatewayMBean {
                     boolean removed = socketsConnecting.remove(socketFromClient);
                     assert removed;
 
-                    final ConnectedSocketInfo connectedInfo = new ConnectedSocketInfo(params, url, socketFromClient, netClient);
+                    final ConnectedSocketInfo connectedInfo = new ConnectedSocketInfo(params, url, socketFromClient, socketToServer, service);
                     boolean added = socketsConnected.add(connectedInfo);
                     assert added;
+                    LoadAwareLoadBalancer loadAware = getLoadAwareLoadBalancer();
+                    if (loadAware != null && service != null) {
+                        loadAware.recordLatency(service, System.nanoTime() - connectStart);
+                        loadAware.requestStarted(service);
+                    }
 
                     Handler<Void> endHandler = new Handler<Void>() {
                         @Override
@@ -435,13 +458,33 @@ public class DetectingGateway implements DetectingGatewayMBean {
                     socketToServer.write(received);
                     Pump.createPump(socketToServer, socketFromClient.writeStream()).start();
                     Pump.createPump(socketFromClient.readStream(), socketToServer).start();
+                    // the backend socket is handed over paused so nothing it sent is lost before the pump was set up
+                    socketToServer.resume();
                 }
             }
         });
     }
 
+    private LoadAwareLoadBalancer getLoadAwareLoadBalancer() {
+        LoadBalancer loadBalancer = serviceLoadBalancer;
+        return loadBalancer instanceof LoadAwareLoadBalancer ? (LoadAwareLoadBalancer) loadBalancer : null;
+    }
+
+    private synchronized BackendConnector getBackendConnector() {
+        if (backendConnector == null) {
+            backendConnector = new BackendConnector(vertx);
+            backendConnector.setPrewarmedConnections(prewarmedConnections);
+            backendConnector.setPrewarmedConnectionMaxAge(prewarmedConnectionMaxAge);
+        }
+        return backendConnector;
+    }
+
     private void handleShutdown(ConnectedSocketInfo connectedInfo) {
         if( socketsConnected.remove(connectedInfo) ) {
+            LoadAwareLoadBalancer loadAware = getLoadAwareLoadBalancer();
+            if (loadAware != null && connectedInfo.service != null) {
+                loadAware.requestCompleted(connectedInfo.service);
+            }
             connectedInfo.from.close();
             connectedInfo.to.close();
             shutdownTacker.release();
@@ -494,6 +537,52 @@ public class DetectingGateway implements DetectingGatewayMBean {
         return rc.toArray(new String[rc.size()]);
     }
 
+    public long getBackendConnectLatencyP50Nanos() {
+        return backendConnector != null ? backendConnector.getConnectLatencyPercentile(50) : 0;
+    }
+
+    public long getBackendConnectLatencyP99Nanos() {
+        return backendConnector != null ? backendConnector.getConnectLatencyPercentile(99) : 0;
+    }
+
+    public long getBackendPoolHits() {
+        return backendConnector != null ? backendConnector.getPoolHits() : 0;
+    }
+
+    public long getBackendPoolMisses() {
+        return backendConnector != null ? backendConnector.getPoolMisses() : 0;
+    }
+
+    public double getBackendPoolHitRate() {
+        return backendConnector != null ? backendConnector.getPoolHitRate() : 0.0;
+    }
+
+    public int getBackendPooledConnections() {
+        return backendConnector != null ? backendConnector.getPooledConnections() : 0;
+    }
+
+    public int getPrewarmedConnections() {
+        return prewarmedConnections;
+    }
+
+    public void setPrewarmedConnections(int prewarmedConnections) {
+        this.prewarmedConnections = prewarmedConnections;
+        if (backendConnector != null) {
+            backendConnector.setPrewarmedConnections(prewarmedConnections);
+        }
+    }
+
+    public long getPrewarmedConnectionMaxAge() {
+        return prewarmedConnectionMaxAge;
+    }
+
+    public void setPrewarmedConnectionMaxAge(long prewarmedConnectionMaxAge) {
+        this.prewarmedConnectionMaxAge = prewarmedConnectionMaxAge;
+        if (backendConnector != null) {
+            backendConnector.setPrewarmedConnectionMaxAge(prewarmedConnectionMaxAge);
+        }
+    }
+
     public long getConnectionTimeout() {
         return connectionTimeout;
     }
@@ -34,5 +34,13 @@ public interface DetectingGatewayMBean {
     public String[] getConnectedClients();
     public long getConnectionTimeout();
     public void setConnectionTimeout(long connectionTimeout);
+    public long getBackendConnectLatencyP50Nanos();
+    public long getBackendConnectLatencyP99Nanos();
+    public long getBackendPoolHits();
+    public long getBackendPoolMisses();
+    public double getBackendPoolHitRate();
+    public int getBackendPooledConnections();
+    public int getPrewarmedConnections();
+    public void setPrewarmedConnections(int prewarmedConnections);
 
 }
@@ -29,6 +29,13 @@ public interface Protocol {
     public String getProtocolName();
     public int getMaxIdentificationLength();
     public boolean matches(Buffer buffer);
+
+    /**
+     * Returns false if the header received so far already rules out this protocol, so that
+     * protocol detection can stop considering it before {@link #getMaxIdentificationLength()}
+     * bytes have arrived.
+     */
+    public boolean canMatch(Buffer header);
     public void snoopConnectionParameters(final SocketWrapper socket, Buffer received, Handler<ConnectionParameters> handler);
 
 }
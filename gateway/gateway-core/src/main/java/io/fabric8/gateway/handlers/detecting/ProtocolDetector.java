@@ -0,0 +1,91 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.handlers.detecting;
+
+import org.vertx.java.core.buffer.Buffer;
+
+import java.util.Collection;
+
+/**
+ * Detects the protocol of a single client connection as its data arrives.
+ * <p/>
+ * Each {@link Protocol} is only ever given the first {@link Protocol#getMaxIdentificationLength()} bytes received
+ * rather than everything accumulated so far, and is dropped as soon as it {@link Protocol#canMatch(Buffer) can no
+ * longer match} or enough bytes have arrived without it matching. Once every protocol has been dropped the
+ * connection can be rejected straight away rather than waiting for more data or the connection timeout.
+ */
+public class ProtocolDetector {
+    private final Protocol[] protocols;
+    private final boolean[] rejected;
+    private final int maxIdentificationLength;
+    private final Buffer received = new Buffer();
+    private int candidates;
+
+    public ProtocolDetector(Collection<Protocol> protocols) {
+        this.protocols = protocols.toArray(new Protocol[protocols.size()]);
+        this.rejected = new boolean[this.protocols.length];
+        this.candidates = this.protocols.length;
+        int max = 0;
+        for (Protocol protocol : this.protocols) {
+            max = Math.max(max, protocol.getMaxIdentificationLength());
+        }
+        this.maxIdentificationLength = max;
+    }
+
+    /**
+     * Adds the newly received data returning the matching protocol or null if no protocol has matched yet
+     */
+    public Protocol detect(Buffer data) {
+        received.appendBuffer(data);
+        int length = received.length();
+        if (candidates == 0) {
+            return null;
+        }
+        Buffer header = length > maxIdentificationLength ? received.getBuffer(0, maxIdentificationLength) : received;
+        for (int i = 0; i < protocols.length; i++) {
+            if (rejected[i]) {
+                continue;
+            }
+            Protocol protocol = protocols[i];
+            if (protocol.matches(header)) {
+                return protocol;
+            }
+            if (length >= protocol.getMaxIdentificationLength() || !protocol.canMatch(header)) {
+                rejected[i] = true;
+                candidates--;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns true if the data received so far does not match any of the protocols
+     */
+    public boolean isRejected() {
+        return candidates == 0;
+    }
+
+    /**
+     * Returns all the data received so far
+     */
+    public Buffer getReceived() {
+        return received;
+    }
+
+    public int getMaxIdentificationLength() {
+        return maxIdentificationLength;
+    }
+}
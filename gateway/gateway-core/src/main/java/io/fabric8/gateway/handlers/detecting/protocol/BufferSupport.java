@@ -80,6 +80,21 @@ public class BufferSupport {
         return indexOf(self, start, start+needle.length(), needle) == 0;
     }
 
+    /**
+     * Returns true if the bytes of the buffer from the start position are a prefix of the needle (or the needle
+     * is a prefix of them), so that the buffer could still start with the needle at that position once more
+     * data has been received.
+     */
+    static public boolean couldStartWith(Buffer self, int start, Buffer needle) {
+        int length = Math.min(self.length() - start, needle.length());
+        for (int i = 0; i < length; i++) {
+            if (self.getByte(start + i) != needle.getByte(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     static public int indexOf(Buffer self, int start, Buffer needle) {
         return indexOf(self, start, self.length(), needle);
     }
@@ -153,10 +168,23 @@ public class BufferSupport {
 
     public static Buffer toBuffer(ByteBuffer buff) {
         Buffer self = new Buffer(buff.remaining());
-        while( buff.hasRemaining() ) {
-            self.appendByte(buff.get());
-        }
+        append(self, buff);
         return self;
     }
 
+    /**
+     * Appends the remaining bytes of the given ByteBuffer to the buffer without an intermediate byte array
+     */
+    static public void append(Buffer self, ByteBuffer buff) {
+        getNettyByteBuf(self).writeBytes(buff);
+    }
+
+    /**
+     * Returns a ByteBuffer view of the contents of the buffer which shares its content rather than copying it
+     */
+    static public ByteBuffer toByteBuffer(Buffer self) {
+        ByteBuf buf = getNettyByteBuf(self);
+        return buf.nioBuffer(buf.readerIndex(), buf.readableBytes());
+    }
+
 }
@@ -25,6 +25,7 @@ import org.vertx.java.core.Handler;
 import org.vertx.java.core.buffer.Buffer;
 
 import static io.fabric8.gateway.handlers.detecting.protocol.Ascii.ascii;
+import static io.fabric8.gateway.handlers.detecting.protocol.BufferSupport.couldStartWith;
 import static io.fabric8.gateway.handlers.detecting.protocol.BufferSupport.startsWith;
 
 /**
@@ -71,6 +72,19 @@ public class HttpProtocol implements Protocol {
             startsWith(header, 0, CONNECT.toBuffer());
     }
 
+    @Override
+    public boolean canMatch(Buffer header) {
+        return
+            couldStartWith(header, 0, GET.toBuffer()) ||
+            couldStartWith(header, 0, HEAD.toBuffer()) ||
+            couldStartWith(header, 0, POST.toBuffer()) ||
+            couldStartWith(header, 0, PUT.toBuffer()) ||
+            couldStartWith(header, 0, DELETE.toBuffer()) ||
+            couldStartWith(header, 0, OPTIONS.toBuffer()) ||
+            couldStartWith(header, 0, TRACE.toBuffer()) ||
+            couldStartWith(header, 0, CONNECT.toBuffer());
+    }
+
     @Override
     public void snoopConnectionParameters(final SocketWrapper socket, Buffer received, final Handler<ConnectionParameters> handler) {
         handler.handle(new ConnectionParameters());
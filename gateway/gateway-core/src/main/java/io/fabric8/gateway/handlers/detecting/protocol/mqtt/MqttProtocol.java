@@ -69,6 +69,12 @@ public class MqttProtocol implements Protocol {
         }
     }
 
+    @Override
+    public boolean canMatch(Buffer header) {
+        // the first packet must be a CONNECT
+        return BufferSupport.couldStartWith(header, 0, HEAD_MAGIC);
+    }
+
     static void append(Buffer self, MQTTFrame value) {
         MQTTFrame frame = (MQTTFrame) value;
         self.appendByte(frame.header());
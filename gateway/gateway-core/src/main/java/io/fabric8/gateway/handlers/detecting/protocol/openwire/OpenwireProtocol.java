@@ -27,6 +27,7 @@ import org.vertx.java.core.buffer.Buffer;
 
 import java.io.IOException;
 
+import static io.fabric8.gateway.handlers.detecting.protocol.BufferSupport.couldStartWith;
 import static io.fabric8.gateway.handlers.detecting.protocol.BufferSupport.indexOf;
 
 /**
@@ -60,6 +61,12 @@ public class OpenwireProtocol implements Protocol {
         return buffer.length() >= 4 + MAGIC.length() && indexOf(buffer, 5, MAGIC) >= 0;
     }
 
+    @Override
+    public boolean canMatch(Buffer header) {
+        // the WireFormatInfo starts with a 4 byte size and the command type before the magic
+        return couldStartWith(header, 5, MAGIC);
+    }
+
     @Override
     public void snoopConnectionParameters(final SocketWrapper socket, Buffer received, final Handler<ConnectionParameters> handler) {
 
@@ -0,0 +1,117 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.handlers.detecting.protocol.ssl;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded pool of direct {@link ByteBuffer}s used by the {@link SslSocketWrapper} to wrap and unwrap TLS records
+ * without allocating new buffers for every packet.
+ * <p/>
+ * Buffers are only borrowed while data is being processed, so idle connections do not hold on to any. The pool never
+ * allocates more than its maximum number of direct buffers; once they are all borrowed, and for requests larger than
+ * the pooled buffer size, heap buffers are handed out instead and simply dropped when they are released.
+ */
+public class DirectBufferPool {
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+    public static final int DEFAULT_MAX_POOLED_BUFFERS = 256;
+
+    private static final DirectBufferPool DEFAULT = new DirectBufferPool(DEFAULT_BUFFER_SIZE, DEFAULT_MAX_POOLED_BUFFERS);
+
+    private final int bufferSize;
+    private final int maxPooledBuffers;
+    private final Queue<ByteBuffer> buffers = new ConcurrentLinkedQueue<ByteBuffer>();
+    private final AtomicInteger pooledCount = new AtomicInteger();
+    private final AtomicInteger directCount = new AtomicInteger();
+    private final AtomicLong allocatedCount = new AtomicLong();
+    private final AtomicLong heapCount = new AtomicLong();
+
+    public DirectBufferPool(int bufferSize, int maxPooledBuffers) {
+        this.bufferSize = bufferSize;
+        this.maxPooledBuffers = maxPooledBuffers;
+    }
+
+    /**
+     * Returns the pool shared by all the SSL connections of the gateway
+     */
+    public static DirectBufferPool getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Returns a cleared buffer with a capacity of at least the given size
+     */
+    public ByteBuffer acquire(int minimumSize) {
+        if (minimumSize > bufferSize) {
+            heapCount.incrementAndGet();
+            return ByteBuffer.allocate(minimumSize);
+        }
+        ByteBuffer answer = buffers.poll();
+        if (answer != null) {
+            pooledCount.decrementAndGet();
+            answer.clear();
+            return answer;
+        }
+        if (directCount.incrementAndGet() > maxPooledBuffers) {
+            directCount.decrementAndGet();
+            heapCount.incrementAndGet();
+            return ByteBuffer.allocate(bufferSize);
+        }
+        allocatedCount.incrementAndGet();
+        return ByteBuffer.allocateDirect(bufferSize);
+    }
+
+    /**
+     * Returns a buffer to the pool; heap buffers and buffers which were not acquired from the pool are discarded
+     */
+    public void release(ByteBuffer buffer) {
+        if (buffer == null || buffer.capacity() != bufferSize || !buffer.isDirect()) {
+            return;
+        }
+        pooledCount.incrementAndGet();
+        buffer.clear();
+        buffers.offer(buffer);
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * Returns the number of buffers currently available in the pool
+     */
+    public int getPooledCount() {
+        return pooledCount.get();
+    }
+
+    /**
+     * Returns the total number of direct buffers this pool has had to allocate
+     */
+    public long getAllocatedCount() {
+        return allocatedCount.get();
+    }
+
+    /**
+     * Returns the number of heap buffers handed out for oversized requests or while all the direct buffers were borrowed
+     */
+    public long getHeapAllocatedCount() {
+        return heapCount.get();
+    }
+}
@@ -75,6 +75,18 @@ public class SslProtocol implements Protocol {
         }
     }
 
+    @Override
+    public boolean canMatch(Buffer buffer) {
+        if( buffer.length() >= 6 ) {
+            return matches(buffer);
+        } else if( buffer.length() > 0 ) {
+            byte first = buffer.getByte(0);
+            // a TLS handshake record or an SSLv2 style client hello
+            return first == 0x16 || (first & 0xC0) == 0x80;
+        }
+        return true;
+    }
+
     private boolean isSSLVerions(byte ver) {
         switch (ver) {  // Minor version
             case 0: // SSLv3
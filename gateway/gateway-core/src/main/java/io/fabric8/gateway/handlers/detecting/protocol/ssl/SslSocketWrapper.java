@@ -16,6 +16,7 @@
 package io.fabric8.gateway.handlers.detecting.protocol.ssl;
 
 import io.fabric8.gateway.SocketWrapper;
+import io.fabric8.gateway.handlers.detecting.protocol.BufferSupport;
 import org.vertx.java.core.Handler;
 import org.vertx.java.core.buffer.Buffer;
 import org.vertx.java.core.streams.ReadStream;
@@ -32,6 +33,12 @@ import java.util.ArrayList;
 import static javax.net.ssl.SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING;
 
 /**
+ * Wraps a socket with an {@link SSLEngine}.
+ * <p/>
+ * TLS records are wrapped and unwrapped using direct buffers borrowed from a shared {@link DirectBufferPool} and
+ * the output of several records is gathered into each buffer handed on, so the per packet cost is a single copy in
+ * each direction rather than a new set of heap buffers. A partial record waiting for the rest of its bytes is
+ * copied to a small per connection heap buffer so that slow or idle connections do not keep a pooled buffer.
  */
 public class SslSocketWrapper extends SocketWrapper implements ReadStream<SslSocketWrapper>, WriteStream<SslSocketWrapper> {
 
@@ -44,6 +51,7 @@ public class SslSocketWrapper extends SocketWrapper implements ReadStream<SslSoc
     final private SocketWrapper next;
 
     private SSLEngine engine;
+    private final DirectBufferPool bufferPool = DirectBufferPool.getDefault();
     private Handler<Throwable> plainExceptionHandler;
     private boolean failed = false;
 
@@ -52,7 +60,11 @@ public class SslSocketWrapper extends SocketWrapper implements ReadStream<SslSoc
     // ReadStream<SslSocketWrapper> interface impl.
     //
     //////////////////////////////////////////////////////////////////////////
-    private Buffer encryptedReadBuffer;
+    // holds the encrypted bytes which have not been unwrapped yet; in write mode between calls
+    private ByteBuffer encryptedReadBuffer;
+    // holds a partial record, in write mode, while waiting for the rest of it so that the pooled buffer can be returned
+    private ByteBuffer partialRecordBuffer;
+    private Buffer headerBuffer;
     private boolean encryptedReadBufferUnderflow;
     private boolean encryptedReadEOF = false;
     private Buffer plainReadBuffer;
@@ -64,7 +76,48 @@ public class SslSocketWrapper extends SocketWrapper implements ReadStream<SslSoc
         if( engine!=null ) {
             throw new IllegalStateException("putBackHeader must be called before init");
         }
-        encryptedReadBuffer = buffer;
+        headerBuffer = buffer;
+    }
+
+    private boolean hasEncryptedInput() {
+        return (encryptedReadBuffer!=null && encryptedReadBuffer.position() > 0)
+            || (partialRecordBuffer!=null && partialRecordBuffer.position() > 0);
+    }
+
+    private void appendEncryptedInput(Buffer buffer) {
+        ByteBuffer input = BufferSupport.toByteBuffer(buffer);
+        int len = input.remaining();
+        if( encryptedReadBuffer == null ) {
+            int partial = partialRecordBuffer==null ? 0 : partialRecordBuffer.position();
+            encryptedReadBuffer = bufferPool.acquire(Math.max(partial + len, engine.getSession().getPacketBufferSize()));
+            if( partial > 0 ) {
+                partialRecordBuffer.flip();
+                encryptedReadBuffer.put(partialRecordBuffer);
+                partialRecordBuffer.clear();
+            }
+        } else if( encryptedReadBuffer.remaining() < len ) {
+            ByteBuffer larger = bufferPool.acquire(encryptedReadBuffer.position() + len);
+            encryptedReadBuffer.flip();
+            larger.put(encryptedReadBuffer);
+            bufferPool.release(encryptedReadBuffer);
+            encryptedReadBuffer = larger;
+        }
+        encryptedReadBuffer.put(input);
+    }
+
+    private void releaseBuffers() {
+        bufferPool.release(encryptedReadBuffer);
+        encryptedReadBuffer = null;
+    }
+
+    private void parkPartialRecord(ByteBuffer input) {
+        int len = input.remaining();
+        if( partialRecordBuffer == null || partialRecordBuffer.capacity() < len ) {
+            partialRecordBuffer = ByteBuffer.allocate(Math.max(len, engine.getSession().getPacketBufferSize()));
+        }
+        partialRecordBuffer.clear();
+        partialRecordBuffer.put(input);
+        releaseBuffers();
     }
 
     private void pumpReads() {
@@ -80,10 +133,11 @@ public class SslSocketWrapper extends SocketWrapper implements ReadStream<SslSoc
                 return;
             }
 
-            if( encryptedReadBuffer!=null && plainReadBuffer==null && !encryptedReadBufferUnderflow ) {
-                ByteBuffer input = ByteBuffer.wrap(encryptedReadBuffer.getBytes());
-                ByteBuffer output = ByteBuffer.allocate(engine.getSession().getApplicationBufferSize());
-
+            if( hasEncryptedInput() && plainReadBuffer==null && !encryptedReadBufferUnderflow ) {
+                int applicationBufferSize = engine.getSession().getApplicationBufferSize();
+                ByteBuffer input = encryptedReadBuffer;
+                ByteBuffer output = bufferPool.acquire(applicationBufferSize);
+                input.flip();
                 try {
                     boolean done = false;
                     while( !done ) {
@@ -107,36 +161,44 @@ public class SslSocketWrapper extends SocketWrapper implements ReadStream<SslSoc
                                 }
                                 break;
                             case BUFFER_OVERFLOW:
-                                throw new SSLException("BUFFER_OVERFLOW");
+                                if( output.position() == 0 ) {
+                                    throw new SSLException("BUFFER_OVERFLOW");
+                                }
+                                done = false;
                         }
 
-                        // Lets fill the plain buffer..
-                        output.flip();
-                        if( output.remaining() > 0 ) {
-                            pump = true;
+                        // Lets fill the plain buffer once we have unwrapped as many records as the output can hold..
+                        if( done || output.remaining() < applicationBufferSize ) {
+                            output.flip();
                             int len = output.remaining();
-                            if( plainReadBuffer == null ) {
-                                plainReadBuffer = new Buffer(len);
+                            if( len > 0 ) {
+                                pump = true;
+                                if( plainReadBuffer == null ) {
+                                    plainReadBuffer = new Buffer(len);
+                                }
+                                BufferSupport.append(plainReadBuffer, output);
                             }
-                            plainReadBuffer.appendBytes(output.array(), output.arrayOffset()+ output.position(), len);
+                            output.clear();
                         }
-                        output.clear();
-
                     }
                 } catch (SSLException e) {
                     onFailure(e);
                     return;
                 } finally {
-                    int len = input.remaining();
-                    if( len > 0 ) {
-                        // we need to compact the encryptedReadBuffer
-                        if( input.position()!=0  ) {
-                            encryptedReadBuffer = new Buffer(len);
-                            encryptedReadBuffer.appendBytes(input.array(), input.arrayOffset()+ input.position(), len);
+                    bufferPool.release(output);
+                    // the buffers are released on failure
+                    if( encryptedReadBuffer == input ) {
+                        if( input.hasRemaining() && encryptedReadBufferUnderflow ) {
+                            // keep the partial record on the heap until more data arrives so that slow
+                            // connections do not hold on to a pooled buffer
+                            parkPartialRecord(input);
+                        } else if( input.hasRemaining() ) {
+                            // the rest is unwrapped once the handshake has moved on
+                            input.compact();
+                        } else {
+                            // everything was consumed.
+                            releaseBuffers();
                         }
-                    } else {
-                        // everything was consumed.
-                        encryptedReadBuffer = null;
                     }
                 }
             }
@@ -152,7 +214,7 @@ public class SslSocketWrapper extends SocketWrapper implements ReadStream<SslSoc
                 }
             }
 
-            if( encryptedReadBuffer==null && plainReadBuffer==null && encryptedReadEOF ) {
+            if( !hasEncryptedInput() && plainReadBuffer==null && encryptedReadEOF ) {
                 encryptedReadEOF = false;
                 Handler<Void> handler = plainEndHandler;
                 if( handler !=null ) {
@@ -272,8 +334,9 @@ public class SslSocketWrapper extends SocketWrapper implements ReadStream<SslSoc
             }
 
             if( plainWriteBuffer!=null ) {
-                ByteBuffer input = ByteBuffer.wrap(plainWriteBuffer.getBytes());
-                ByteBuffer output = ByteBuffer.allocate(engine.getSession().getPacketBufferSize());
+                int packetBufferSize = engine.getSession().getPacketBufferSize();
+                ByteBuffer input = BufferSupport.toByteBuffer(plainWriteBuffer);
+                ByteBuffer output = bufferPool.acquire(packetBufferSize);
 
                 try {
                     boolean done = false;
@@ -295,31 +358,36 @@ public class SslSocketWrapper extends SocketWrapper implements ReadStream<SslSoc
                             case BUFFER_UNDERFLOW:
                                 break;
                             case BUFFER_OVERFLOW:
+                                if( output.position() == 0 ) {
+                                    throw new SSLException("BUFFER_OVERFLOW");
+                                }
                                 done = false;
                         }
 
-                        // Lets fill the plain buffer..
-                        output.flip();
-                        int len = output.remaining();
-                        if( len > 0 ) {
-                            pump = true;
-                            if( encryptedWriteBuffer == null ) {
-                                encryptedWriteBuffer = new Buffer(len);
+                        // Lets fill the encrypted buffer once we have wrapped as many records as the output can hold..
+                        if( done || output.remaining() < packetBufferSize ) {
+                            output.flip();
+                            int len = output.remaining();
+                            if( len > 0 ) {
+                                pump = true;
+                                if( encryptedWriteBuffer == null ) {
+                                    encryptedWriteBuffer = new Buffer(len);
+                                }
+                                BufferSupport.append(encryptedWriteBuffer, output);
                             }
-                            encryptedWriteBuffer.appendBytes(output.array(), output.arrayOffset()+ output.position(), len);
+                            output.clear();
                         }
-                        output.clear();
                     }
                 } catch (SSLException e) {
                    onFailure(e);
                    return;
                 } finally {
-                    int len = input.remaining();
-                    if( len > 0 ) {
+                    bufferPool.release(output);
+                    int consumed = input.position();
+                    if( input.hasRemaining() ) {
                         // we need to compact the plainWriteBuffer
-                        if( input.position()!=0  ) {
-                            plainWriteBuffer = new Buffer(len);
-                            plainWriteBuffer.appendBytes(input.array(), input.arrayOffset()+ input.position(), len);
+                        if( consumed!=0  ) {
+                            plainWriteBuffer = plainWriteBuffer.getBuffer(consumed, plainWriteBuffer.length());
                         }
                     } else {
                         // everything was consumed.
@@ -366,6 +434,8 @@ public class SslSocketWrapper extends SocketWrapper implements ReadStream<SslSoc
 
     @Override
     public void close() {
+        releaseBuffers();
+        partialRecordBuffer = null;
         next.close();
     }
 
@@ -443,14 +513,14 @@ public class SslSocketWrapper extends SocketWrapper implements ReadStream<SslSoc
     }
 
     private void init() {
+        if( headerBuffer!=null ) {
+            appendEncryptedInput(headerBuffer);
+            headerBuffer = null;
+        }
         this.next.readStream().dataHandler(new Handler<Buffer>() {
             @Override
             public void handle(Buffer buffer) {
-                if( encryptedReadBuffer == null ) {
-                    encryptedReadBuffer = buffer;
-                } else {
-                    encryptedReadBuffer.appendBuffer(buffer);
-                }
+                appendEncryptedInput(buffer);
                 encryptedReadBufferUnderflow = false;
                 pumpReads();
             }
@@ -503,7 +573,7 @@ public class SslSocketWrapper extends SocketWrapper implements ReadStream<SslSoc
                         break;
 
                     case NEED_UNWRAP:
-                        if( encryptedReadBuffer!=null ) {
+                        if( hasEncryptedInput() && !encryptedReadBufferUnderflow ) {
                             pumpReads(false);
                             break;
                         } else {
@@ -526,6 +596,8 @@ public class SslSocketWrapper extends SocketWrapper implements ReadStream<SslSoc
 
     private void onFailure(Throwable error) {
         failed = true;
+        releaseBuffers();
+        partialRecordBuffer = null;
         Handler<Throwable> handler = plainExceptionHandler;
         if( handler!=null ) {
             handler.handle(error);
@@ -23,6 +23,7 @@ import org.slf4j.LoggerFactory;
 import org.vertx.java.core.Handler;
 import org.vertx.java.core.buffer.Buffer;
 
+import static io.fabric8.gateway.handlers.detecting.protocol.BufferSupport.couldStartWith;
 import static io.fabric8.gateway.handlers.detecting.protocol.BufferSupport.startsWith;
 import static io.fabric8.gateway.handlers.detecting.protocol.stomp.Constants.*;
 
@@ -59,6 +60,12 @@ public class StompProtocol implements Protocol {
                startsWith(header, 0, STOMP.toBuffer());
     }
 
+    @Override
+    public boolean canMatch(Buffer header) {
+        return couldStartWith(header, 0, CONNECT.toBuffer()) ||
+               couldStartWith(header, 0, STOMP.toBuffer());
+    }
+
     @Override
     public void snoopConnectionParameters(final SocketWrapper socket, Buffer received, final Handler<ConnectionParameters> handler) {
 
@@ -0,0 +1,359 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.handlers.http;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.Vertx;
+import org.vertx.java.core.http.HttpClient;
+
+import java.net.URL;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A pool of keep-alive {@link HttpClient} instances, one per upstream <code>host:port</code>, so that
+ * proxied requests reuse the TCP connections vert.x keeps open to each backend rather than
+ * doing a new handshake per request.
+ * <p/>
+ * Each upstream client is bounded by {@link #getMaxConnectionsPerUpstream()} connections; requests
+ * beyond that are queued by vert.x until a connection is returned. Upstreams which have had no
+ * requests in flight for longer than {@link #getIdleTimeout()} milliseconds are closed.
+ */
+public class HttpClientPool {
+    private static final transient Logger LOG = LoggerFactory.getLogger(HttpClientPool.class);
+
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_UPSTREAM = 20;
+    public static final long DEFAULT_IDLE_TIMEOUT = 60000L;
+
+    private final Vertx vertx;
+    private final ConcurrentMap<String, Upstream> upstreams = new ConcurrentHashMap<String, Upstream>();
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong totalWaitTimeNanos = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    private int maxConnectionsPerUpstream = DEFAULT_MAX_CONNECTIONS_PER_UPSTREAM;
+    private boolean keepAlive = true;
+    private boolean pipelining;
+    private long idleTimeout = DEFAULT_IDLE_TIMEOUT;
+    private long evictionTimerId = -1;
+
+    public HttpClientPool(Vertx vertx) {
+        this.vertx = vertx;
+    }
+
+    @Override
+    public String toString() {
+        return "HttpClientPool{" +
+                "upstreams=" + upstreams.keySet() +
+                ", maxConnectionsPerUpstream=" + maxConnectionsPerUpstream +
+                ", keepAlive=" + keepAlive +
+                ", pipelining=" + pipelining +
+                '}';
+    }
+
+    /**
+     * Starts the timer which closes idle upstream clients
+     */
+    public synchronized void start() {
+        if (evictionTimerId == -1 && idleTimeout > 0) {
+            long period = Math.max(1000L, idleTimeout / 2);
+            evictionTimerId = vertx.setPeriodic(period, new Handler<Long>() {
+                @Override
+                public void handle(Long timerId) {
+                    evictIdle();
+                }
+            });
+        }
+    }
+
+    /**
+     * Stops the eviction timer and closes all the pooled clients
+     */
+    public synchronized void stop() {
+        if (evictionTimerId != -1) {
+            vertx.cancelTimer(evictionTimerId);
+            evictionTimerId = -1;
+        }
+        Iterator<Upstream> iter = upstreams.values().iterator();
+        while (iter.hasNext()) {
+            Upstream upstream = iter.next();
+            iter.remove();
+            upstream.close();
+        }
+    }
+
+    /**
+     * Acquires the pooled client for the given URL; the returned lease must be
+     * {@link Lease#release() released} when the response has completed or failed.
+     */
+    public Lease acquire(URL url) {
+        String key = getUpstreamKey(url);
+        while (true) {
+            Upstream upstream = upstreams.get(key);
+            if (upstream == null) {
+                Upstream newUpstream = new Upstream(key, createClient(url));
+                upstream = upstreams.putIfAbsent(key, newUpstream);
+                if (upstream == null) {
+                    upstream = newUpstream;
+                } else {
+                    newUpstream.close();
+                }
+            }
+            if (upstream.tryAcquire()) {
+                upstream.lastUsed = System.currentTimeMillis();
+                requestCount.incrementAndGet();
+                return new Lease(upstream);
+            }
+            // the upstream has just been evicted so lets make sure its gone and create a new one
+            upstreams.remove(key, upstream);
+        }
+    }
+
+    /**
+     * Returns the <code>host:port</code> key of the upstream the given URL is proxied to
+     */
+    public static String getUpstreamKey(URL url) {
+        return url.getHost() + ":" + url.getPort();
+    }
+
+    protected HttpClient createClient(URL url) {
+        HttpClient client = vertx.createHttpClient();
+        client.setHost(url.getHost());
+        client.setPort(url.getPort());
+        client.setKeepAlive(keepAlive);
+        client.setPipelining(pipelining);
+        client.setMaxPoolSize(maxConnectionsPerUpstream);
+        return client;
+    }
+
+    /**
+     * Closes the clients of any upstream which has had no requests in flight for the idle timeout
+     */
+    public void evictIdle() {
+        long threshold = System.currentTimeMillis() - idleTimeout;
+        for (Map.Entry<String, Upstream> entry : upstreams.entrySet()) {
+            Upstream upstream = entry.getValue();
+            if (upstream.lastUsed < threshold && upstream.tryClose()) {
+                upstreams.remove(entry.getKey(), upstream);
+                LOG.debug("Closing idle upstream client for {}", entry.getKey());
+                evictionCount.incrementAndGet();
+                upstream.close();
+            }
+        }
+    }
+
+    // Statistics
+    //-------------------------------------------------------------------------
+
+    /**
+     * Returns the number of upstreams which currently have a pooled client
+     */
+    public int getUpstreamCount() {
+        return upstreams.size();
+    }
+
+    /**
+     * Returns the number of requests currently in flight across all upstreams; several requests may
+     * share a single connection when pipelining or be queued waiting for one
+     */
+    public int getInFlightRequestCount() {
+        int answer = 0;
+        for (Upstream upstream : upstreams.values()) {
+            answer += Math.max(0, upstream.inUse.get());
+        }
+        return answer;
+    }
+
+    /**
+     * Returns the number of pooled upstream clients which have no requests in flight
+     */
+    public int getIdleUpstreamCount() {
+        int answer = 0;
+        for (Upstream upstream : upstreams.values()) {
+            if (upstream.inUse.get() == 0) {
+                answer++;
+            }
+        }
+        return answer;
+    }
+
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    /**
+     * Returns the average time between handing a request to the pool and receiving the
+     * upstream response headers, which includes any time spent waiting for a free connection
+     */
+    public long getAverageWaitTimeNanos() {
+        long count = requestCount.get();
+        return count > 0 ? totalWaitTimeNanos.get() / count : 0;
+    }
+
+    public void resetStatistics() {
+        requestCount.set(0);
+        totalWaitTimeNanos.set(0);
+        evictionCount.set(0);
+    }
+
+    // Properties
+    //-------------------------------------------------------------------------
+
+    public int getMaxConnectionsPerUpstream() {
+        return maxConnectionsPerUpstream;
+    }
+
+    public void setMaxConnectionsPerUpstream(int maxConnectionsPerUpstream) {
+        this.maxConnectionsPerUpstream = maxConnectionsPerUpstream;
+    }
+
+    public boolean isKeepAlive() {
+        return keepAlive;
+    }
+
+    public void setKeepAlive(boolean keepAlive) {
+        this.keepAlive = keepAlive;
+    }
+
+    public boolean isPipelining() {
+        return pipelining;
+    }
+
+    public void setPipelining(boolean pipelining) {
+        this.pipelining = pipelining;
+    }
+
+    public long getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    public void setIdleTimeout(long idleTimeout) {
+        this.idleTimeout = idleTimeout;
+    }
+
+    static class Upstream {
+        private static final int CLOSED = -1;
+
+        private final String key;
+        private final HttpClient client;
+        /**
+         * The number of requests in flight or {@link #CLOSED} once the upstream has been evicted
+         */
+        private final AtomicInteger inUse = new AtomicInteger();
+        private volatile long lastUsed = System.currentTimeMillis();
+
+        Upstream(String key, HttpClient client) {
+            this.key = key;
+            this.client = client;
+        }
+
+        /**
+         * Increments the requests in flight unless the upstream has been evicted
+         */
+        boolean tryAcquire() {
+            while (true) {
+                int current = inUse.get();
+                if (current == CLOSED) {
+                    return false;
+                }
+                if (inUse.compareAndSet(current, current + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        /**
+         * Marks the upstream as evicted if it has no requests in flight
+         */
+        boolean tryClose() {
+            return inUse.compareAndSet(0, CLOSED);
+        }
+
+        void close() {
+            try {
+                client.close();
+            } catch (Exception e) {
+                LOG.debug("Failed to close upstream client for " + key + ". " + e, e);
+            }
+        }
+    }
+
+    /**
+     * A single request's use of a pooled upstream client
+     */
+    public class Lease {
+        private final Upstream upstream;
+        private final long acquireTime = System.nanoTime();
+        private final AtomicBoolean responded = new AtomicBoolean();
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        Lease(Upstream upstream) {
+            this.upstream = upstream;
+        }
+
+        public HttpClient getClient() {
+            return upstream.client;
+        }
+
+        /**
+         * Returns the <code>host:port</code> of the upstream this lease is for
+         */
+        public String getUpstream() {
+            return upstream.key;
+        }
+
+        /**
+         * Records that the upstream response headers have arrived
+         */
+        public void responseReceived() {
+            if (responded.compareAndSet(false, true)) {
+                totalWaitTimeNanos.addAndGet(System.nanoTime() - acquireTime);
+            }
+        }
+
+        /**
+         * Returns true if the upstream response headers have arrived
+         */
+        public boolean isResponseReceived() {
+            return responded.get();
+        }
+
+        /**
+         * Returns the client to the pool; the underlying connection stays open if keep alive is enabled.
+         *
+         * @return true if the lease was released by this call or false if it had already been released
+         */
+        public boolean release() {
+            if (released.compareAndSet(false, true)) {
+                upstream.lastUsed = System.currentTimeMillis();
+                upstream.inUse.decrementAndGet();
+                return true;
+            }
+            return false;
+        }
+    }
+}
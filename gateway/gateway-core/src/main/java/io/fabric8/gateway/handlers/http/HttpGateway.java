@@ -24,7 +24,7 @@ import java.util.Map;
  * An interface to working with a HTTP gateway which has the responsibility for
  * configuring a number of mapping rules so that the
  * {@link HttpGatewayHandler} can interrogate
- * the mapping rules via the {@link #getMappedServices()} method so it can decide which
+ * the mapping rules via the {@link #getMappedServicesIndex()} method so it can decide which
  * services to proxy requests to.
  */
 public interface HttpGateway {
@@ -43,6 +43,12 @@ public interface HttpGateway {
      */
     Map<String, MappedServices> getMappedServices();
 
+    /**
+     * Returns the currently mapped services indexed by URI prefix so that the services for a request URI
+     * can be found without scanning all the mapped prefixes
+     */
+    MappedServicesIndex getMappedServicesIndex();
+
     /**
      * Returns true if the mapping index is enabled which by default
      * returns a JSON document describing the mapping of URI prefixes to services
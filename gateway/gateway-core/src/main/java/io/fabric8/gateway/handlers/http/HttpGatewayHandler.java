@@ -23,7 +23,6 @@ import org.vertx.java.core.Handler;
 import org.vertx.java.core.Vertx;
 import org.vertx.java.core.VoidHandler;
 import org.vertx.java.core.buffer.Buffer;
-import org.vertx.java.core.http.HttpClient;
 import org.vertx.java.core.http.HttpClientRequest;
 import org.vertx.java.core.http.HttpClientResponse;
 import org.vertx.java.core.http.HttpServerRequest;
@@ -52,16 +51,28 @@ public class HttpGatewayHandler implements Handler<HttpServerRequest> {
 
     private final Vertx vertx;
     private final HttpGateway httpGateway;
+    private final HttpClientPool clientPool;
+    private final HttpGatewayStatistics statistics;
     private final ObjectMapper mapper = new ObjectMapper();
 
     public HttpGatewayHandler(Vertx vertx, HttpGateway httpGateway) {
+        this(vertx, httpGateway, new HttpClientPool(vertx));
+    }
+
+    public HttpGatewayHandler(Vertx vertx, HttpGateway httpGateway, HttpClientPool clientPool) {
+        this(vertx, httpGateway, clientPool, new HttpGatewayStatistics());
+    }
+
+    public HttpGatewayHandler(Vertx vertx, HttpGateway httpGateway, HttpClientPool clientPool, HttpGatewayStatistics statistics) {
         this.vertx = vertx;
         this.httpGateway = httpGateway;
+        this.clientPool = clientPool;
+        this.statistics = statistics;
     }
 
     @Override
     public void handle(final HttpServerRequest request) {
-    	long callStart = System.nanoTime();
+        final long callStart = System.nanoTime();
         String uri = request.uri();
         String uri2 = normalizeUri(uri);
 
@@ -71,16 +82,18 @@ public class HttpGatewayHandler implements Handler<HttpServerRequest> {
 
         // lets map the request URI to map to the service URI and then the renaming URI
         // using mapping rules...
-        HttpClient client = null;
+        HttpClientPool.Lease lease = null;
+        MappedServices startedServices = null;
         String remaining = null;
         String prefix = null;
+        String route = null;
         String proxyServiceUrl = null;
         String reverseServiceUrl = null;
-        Map<String, MappedServices> mappingRules = httpGateway.getMappedServices();
+        MappedServicesIndex mappingRules = httpGateway.getMappedServicesIndex();
         try {
             if (isMappingIndexRequest(request)) {
                 // lets return the JSON of all the results
-                String json = mappingRulesToJson(mappingRules);
+                String json = mappingRulesToJson(mappingRules.getMappedServices());
                 HttpServerResponse response = request.response();
                 response.headers().set("ContentType", "application/json");
                 response.end(json);
@@ -88,45 +101,42 @@ public class HttpGatewayHandler implements Handler<HttpServerRequest> {
             } else {
                 MappedServices mappedServices = null;
                 URL clientURL = null;
-                Set<Map.Entry<String, MappedServices>> entries = mappingRules.entrySet();
-                for (Map.Entry<String, MappedServices> entry : entries) {
-                    String path = entry.getKey();
-                    mappedServices = entry.getValue();
-
-                    String pathPrefix = path;
-                    boolean uriMatches = uri.startsWith(pathPrefix);
+                for (String pathPrefix : mappingRules.findMatchingPrefixes(uri, uri2)) {
+                    mappedServices = mappingRules.get(pathPrefix);
+                    if (mappedServices == null) {
+                        continue;
+                    }
                     boolean uri2Matches = uri2 != null && uri2.startsWith(pathPrefix);
-                    if (uriMatches || uri2Matches) {
-                        int pathPrefixLength = pathPrefix.length();
-                        if (uri2Matches && pathPrefixLength < uri2.length()) {
-                            remaining = uri2.substring(pathPrefixLength);
-                        } else if (pathPrefixLength < uri.length()) {
-                            remaining = uri.substring(pathPrefixLength);
-                        } else {
-                            remaining = null;
-                        }
+                    int pathPrefixLength = pathPrefix.length();
+                    if (uri2Matches && pathPrefixLength < uri2.length()) {
+                        remaining = uri2.substring(pathPrefixLength);
+                    } else if (pathPrefixLength < uri.length()) {
+                        remaining = uri.substring(pathPrefixLength);
+                    } else {
+                        remaining = null;
+                    }
 
-                        // now lets pick a service for this path
-                        proxyServiceUrl = mappedServices.chooseService(request);
-                        if (proxyServiceUrl != null) {
-                            // lets create a client for this request...
-                            try {
-                                clientURL = new URL(proxyServiceUrl);
-                                client = createClient(clientURL);
-                                prefix = clientURL.getPath();
-                                reverseServiceUrl = request.absoluteURI().resolve(pathPrefix).toString();
-                                if (reverseServiceUrl.endsWith("/")) {
-                                    reverseServiceUrl = reverseServiceUrl.substring(0, reverseServiceUrl.length() - 1);
-                                }
-                                break;
-                            } catch (MalformedURLException e) {
-                                LOG.warn("Failed to parse URL: " + proxyServiceUrl + ". " + e, e);
+                    // now lets pick a service for this path
+                    proxyServiceUrl = mappedServices.chooseService(request);
+                    if (proxyServiceUrl != null) {
+                        // lets create a client for this request...
+                        try {
+                            clientURL = new URL(proxyServiceUrl);
+                            lease = clientPool.acquire(clientURL);
+                            route = pathPrefix;
+                            prefix = clientURL.getPath();
+                            reverseServiceUrl = request.absoluteURI().resolve(pathPrefix).toString();
+                            if (reverseServiceUrl.endsWith("/")) {
+                                reverseServiceUrl = reverseServiceUrl.substring(0, reverseServiceUrl.length() - 1);
                             }
+                            break;
+                        } catch (MalformedURLException e) {
+                            LOG.warn("Failed to parse URL: " + proxyServiceUrl + ". " + e, e);
                         }
                     }
                 }
 
-                if (client != null) {
+                if (lease != null) {
                     String servicePath = prefix != null ? prefix : "";
                     // we should usually end the prefix path with a slash for web apps at least
                     if (servicePath.length() > 0 && !servicePath.endsWith("/")) {
@@ -137,15 +147,46 @@ public class HttpGatewayHandler implements Handler<HttpServerRequest> {
                     }
 
                     LOG.info("Proxying request " + uri + " to service path: " + servicePath + " on service: " + proxyServiceUrl + " reverseServiceUrl: " + reverseServiceUrl);
-                    final HttpClient finalClient = client;
+                    final HttpClientPool.Lease finalLease = lease;
+                    final MappedServices finalMappedServices = mappedServices;
+                    final String finalServiceUrl = proxyServiceUrl;
+                    final long requestStart = System.nanoTime();
+                    final HttpGatewayStatistics.RequestTimings routeTimings = statistics.getRouteTimings(route);
+                    final HttpGatewayStatistics.RequestTimings upstreamTimings = statistics.getUpstreamTimings(lease.getUpstream());
+                    mappedServices.requestStarted(proxyServiceUrl);
+                    startedServices = mappedServices;
+                    final Handler<Throwable> failureHandler = new Handler<Throwable>() {
+                        public void handle(Throwable e) {
+                            LOG.warn("Failed to proxy request to " + finalLease.getUpstream() + ". " + e, e);
+                            if (finalLease.release()) {
+                                finalMappedServices.requestCompleted(finalServiceUrl);
+                                routeTimings.recordError();
+                                upstreamTimings.recordError();
+                                httpGateway.addCallDetailRecord(new CallDetailRecord(System.nanoTime() - callStart, new Date() + ":" + e.getMessage()));
+                                if (finalLease.isResponseReceived()) {
+                                    // part of the upstream response has already been relayed so we can only drop the connection
+                                    request.response().close();
+                                } else {
+                                    request.response().setStatusCode(502);
+                                    request.response().end();
+                                }
+                            }
+                        }
+                    };
                     Handler<HttpClientResponse> responseHandler = new Handler<HttpClientResponse>() {
                         public void handle(HttpClientResponse clientResponse) {
+                            long timeToFirstByte = System.nanoTime() - callStart;
+                            routeTimings.recordTimeToFirstByte(timeToFirstByte);
+                            upstreamTimings.recordTimeToFirstByte(timeToFirstByte);
+                            finalLease.responseReceived();
+                            finalMappedServices.responseReceived(finalServiceUrl, System.nanoTime() - requestStart);
                             if (LOG.isDebugEnabled()) {
                                 LOG.debug("Proxying response: " + clientResponse.statusCode());
                             }
                             request.response().setStatusCode(clientResponse.statusCode());
                             request.response().headers().set(clientResponse.headers());
                             request.response().setChunked(true);
+                            clientResponse.exceptionHandler(failureHandler);
                             clientResponse.dataHandler(new Handler<Buffer>() {
                                 public void handle(Buffer data) {
                                     if (LOG.isDebugEnabled()) {
@@ -157,7 +198,13 @@ public class HttpGatewayHandler implements Handler<HttpServerRequest> {
                             clientResponse.endHandler(new VoidHandler() {
                                 public void handle() {
                                     request.response().end();
-                                    finalClient.close();
+                                    if (finalLease.release()) {
+                                        finalMappedServices.requestCompleted(finalServiceUrl);
+                                        long totalTime = System.nanoTime() - callStart;
+                                        routeTimings.recordTotalTime(totalTime);
+                                        upstreamTimings.recordTotalTime(totalTime);
+                                        httpGateway.addCallDetailRecord(new CallDetailRecord(totalTime, null));
+                                    }
                                 }
                             });
                         }
@@ -166,7 +213,8 @@ public class HttpGatewayHandler implements Handler<HttpServerRequest> {
                         ProxyMappingDetails proxyMappingDetails = new ProxyMappingDetails(proxyServiceUrl, reverseServiceUrl, servicePath);
                         responseHandler = mappedServices.wrapResponseHandlerInPolicies(request, responseHandler, proxyMappingDetails);
                     }
-                    final HttpClientRequest clientRequest = client.request(request.method(), servicePath, responseHandler);
+                    final HttpClientRequest clientRequest = lease.getClient().request(request.method(), servicePath, responseHandler);
+                    clientRequest.exceptionHandler(failureHandler);
                     clientRequest.headers().set(request.headers());
                     clientRequest.setChunked(true);
                     request.dataHandler(new Handler<Buffer>() {
@@ -188,15 +236,22 @@ public class HttpGatewayHandler implements Handler<HttpServerRequest> {
 
                 } else {
                     //  lets return a 404
-                    LOG.info("Could not find matching proxy path for " + uri + " from paths: " + mappingRules.keySet());
+                    LOG.info("Could not find matching proxy path for " + uri + " from paths: " + mappingRules.getMappedServices().keySet());
                     request.response().setStatusCode(404);
                     request.response().close();
                 }
             }
-            CallDetailRecord cdr = new CallDetailRecord(System.nanoTime() - callStart, null);
-            httpGateway.addCallDetailRecord(cdr);
+            if (lease == null) {
+                // proxied requests are recorded once the upstream response has ended
+                CallDetailRecord cdr = new CallDetailRecord(System.nanoTime() - callStart, null);
+                httpGateway.addCallDetailRecord(cdr);
+            }
         } catch (Throwable e) {
             LOG.error("Caught: " + e, e);
+            // the failure handler may not have been registered yet so lets make sure the upstream is not left in use
+            if (lease != null && lease.release() && startedServices != null) {
+                startedServices.requestCompleted(proxyServiceUrl);
+            }
             CallDetailRecord cdr = new CallDetailRecord(System.nanoTime() - callStart, new Date() + ":" + e.getMessage());
             httpGateway.addCallDetailRecord(cdr);
             request.response().setStatusCode(404);
@@ -228,13 +283,12 @@ public class HttpGatewayHandler implements Handler<HttpServerRequest> {
         return uri == null || uri.length() == 0 || uri.equals("/");
     }
 
-    protected HttpClient createClient(URL url) throws MalformedURLException {
-        // lets create a client
-        HttpClient client = vertx.createHttpClient();
-        client.setHost(url.getHost());
-        client.setPort(url.getPort());
-        return client;
+    public HttpClientPool getClientPool() {
+        return clientPool;
+    }
 
+    public HttpGatewayStatistics getStatistics() {
+        return statistics;
     }
 
     /**
@@ -0,0 +1,196 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.handlers.http;
+
+import io.fabric8.gateway.support.LatencyHistogram;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The latency statistics of the {@link HttpGatewayHandler} kept per mapping rule (the URI prefix a request matched)
+ * and per upstream (the <code>host:port</code> it was proxied to).
+ * <p/>
+ * Each key has a {@link LatencyHistogram} of the time to first byte, from receiving the request until the upstream
+ * response headers arrive, and one of the total time until the upstream response has been fully proxied. Once the
+ * timings of a key exist, recording a request is lock free and does not allocate. The timings of mapping rules and
+ * upstreams which are no longer mapped are dropped by {@link #retainAll(Map)}.
+ */
+public class HttpGatewayStatistics {
+    public static final String COUNT = "count";
+    public static final String ERRORS = "errors";
+
+    private final ConcurrentMap<String, RequestTimings> routes = new ConcurrentHashMap<String, RequestTimings>();
+    private final ConcurrentMap<String, RequestTimings> upstreams = new ConcurrentHashMap<String, RequestTimings>();
+
+    /**
+     * Returns the timings of the given mapping rule URI prefix, creating them if required
+     */
+    public RequestTimings getRouteTimings(String route) {
+        return getOrCreate(routes, route);
+    }
+
+    /**
+     * Returns the timings of the given upstream <code>host:port</code>, creating them if required
+     */
+    public RequestTimings getUpstreamTimings(String upstream) {
+        return getOrCreate(upstreams, upstream);
+    }
+
+    /**
+     * Removes the timings of the mapping rules and upstreams which are not part of the given mapped services
+     */
+    public void retainAll(Map<String, MappedServices> mappedServices) {
+        Set<String> activeUpstreams = new HashSet<String>();
+        for (MappedServices services : mappedServices.values()) {
+            for (String serviceUrl : services.getServiceUrls()) {
+                try {
+                    activeUpstreams.add(HttpClientPool.getUpstreamKey(new URL(serviceUrl)));
+                } catch (MalformedURLException e) {
+                    // such URLs are never proxied so they have no timings
+                }
+            }
+        }
+        routes.keySet().retainAll(mappedServices.keySet());
+        upstreams.keySet().retainAll(activeUpstreams);
+    }
+
+    public void reset() {
+        for (RequestTimings timings : routes.values()) {
+            timings.reset();
+        }
+        for (RequestTimings timings : upstreams.values()) {
+            timings.reset();
+        }
+    }
+
+    /**
+     * Returns a summary of the timings of each mapping rule in nanoseconds
+     */
+    public Map<String, Map<String, Long>> getRouteSummaries() {
+        return summaries(routes);
+    }
+
+    /**
+     * Returns a summary of the timings of each upstream in nanoseconds
+     */
+    public Map<String, Map<String, Long>> getUpstreamSummaries() {
+        return summaries(upstreams);
+    }
+
+    protected static RequestTimings getOrCreate(ConcurrentMap<String, RequestTimings> map, String key) {
+        RequestTimings answer = map.get(key);
+        if (answer == null) {
+            RequestTimings timings = new RequestTimings();
+            answer = map.putIfAbsent(key, timings);
+            if (answer == null) {
+                answer = timings;
+            }
+        }
+        return answer;
+    }
+
+    protected static Map<String, Map<String, Long>> summaries(Map<String, RequestTimings> map) {
+        Map<String, Map<String, Long>> answer = new TreeMap<String, Map<String, Long>>();
+        for (Map.Entry<String, RequestTimings> entry : map.entrySet()) {
+            answer.put(entry.getKey(), entry.getValue().getSummary());
+        }
+        return answer;
+    }
+
+    /**
+     * The time to first byte and total time histograms of a single mapping rule or upstream
+     */
+    public static class RequestTimings {
+        private final LatencyHistogram timeToFirstByte = new LatencyHistogram();
+        private final LatencyHistogram totalTime = new LatencyHistogram();
+        private final AtomicLong errors = new AtomicLong();
+
+        public void recordTimeToFirstByte(long nanos) {
+            timeToFirstByte.record(nanos);
+        }
+
+        public void recordTotalTime(long nanos) {
+            totalTime.record(nanos);
+        }
+
+        public void recordError() {
+            errors.incrementAndGet();
+        }
+
+        public LatencyHistogram getTimeToFirstByte() {
+            return timeToFirstByte;
+        }
+
+        public LatencyHistogram getTotalTime() {
+            return totalTime;
+        }
+
+        public long getErrors() {
+            return errors.get();
+        }
+
+        /**
+     * Removes the timings of the mapping rules and upstreams which are not part of the given mapped services
+     */
+    public void retainAll(Map<String, MappedServices> mappedServices) {
+        Set<String> activeUpstreams = new HashSet<String>();
+        for (MappedServices services : mappedServices.values()) {
+            for (String serviceUrl : services.getServiceUrls()) {
+                try {
+                    activeUpstreams.add(HttpClientPool.getUpstreamKey(new URL(serviceUrl)));
+                } catch (MalformedURLException e) {
+                    // such URLs are never proxied so they have no timings
+                }
+            }
+        }
+        routes.keySet().retainAll(mappedServices.keySet());
+        upstreams.keySet().retainAll(activeUpstreams);
+    }
+
+    public void reset() {
+            timeToFirstByte.reset();
+            totalTime.reset();
+            errors.set(0);
+        }
+
+        public Map<String, Long> getSummary() {
+            Map<String, Long> answer = new LinkedHashMap<String, Long>();
+            answer.put(COUNT, totalTime.getCount());
+            answer.put(ERRORS, errors.get());
+            addSummary(answer, "timeToFirstByte", timeToFirstByte);
+            addSummary(answer, "totalTime", totalTime);
+            return answer;
+        }
+
+        protected static void addSummary(Map<String, Long> answer, String prefix, LatencyHistogram histogram) {
+            answer.put(prefix + "Mean", histogram.getMean());
+            answer.put(prefix + "P50", histogram.getValueAtPercentile(50));
+            answer.put(prefix + "P90", histogram.getValueAtPercentile(90));
+            answer.put(prefix + "P99", histogram.getValueAtPercentile(99));
+            answer.put(prefix + "P999", histogram.getValueAtPercentile(99.9));
+            answer.put(prefix + "Max", histogram.getMax());
+        }
+    }
+}
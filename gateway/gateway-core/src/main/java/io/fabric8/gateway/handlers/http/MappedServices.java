@@ -17,6 +17,7 @@ package io.fabric8.gateway.handlers.http;
 
 import io.fabric8.gateway.ServiceDetails;
 import io.fabric8.gateway.handlers.http.policy.ReverseUriPolicy;
+import io.fabric8.gateway.loadbalancer.LoadAwareLoadBalancer;
 import io.fabric8.gateway.loadbalancer.LoadBalancer;
 import org.vertx.java.core.Handler;
 import org.vertx.java.core.http.HttpClientResponse;
@@ -56,6 +57,33 @@ public class MappedServices {
         return loadBalancer.choose(serviceUrls, new HttpClientRequestFacade(request));
     }
 
+    /**
+     * Notifies a {@link LoadAwareLoadBalancer} that a request has been sent to the chosen service
+     */
+    public void requestStarted(String serviceUrl) {
+        if (loadBalancer instanceof LoadAwareLoadBalancer) {
+            ((LoadAwareLoadBalancer) loadBalancer).requestStarted(serviceUrl);
+        }
+    }
+
+    /**
+     * Notifies a {@link LoadAwareLoadBalancer} that the chosen service has responded
+     */
+    public void responseReceived(String serviceUrl, long latencyNanos) {
+        if (loadBalancer instanceof LoadAwareLoadBalancer) {
+            ((LoadAwareLoadBalancer) loadBalancer).recordLatency(serviceUrl, latencyNanos);
+        }
+    }
+
+    /**
+     * Notifies a {@link LoadAwareLoadBalancer} that a request to the chosen service has completed or failed
+     */
+    public void requestCompleted(String serviceUrl) {
+        if (loadBalancer instanceof LoadAwareLoadBalancer) {
+            ((LoadAwareLoadBalancer) loadBalancer).requestCompleted(serviceUrl);
+        }
+    }
+
     /**
      * Provides a hook so we can wrap a client response handler in a policy such
      * as to reverse the URIs {@link io.fabric8.gateway.handlers.http.policy.ReverseUriPolicy} or
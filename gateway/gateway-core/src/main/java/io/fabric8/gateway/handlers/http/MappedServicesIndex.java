@@ -0,0 +1,109 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.handlers.http;
+
+import io.fabric8.gateway.support.PathTrie;
+import io.fabric8.gateway.support.Paths;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An index of {@link MappedServices} by URI prefix which finds the prefixes matching a request URI using a
+ * {@link PathTrie} rather than testing every mapped prefix.
+ * <p/>
+ * The index is updated incrementally via {@link #put(String, MappedServices)} and {@link #remove(String)}
+ * as services come and go.
+ */
+public class MappedServicesIndex {
+    private final Map<String, MappedServices> mappedServices = new ConcurrentHashMap<String, MappedServices>();
+    private final PathTrie<String> prefixes = new PathTrie<String>();
+
+    public MappedServicesIndex() {
+    }
+
+    public MappedServicesIndex(Map<String, MappedServices> mappedServices) {
+        putAll(mappedServices);
+    }
+
+    @Override
+    public String toString() {
+        return "MappedServicesIndex{" +
+                "prefixes=" + mappedServices.keySet() +
+                '}';
+    }
+
+    public synchronized MappedServices put(String prefix, MappedServices services) {
+        MappedServices old = mappedServices.put(prefix, services);
+        if (old == null) {
+            prefixes.add(Paths.splitPaths(prefix), prefix);
+        }
+        return old;
+    }
+
+    public synchronized void putAll(Map<String, MappedServices> map) {
+        for (Map.Entry<String, MappedServices> entry : map.entrySet()) {
+            put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    public synchronized MappedServices remove(String prefix) {
+        MappedServices old = mappedServices.remove(prefix);
+        if (old != null) {
+            prefixes.remove(Paths.splitPaths(prefix), prefix);
+        }
+        return old;
+    }
+
+    public synchronized void clear() {
+        mappedServices.clear();
+        prefixes.clear();
+    }
+
+    public MappedServices get(String prefix) {
+        return mappedServices.get(prefix);
+    }
+
+    public int size() {
+        return mappedServices.size();
+    }
+
+    /**
+     * Returns a read only view of the mapped services keyed by URI prefix
+     */
+    public Map<String, MappedServices> getMappedServices() {
+        return Collections.unmodifiableMap(mappedServices);
+    }
+
+    /**
+     * Returns the URI prefixes which match the given request URI (or its normalized form which may be null)
+     * with the longest prefix first
+     */
+    public List<String> findMatchingPrefixes(String uri, String normalizedUri) {
+        String[] segments = Paths.splitPaths(normalizedUri != null ? normalizedUri : uri);
+        List<String> candidates = prefixes.findMatches(segments);
+        List<String> answer = new ArrayList<String>(candidates.size());
+        for (String prefix : candidates) {
+            if (uri.startsWith(prefix) || (normalizedUri != null && normalizedUri.startsWith(prefix))) {
+                answer.add(prefix);
+            }
+        }
+        return answer;
+    }
+}
@@ -228,6 +228,11 @@ public class ExtendedBurnIn {
                 return mappedServices;
             }
 
+            @Override
+            public MappedServicesIndex getMappedServicesIndex() {
+                return new MappedServicesIndex(mappedServices);
+            }
+
             @Override
             public boolean isEnableIndex() {
                 return true;
@@ -22,6 +22,7 @@ import io.fabric8.gateway.handlers.http.HttpGatewayHandler;
 import io.fabric8.gateway.handlers.http.HttpGatewayServer;
 import io.fabric8.gateway.handlers.http.HttpMappingRule;
 import io.fabric8.gateway.handlers.http.MappedServices;
+import io.fabric8.gateway.handlers.http.MappedServicesIndex;
 import io.fabric8.gateway.loadbalancer.LoadBalancer;
 import io.fabric8.gateway.loadbalancer.RoundRobinLoadBalancer;
 import org.junit.After;
@@ -126,6 +127,11 @@ public class HttpGatewayTest {
                 return mappedServices;
             }
 
+            @Override
+            public MappedServicesIndex getMappedServicesIndex() {
+                return new MappedServicesIndex(mappedServices);
+            }
+
             @Override
             public boolean isEnableIndex() {
                 return true;
@@ -0,0 +1,105 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.handlers.detecting;
+
+import org.junit.Test;
+import org.vertx.java.core.buffer.Buffer;
+
+import java.util.List;
+
+import static io.fabric8.gateway.handlers.detecting.ProtocolDetectorTest.MQTT_CONNECT;
+import static io.fabric8.gateway.handlers.detecting.ProtocolDetectorTest.OPENWIRE_WIREFORMAT_INFO;
+import static io.fabric8.gateway.handlers.detecting.ProtocolDetectorTest.TLS_CLIENT_HELLO;
+import static io.fabric8.gateway.handlers.detecting.ProtocolDetectorTest.createProtocols;
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * Compares the cost per connection of the {@link ProtocolDetector} with re-running every
+ * {@link Protocol#matches(Buffer)} over all the accumulated data each time a chunk arrives.
+ */
+public class ProtocolDetectorBenchmark {
+
+    final int CONNECTIONS = 100000;
+
+    @Test
+    public void testDetectionCost() throws Exception {
+        System.out.println("==============================================================");
+        System.out.println("Perf testing");
+        System.out.println("==============================================================");
+
+        List<Protocol> protocols = createProtocols();
+        byte[][] headers = {MQTT_CONNECT, OPENWIRE_WIREFORMAT_INFO, TLS_CLIENT_HELLO, "GET /index.html HTTP/1.1\r\n".getBytes("US-ASCII")};
+        String[] names = {"mqtt", "openwire", "ssl", "http"};
+
+        for (int chunkSize : new int[]{1, 4, 64}) {
+            for (int i = 0; i < headers.length; i++) {
+                Buffer[] chunks = split(headers[i], chunkSize);
+                // warm up
+                rescan(protocols, chunks, CONNECTIONS / 10);
+                incremental(protocols, chunks, CONNECTIONS / 10);
+
+                long rescan = rescan(protocols, chunks, CONNECTIONS);
+                long incremental = incremental(protocols, chunks, CONNECTIONS);
+                System.out.println(names[i] + " in " + chunkSize + " byte chunks: rescan " + rescan + " ns/connection, incremental " + incremental + " ns/connection");
+            }
+        }
+    }
+
+    protected long rescan(List<Protocol> protocols, Buffer[] chunks, int connections) {
+        long start = System.nanoTime();
+        for (int c = 0; c < connections; c++) {
+            Buffer received = new Buffer();
+            Protocol detected = null;
+            for (int i = 0; i < chunks.length && detected == null; i++) {
+                received.appendBuffer(chunks[i]);
+                for (Protocol protocol : protocols) {
+                    if (protocol.matches(received)) {
+                        detected = protocol;
+                        break;
+                    }
+                }
+            }
+            assertNotNull(detected);
+        }
+        return (System.nanoTime() - start) / connections;
+    }
+
+    protected long incremental(List<Protocol> protocols, Buffer[] chunks, int connections) {
+        long start = System.nanoTime();
+        for (int c = 0; c < connections; c++) {
+            ProtocolDetector detector = new ProtocolDetector(protocols);
+            Protocol detected = null;
+            for (int i = 0; i < chunks.length && detected == null; i++) {
+                detected = detector.detect(chunks[i]);
+            }
+            assertNotNull(detected);
+        }
+        return (System.nanoTime() - start) / connections;
+    }
+
+    protected Buffer[] split(byte[] data, int chunkSize) {
+        int count = (data.length + chunkSize - 1) / chunkSize;
+        Buffer[] answer = new Buffer[count];
+        for (int i = 0; i < count; i++) {
+            int offset = i * chunkSize;
+            int length = Math.min(chunkSize, data.length - offset);
+            byte[] chunk = new byte[length];
+            System.arraycopy(data, offset, chunk, 0, length);
+            answer[i] = new Buffer(chunk);
+        }
+        return answer;
+    }
+}
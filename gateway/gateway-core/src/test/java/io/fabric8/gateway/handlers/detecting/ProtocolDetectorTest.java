@@ -0,0 +1,98 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.handlers.detecting;
+
+import io.fabric8.gateway.handlers.detecting.protocol.amqp.AmqpProtocol;
+import io.fabric8.gateway.handlers.detecting.protocol.http.HttpProtocol;
+import io.fabric8.gateway.handlers.detecting.protocol.mqtt.MqttProtocol;
+import io.fabric8.gateway.handlers.detecting.protocol.openwire.OpenwireProtocol;
+import io.fabric8.gateway.handlers.detecting.protocol.ssl.SslProtocol;
+import io.fabric8.gateway.handlers.detecting.protocol.stomp.StompProtocol;
+import org.junit.Test;
+import org.vertx.java.core.buffer.Buffer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ */
+public class ProtocolDetectorTest {
+
+    public static final byte[] MQTT_CONNECT = {0x10, 0x1a, 0x00, 0x04, 'M', 'Q', 'T', 'T', 0x04, 0x02, 0x00, 0x3c, 0x00, 0x0a};
+    public static final byte[] OPENWIRE_WIREFORMAT_INFO = {0x00, 0x00, 0x01, 0x00, 0x01, 'A', 'c', 't', 'i', 'v', 'e', 'M', 'Q', 0x00};
+    public static final byte[] TLS_CLIENT_HELLO = {0x16, 0x03, 0x01, 0x00, (byte) 0xa5, 0x01, 0x00, 0x00, (byte) 0xa1, 0x03, 0x03};
+
+    public static List<Protocol> createProtocols() {
+        List<Protocol> protocols = new ArrayList<Protocol>();
+        protocols.add(new StompProtocol());
+        protocols.add(new MqttProtocol());
+        protocols.add(new AmqpProtocol());
+        protocols.add(new OpenwireProtocol());
+        protocols.add(new HttpProtocol());
+        protocols.add(new SslProtocol());
+        return protocols;
+    }
+
+    @Test
+    public void testDetectsProtocolsSentOneByteAtATime() throws Exception {
+        assertDetected("mqtt", MQTT_CONNECT);
+        assertDetected("openwire", OPENWIRE_WIREFORMAT_INFO);
+        assertDetected("ssl", TLS_CLIENT_HELLO);
+        assertDetected("amqp", "AMQP\u0000\u0001\u0000\u0000".getBytes("US-ASCII"));
+        assertDetected("stomp", "STOMP\naccept-version:1.2\n".getBytes("US-ASCII"));
+        assertDetected("http", "GET /index.html HTTP/1.1\r\n".getBytes("US-ASCII"));
+    }
+
+    @Test
+    public void testRejectsUnknownProtocolsEarly() throws Exception {
+        ProtocolDetector detector = new ProtocolDetector(createProtocols());
+        byte[] data = "Hello World!\n".getBytes("US-ASCII");
+        int i = 0;
+        while (!detector.isRejected() && i < data.length) {
+            assertNull(detector.detect(new Buffer(new byte[]{data[i++]})));
+        }
+        assertTrue("Should have rejected the connection", detector.isRejected());
+        assertTrue("Should have rejected before the max identification length but took " + i + " bytes", i < detector.getMaxIdentificationLength());
+    }
+
+    @Test
+    public void testDetectsProtocolSentInOneChunk() throws Exception {
+        ProtocolDetector detector = new ProtocolDetector(createProtocols());
+        Buffer data = new Buffer(MQTT_CONNECT);
+        data.appendString("some more data which follows the header");
+        Protocol protocol = detector.detect(data);
+        assertNotNull(protocol);
+        assertEquals("mqtt", protocol.getProtocolName());
+        assertEquals("Should keep all the received data", data.length(), detector.getReceived().length());
+    }
+
+    protected void assertDetected(String protocolName, byte[] data) {
+        ProtocolDetector detector = new ProtocolDetector(createProtocols());
+        Protocol protocol = null;
+        for (int i = 0; i < data.length && protocol == null; i++) {
+            assertFalse("Should not reject " + protocolName + " after " + i + " bytes", detector.isRejected());
+            protocol = detector.detect(new Buffer(new byte[]{data[i]}));
+        }
+        assertNotNull("Should have detected " + protocolName, protocol);
+        assertEquals(protocolName, protocol.getProtocolName());
+    }
+}
@@ -0,0 +1,278 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.handlers.detecting;
+
+import io.fabric8.gateway.ServiceDTO;
+import io.fabric8.gateway.ServiceMap;
+import io.fabric8.gateway.handlers.detecting.protocol.mqtt.MqttProtocol;
+import io.fabric8.gateway.handlers.detecting.protocol.openwire.OpenwireProtocol;
+import io.fabric8.gateway.handlers.detecting.protocol.ssl.DirectBufferPool;
+import io.fabric8.gateway.handlers.detecting.protocol.ssl.SslConfig;
+import io.fabric8.gateway.handlers.detecting.protocol.ssl.SslProtocol;
+import io.fabric8.gateway.loadbalancer.LoadBalancers;
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.apollo.broker.Broker;
+import org.apache.activemq.apollo.dto.AcceptingConnectorDTO;
+import org.apache.activemq.apollo.dto.BrokerDTO;
+import org.apache.activemq.apollo.dto.VirtualHostDTO;
+import org.apache.activemq.apollo.util.ServiceControl;
+import org.apache.activemq.command.ActiveMQQueue;
+import org.fusesource.mqtt.client.BlockingConnection;
+import org.fusesource.mqtt.client.MQTT;
+import org.fusesource.mqtt.client.QoS;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.vertx.java.core.Vertx;
+import org.vertx.java.core.VertxFactory;
+
+import javax.jms.BytesMessage;
+import javax.jms.Connection;
+import javax.jms.DeliveryMode;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManagerFactory;
+import java.io.File;
+import java.io.FileInputStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetSocketAddress;
+import java.security.KeyStore;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Measures the throughput and garbage produced when publishing messages over TLS through the
+ * {@link DetectingGateway} using the MQTT and OpenWire protocols.
+ * <p/>
+ * Not run as part of the normal build; run it with <code>mvn test -Dtest=SslGatewayBenchmark</code>
+ */
+public class SslGatewayBenchmark {
+
+    final int[] MESSAGE_SIZES = {1024, 64 * 1024};
+    final long BYTES_PER_RUN = 64L * 1024 * 1024;
+
+    protected Vertx vertx;
+    protected Broker broker;
+    protected DetectingGateway gateway;
+    protected SSLContext clientSslContext;
+
+    @Before
+    public void start() throws Exception {
+        vertx = VertxFactory.newVertx();
+
+        broker = new Broker();
+        BrokerDTO config = broker.config();
+        VirtualHostDTO virtualHost = new VirtualHostDTO();
+        virtualHost.id = "broker0";
+        virtualHost.host_names.add("broker0");
+        config.virtual_hosts.add(virtualHost);
+        AcceptingConnectorDTO connector = new AcceptingConnectorDTO();
+        connector.bind = "tcp://0.0.0.0:0";
+        config.connectors.clear();
+        config.connectors.add(connector);
+        ServiceControl.start(broker);
+        int brokerPort = ((InetSocketAddress) broker.get_socket_address()).getPort();
+
+        ServiceMap serviceMap = new ServiceMap();
+        ServiceDTO details = new ServiceDTO();
+        details.setId("broker0");
+        details.setVersion("1.0");
+        details.setContainer("testing");
+        details.setBundleName("none");
+        details.setBundleVersion("1.0");
+        details.setServices(Arrays.asList("mqtt://localhost:" + brokerPort, "tcp://localhost:" + brokerPort));
+        serviceMap.serviceUpdated("broker0", details);
+
+        ArrayList<Protocol> protocols = new ArrayList<Protocol>();
+        protocols.add(new MqttProtocol());
+        protocols.add(new OpenwireProtocol());
+        protocols.add(new SslProtocol());
+        gateway = new DetectingGateway();
+        gateway.setPort(0);
+        gateway.setVertx(vertx);
+        SslConfig sslConfig = new SslConfig(new File(basedir(), "src/test/resources/server.ks"), "password");
+        sslConfig.setKeyPassword("password");
+        gateway.setSslConfig(sslConfig);
+        gateway.setServiceMap(serviceMap);
+        gateway.setProtocols(protocols);
+        gateway.setServiceLoadBalancer(LoadBalancers.createLoadBalancer(LoadBalancers.ROUND_ROBIN_LOAD_BALANCER, 0));
+        gateway.setDefaultVirtualHost("broker0");
+        gateway.setConnectionTimeout(5000);
+        gateway.init();
+
+        File trustStore = new File(basedir(), "src/test/resources/client.ks");
+        System.setProperty("javax.net.ssl.trustStore", trustStore.getCanonicalPath());
+        System.setProperty("javax.net.ssl.trustStorePassword", "password");
+        System.setProperty("javax.net.ssl.trustStoreType", "jks");
+
+        KeyStore keyStore = KeyStore.getInstance("JKS");
+        FileInputStream in = new FileInputStream(trustStore);
+        try {
+            keyStore.load(in, "password".toCharArray());
+        } finally {
+            in.close();
+        }
+        TrustManagerFactory trustManagerFactory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        trustManagerFactory.init(keyStore);
+        clientSslContext = SSLContext.getInstance("TLS");
+        clientSslContext.init(null, trustManagerFactory.getTrustManagers(), null);
+    }
+
+    @After
+    public void stop() {
+        if (gateway != null) {
+            gateway.destroy();
+        }
+        if (broker != null) {
+            ServiceControl.stop(broker);
+        }
+        if (vertx != null) {
+            vertx.stop();
+        }
+    }
+
+    @Test
+    public void testTlsThroughput() throws Exception {
+        System.out.println("==============================================================");
+        System.out.println("Perf testing");
+        System.out.println("==============================================================");
+
+        // warm up
+        publishMqtt(1024, 1000);
+        publishOpenwire(1024, 1000);
+
+        for (int size : MESSAGE_SIZES) {
+            int count = (int) (BYTES_PER_RUN / size);
+
+            Sample sample = new Sample();
+            publishMqtt(size, count);
+            sample.print("MQTT+TLS", size, count);
+
+            sample = new Sample();
+            publishOpenwire(size, count);
+            sample.print("OpenWire+TLS", size, count);
+        }
+    }
+
+    protected void publishMqtt(int size, int count) throws Exception {
+        MQTT mqtt = new MQTT();
+        mqtt.setHost("ssl://localhost:" + gateway.getBoundPort());
+        mqtt.setSslContext(clientSslContext);
+        mqtt.setClientId("benchmark");
+        mqtt.setUserName("broker0/benchmark");
+        mqtt.setConnectAttemptsMax(1);
+        BlockingConnection connection = mqtt.blockingConnection();
+        connection.connect();
+        try {
+            byte[] payload = new byte[size];
+            for (int i = 0; i < count; i++) {
+                connection.publish("benchmark", payload, QoS.AT_LEAST_ONCE, false);
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    protected void publishOpenwire(int size, int count) throws Exception {
+        ActiveMQConnectionFactory factory = new ActiveMQConnectionFactory("ssl://localhost:" + gateway.getBoundPort() + "?wireFormat.host=broker0");
+        Connection connection = factory.createConnection();
+        try {
+            connection.start();
+            Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            MessageProducer producer = session.createProducer(new ActiveMQQueue("benchmark"));
+            producer.setDeliveryMode(DeliveryMode.NON_PERSISTENT);
+            byte[] payload = new byte[size];
+            for (int i = 0; i < count; i++) {
+                BytesMessage message = session.createBytesMessage();
+                message.writeBytes(payload);
+                producer.send(message);
+            }
+        } finally {
+            connection.close();
+        }
+    }
+
+    protected File basedir() {
+        try {
+            File file = new File(getClass().getProtectionDomain().getCodeSource().getLocation().getFile());
+            file = file.getParentFile().getParentFile().getCanonicalFile();
+            if (file.isDirectory()) {
+                return file.getCanonicalFile();
+            } else {
+                return new File(".").getCanonicalFile();
+            }
+        } catch (Throwable e) {
+            return new File(".");
+        }
+    }
+
+    /**
+     * Captures the elapsed time, allocated bytes, GC activity and direct buffer allocations of a run
+     */
+    static class Sample {
+        private final long start = System.nanoTime();
+        private final long allocated = allocatedBytes();
+        private final long gcCount = gcCount();
+        private final long gcTime = gcTime();
+        private final long directBuffers = DirectBufferPool.getDefault().getAllocatedCount();
+
+        void print(String name, int size, int count) {
+            long elapsed = System.nanoTime() - start;
+            long bytes = (long) size * count;
+            System.out.println(String.format("%s %d byte messages: %.1f MB/s, %d msgs/s, %d bytes allocated/msg, %d GCs taking %d ms, %d direct buffers allocated",
+                    name, size,
+                    (bytes / (1024.0 * 1024.0)) / (elapsed / 1000000000.0),
+                    count * 1000000000L / elapsed,
+                    (allocatedBytes() - allocated) / count,
+                    gcCount() - gcCount, gcTime() - gcTime,
+                    DirectBufferPool.getDefault().getAllocatedCount() - directBuffers));
+        }
+
+        static long allocatedBytes() {
+            ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+            if (threadMXBean instanceof com.sun.management.ThreadMXBean) {
+                com.sun.management.ThreadMXBean sunThreadMXBean = (com.sun.management.ThreadMXBean) threadMXBean;
+                long answer = 0;
+                for (long allocated : sunThreadMXBean.getThreadAllocatedBytes(threadMXBean.getAllThreadIds())) {
+                    if (allocated > 0) {
+                        answer += allocated;
+                    }
+                }
+                return answer;
+            }
+            return 0;
+        }
+
+        static long gcCount() {
+            long answer = 0;
+            for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+                answer += Math.max(0, bean.getCollectionCount());
+            }
+            return answer;
+        }
+
+        static long gcTime() {
+            long answer = 0;
+            for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+                answer += Math.max(0, bean.getCollectionTime());
+            }
+            return answer;
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.handlers.http;
+
+import org.junit.Test;
+import org.vertx.java.core.http.HttpClient;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URL;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class HttpClientPoolTest {
+    private final Set<HttpClient> closedClients = Collections.newSetFromMap(new ConcurrentHashMap<HttpClient, Boolean>());
+    private final AtomicInteger createdClients = new AtomicInteger();
+
+    private final HttpClientPool pool = new HttpClientPool(null) {
+        @Override
+        protected HttpClient createClient(URL url) {
+            createdClients.incrementAndGet();
+            return createStubClient();
+        }
+    };
+
+    @Test
+    public void testUpstreamCannotBeAcquiredOnceClosed() throws Exception {
+        HttpClientPool.Upstream leased = new HttpClientPool.Upstream("localhost:8080", createStubClient());
+        assertTrue(leased.tryAcquire());
+        assertTrue(leased.tryAcquire());
+        assertFalse("upstream in use", leased.tryClose());
+
+        HttpClientPool.Upstream upstream = new HttpClientPool.Upstream("localhost:8080", createStubClient());
+        assertTrue(upstream.tryClose());
+        assertFalse(upstream.tryClose());
+        assertFalse("upstream closed", upstream.tryAcquire());
+    }
+
+    @Test
+    public void testUpstreamIsReusedUntilEvicted() throws Exception {
+        URL url = new URL("http://localhost:8080/foo");
+        pool.setIdleTimeout(1);
+
+        HttpClientPool.Lease first = pool.acquire(url);
+        HttpClientPool.Lease second = pool.acquire(new URL("http://localhost:8080/bar"));
+        assertSame(first.getClient(), second.getClient());
+        assertEquals(2, pool.getInFlightRequestCount());
+
+        Thread.sleep(10);
+        pool.evictIdle();
+        assertEquals("leased upstreams are not evicted", 1, pool.getUpstreamCount());
+
+        assertTrue(first.release());
+        assertFalse("a lease is only released once", first.release());
+        assertTrue(second.release());
+        assertEquals(0, pool.getInFlightRequestCount());
+        assertEquals(1, pool.getIdleUpstreamCount());
+
+        Thread.sleep(10);
+        pool.evictIdle();
+        assertEquals(0, pool.getUpstreamCount());
+        assertEquals(1, pool.getEvictionCount());
+        assertTrue(closedClients.contains(first.getClient()));
+
+        HttpClientPool.Lease third = pool.acquire(url);
+        assertNotSame("a new upstream is created after eviction", first.getClient(), third.getClient());
+        assertFalse(closedClients.contains(third.getClient()));
+        assertEquals(2, createdClients.get());
+        third.release();
+    }
+
+    @Test
+    public void testLeasedClientsAreNeverClosedWhileEvicting() throws Exception {
+        final URL url = new URL("http://localhost:8080/");
+        // evict upstreams as soon as they have no requests in flight
+        pool.setIdleTimeout(-1000);
+        final AtomicInteger failures = new AtomicInteger();
+        Thread[] workers = new Thread[2];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 10000; j++) {
+                        HttpClientPool.Lease lease = pool.acquire(url);
+                        if (closedClients.contains(lease.getClient())) {
+                            failures.incrementAndGet();
+                        }
+                        lease.release();
+                        // give the evicting thread a chance to find the upstream idle
+                        Thread.yield();
+                    }
+                }
+            });
+            workers[i].start();
+        }
+        while (workers[0].isAlive() || workers[1].isAlive()) {
+            pool.evictIdle();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        assertTrue("upstreams were evicted", pool.getEvictionCount() > 0);
+        assertEquals("leases handed out on a closed client", 0, failures.get());
+        assertEquals(0, pool.getInFlightRequestCount());
+    }
+
+    private HttpClient createStubClient() {
+        return (HttpClient) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{HttpClient.class}, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if (method.getName().equals("close")) {
+                    closedClients.add((HttpClient) proxy);
+                } else if (method.getReturnType() == HttpClient.class) {
+                    return proxy;
+                } else if (method.getName().equals("hashCode")) {
+                    return System.identityHashCode(proxy);
+                } else if (method.getName().equals("equals")) {
+                    return proxy == args[0];
+                }
+                return null;
+            }
+        });
+    }
+}
@@ -15,6 +15,9 @@
  */
 package io.fabric8.gateway.loadbalancer;
 
+import io.fabric8.gateway.ServiceDTO;
+import io.fabric8.gateway.ServiceDetails;
+import io.fabric8.gateway.ServiceMap;
 import io.fabric8.gateway.loadbalancer.ClientRequestFacade;
 import io.fabric8.gateway.loadbalancer.LoadBalancer;
 import io.fabric8.gateway.loadbalancer.RandomLoadBalancer;
@@ -103,6 +106,107 @@ public class LoadBalancerTest {
 
     }
 
+    @Test
+    public void testStickyLoadBalancerCacheIsBounded() throws Exception {
+        StickyLoadBalancer loadBalancer = new StickyLoadBalancer(64, new RoundRobinLoadBalancer(), 4);
+        assertEquals("shard count", 4, loadBalancer.getShardCount());
+        for (int i = 0; i < 1000; i++) {
+            clientRequestKey = "client:" + i;
+            assertNotNull(loadBalancer.choose(services, clientRequestFacade));
+        }
+        assertTrue("Cache should be bounded but was: " + loadBalancer.getCacheSize(), loadBalancer.getCacheSize() <= 64);
+
+        // the most recent client should still be bound to the same service
+        String expected = loadBalancer.choose(services, clientRequestFacade);
+        assertEquals(expected, loadBalancer.choose(services, clientRequestFacade));
+
+        loadBalancer.flush();
+        assertEquals("cache size after flush", 0, loadBalancer.getCacheSize());
+    }
+
+    @Test
+    public void testLeastConnectionsLoadBalancer() throws Exception {
+        LeastConnectionsLoadBalancer loadBalancer = new LeastConnectionsLoadBalancer();
+        assertLoadBalancerWorksOnEmptyOrSingletonServices(loadBalancer);
+
+        // with no load we should spread requests over all the services
+        Set<String> set = asSet(performRequests(loadBalancer));
+        assertEquals("Should have all of the values: " + set, services.size(), set.size());
+
+        // load up all but the last service
+        for (int i = 0; i < services.size() - 1; i++) {
+            loadBalancer.requestStarted(services.get(i));
+        }
+        String idle = services.get(services.size() - 1);
+        assertEquals("Should choose the idle service", idle, loadBalancer.choose(services, clientRequestFacade));
+
+        loadBalancer.requestStarted(idle);
+        loadBalancer.requestStarted(idle);
+        loadBalancer.requestCompleted(services.get(0));
+        assertEquals("Should choose the service with the fewest connections", services.get(0), loadBalancer.choose(services, clientRequestFacade));
+        assertEquals(2, loadBalancer.getActiveCount(idle));
+    }
+
+    @Test
+    public void testPeakEwmaLoadBalancer() throws Exception {
+        PeakEwmaLoadBalancer loadBalancer = new PeakEwmaLoadBalancer();
+        assertLoadBalancerWorksOnEmptyOrSingletonServices(loadBalancer);
+
+        long millis = 1000000L;
+        String slow = services.get(0);
+        for (String service : services) {
+            loadBalancer.recordLatency(service, service.equals(slow) ? 500 * millis : 10 * millis);
+        }
+        for (String result : performRequests(loadBalancer)) {
+            assertTrue("Should not choose the slow service", !slow.equals(result));
+        }
+
+        // a single slow response should be picked up straight away
+        String fast = services.get(1);
+        loadBalancer.recordLatency(fast, 1000 * millis);
+        assertTrue("Should have the peak latency but was: " + loadBalancer.getLatencyEwmaNanos(fast), loadBalancer.getLatencyEwmaNanos(fast) > 500 * millis);
+        for (String result : performRequests(loadBalancer)) {
+            assertTrue("Should not choose a slow service", !slow.equals(result) && !fast.equals(result));
+        }
+    }
+
+    @Test
+    public void testLoadIsKeptAcrossServiceUpdatesAndRemovedWithTheService() throws Exception {
+        final LeastConnectionsLoadBalancer loadBalancer = new LeastConnectionsLoadBalancer();
+        ServiceMap serviceMap = new ServiceMap();
+        serviceMap.addListener(new ServiceMap.Listener() {
+            @Override
+            public void serviceRemoved(String path, ServiceDetails service) {
+                loadBalancer.removeService(service);
+            }
+        });
+        serviceMap.serviceUpdated("broker", createService("a"));
+        serviceMap.serviceUpdated("broker", createService("b"));
+
+        ServiceDetails busy = createService("a");
+        loadBalancer.requestStarted(busy);
+        loadBalancer.requestStarted(busy);
+
+        // an update of the service in ZooKeeper creates a new copy of it
+        serviceMap.serviceUpdated("broker", createService("a"));
+        assertEquals(2, loadBalancer.getActiveCount(createService("a")));
+        for (int i = 0; i < requestCount; i++) {
+            ServiceDetails result = loadBalancer.choose(serviceMap.getServices("broker"), clientRequestFacade);
+            assertEquals("Should choose the idle service", "b", result.getId());
+        }
+
+        serviceMap.serviceRemoved("broker", createService("a"));
+        assertEquals(0, loadBalancer.getActiveCount(busy));
+    }
+
+    protected ServiceDTO createService(String id) {
+        ServiceDTO answer = new ServiceDTO();
+        answer.setId(id);
+        answer.setContainer("container-" + id);
+        answer.setServices(Arrays.asList("tcp://localhost:6161/" + id));
+        return answer;
+    }
+
     protected List<String> performRequests(LoadBalancer loadBalancer) {
         List<String> answer = new ArrayList<String>();
         for (int i = 0; i < requestCount; i++) {
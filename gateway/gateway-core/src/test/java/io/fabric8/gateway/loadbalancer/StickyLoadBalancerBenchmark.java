@@ -0,0 +1,140 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.loadbalancer;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertNull;
+
+/**
+ * Compares the throughput of the sharded {@link StickyLoadBalancer} with a single synchronized LRU cache
+ * as the number of threads choosing services concurrently increases.
+ */
+public class StickyLoadBalancerBenchmark {
+
+    final int REQUESTS_PER_THREAD = 200000;
+    final int CLIENT_COUNT = 50000;
+
+    protected List<String> services = Arrays.asList(
+        "http://localhost:8182/foo",
+        "http://localhost:8183/foo",
+        "http://localhost:8184/foo",
+        "http://localhost:8185/foo"
+    );
+
+    @Test
+    public void testContention() throws Exception {
+        System.out.println("==============================================================");
+        System.out.println("Perf testing");
+        System.out.println("==============================================================");
+
+        String[] clientKeys = new String[CLIENT_COUNT];
+        for (int i = 0; i < clientKeys.length; i++) {
+            clientKeys[i] = "10.0." + (i / 256) + "." + (i % 256);
+        }
+
+        // warm up
+        benchmark(new SynchronizedStickyLoadBalancer(LoadBalancers.STICKY_LOAD_BALANCER_DEFAULT_CACHE_SIZE), clientKeys, 4);
+        benchmark(new StickyLoadBalancer(), clientKeys, 4);
+
+        for (int threads : new int[]{1, 2, 4, 8, 16, 32}) {
+            long global = benchmark(new SynchronizedStickyLoadBalancer(LoadBalancers.STICKY_LOAD_BALANCER_DEFAULT_CACHE_SIZE), clientKeys, threads);
+            long sharded = benchmark(new StickyLoadBalancer(), clientKeys, threads);
+            System.out.println(threads + " threads: single lock " + global + " requests/ms, sharded " + sharded + " requests/ms");
+        }
+    }
+
+    protected long benchmark(final LoadBalancer loadBalancer, final String[] clientKeys, int threadCount) throws Exception {
+        final CountDownLatch startLatch = new CountDownLatch(1);
+        final CountDownLatch doneLatch = new CountDownLatch(threadCount);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        for (int t = 0; t < threadCount; t++) {
+            final int offset = t * 7919;
+            Thread thread = new Thread("sticky-benchmark-" + t) {
+                @Override
+                public void run() {
+                    try {
+                        final String[] key = new String[1];
+                        ClientRequestFacade facade = new ClientRequestFacade() {
+                            @Override
+                            public String getClientRequestKey() {
+                                return key[0];
+                            }
+                        };
+                        startLatch.await();
+                        for (int i = 0; i < REQUESTS_PER_THREAD; i++) {
+                            key[0] = clientKeys[(offset + i) % clientKeys.length];
+                            if (loadBalancer.choose(services, facade) == null) {
+                                throw new IllegalStateException("No service chosen");
+                            }
+                        }
+                    } catch (Throwable e) {
+                        failure.set(e);
+                    } finally {
+                        doneLatch.countDown();
+                    }
+                }
+            };
+            thread.start();
+        }
+        long start = System.nanoTime();
+        startLatch.countDown();
+        doneLatch.await();
+        long elapsedMillis = Math.max(1, (System.nanoTime() - start) / 1000000);
+        assertNull("Benchmark thread failed", failure.get());
+        return ((long) REQUESTS_PER_THREAD * threadCount) / elapsedMillis;
+    }
+
+    /**
+     * The previous implementation which guards a single LRU cache with one lock
+     */
+    static class SynchronizedStickyLoadBalancer implements LoadBalancer {
+        private final LoadBalancer firstRequestLoadBalancer = new RoundRobinLoadBalancer();
+        private final Map<String, Object> requestCache;
+
+        SynchronizedStickyLoadBalancer(final int maximumCacheSize) {
+            this.requestCache = new LinkedHashMap<String, Object>(maximumCacheSize + 1, .75F, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Object> eldest) {
+                    return size() > maximumCacheSize;
+                }
+            };
+        }
+
+        @Override
+        public <T> T choose(List<T> services, ClientRequestFacade requestFacade) {
+            String clientKey = requestFacade.getClientRequestKey();
+            T answer;
+            synchronized (requestCache) {
+                answer = (T) requestCache.get(clientKey);
+                if (answer == null) {
+                    answer = firstRequestLoadBalancer.choose(services, requestFacade);
+                    if (answer != null) {
+                        requestCache.put(clientKey, answer);
+                    }
+                }
+            }
+            return answer;
+        }
+    }
+}
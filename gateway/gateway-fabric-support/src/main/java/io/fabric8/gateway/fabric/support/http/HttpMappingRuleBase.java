@@ -20,6 +20,7 @@ import io.fabric8.zookeeper.internal.SimplePathTemplate;
 import io.fabric8.gateway.ServiceDetails;
 import io.fabric8.gateway.handlers.http.HttpMappingRule;
 import io.fabric8.gateway.handlers.http.MappedServices;
+import io.fabric8.gateway.loadbalancer.LoadAwareLoadBalancer;
 import io.fabric8.gateway.loadbalancer.LoadBalancer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -141,6 +142,9 @@ public class HttpMappingRuleBase implements HttpMappingRule {
                         if (serviceUrls.isEmpty()) {
                             mappingRules.remove(fullPath);
                         }
+                        if (loadBalancer instanceof LoadAwareLoadBalancer) {
+                            ((LoadAwareLoadBalancer) loadBalancer).removeService(service);
+                        }
                     }
                 } else {
                     MappedServices mappedServices = new MappedServices(service, serviceDetails, loadBalancer, reverseHeaders);
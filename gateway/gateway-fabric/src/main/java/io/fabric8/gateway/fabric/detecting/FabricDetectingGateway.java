@@ -118,7 +118,9 @@ public class FabricDetectingGateway extends AbstractComponent implements FabricD
             options = {
                     @PropertyOption(name = LoadBalancers.RANDOM_LOAD_BALANCER, value = "Random"),
                     @PropertyOption(name = LoadBalancers.ROUND_ROBIN_LOAD_BALANCER, value = "Round Robin"),
-                    @PropertyOption(name = LoadBalancers.STICKY_LOAD_BALANCER, value = "Sticky")
+                    @PropertyOption(name = LoadBalancers.STICKY_LOAD_BALANCER, value = "Sticky"),
+                    @PropertyOption(name = LoadBalancers.LEAST_CONNECTIONS_LOAD_BALANCER, value = "Least Connections"),
+                    @PropertyOption(name = LoadBalancers.PEAK_EWMA_LOAD_BALANCER, value = "Peak EWMA Response Time")
             },
             label = "Load Balancer", description = "The kind of load balancing strategy to use when multiple endpoints can service the client conneciton")
     private String loadBalancerType;
@@ -127,6 +129,14 @@ public class FabricDetectingGateway extends AbstractComponent implements FabricD
             label = "Sticky Load Balancer Cache Size", description = "The number of unique client keys to cache for the sticky load balancer (using an LRU caching algorithm)")
     private int stickyLoadBalancerCacheSize = LoadBalancers.STICKY_LOAD_BALANCER_DEFAULT_CACHE_SIZE;
 
+    @Property(name = "prewarmedConnections", intValue = 0,
+            label = "Pre-warmed Connections", description = "The number of already connected sockets to keep ready for each broker endpoint so that new clients do not wait for the backend connect. Set to 0 to disable.")
+    private int prewarmedConnections;
+
+    @Property(name = "prewarmedConnectionMaxAge", longValue = 10000,
+            label = "Pre-warmed Connection Max Age", description = "The number of milliseconds after which an unused pre-warmed connection is discarded rather than handed to a client")
+    private long prewarmedConnectionMaxAge = 10000;
+
     @Property(name = "sslProtocol", value="TLS",
             label = "SSL Protocol", description = "Example: SSL, TLS, TLSv1, TLSv2 etc.")
     private String sslProtocol;
@@ -274,6 +284,8 @@ public class FabricDetectingGateway extends AbstractComponent implements FabricD
         gateway.setShutdownTacker(shutdownTacker);
         gateway.setServiceLoadBalancer(serviceLoadBalancer);
         gateway.setDefaultVirtualHost(defaultVirtualHost);
+        gateway.setPrewarmedConnections(prewarmedConnections);
+        gateway.setPrewarmedConnectionMaxAge(prewarmedConnectionMaxAge);
         return gateway;
     }
 
@@ -27,6 +27,7 @@ import java.net.InetSocketAddress;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArraySet;
 
 import javax.management.MBeanServer;
@@ -48,11 +49,14 @@ import org.apache.felix.scr.annotations.Service;
 
 import io.fabric8.gateway.fabric.support.vertx.VertxService;
 import io.fabric8.gateway.handlers.detecting.DetectingGatewayWebSocketHandler;
+import io.fabric8.gateway.handlers.http.HttpClientPool;
+import io.fabric8.gateway.handlers.http.HttpGatewayStatistics;
 import io.fabric8.gateway.handlers.http.HttpGateway;
 import io.fabric8.gateway.handlers.http.HttpGatewayHandler;
 import io.fabric8.gateway.handlers.http.HttpGatewayServer;
 import io.fabric8.gateway.handlers.http.HttpMappingRule;
 import io.fabric8.gateway.handlers.http.MappedServices;
+import io.fabric8.gateway.handlers.http.MappedServicesIndex;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -84,6 +88,18 @@ public final class FabricHTTPGateway extends AbstractComponent implements HttpGa
     @Property(name = "websocketGatewayPrefix", label = "Web Socket Path Prefix", description = "The prefix a websocket requests must have")
     private String websocketGatewayPrefix = "";
 
+    @Property(name = "maxConnectionsPerUpstream", intValue = HttpClientPool.DEFAULT_MAX_CONNECTIONS_PER_UPSTREAM, label = "Max connections per upstream", description = "The maximum number of pooled connections kept open to each proxied host and port")
+    private int maxConnectionsPerUpstream = HttpClientPool.DEFAULT_MAX_CONNECTIONS_PER_UPSTREAM;
+
+    @Property(name = "upstreamKeepAlive", boolValue = true, label = "Upstream keep alive", description = "If enabled then connections to proxied services are kept open and reused between requests")
+    private boolean upstreamKeepAlive = true;
+
+    @Property(name = "upstreamPipelining", boolValue = false, label = "Upstream pipelining", description = "If enabled then requests are pipelined over the pooled connections; only enable this if all the proxied services support HTTP pipelining")
+    private boolean upstreamPipelining;
+
+    @Property(name = "upstreamIdleTimeout", longValue = HttpClientPool.DEFAULT_IDLE_TIMEOUT, label = "Upstream idle timeout", description = "The number of milliseconds after which the pooled connections to an upstream with no requests are closed")
+    private long upstreamIdleTimeout = HttpClientPool.DEFAULT_IDLE_TIMEOUT;
+
     @Reference
     private Configurer configurer;
 
@@ -100,9 +116,14 @@ public final class FabricHTTPGateway extends AbstractComponent implements HttpGa
     
     private HttpGatewayServer server;
     private HttpGatewayHandler handler;
+    private HttpClientPool clientPool;
+    private final HttpGatewayStatistics statistics = new HttpGatewayStatistics();
     private DetectingGatewayWebSocketHandler websocketHandler = new DetectingGatewayWebSocketHandler();
 
     private Set<HttpMappingRule> mappingRuleConfigurations = new CopyOnWriteArraySet<HttpMappingRule>();
+    private final Map<HttpMappingRule, Runnable> mappingRuleListeners = new ConcurrentHashMap<HttpMappingRule, Runnable>();
+    private final Map<HttpMappingRule, Map<String, MappedServices>> mappingRuleSnapshots = new HashMap<HttpMappingRule, Map<String, MappedServices>>();
+    private final MappedServicesIndex mappedServicesIndex = new MappedServicesIndex();
 
     ShutdownTracker shutdownTracker = new ShutdownTracker();
     private FabricHTTPGatewayInfo fabricHTTPGatewayInfoMBean;
@@ -131,7 +152,13 @@ public final class FabricHTTPGateway extends AbstractComponent implements HttpGa
         configurer.configure(configuration, this);
 
         Vertx vertx = getVertx();
-        handler = new HttpGatewayHandler(vertx, this);
+        clientPool = new HttpClientPool(vertx);
+        clientPool.setMaxConnectionsPerUpstream(maxConnectionsPerUpstream);
+        clientPool.setKeepAlive(upstreamKeepAlive);
+        clientPool.setPipelining(upstreamPipelining);
+        clientPool.setIdleTimeout(upstreamIdleTimeout);
+        clientPool.start();
+        handler = new HttpGatewayHandler(vertx, this, clientPool, statistics);
         websocketHandler.setPathPrefix(websocketGatewayPrefix);
         server = new HttpGatewayServer(vertx, handler, enableWebSocketGateway ? websocketHandler : null, port);
         server.init();
@@ -141,6 +168,9 @@ public final class FabricHTTPGateway extends AbstractComponent implements HttpGa
         if (server != null) {
             server.destroy();
         }
+        if (clientPool != null) {
+            clientPool.stop();
+        }
     }
     
     @Override
@@ -153,25 +183,94 @@ public final class FabricHTTPGateway extends AbstractComponent implements HttpGa
     }
 
     @Override
-    public void addMappingRuleConfiguration(HttpMappingRule mappingRuleConfiguration) {
+    public void addMappingRuleConfiguration(final HttpMappingRule mappingRuleConfiguration) {
         assertValid();
-        mappingRuleConfigurations.add(mappingRuleConfiguration);
+        if (mappingRuleConfigurations.add(mappingRuleConfiguration)) {
+            Runnable listener = new Runnable() {
+                @Override
+                public void run() {
+                    updateMappedServicesIndex(mappingRuleConfiguration);
+                }
+            };
+            mappingRuleListeners.put(mappingRuleConfiguration, listener);
+            mappingRuleConfiguration.addChangeListener(listener);
+            updateMappedServicesIndex(mappingRuleConfiguration);
+        }
     }
 
     @Override
     public void removeMappingRuleConfiguration(HttpMappingRule mappingRuleConfiguration) {
         assertValid();
-        mappingRuleConfigurations.remove(mappingRuleConfiguration);
+        if (mappingRuleConfigurations.remove(mappingRuleConfiguration)) {
+            Runnable listener = mappingRuleListeners.remove(mappingRuleConfiguration);
+            if (listener != null) {
+                mappingRuleConfiguration.removeChangeListener(listener);
+            }
+            synchronized (mappingRuleSnapshots) {
+                Map<String, MappedServices> oldServices = mappingRuleSnapshots.remove(mappingRuleConfiguration);
+                if (oldServices != null) {
+                    for (Map.Entry<String, MappedServices> entry : oldServices.entrySet()) {
+                        removeFromMappedServicesIndex(entry.getKey(), entry.getValue());
+                    }
+                }
+            }
+            statistics.retainAll(mappedServicesIndex.getMappedServices());
+        }
+    }
+
+    /**
+     * Applies the differences between the current mapped services of the given rule and those
+     * it had the last time it changed to the {@link MappedServicesIndex}
+     */
+    private void updateMappedServicesIndex(HttpMappingRule mappingRuleConfiguration) {
+        Map<String, MappedServices> newServices = new HashMap<String, MappedServices>();
+        mappingRuleConfiguration.appendMappedServices(newServices);
+        synchronized (mappingRuleSnapshots) {
+            if (!mappingRuleConfigurations.contains(mappingRuleConfiguration)) {
+                return;
+            }
+            Map<String, MappedServices> oldServices = mappingRuleSnapshots.put(mappingRuleConfiguration, newServices);
+            if (oldServices != null) {
+                for (Map.Entry<String, MappedServices> entry : oldServices.entrySet()) {
+                    if (!newServices.containsKey(entry.getKey())) {
+                        removeFromMappedServicesIndex(entry.getKey(), entry.getValue());
+                    }
+                }
+            }
+            for (Map.Entry<String, MappedServices> entry : newServices.entrySet()) {
+                if (oldServices == null || oldServices.get(entry.getKey()) != entry.getValue()) {
+                    mappedServicesIndex.put(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+        // drop the timings of the routes and upstreams which are no longer mapped
+        statistics.retainAll(mappedServicesIndex.getMappedServices());
+    }
+
+    private void removeFromMappedServicesIndex(String prefix, MappedServices services) {
+        if (mappedServicesIndex.get(prefix) == services) {
+            mappedServicesIndex.remove(prefix);
+            // another rule may also map this prefix
+            for (Map<String, MappedServices> ruleServices : mappingRuleSnapshots.values()) {
+                MappedServices other = ruleServices.get(prefix);
+                if (other != null) {
+                    mappedServicesIndex.put(prefix, other);
+                    break;
+                }
+            }
+        }
     }
 
     @Override
     public Map<String, MappedServices> getMappedServices() {
         assertValid();
-        Map<String, MappedServices> answer = new HashMap<String, MappedServices>();
-        for (HttpMappingRule mappingRuleConfiguration : mappingRuleConfigurations) {
-            mappingRuleConfiguration.appendMappedServices(answer);
-        }
-        return answer;
+        return mappedServicesIndex.getMappedServices();
+    }
+
+    @Override
+    public MappedServicesIndex getMappedServicesIndex() {
+        assertValid();
+        return mappedServicesIndex;
     }
 
     @Override
@@ -206,6 +305,14 @@ public final class FabricHTTPGateway extends AbstractComponent implements HttpGa
         return null;
     }
 
+    HttpClientPool getClientPool() {
+        return clientPool;
+    }
+
+    HttpGatewayStatistics getStatistics() {
+        return statistics;
+    }
+
     int getPort() {
         return port;
     }
@@ -17,6 +17,9 @@ package io.fabric8.gateway.fabric.http;
 
 import io.fabric8.common.util.ShutdownTracker;
 import io.fabric8.gateway.fabric.jmx.FabricGatewayInfoMBean;
+import io.fabric8.gateway.handlers.http.HttpClientPool;
+
+import java.util.Map;
 
 import javax.management.MBeanServer;
 import javax.management.MalformedObjectNameException;
@@ -119,8 +122,65 @@ public class FabricHTTPGatewayInfo implements FabricGatewayInfoMBean {
     	return averageCallTimeNanos;
     }
     
+    @Override
+    public int getUpstreamCount() {
+        HttpClientPool pool = getFabricHTTPGateway().getClientPool();
+        return pool != null ? pool.getUpstreamCount() : 0;
+    }
+
+    @Override
+    public int getUpstreamRequestsInFlight() {
+        HttpClientPool pool = getFabricHTTPGateway().getClientPool();
+        return pool != null ? pool.getInFlightRequestCount() : 0;
+    }
+
+    @Override
+    public int getIdleUpstreamCount() {
+        HttpClientPool pool = getFabricHTTPGateway().getClientPool();
+        return pool != null ? pool.getIdleUpstreamCount() : 0;
+    }
+
+    @Override
+    public int getMaxConnectionsPerUpstream() {
+        HttpClientPool pool = getFabricHTTPGateway().getClientPool();
+        return pool != null ? pool.getMaxConnectionsPerUpstream() : 0;
+    }
+
+    @Override
+    public long getUpstreamRequestCount() {
+        HttpClientPool pool = getFabricHTTPGateway().getClientPool();
+        return pool != null ? pool.getRequestCount() : 0;
+    }
+
+    @Override
+    public long getUpstreamEvictionCount() {
+        HttpClientPool pool = getFabricHTTPGateway().getClientPool();
+        return pool != null ? pool.getEvictionCount() : 0;
+    }
+
+    @Override
+    public long getAverageUpstreamWaitTimeNanos() {
+        HttpClientPool pool = getFabricHTTPGateway().getClientPool();
+        return pool != null ? pool.getAverageWaitTimeNanos() : 0;
+    }
+
+    @Override
+    public Map<String, Map<String, Long>> getRouteLatencies() {
+        return getFabricHTTPGateway().getStatistics().getRouteSummaries();
+    }
+
+    @Override
+    public Map<String, Map<String, Long>> getUpstreamLatencies() {
+        return getFabricHTTPGateway().getStatistics().getUpstreamSummaries();
+    }
+
     @Override
     public void resetStatistics() {
+        HttpClientPool pool = getFabricHTTPGateway().getClientPool();
+        if (pool != null) {
+            pool.resetStatistics();
+        }
+        getFabricHTTPGateway().getStatistics().reset();
     	averageCallTimeNanos = 0l;
     	numberOfInvocations = 0l;
     	lastCallDate = null;
@@ -77,7 +77,9 @@ public final class HttpMappingRuleConfiguration extends AbstractComponent {
             options = {
                     @PropertyOption(name = LoadBalancers.RANDOM_LOAD_BALANCER, value = "Random"),
                     @PropertyOption(name = LoadBalancers.ROUND_ROBIN_LOAD_BALANCER, value = "Round Robin"),
-                    @PropertyOption(name = LoadBalancers.STICKY_LOAD_BALANCER, value = "Sticky")
+                    @PropertyOption(name = LoadBalancers.STICKY_LOAD_BALANCER, value = "Sticky"),
+                    @PropertyOption(name = LoadBalancers.LEAST_CONNECTIONS_LOAD_BALANCER, value = "Least Connections"),
+                    @PropertyOption(name = LoadBalancers.PEAK_EWMA_LOAD_BALANCER, value = "Peak EWMA Response Time")
             },
             label = "Load Balancer", description = "The kind of load balancing strategy used")
     private String loadBalancerType;
@@ -15,6 +15,8 @@
  */
 package io.fabric8.gateway.fabric.jmx;
 
+import java.util.Map;
+
 /**
  * An MBean to retrieve usage for the http gateway
  */
@@ -30,5 +32,24 @@ public interface FabricGatewayInfoMBean {
     String getLastError();
     String getLastCallDate();
     long getAvarageCallTimeNanos();
+    int getUpstreamCount();
+    int getUpstreamRequestsInFlight();
+    int getIdleUpstreamCount();
+    int getMaxConnectionsPerUpstream();
+    long getUpstreamRequestCount();
+    long getUpstreamEvictionCount();
+    long getAverageUpstreamWaitTimeNanos();
+
+    /**
+     * Returns the request count, error count and the time to first byte and total time percentiles
+     * in nanoseconds of each mapping rule URI prefix
+     */
+    Map<String, Map<String, Long>> getRouteLatencies();
+
+    /**
+     * Returns the request count, error count and the time to first byte and total time percentiles
+     * in nanoseconds of each upstream host and port
+     */
+    Map<String, Map<String, Long>> getUpstreamLatencies();
     void resetStatistics();
 }
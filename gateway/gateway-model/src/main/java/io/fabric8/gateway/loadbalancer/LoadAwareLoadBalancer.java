@@ -0,0 +1,43 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.loadbalancer;
+
+/**
+ * A {@link LoadBalancer} which takes into account the current load of each service; the gateway notifies it
+ * when requests or connections to a chosen service start and complete along with how long the service took to respond.
+ */
+public interface LoadAwareLoadBalancer extends LoadBalancer {
+
+    /**
+     * Notifies that a request or connection to the given service has started
+     */
+    void requestStarted(Object service);
+
+    /**
+     * Notifies that a request or connection to the given service has completed or failed
+     */
+    void requestCompleted(Object service);
+
+    /**
+     * Records the time taken for the given service to respond
+     */
+    void recordLatency(Object service, long latencyNanos);
+
+    /**
+     * Forgets the recorded load of the given service, such as when it is no longer available
+     */
+    void removeService(Object service);
+}
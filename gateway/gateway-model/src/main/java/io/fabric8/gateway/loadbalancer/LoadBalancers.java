@@ -28,6 +28,8 @@ public class LoadBalancers {
     public static final String RANDOM_LOAD_BALANCER = "random";
     public static final String ROUND_ROBIN_LOAD_BALANCER = "roundrobin";
     public static final String STICKY_LOAD_BALANCER = "sticky";
+    public static final String LEAST_CONNECTIONS_LOAD_BALANCER = "leastconnections";
+    public static final String PEAK_EWMA_LOAD_BALANCER = "peakewma";
 
     public static final int STICKY_LOAD_BALANCER_DEFAULT_CACHE_SIZE = 10000;
 
@@ -38,6 +40,10 @@ public class LoadBalancers {
             return new RoundRobinLoadBalancer();
         } else if (STICKY_LOAD_BALANCER.equals(loadBalancerType)) {
             return new StickyLoadBalancer(stickyLoadBalancerCacheSize);
+        } else if (LEAST_CONNECTIONS_LOAD_BALANCER.equals(loadBalancerType)) {
+            return new LeastConnectionsLoadBalancer();
+        } else if (PEAK_EWMA_LOAD_BALANCER.equals(loadBalancerType)) {
+            return new PeakEwmaLoadBalancer();
         } else {
             if (Strings.isNotBlank(loadBalancerType)) {
                 LOG.warn("Ignored invalid load balancer type: " + loadBalancerType);
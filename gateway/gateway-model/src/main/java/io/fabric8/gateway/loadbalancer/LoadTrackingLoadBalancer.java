@@ -0,0 +1,172 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.loadbalancer;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A base class for {@link LoadAwareLoadBalancer} implementations which keeps track of the active requests and
+ * response times of each service and chooses the service with the lowest {@link #cost(ServiceLoad, long)}.
+ * <p/>
+ * Services with the same cost are chosen in turn so that load is spread evenly when there is no feedback yet.
+ * The load is looked up using the equality of the services, so services should be equal to the copies created
+ * when they are updated (such as by URL or id) and be {@link #removeService(Object) removed} when they go away.
+ */
+public abstract class LoadTrackingLoadBalancer implements LoadAwareLoadBalancer {
+    public static final long DEFAULT_DECAY_TIME_MILLIS = 10000L;
+
+    private final ConcurrentMap<Object, ServiceLoad> loads = new ConcurrentHashMap<Object, ServiceLoad>();
+    private final AtomicInteger counter = new AtomicInteger();
+
+    @Override
+    public <T> T choose(List<T> services, ClientRequestFacade requestFacade) {
+        int size = services.size();
+        if (size == 0) {
+            return null;
+        } else if (size == 1) {
+            return services.get(0);
+        }
+        long now = System.nanoTime();
+        int offset = (counter.getAndIncrement() & Integer.MAX_VALUE) % size;
+        T answer = null;
+        double lowest = Double.MAX_VALUE;
+        for (int i = 0; i < size; i++) {
+            T service = services.get((offset + i) % size);
+            double cost = cost(loads.get(service), now);
+            if (answer == null || cost < lowest) {
+                answer = service;
+                lowest = cost;
+            }
+        }
+        return answer;
+    }
+
+    /**
+     * Returns the cost of sending the next request to a service given its current load, which is null
+     * if nothing has been recorded for the service yet
+     */
+    protected abstract double cost(ServiceLoad load, long now);
+
+    @Override
+    public void requestStarted(Object service) {
+        if (service != null) {
+            getServiceLoad(service).active.incrementAndGet();
+        }
+    }
+
+    @Override
+    public void requestCompleted(Object service) {
+        if (service != null) {
+            ServiceLoad load = loads.get(service);
+            if (load != null && load.active.decrementAndGet() < 0) {
+                load.active.set(0);
+            }
+        }
+    }
+
+    @Override
+    public void recordLatency(Object service, long latencyNanos) {
+        if (service != null && latencyNanos >= 0) {
+            getServiceLoad(service).recordLatency(latencyNanos, System.nanoTime(), getDecayTimeNanos());
+        }
+    }
+
+    /**
+     * Returns the number of requests currently active on the given service
+     */
+    public int getActiveCount(Object service) {
+        ServiceLoad load = loads.get(service);
+        return load != null ? load.getActive() : 0;
+    }
+
+    /**
+     * Returns the exponentially weighted moving average of the response time of the given service
+     */
+    public long getLatencyEwmaNanos(Object service) {
+        ServiceLoad load = loads.get(service);
+        return load != null ? (long) load.getLatencyEwma(System.nanoTime(), getDecayTimeNanos()) : 0;
+    }
+
+    @Override
+    public void removeService(Object service) {
+        loads.remove(service);
+    }
+
+    /**
+     * Returns the time window over which older response times lose their weight
+     */
+    protected long getDecayTimeNanos() {
+        return DEFAULT_DECAY_TIME_MILLIS * 1000000L;
+    }
+
+    protected ServiceLoad getServiceLoad(Object service) {
+        ServiceLoad answer = loads.get(service);
+        if (answer == null) {
+            ServiceLoad load = new ServiceLoad();
+            answer = loads.putIfAbsent(service, load);
+            if (answer == null) {
+                answer = load;
+            }
+        }
+        return answer;
+    }
+
+    /**
+     * The active requests and response time average of a single service
+     */
+    protected static class ServiceLoad {
+        private final AtomicInteger active = new AtomicInteger();
+        private double latencyEwma;
+        private long lastUpdate;
+        private boolean measured;
+
+        public int getActive() {
+            return active.get();
+        }
+
+        public synchronized boolean isMeasured() {
+            return measured;
+        }
+
+        synchronized void recordLatency(long latencyNanos, long now, long decayTimeNanos) {
+            if (!measured || latencyNanos > latencyEwma) {
+                // lets react to a slow response straight away
+                latencyEwma = latencyNanos;
+                measured = true;
+            } else {
+                double elapsed = Math.max(0, now - lastUpdate);
+                double weight = Math.exp(-elapsed / decayTimeNanos);
+                latencyEwma = latencyEwma * weight + latencyNanos * (1 - weight);
+            }
+            lastUpdate = now;
+        }
+
+        /**
+         * Returns the average response time decayed towards zero by the time since it was last updated so that
+         * a service which was slow gets retried eventually
+         */
+        public synchronized double getLatencyEwma(long now, long decayTimeNanos) {
+            if (!measured) {
+                return 0;
+            }
+            double elapsed = Math.max(0, now - lastUpdate);
+            return latencyEwma * Math.exp(-elapsed / decayTimeNanos);
+        }
+    }
+}
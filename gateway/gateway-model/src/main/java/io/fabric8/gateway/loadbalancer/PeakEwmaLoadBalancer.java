@@ -0,0 +1,69 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.loadbalancer;
+
+/**
+ * A latency aware load balancer which chooses the service with the lowest peak exponentially weighted moving
+ * average response time multiplied by its number of active requests.
+ * <p/>
+ * A response slower than the current average replaces it immediately, while faster responses only bring it down
+ * gradually over the {@link #getDecayTime() decay time}, so a service which starts to struggle is avoided quickly.
+ */
+public class PeakEwmaLoadBalancer extends LoadTrackingLoadBalancer {
+    // the cost of a busy service which has not responded yet so that we prefer any measured service
+    private static final double PENALTY = Long.MAX_VALUE >> 16;
+
+    private final long decayTime;
+
+    public PeakEwmaLoadBalancer() {
+        this(DEFAULT_DECAY_TIME_MILLIS);
+    }
+
+    public PeakEwmaLoadBalancer(long decayTime) {
+        this.decayTime = decayTime > 0 ? decayTime : DEFAULT_DECAY_TIME_MILLIS;
+    }
+
+    @Override
+    public String toString() {
+        return "PeakEwmaLoadBalancer{" +
+                "decayTime=" + decayTime +
+                '}';
+    }
+
+    @Override
+    protected double cost(ServiceLoad load, long now) {
+        if (load == null) {
+            return 0;
+        }
+        int active = load.getActive();
+        if (!load.isMeasured()) {
+            return active == 0 ? 0 : PENALTY + active;
+        }
+        return load.getLatencyEwma(now, getDecayTimeNanos()) * (active + 1);
+    }
+
+    /**
+     * Returns the time in milliseconds over which older response times lose their weight
+     */
+    public long getDecayTime() {
+        return decayTime;
+    }
+
+    @Override
+    protected long getDecayTimeNanos() {
+        return decayTime * 1000000L;
+    }
+}
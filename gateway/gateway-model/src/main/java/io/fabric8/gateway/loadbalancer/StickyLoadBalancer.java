@@ -23,11 +23,15 @@ import java.util.Map;
  * Implements a sticky load balancer where a unique client ID String is requested from the
  * {@link ClientRequestFacade} and used to keep track of which
  * service was used last time and to use that if its possible and keep a cache of requests to
+ * <p/>
+ * The cache is split into a number of independently locked LRU shards selected by the hash of the client ID
+ * so that concurrent requests from different clients rarely contend on the same lock.
  */
 public class StickyLoadBalancer implements LoadBalancer {
     private final LoadBalancer firstRequestLoadBalancer;
     private final int maximumCacheSize;
-    private final Map<String, Object> requestCache;
+    private final Shard[] shards;
+    private final int shardMask;
 
     public StickyLoadBalancer() {
         this(LoadBalancers.STICKY_LOAD_BALANCER_DEFAULT_CACHE_SIZE);
@@ -38,34 +42,52 @@ public class StickyLoadBalancer implements LoadBalancer {
     }
 
     public StickyLoadBalancer(int maximumCacheSize, LoadBalancer firstRequestLoadBalancer) {
+        this(maximumCacheSize, firstRequestLoadBalancer, defaultShardCount(maximumCacheSize));
+    }
+
+    /**
+     * Creates a sticky load balancer whose cache is split into the given number of shards, which is rounded up
+     * to a power of two
+     */
+    public StickyLoadBalancer(int maximumCacheSize, LoadBalancer firstRequestLoadBalancer, int shardCount) {
         this.firstRequestLoadBalancer = firstRequestLoadBalancer;
         this.maximumCacheSize = maximumCacheSize;
-        this.requestCache = new LinkedHashMap(maximumCacheSize + 1, .75F, true) {
-            // This method is called just after a new entry has been added
-            public boolean removeEldestEntry(Map.Entry eldest) {
-                return size() > StickyLoadBalancer.this.maximumCacheSize;
-            }
-        };
+        int size = 1;
+        while (size < shardCount) {
+            size <<= 1;
+        }
+        this.shards = new Shard[size];
+        this.shardMask = size - 1;
+        int shardCacheSize = Math.max(1, (maximumCacheSize + size - 1) / size);
+        for (int i = 0; i < size; i++) {
+            shards[i] = new Shard(shardCacheSize);
+        }
+    }
+
+    protected static int defaultShardCount(int maximumCacheSize) {
+        int shardCount = Runtime.getRuntime().availableProcessors() * 4;
+        // lets keep a reasonable number of entries per shard so the LRU eviction is still meaningful
+        return Math.max(1, Math.min(shardCount, maximumCacheSize / 16));
     }
 
     @Override
     public String toString() {
         return "StickyLoadBalancer{" +
                 "maximumCacheSize=" + maximumCacheSize +
+                ", shards=" + shards.length +
                 '}';
     }
 
     @Override
     public <T> T choose(List<T> services, ClientRequestFacade requestFacade) {
         String clientKey = requestFacade.getClientRequestKey();
-        T answer;
-        synchronized (requestCache) {
-            answer = (T) requestCache.get(clientKey);
-            if (answer == null) {
-                answer = firstRequestLoadBalancer.choose(services, requestFacade);
-                if (answer != null) {
-                    requestCache.put(clientKey, answer);
-                }
+        Shard shard = shardFor(clientKey);
+        T answer = (T) shard.get(clientKey);
+        if (answer == null) {
+            // choose outside of the lock; if another request for the same client raced us then use its choice
+            answer = firstRequestLoadBalancer.choose(services, requestFacade);
+            if (answer != null) {
+                answer = (T) shard.putIfAbsent(clientKey, answer);
             }
         }
         return answer;
@@ -75,8 +97,73 @@ public class StickyLoadBalancer implements LoadBalancer {
      * Clears the cache of request client IDs to the bound service
      */
     public void flush() {
-        synchronized (requestCache) {
+        for (Shard shard : shards) {
+            shard.clear();
+        }
+    }
+
+    /**
+     * Returns the number of client IDs currently bound to a service
+     */
+    public int getCacheSize() {
+        int answer = 0;
+        for (Shard shard : shards) {
+            answer += shard.size();
+        }
+        return answer;
+    }
+
+    public int getMaximumCacheSize() {
+        return maximumCacheSize;
+    }
+
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    protected Shard shardFor(String clientKey) {
+        int h = clientKey != null ? clientKey.hashCode() : 0;
+        // spread the higher bits down as the shard count is a power of two
+        h ^= (h >>> 16);
+        h ^= (h >>> 8);
+        return shards[h & shardMask];
+    }
+
+    /**
+     * A bounded LRU cache of client IDs guarded by its own lock
+     */
+    protected static class Shard {
+        private final Map<String, Object> requestCache;
+
+        Shard(final int maximumCacheSize) {
+            this.requestCache = new LinkedHashMap<String, Object>(maximumCacheSize + 1, .75F, true) {
+                // This method is called just after a new entry has been added
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Object> eldest) {
+                    return size() > maximumCacheSize;
+                }
+            };
+        }
+
+        synchronized Object get(String clientKey) {
+            return requestCache.get(clientKey);
+        }
+
+        synchronized Object putIfAbsent(String clientKey, Object value) {
+            Object current = requestCache.get(clientKey);
+            if (current != null) {
+                return current;
+            }
+            requestCache.put(clientKey, value);
+            return value;
+        }
+
+        synchronized void clear() {
             requestCache.clear();
         }
+
+        synchronized int size() {
+            return requestCache.size();
+        }
     }
 }
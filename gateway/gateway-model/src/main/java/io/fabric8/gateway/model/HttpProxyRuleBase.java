@@ -24,14 +24,28 @@ import java.util.Map;
  * These can be created via a Java DSL and XML DSL (JAXB) or loaded from a database.
  */
 public class HttpProxyRuleBase {
-    private Map<String, HttpProxyRule> mappingRules = new HashMap<String, HttpProxyRule>();
+    private Map<String, HttpProxyRule> mappingRules = new RuleMap();
+    private volatile long version;
 
     public Map<String, HttpProxyRule> getMappingRules() {
         return mappingRules;
     }
 
+    /**
+     * Replaces the mapping rules with a copy of the given rules
+     */
     public void setMappingRules(Map<String, HttpProxyRule> mappingRules) {
-        this.mappingRules = mappingRules;
+        RuleMap rules = new RuleMap();
+        rules.putAll(mappingRules);
+        this.mappingRules = rules;
+    }
+
+    /**
+     * Returns a counter which changes whenever a rule is put into or removed from the {@link #getMappingRules()} map
+     * so that indexes of the rules know when they need rebuilding
+     */
+    public long getVersion() {
+        return version;
     }
 
     /**
@@ -45,4 +59,35 @@ public class HttpProxyRuleBase {
         }
         return answer;
     }
+
+    /**
+     * Counts the modifications made through put, putAll, remove and clear
+     */
+    private class RuleMap extends HashMap<String, HttpProxyRule> {
+        @Override
+        public HttpProxyRule put(String key, HttpProxyRule value) {
+            HttpProxyRule answer = super.put(key, value);
+            version++;
+            return answer;
+        }
+
+        @Override
+        public void putAll(Map<? extends String, ? extends HttpProxyRule> map) {
+            super.putAll(map);
+            version++;
+        }
+
+        @Override
+        public HttpProxyRule remove(Object key) {
+            HttpProxyRule answer = super.remove(key);
+            version++;
+            return answer;
+        }
+
+        @Override
+        public void clear() {
+            super.clear();
+            version++;
+        }
+    }
 }
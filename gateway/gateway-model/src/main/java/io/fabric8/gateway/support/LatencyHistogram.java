@@ -0,0 +1,136 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.support;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock free histogram of latencies in nanoseconds using HDR style log linear buckets; each power of two range is
+ * split into {@link #SUB_BUCKET_HALF_COUNT} linear buckets so recorded values keep a relative precision of better
+ * than 2% from 1 nanosecond up to {@link #getHighestTrackableValue()}, above which values are clamped.
+ * <p/>
+ * {@link #record(long)} only increments atomic counters so it is safe to call concurrently from any number of
+ * threads and never allocates. Reads are not an atomic snapshot of concurrent recordings.
+ * <p/>
+ * The APM agent keeps its own, thread striped, variant of this histogram as it is a standalone agent jar which
+ * cannot depend on the gateway modules.
+ */
+public class LatencyHistogram {
+    static final int SUB_BUCKET_BITS = 7;
+    static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    static final int SUB_BUCKET_HALF_COUNT = SUB_BUCKET_COUNT / 2;
+    static final int MAX_MAGNITUDE = 42;
+
+    private static final long HIGHEST_TRACKABLE_VALUE = (1L << (MAX_MAGNITUDE + 1)) - 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(indexOf(HIGHEST_TRACKABLE_VALUE) + 1);
+    private final AtomicLong totalCount = new AtomicLong();
+    private final AtomicLong totalValue = new AtomicLong();
+    private final AtomicLong maxValue = new AtomicLong();
+
+    /**
+     * Records a value in nanoseconds
+     */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        } else if (value > HIGHEST_TRACKABLE_VALUE) {
+            value = HIGHEST_TRACKABLE_VALUE;
+        }
+        counts.incrementAndGet(indexOf(value));
+        totalCount.incrementAndGet();
+        totalValue.addAndGet(value);
+        long max = maxValue.get();
+        while (value > max && !maxValue.compareAndSet(max, value)) {
+            max = maxValue.get();
+        }
+    }
+
+    public void reset() {
+        for (int i = 0, size = counts.length(); i < size; i++) {
+            counts.set(i, 0);
+        }
+        totalCount.set(0);
+        totalValue.set(0);
+        maxValue.set(0);
+    }
+
+    public long getCount() {
+        return totalCount.get();
+    }
+
+    public long getMax() {
+        return maxValue.get();
+    }
+
+    public long getMean() {
+        long count = totalCount.get();
+        return count > 0 ? totalValue.get() / count : 0;
+    }
+
+    /**
+     * Returns the value at the given percentile (between 0 and 100) of the recorded values
+     */
+    public long getValueAtPercentile(double percentile) {
+        long total = 0;
+        int size = counts.length();
+        // lets count the buckets first rather than use the total count which may be ahead of them
+        for (int i = 0; i < size; i++) {
+            total += counts.get(i);
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(Math.min(100.0, Math.max(0.0, percentile)) / 100.0 * total));
+        long seen = 0;
+        for (int i = 0; i < size; i++) {
+            seen += counts.get(i);
+            if (seen >= target) {
+                return Math.min(highestEquivalentValue(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    public long getHighestTrackableValue() {
+        return HIGHEST_TRACKABLE_VALUE;
+    }
+
+    static int indexOf(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int magnitude = 63 - Long.numberOfLeadingZeros(value);
+        int shift = magnitude - (SUB_BUCKET_BITS - 1);
+        int subBucket = (int) (value >>> shift);
+        return SUB_BUCKET_COUNT + (shift - 1) * SUB_BUCKET_HALF_COUNT + (subBucket - SUB_BUCKET_HALF_COUNT);
+    }
+
+    static long lowestEquivalentValue(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int offset = index - SUB_BUCKET_COUNT;
+        int shift = offset / SUB_BUCKET_HALF_COUNT + 1;
+        long subBucket = offset % SUB_BUCKET_HALF_COUNT + SUB_BUCKET_HALF_COUNT;
+        return subBucket << shift;
+    }
+
+    static long highestEquivalentValue(int index) {
+        return lowestEquivalentValue(index + 1) - 1;
+    }
+}
@@ -42,7 +42,13 @@ public class MappingResult {
      * Returns the resulting proxy URL from the mapping rule
      */
     public String getDestinationUrl(ClientRequestFacade requestFacade) {
-        UriTemplateDefinition uriTemplateDefinition = proxyRule.chooseBackEndService(requestFacade);
+        return getDestinationUrl(proxyRule.chooseBackEndService(requestFacade));
+    }
+
+    /**
+     * Returns the resulting proxy URL for the given back end service chosen from the mapping rule
+     */
+    public String getDestinationUrl(UriTemplateDefinition uriTemplateDefinition) {
         if (uriTemplateDefinition != null) {
             UriTemplate uriTemplate = uriTemplateDefinition.getUriTemplateObject();
             if (uriTemplate != null) {
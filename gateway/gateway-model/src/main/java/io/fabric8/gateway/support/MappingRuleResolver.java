@@ -17,18 +17,25 @@ package io.fabric8.gateway.support;
 
 import io.fabric8.gateway.model.HttpProxyRule;
 import io.fabric8.gateway.model.HttpProxyRuleBase;
+import io.fabric8.gateway.model.UriTemplateDefinition;
+
+import java.util.Map;
 
 /**
- * A helper class to map a request URI to a mapping rule
+ * A helper class to map a request URI to a mapping rule.
+ * <p/>
+ * The rules are indexed in a {@link PathTrie} by the segments of their URI templates so only the
+ * rules whose template is a prefix of the request path are tried, most specific first. The index
+ * is rebuilt whenever the rules are replaced or a rule is put into or removed from them.
  */
 public class MappingRuleResolver {
     private HttpProxyRuleBase mappingRules = new HttpProxyRuleBase();
+    private volatile RuleIndex ruleIndex;
 
     public MappingResult findMappingRule(String requestURI) {
         String[] paths = Paths.splitPaths(requestURI);
         MappingResult answer = null;
-        // TODO we could build a path based tree to do more efficient matching?
-        for (HttpProxyRule mappingRule : mappingRules.getMappingRules().values()) {
+        for (HttpProxyRule mappingRule : getRuleIndex().trie.findMatches(paths)) {
             answer = mappingRule.matches(paths);
             if (answer != null) {
                 break;
@@ -43,6 +50,42 @@ public class MappingRuleResolver {
 
     public void setMappingRules(HttpProxyRuleBase mappingRules) {
         this.mappingRules = mappingRules;
+        this.ruleIndex = null;
+    }
+
+    /**
+     * Forces the rule index to be rebuilt on the next request; use this after modifying an existing rule's URI template
+     */
+    public void invalidateIndex() {
+        this.ruleIndex = null;
+    }
+
+    protected RuleIndex getRuleIndex() {
+        HttpProxyRuleBase ruleBase = mappingRules;
+        Map<String, HttpProxyRule> rules = ruleBase.getMappingRules();
+        long version = ruleBase.getVersion();
+        RuleIndex index = ruleIndex;
+        if (index == null || index.rules != rules || index.version != version) {
+            index = new RuleIndex(rules, version);
+            ruleIndex = index;
+        }
+        return index;
     }
 
+    private static class RuleIndex {
+        private final Map<String, HttpProxyRule> rules;
+        private final long version;
+        private final PathTrie<HttpProxyRule> trie = new PathTrie<HttpProxyRule>();
+
+        RuleIndex(Map<String, HttpProxyRule> rules, long version) {
+            this.rules = rules;
+            this.version = version;
+            for (HttpProxyRule rule : rules.values()) {
+                UriTemplateDefinition uriTemplate = rule.getUriTemplate();
+                if (uriTemplate != null && uriTemplate.getUriTemplate() != null) {
+                    trie.add(uriTemplate.getUriTemplate(), rule);
+                }
+            }
+        }
+    }
 }
@@ -0,0 +1,156 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.support;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * A prefix tree of values keyed by path segments (as returned by {@link Paths#splitPaths(String)}) which can be
+ * updated incrementally and supports longest prefix matching without scanning every registered path.
+ * <p/>
+ * A segment of the form <code>{name}</code> is treated as a wildcard which matches any single segment of a request
+ * path. Lookups are lock free; updates are safe to perform concurrently with lookups.
+ */
+public class PathTrie<T> {
+    private final Node<T> root = new Node<T>();
+
+    /**
+     * Adds the value at the given path
+     */
+    public void add(String path, T value) {
+        add(Paths.splitPaths(path), value);
+    }
+
+    public void add(String[] segments, T value) {
+        Node<T> node = root;
+        for (String segment : segments) {
+            node = node.getOrCreateChild(segment);
+        }
+        node.values.addIfAbsent(value);
+    }
+
+    /**
+     * Removes the value at the given path returning true if it was present
+     */
+    public boolean remove(String path, T value) {
+        return remove(Paths.splitPaths(path), value);
+    }
+
+    public boolean remove(String[] segments, T value) {
+        Node<T> node = root;
+        for (String segment : segments) {
+            node = node.getChild(segment);
+            if (node == null) {
+                return false;
+            }
+        }
+        return node.values.remove(value);
+    }
+
+    public void clear() {
+        root.values.clear();
+        root.children.clear();
+        root.wildcard = null;
+    }
+
+    /**
+     * Returns the values registered at paths which are a prefix of the given request path segments, ordered
+     * so that the longest (most specific) prefix comes first. Literal segments take precedence over wildcards
+     * at the same depth.
+     */
+    public List<T> findMatches(String[] segments) {
+        // walk the tree one depth at a time so the deepest matches can be returned first whichever branch they
+        // are on; within a depth the literal child of a node is kept ahead of its wildcard
+        List<List<Node<T>>> levels = new ArrayList<List<Node<T>>>(segments.length + 1);
+        List<Node<T>> level = Collections.singletonList(root);
+        for (int index = 0; !level.isEmpty(); index++) {
+            levels.add(level);
+            if (index == segments.length) {
+                break;
+            }
+            List<Node<T>> next = new ArrayList<Node<T>>(2);
+            for (Node<T> node : level) {
+                Node<T> child = node.children.get(segments[index]);
+                if (child != null) {
+                    next.add(child);
+                }
+                Node<T> wildcard = node.wildcard;
+                if (wildcard != null) {
+                    next.add(wildcard);
+                }
+            }
+            level = next;
+        }
+        List<T> answer = new ArrayList<T>();
+        for (int i = levels.size() - 1; i >= 0; i--) {
+            for (Node<T> node : levels.get(i)) {
+                answer.addAll(node.values);
+            }
+        }
+        return answer;
+    }
+
+    public List<T> findMatches(String path) {
+        return findMatches(Paths.splitPaths(path));
+    }
+
+    /**
+     * Returns the value registered at the longest prefix of the given request path or null if there is none
+     */
+    public T findLongestMatch(String[] segments) {
+        List<T> matches = findMatches(segments);
+        return matches.isEmpty() ? null : matches.get(0);
+    }
+
+    protected static boolean isWildcard(String segment) {
+        return segment.startsWith("{") && segment.endsWith("}");
+    }
+
+    private static class Node<T> {
+        private final ConcurrentMap<String, Node<T>> children = new ConcurrentHashMap<String, Node<T>>();
+        private final CopyOnWriteArrayList<T> values = new CopyOnWriteArrayList<T>();
+        private volatile Node<T> wildcard;
+
+        Node<T> getChild(String segment) {
+            return isWildcard(segment) ? wildcard : children.get(segment);
+        }
+
+        Node<T> getOrCreateChild(String segment) {
+            if (isWildcard(segment)) {
+                synchronized (this) {
+                    if (wildcard == null) {
+                        wildcard = new Node<T>();
+                    }
+                    return wildcard;
+                }
+            }
+            Node<T> answer = children.get(segment);
+            if (answer == null) {
+                Node<T> node = new Node<T>();
+                answer = children.putIfAbsent(segment, node);
+                if (answer == null) {
+                    answer = node;
+                }
+            }
+            return answer;
+        }
+    }
+}
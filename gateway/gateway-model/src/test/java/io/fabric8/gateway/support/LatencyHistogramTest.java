@@ -0,0 +1,70 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.support;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void testBucketsRoundTrip() throws Exception {
+        long[] values = {0, 1, 127, 128, 129, 1000, 123456, 987654321L, 1L << 40};
+        for (long value : values) {
+            int index = LatencyHistogram.indexOf(value);
+            assertTrue("lowest for " + value, LatencyHistogram.lowestEquivalentValue(index) <= value);
+            assertTrue("highest for " + value, LatencyHistogram.highestEquivalentValue(index) >= value);
+            long width = LatencyHistogram.highestEquivalentValue(index) - LatencyHistogram.lowestEquivalentValue(index);
+            assertTrue("precision for " + value, width <= value / 50);
+        }
+    }
+
+    @Test
+    public void testPercentiles() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000);
+        }
+        assertEquals(1000, histogram.getCount());
+        assertEquals(1000000, histogram.getMax());
+        assertEquals(500500, histogram.getMean());
+        assertWithin(500000, histogram.getValueAtPercentile(50));
+        assertWithin(990000, histogram.getValueAtPercentile(99));
+        assertEquals(1000000, histogram.getValueAtPercentile(100));
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getValueAtPercentile(99));
+    }
+
+    @Test
+    public void testValuesOutOfRangeAreClamped() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-1);
+        histogram.record(Long.MAX_VALUE);
+        assertEquals(2, histogram.getCount());
+        assertEquals(0, histogram.getValueAtPercentile(50));
+        assertEquals(histogram.getHighestTrackableValue(), histogram.getMax());
+    }
+
+    protected static void assertWithin(long expected, long actual) {
+        assertTrue("Expected " + actual + " to be within 2% of " + expected, Math.abs(actual - expected) <= expected / 50);
+    }
+}
@@ -0,0 +1,89 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.support;
+
+import io.fabric8.gateway.model.HttpProxyRule;
+import io.fabric8.gateway.model.HttpProxyRuleBase;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * Compares the {@link PathTrie} backed {@link MappingRuleResolver} with a linear scan of all the rules.
+ */
+public class MappingRuleResolverBenchmark {
+
+    final int REQUEST_COUNT = 200000;
+
+    @Test
+    public void testResolve() throws Exception {
+        System.out.println("==============================================================");
+        System.out.println("Perf testing");
+        System.out.println("==============================================================");
+        for (int ruleCount : new int[]{10, 1000, 50000}) {
+            benchmark(ruleCount);
+        }
+    }
+
+    protected void benchmark(int ruleCount) {
+        HttpProxyRuleBase ruleBase = new HttpProxyRuleBase();
+        for (int i = 0; i < ruleCount; i++) {
+            ruleBase.rule("/service" + i + "/{path}").to("http://host" + i + ".com/{path}");
+        }
+        MappingRuleResolver resolver = new MappingRuleResolver();
+        resolver.setMappingRules(ruleBase);
+
+        String[] requests = new String[1024];
+        Random random = new Random(ruleCount);
+        for (int i = 0; i < requests.length; i++) {
+            requests[i] = "/service" + random.nextInt(ruleCount) + "/some/resource";
+        }
+
+        // warm up
+        for (int i = 0; i < requests.length; i++) {
+            assertNotNull(resolver.findMappingRule(requests[i]));
+            assertNotNull(linearScan(ruleBase, requests[i]));
+        }
+
+        int iterations = Math.max(100, REQUEST_COUNT / ruleCount);
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            linearScan(ruleBase, requests[i % requests.length]);
+        }
+        long linear = (System.nanoTime() - start) / iterations;
+
+        start = System.nanoTime();
+        for (int i = 0; i < REQUEST_COUNT; i++) {
+            resolver.findMappingRule(requests[i % requests.length]);
+        }
+        long trie = (System.nanoTime() - start) / REQUEST_COUNT;
+
+        System.out.println(ruleCount + " rules: linear scan " + linear + " ns/request, path trie " + trie + " ns/request");
+    }
+
+    protected MappingResult linearScan(HttpProxyRuleBase ruleBase, String requestURI) {
+        String[] paths = Paths.splitPaths(requestURI);
+        for (HttpProxyRule mappingRule : ruleBase.getMappingRules().values()) {
+            MappingResult answer = mappingRule.matches(paths);
+            if (answer != null) {
+                return answer;
+            }
+        }
+        return null;
+    }
+}
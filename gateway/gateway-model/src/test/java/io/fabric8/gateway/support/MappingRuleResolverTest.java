@@ -16,6 +16,7 @@
 package io.fabric8.gateway.support;
 
 import io.fabric8.gateway.loadbalancer.ClientRequestFacade;
+import io.fabric8.gateway.model.HttpProxyRule;
 import io.fabric8.gateway.model.HttpProxyRuleBase;
 import org.junit.Test;
 import org.slf4j.Logger;
@@ -44,6 +45,15 @@ public class MappingRuleResolverTest extends MappingRuleTestSupport {
         assertRuleMatch("/customers/c123/address/abc", "http://another.com/addresses/abc/customerThingy/c123");
     }
 
+    @Test
+    public void testReplacedRuleIsReindexed() throws Exception {
+        assertRuleMatch("/members", "http://foo.com/rest/members");
+
+        HttpProxyRuleBase ruleBase = getResolver().getMappingRules();
+        ruleBase.getMappingRules().put("/members", new HttpProxyRule("/members").to("http://bar.com/members"));
+        assertRuleMatch("/members", "http://bar.com/members");
+    }
+
     @Override
     protected void loadMappingRules(HttpProxyRuleBase ruleBase) {
         ruleBase.rule("/members").to("http://foo.com/rest/members");
@@ -0,0 +1,84 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.support;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ */
+public class PathTrieTest {
+
+    @Test
+    public void testLongestPrefixMatch() throws Exception {
+        PathTrie<String> trie = new PathTrie<String>();
+        trie.add("/", "root");
+        trie.add("/foo", "foo");
+        trie.add("/foo/bar/", "foo/bar");
+        trie.add("/cheese", "cheese");
+
+        assertEquals(Arrays.asList("foo/bar", "foo", "root"), trie.findMatches("/foo/bar/whatnot"));
+        assertEquals(Arrays.asList("foo", "root"), trie.findMatches("/foo/baz"));
+        assertEquals(Collections.singletonList("root"), trie.findMatches("/other"));
+        assertEquals("foo/bar", trie.findLongestMatch(Paths.splitPaths("/foo/bar?x=1")));
+    }
+
+    @Test
+    public void testWildcards() throws Exception {
+        PathTrie<String> trie = new PathTrie<String>();
+        trie.add("/members", "members");
+        trie.add("/members/{id}", "member");
+        trie.add("/members/admin", "admin");
+
+        assertEquals(Arrays.asList("admin", "member", "members"), trie.findMatches("/members/admin"));
+        assertEquals(Arrays.asList("member", "members"), trie.findMatches("/members/123"));
+    }
+
+    @Test
+    public void testDeeperWildcardMatchComesFirst() throws Exception {
+        PathTrie<String> trie = new PathTrie<String>();
+        trie.add("/members/admin", "admin");
+        trie.add("/members/{id}/deep", "deep");
+
+        assertEquals(Arrays.asList("deep", "admin"), trie.findMatches("/members/admin/deep"));
+        assertEquals("deep", trie.findLongestMatch(Paths.splitPaths("/members/admin/deep")));
+    }
+
+    @Test
+    public void testIncrementalUpdates() throws Exception {
+        PathTrie<String> trie = new PathTrie<String>();
+        assertNull(trie.findLongestMatch(Paths.splitPaths("/foo")));
+
+        trie.add("/foo", "a");
+        trie.add("/foo/", "b");
+        assertEquals(Arrays.asList("a", "b"), trie.findMatches("/foo/bar"));
+
+        assertTrue(trie.remove("/foo", "a"));
+        assertFalse(trie.remove("/foo", "a"));
+        assertFalse(trie.remove("/unknown/path", "a"));
+        assertEquals(Collections.singletonList("b"), trie.findMatches("/foo/bar"));
+
+        trie.clear();
+        assertTrue(trie.findMatches("/foo/bar").isEmpty());
+    }
+}
@@ -17,7 +17,9 @@ package io.fabric8.gateway.servlet;
 
 import io.fabric8.common.util.Strings;
 import io.fabric8.gateway.model.HttpProxyRule;
+import io.fabric8.gateway.model.UriTemplateDefinition;
 import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.HttpConnectionManager;
 import org.apache.commons.httpclient.HttpMethod;
 
 /**
@@ -27,13 +29,19 @@ public class ProxyDetails {
     private final String stringProxyURL;
 
     private final HttpProxyRule proxyRule;
+    private final UriTemplateDefinition backEndService;
     private String proxyHostAndPort;
     private String proxyPath;
 
     public ProxyDetails(boolean valid, String stringProxyURL, HttpProxyRule proxyRule) {
+        this(valid, stringProxyURL, proxyRule, null);
+    }
+
+    public ProxyDetails(boolean valid, String stringProxyURL, HttpProxyRule proxyRule, UriTemplateDefinition backEndService) {
         this.valid = valid;
         this.stringProxyURL = stringProxyURL;
         this.proxyRule = proxyRule;
+        this.backEndService = backEndService;
         if (proxyHostAndPort == null) {
             return;
         }
@@ -98,6 +106,18 @@ public class ProxyDetails {
         return client;
     }
 
+    /**
+     * Creates a client for the request which uses the given shared connection manager so that connections
+     * to the back end are pooled; each request still gets its own client so cookie state is not shared
+     * between the clients of the proxy.
+     */
+    public HttpClient createHttpClient(HttpMethod httpMethodProxyRequest, HttpConnectionManager connectionManager) {
+        if (connectionManager == null) {
+            return createHttpClient(httpMethodProxyRequest);
+        }
+        return new HttpClient(connectionManager);
+    }
+
     public String getProxyHostAndPort() {
         return proxyHostAndPort;
     }
@@ -110,4 +130,11 @@ public class ProxyDetails {
         return proxyRule;
     }
 
+    /**
+     * Returns the back end service chosen by the load balancer of the proxy rule
+     */
+    public UriTemplateDefinition getBackEndService() {
+        return backEndService;
+    }
+
 }
@@ -16,8 +16,12 @@
 package io.fabric8.gateway.servlet;
 
 import io.fabric8.common.util.IOHelpers;
+import io.fabric8.gateway.loadbalancer.LoadAwareLoadBalancer;
+import io.fabric8.gateway.loadbalancer.LoadBalancer;
 import io.fabric8.gateway.model.HttpProxyRule;
 import io.fabric8.gateway.model.HttpProxyRuleBase;
+import io.fabric8.gateway.model.UriTemplateDefinition;
+import io.fabric8.gateway.servlet.support.BufferPool;
 import io.fabric8.gateway.servlet.support.NonBindingSocketFactory;
 import io.fabric8.gateway.servlet.support.ProxySupport;
 import org.apache.commons.fileupload.FileItem;
@@ -28,6 +32,7 @@ import org.apache.commons.httpclient.Header;
 import org.apache.commons.httpclient.HttpClient;
 import org.apache.commons.httpclient.HttpMethod;
 import org.apache.commons.httpclient.HttpStatus;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
 import org.apache.commons.httpclient.NameValuePair;
 import org.apache.commons.httpclient.methods.DeleteMethod;
 import org.apache.commons.httpclient.methods.EntityEnclosingMethod;
@@ -42,6 +47,7 @@ import org.apache.commons.httpclient.methods.multipart.FilePart;
 import org.apache.commons.httpclient.methods.multipart.MultipartRequestEntity;
 import org.apache.commons.httpclient.methods.multipart.Part;
 import org.apache.commons.httpclient.methods.multipart.StringPart;
+import org.apache.commons.httpclient.params.HttpConnectionManagerParams;
 import org.apache.commons.httpclient.protocol.Protocol;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -51,7 +57,6 @@ import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
@@ -104,6 +109,26 @@ public abstract class ProxyServlet extends HttpServlet {
      */
     private int intMaxFileUploadSize = 5 * 1024 * 1024;
 
+    /**
+     * The maximum number of pooled connections to each proxied host
+     */
+    private int maxConnectionsPerHost = 20;
+
+    /**
+     * The maximum number of pooled connections across all proxied hosts
+     */
+    private int maxTotalConnections = 200;
+
+    /**
+     * The connection manager shared by all proxied requests so that connections to the back end are kept alive and reused
+     */
+    private transient MultiThreadedHttpConnectionManager connectionManager;
+
+    /**
+     * The pool of buffers used to relay response bodies back to the client
+     */
+    private transient BufferPool bufferPool = new BufferPool();
+
     /**
      * Initialize the <code>ProxyServlet</code>
      *
@@ -116,6 +141,38 @@ public abstract class ProxyServlet extends HttpServlet {
         resolver.setMappingRules(ruleBase);
         Protocol.registerProtocol("http", new Protocol("http", new NonBindingSocketFactory(), 80));
         Protocol.registerProtocol("https", new Protocol("https", new NonBindingSocketFactory(), 443));
+
+        maxConnectionsPerHost = getIntInitParameter(config, "maxConnectionsPerHost", maxConnectionsPerHost);
+        maxTotalConnections = getIntInitParameter(config, "maxTotalConnections", maxTotalConnections);
+        connectionManager = new MultiThreadedHttpConnectionManager();
+        HttpConnectionManagerParams params = connectionManager.getParams();
+        params.setDefaultMaxConnectionsPerHost(maxConnectionsPerHost);
+        params.setMaxTotalConnections(maxTotalConnections);
+        params.setStaleCheckingEnabled(true);
+
+        int bufferSize = getIntInitParameter(config, "bufferSize", BufferPool.DEFAULT_BUFFER_SIZE);
+        bufferPool = new BufferPool(bufferSize, BufferPool.DEFAULT_MAX_POOLED_BUFFERS);
+    }
+
+    @Override
+    public void destroy() {
+        if (connectionManager != null) {
+            connectionManager.shutdown();
+            connectionManager = null;
+        }
+        super.destroy();
+    }
+
+    private static int getIntInitParameter(ServletConfig config, String name, int defaultValue) {
+        String value = config.getInitParameter(name);
+        if (value != null && value.trim().length() > 0) {
+            try {
+                return Integer.parseInt(value.trim());
+            } catch (NumberFormatException e) {
+                LOG.warn("Invalid value '" + value + "' for init parameter " + name + ". Using default " + defaultValue);
+            }
+        }
+        return defaultValue;
     }
 
     /**
@@ -246,9 +303,10 @@ public abstract class ProxyServlet extends HttpServlet {
         HttpMappingResult mappingRule = getResolver().findMappingRule(httpServletRequest, httpServletResponse);
         final HttpProxyRule proxyRule = mappingRule.getProxyRule();
         if (mappingRule != null) {
-            String destinationUrl = mappingRule.getDestinationUrl(new HttpClientRequestFacade(httpServletRequest, httpServletResponse));
+            UriTemplateDefinition backEndService = proxyRule.chooseBackEndService(new HttpClientRequestFacade(httpServletRequest, httpServletResponse));
+            String destinationUrl = mappingRule.getDestinationUrl(backEndService);
             if (destinationUrl != null) {
-                return new ProxyDetails(true, destinationUrl, proxyRule);
+                return new ProxyDetails(true, destinationUrl, proxyRule, backEndService);
             }
         }
         return new ProxyDetails(false, null, proxyRule);
@@ -391,12 +449,46 @@ public abstract class ProxyServlet extends HttpServlet {
         httpMethodProxyRequest.setDoAuthentication(false);
         httpMethodProxyRequest.setFollowRedirects(false);
 
-        // Create a default HttpClient
-        HttpClient httpClient = proxyDetails.createHttpClient(httpMethodProxyRequest);
+        // Create a HttpClient using the shared connection manager
+        HttpClient httpClient = proxyDetails.createHttpClient(httpMethodProxyRequest, connectionManager);
 
-        // Execute the request
-        int intProxyResponseCode = httpClient.executeMethod(httpMethodProxyRequest);
+        // let a load aware load balancer know about the request so it can pick the least loaded service next time
+        LoadAwareLoadBalancer loadAware = getLoadAwareLoadBalancer(proxyDetails);
+        UriTemplateDefinition backEndService = proxyDetails.getBackEndService();
+        if (loadAware != null) {
+            loadAware.requestStarted(backEndService);
+        }
+        try {
+            // Execute the request
+            long requestStart = System.nanoTime();
+            int intProxyResponseCode = httpClient.executeMethod(httpMethodProxyRequest);
+            if (loadAware != null) {
+                loadAware.recordLatency(backEndService, System.nanoTime() - requestStart);
+            }
+            relayProxyResponse(intProxyResponseCode, proxyDetails, httpMethodProxyRequest, httpServletRequest, httpServletResponse);
+        } finally {
+            // return the connection to the pool
+            httpMethodProxyRequest.releaseConnection();
+            if (loadAware != null) {
+                loadAware.requestCompleted(backEndService);
+            }
+        }
+    }
+
+    private static LoadAwareLoadBalancer getLoadAwareLoadBalancer(ProxyDetails proxyDetails) {
+        HttpProxyRule proxyRule = proxyDetails.getProxyRule();
+        if (proxyRule == null || proxyDetails.getBackEndService() == null) {
+            return null;
+        }
+        LoadBalancer loadBalancer = proxyRule.getLoadBalancer().getLoadBalancer();
+        return loadBalancer instanceof LoadAwareLoadBalancer ? (LoadAwareLoadBalancer) loadBalancer : null;
+    }
 
+    private void relayProxyResponse(
+            int intProxyResponseCode, ProxyDetails proxyDetails, HttpMethod httpMethodProxyRequest,
+            HttpServletRequest httpServletRequest,
+            HttpServletResponse httpServletResponse)
+            throws IOException, ServletException {
         // Check if the proxy response is a redirect
         // The following code is adapted from org.tigris.noodle.filters.CheckForRedirect
         // Hooray for open source software
@@ -462,11 +554,11 @@ public abstract class ProxyServlet extends HttpServlet {
         if (!noData) {
             // Send the content to the client
             InputStream inputStreamProxyResponse = httpMethodProxyRequest.getResponseBodyAsStream();
-            BufferedInputStream bufferedInputStream = new BufferedInputStream(inputStreamProxyResponse);
-            OutputStream outputStreamClientResponse = httpServletResponse.getOutputStream();
-            int intNextByte;
-            while ((intNextByte = bufferedInputStream.read()) != -1) {
-                outputStreamClientResponse.write(intNextByte);
+            if (inputStreamProxyResponse != null) {
+                OutputStream outputStreamClientResponse = httpServletResponse.getOutputStream();
+                long count = bufferPool.copy(inputStreamProxyResponse, outputStreamClientResponse);
+                outputStreamClientResponse.flush();
+                LOG.trace("Relayed {} bytes of response body", count);
             }
         }
     }
@@ -0,0 +1,90 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.servlet.support;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * A bounded pool of large byte arrays used to relay proxied bodies between streams without
+ * allocating a new buffer for every request.
+ */
+public class BufferPool {
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+    public static final int DEFAULT_MAX_POOLED_BUFFERS = 64;
+
+    private final int bufferSize;
+    private final BlockingQueue<byte[]> buffers;
+
+    public BufferPool() {
+        this(DEFAULT_BUFFER_SIZE, DEFAULT_MAX_POOLED_BUFFERS);
+    }
+
+    public BufferPool(int bufferSize, int maxPooledBuffers) {
+        this.bufferSize = bufferSize;
+        this.buffers = new ArrayBlockingQueue<byte[]>(maxPooledBuffers);
+    }
+
+    /**
+     * Returns a pooled buffer or a new one if the pool is empty
+     */
+    public byte[] acquire() {
+        byte[] answer = buffers.poll();
+        if (answer == null) {
+            answer = new byte[bufferSize];
+        }
+        return answer;
+    }
+
+    /**
+     * Returns the buffer to the pool; it is discarded if the pool is full
+     */
+    public void release(byte[] buffer) {
+        if (buffer != null && buffer.length == bufferSize) {
+            buffers.offer(buffer);
+        }
+    }
+
+    /**
+     * Copies the input stream to the output stream using a pooled buffer returning the number of bytes copied.
+     * Neither stream is closed.
+     */
+    public long copy(InputStream in, OutputStream out) throws IOException {
+        byte[] buffer = acquire();
+        try {
+            long answer = 0;
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                out.write(buffer, 0, count);
+                answer += count;
+            }
+            return answer;
+        } finally {
+            release(buffer);
+        }
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public int getPooledBufferCount() {
+        return buffers.size();
+    }
+}
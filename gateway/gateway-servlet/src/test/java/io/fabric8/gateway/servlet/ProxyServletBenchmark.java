@@ -0,0 +1,145 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.servlet;
+
+import io.fabric8.gateway.model.HttpProxyRuleBase;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Measures the throughput of relaying large response bodies through the {@link ProxyServlet}
+ * running in an embedded Jetty.
+ */
+public class ProxyServletBenchmark {
+
+    final long BODY_SIZE = 1024L * 1024 * 1024;
+    final int ITERATIONS = 3;
+
+    private Server backend;
+    private Server proxy;
+    private int backendPort;
+    private int proxyPort;
+
+    @Before
+    public void startServers() throws Exception {
+        backend = new Server(0);
+        ServletContextHandler backendContext = new ServletContextHandler();
+        backendContext.addServlet(new ServletHolder(new LargeBodyServlet(BODY_SIZE)), "/*");
+        backend.setHandler(backendContext);
+        backend.start();
+        backendPort = ((ServerConnector) backend.getConnectors()[0]).getLocalPort();
+
+        proxy = new Server(0);
+        ServletContextHandler proxyContext = new ServletContextHandler();
+        proxyContext.addServlet(new ServletHolder(new ProxyServlet() {
+            @Override
+            protected void loadRuleBase(ServletConfig config, HttpProxyRuleBase ruleBase) throws ServletException {
+                ruleBase.rule("/{path}").to("http://localhost:" + backendPort + "/{path}");
+            }
+        }), "/*");
+        proxy.setHandler(proxyContext);
+        proxy.start();
+        proxyPort = ((ServerConnector) proxy.getConnectors()[0]).getLocalPort();
+    }
+
+    @After
+    public void stopServers() throws Exception {
+        if (proxy != null) {
+            proxy.stop();
+        }
+        if (backend != null) {
+            backend.stop();
+        }
+    }
+
+    @Test
+    public void testLargeDownloadThroughput() throws Exception {
+        System.out.println("==============================================================");
+        System.out.println("Perf testing");
+        System.out.println("==============================================================");
+
+        for (int i = 0; i < ITERATIONS; i++) {
+            long direct = download(backendPort);
+            long proxied = download(proxyPort);
+            System.out.println("Direct: " + megabytesPerSecond(direct) + " MB/s, via ProxyServlet: " + megabytesPerSecond(proxied) + " MB/s");
+        }
+    }
+
+    protected long download(int port) throws IOException {
+        long start = System.nanoTime();
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + port + "/download").openConnection();
+        InputStream in = connection.getInputStream();
+        try {
+            byte[] buffer = new byte[64 * 1024];
+            long total = 0;
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                total += count;
+            }
+            assertEquals("bytes received", BODY_SIZE, total);
+        } finally {
+            in.close();
+        }
+        return System.nanoTime() - start;
+    }
+
+    protected long megabytesPerSecond(long nanos) {
+        return (BODY_SIZE * 1000000000L / nanos) / (1024 * 1024);
+    }
+
+    /**
+     * Streams a body of the given size
+     */
+    static class LargeBodyServlet extends HttpServlet {
+        private final long size;
+
+        LargeBodyServlet(long size) {
+            this.size = size;
+        }
+
+        @Override
+        protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+            resp.setContentType("application/octet-stream");
+            resp.setHeader("Content-Length", Long.toString(size));
+            byte[] buffer = new byte[64 * 1024];
+            OutputStream out = resp.getOutputStream();
+            long remaining = size;
+            while (remaining > 0) {
+                int count = (int) Math.min(buffer.length, remaining);
+                out.write(buffer, 0, count);
+                remaining -= count;
+            }
+        }
+    }
+}
@@ -48,4 +48,12 @@ public class StorageProxy implements StorageService {
         }
     }
 
+    @Override
+    public void store(String type, long timestamp, byte[] jsonData, int offset, int length) {
+        StorageService storage = this.tracker.getService();
+        if (storage != null) {
+            storage.store(type, timestamp, jsonData, offset, length);
+        }
+    }
+
 }
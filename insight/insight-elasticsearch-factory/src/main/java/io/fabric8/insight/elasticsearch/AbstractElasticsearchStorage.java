@@ -15,6 +15,7 @@
  */
 package io.fabric8.insight.elasticsearch;
 
+import io.fabric8.common.util.JMXUtils;
 import io.fabric8.insight.metrics.model.MetricsStorageService;
 import io.fabric8.insight.metrics.model.QueryResult;
 import io.fabric8.insight.metrics.mvel.MetricsStorageServiceImpl;
@@ -31,28 +32,161 @@ import org.elasticsearch.node.Node;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
-public abstract class AbstractElasticsearchStorage implements StorageService, MetricsStorageService, Runnable {
+/**
+ * Base class for storing insight data in Elasticsearch.
+ * <p/>
+ * Index requests are queued in a bounded ring buffer and sent by {@link #getBulkWorkers()} worker threads in bulks
+ * of up to {@link #getBulkSize()} requests, a bulk being sent early once {@link #getFlushInterval()} milliseconds
+ * have passed since its first request was taken. If Elasticsearch falls behind and the queue fills up, new requests
+ * are handled according to the {@link DropPolicy} rather than being held in memory without limit.
+ */
+public abstract class AbstractElasticsearchStorage implements StorageService, MetricsStorageService, ElasticsearchStorageMBean {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(AbstractElasticsearchStorage.class);
 
-    private static final SimpleDateFormat indexFormat = new SimpleDateFormat("yyyy.MM.dd");
+    public static final int DEFAULT_QUEUE_CAPACITY = 10000;
+    public static final int DEFAULT_BULK_SIZE = 1000;
+    public static final long DEFAULT_FLUSH_INTERVAL = 1000;
+    public static final int DEFAULT_BULK_WORKERS = 2;
+    public static final long STOP_TIMEOUT = 10000;
 
-    private int max = 1000;
+    private final IndexNameCalculator indexNameCalculator = new IndexNameCalculator("insight-");
 
-    protected Thread thread;
+    private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+    private int bulkSize = DEFAULT_BULK_SIZE;
+    private long flushInterval = DEFAULT_FLUSH_INTERVAL;
+    private int bulkWorkers = DEFAULT_BULK_WORKERS;
+    private DropPolicy dropPolicy = DropPolicy.DROP_OLDEST;
+    private int sampleRate = 10;
+    private long blockTimeout = 5000;
 
     protected volatile boolean running;
 
-    private BlockingQueue<ActionRequest> queue = new LinkedBlockingQueue<ActionRequest>();
+    private volatile BlockingQueue<ActionRequest> queue = new ArrayBlockingQueue<ActionRequest>(DEFAULT_QUEUE_CAPACITY);
+    private final List<BulkWorker> workers = new ArrayList<BulkWorker>();
+    private MBeanServer mbeanServer;
+    private ObjectName objectName;
+
+    private final AtomicLong sampleCounter = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong indexedCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private final AtomicLong bulkCount = new AtomicLong();
+    private final AtomicLong bulkLatencyTotal = new AtomicLong();
+    private final AtomicLong bulkLatencyMax = new AtomicLong();
 
     private MetricsStorageService metricsStorage = new MetricsStorageServiceImpl(this);
 
+    /**
+     * Applies the configuration, starts the bulk workers and registers the storage in JMX under the given name
+     */
+    protected synchronized void start(Map<String, ?> configuration, String name, MBeanServer mbeanServer) {
+        if (configuration != null) {
+            configure(configuration);
+        }
+        if (queue.remainingCapacity() + queue.size() != queueCapacity) {
+            BlockingQueue<ActionRequest> newQueue = new ArrayBlockingQueue<ActionRequest>(queueCapacity);
+            queue.drainTo(newQueue, queueCapacity);
+            queue = newQueue;
+        }
+        running = true;
+        for (int i = 0; i < bulkWorkers; i++) {
+            BulkWorker worker = new BulkWorker(name + "-" + (i + 1));
+            worker.setDaemon(true);
+            worker.start();
+            workers.add(worker);
+        }
+        if (mbeanServer != null) {
+            try {
+                ObjectName objectName = new ObjectName("io.fabric8.insight:type=ElasticsearchStorage,name=" + name);
+                JMXUtils.registerMBean(new StandardMBean(this, ElasticsearchStorageMBean.class), mbeanServer, objectName);
+                this.mbeanServer = mbeanServer;
+                this.objectName = objectName;
+            } catch (Exception e) {
+                LOGGER.warn("Could not register the storage in JMX", e);
+            }
+        }
+    }
+
+    /**
+     * Stops the bulk workers, waiting up to {@link #STOP_TIMEOUT} milliseconds for any bulk being sent to complete,
+     * and unregisters the storage from JMX
+     */
+    protected synchronized void stop() {
+        running = false;
+        for (BulkWorker worker : workers) {
+            worker.shutdown();
+        }
+        long deadline = System.currentTimeMillis() + STOP_TIMEOUT;
+        try {
+            for (BulkWorker worker : workers) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining > 0) {
+                    worker.join(remaining);
+                }
+                if (worker.isAlive()) {
+                    LOGGER.warn("Bulk worker {} did not stop within {} ms", worker.getName(), STOP_TIMEOUT);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        workers.clear();
+        if (mbeanServer != null) {
+            try {
+                JMXUtils.unregisterMBean(mbeanServer, objectName);
+            } catch (Exception e) {
+                LOGGER.debug("Could not unregister the storage from JMX", e);
+            }
+            mbeanServer = null;
+            objectName = null;
+        }
+    }
+
+    protected void configure(Map<String, ?> configuration) {
+        Object value = configuration.get("queueCapacity");
+        if (value != null) {
+            queueCapacity = Integer.parseInt(value.toString());
+        }
+        value = configuration.get("bulkSize");
+        if (value != null) {
+            bulkSize = Integer.parseInt(value.toString());
+        }
+        value = configuration.get("flushInterval");
+        if (value != null) {
+            flushInterval = Long.parseLong(value.toString());
+        }
+        value = configuration.get("bulkWorkers");
+        if (value != null) {
+            bulkWorkers = Integer.parseInt(value.toString());
+        }
+        value = configuration.get("dropPolicy");
+        if (value != null) {
+            dropPolicy = DropPolicy.valueOf(value.toString().trim().toUpperCase().replace('-', '_'));
+        }
+        value = configuration.get("sampleRate");
+        if (value != null) {
+            setSampleRate(Integer.parseInt(value.toString()));
+        }
+        value = configuration.get("blockTimeout");
+        if (value != null) {
+            blockTimeout = Long.parseLong(value.toString());
+        }
+    }
+
     protected void putInsightTemplate() {
         IndicesAdminClient indicesAdminClient = getNode().client().admin().indices();
 
@@ -72,43 +206,255 @@ public abstract class AbstractElasticsearchStorage implements StorageService, Me
 
     @Override
     public void store(String type, long timestamp, String jsonData) {
-        Date ts = new Date(timestamp);
-        Date utc = new Date(ts.getTime() + ts.getTimezoneOffset() * 60000);
         IndexRequest ir = new IndexRequest()
-                .index("insight-"+ indexFormat.format(utc))
+                .index(indexNameCalculator.getIndexName(timestamp))
                 .type(type)
                 .source(jsonData)
                 .create(true);
-        queue.add(ir);
+        enqueue(ir);
     }
 
-    public void run() {
-        while (running) {
-            try {
-                ActionRequest req = queue.take();
-                // Send data
-                BulkRequest bulk = new BulkRequest();
-                int nb = 0;
-                while (req != null && (nb == 0 || nb < max)) {
-                    bulk.add(req);
-                    nb++;
-                    req = queue.poll();
+    @Override
+    public void store(String type, long timestamp, byte[] jsonData, int offset, int length) {
+        // the request is sent later on so take a copy of the callers buffer
+        IndexRequest ir = new IndexRequest()
+                .index(indexNameCalculator.getIndexName(timestamp))
+                .type(type)
+                .source(Arrays.copyOfRange(jsonData, offset, offset + length))
+                .create(true);
+        enqueue(ir);
+    }
+
+    protected void enqueue(ActionRequest request) {
+        BlockingQueue<ActionRequest> queue = this.queue;
+        switch (dropPolicy) {
+            case SAMPLE:
+                // size >= 3 * remaining means the queue is at least three quarters full
+                if (queue.size() >= queue.remainingCapacity() * 3 && sampleCounter.incrementAndGet() % sampleRate != 0) {
+                    droppedCount.incrementAndGet();
+                } else if (!queue.offer(request)) {
+                    droppedCount.incrementAndGet();
                 }
-                if (bulk.numberOfActions() > 0) {
-                    BulkResponse rep = getNode().client().bulk(bulk).actionGet();
-                    for (BulkItemResponse bir : rep.getItems()) {
-                        if (bir.isFailed()) {
-                            LOGGER.warn("Error executing request: {}", bir.getFailureMessage());
-                        }
+                break;
+            case BLOCK:
+                try {
+                    if (!queue.offer(request, blockTimeout, TimeUnit.MILLISECONDS)) {
+                        droppedCount.incrementAndGet();
                     }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    droppedCount.incrementAndGet();
                 }
-            } catch (Exception e) {
-                if (running) {
-                    LOGGER.warn("Error while sending requests", e);
+                break;
+            default:
+                while (!queue.offer(request)) {
+                    if (queue.poll() != null) {
+                        droppedCount.incrementAndGet();
+                    }
+                }
+        }
+    }
+
+    protected void sendBulk(List<ActionRequest> requests) {
+        BulkRequest bulk = new BulkRequest();
+        for (ActionRequest request : requests) {
+            bulk.add(request);
+        }
+        long start = System.nanoTime();
+        try {
+            BulkResponse rep = getNode().client().bulk(bulk).actionGet();
+            int failed = 0;
+            for (BulkItemResponse bir : rep.getItems()) {
+                if (bir.isFailed()) {
+                    failed++;
+                    LOGGER.warn("Error executing request: {}", bir.getFailureMessage());
                 }
             }
+            failedCount.addAndGet(failed);
+            indexedCount.addAndGet(requests.size() - failed);
+        } catch (RuntimeException e) {
+            failedCount.addAndGet(requests.size());
+            throw e;
+        } finally {
+            long latency = System.nanoTime() - start;
+            bulkCount.incrementAndGet();
+            bulkLatencyTotal.addAndGet(latency);
+            long max = bulkLatencyMax.get();
+            while (latency > max && !bulkLatencyMax.compareAndSet(max, latency)) {
+                max = bulkLatencyMax.get();
+            }
         }
     }
 
     public abstract Node getNode();
+
+    // Statistics
+    //-------------------------------------------------------------------------
+
+    @Override
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    @Override
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    @Override
+    public long getIndexedCount() {
+        return indexedCount.get();
+    }
+
+    @Override
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    @Override
+    public long getBulkCount() {
+        return bulkCount.get();
+    }
+
+    /**
+     * Returns the average time in milliseconds taken by Elasticsearch to process a bulk
+     */
+    @Override
+    public double getAverageBulkLatency() {
+        long count = bulkCount.get();
+        return count > 0 ? (double) bulkLatencyTotal.get() / count / TimeUnit.MILLISECONDS.toNanos(1) : 0;
+    }
+
+    @Override
+    public double getMaxBulkLatency() {
+        return (double) bulkLatencyMax.get() / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    @Override
+    public void resetStatistics() {
+        droppedCount.set(0);
+        indexedCount.set(0);
+        failedCount.set(0);
+        bulkCount.set(0);
+        bulkLatencyTotal.set(0);
+        bulkLatencyMax.set(0);
+    }
+
+    // Properties
+    //-------------------------------------------------------------------------
+
+    @Override
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+
+    @Override
+    public int getBulkSize() {
+        return bulkSize;
+    }
+
+    public void setBulkSize(int bulkSize) {
+        this.bulkSize = bulkSize;
+    }
+
+    @Override
+    public long getFlushInterval() {
+        return flushInterval;
+    }
+
+    public void setFlushInterval(long flushInterval) {
+        this.flushInterval = flushInterval;
+    }
+
+    @Override
+    public int getBulkWorkers() {
+        return bulkWorkers;
+    }
+
+    public void setBulkWorkers(int bulkWorkers) {
+        this.bulkWorkers = bulkWorkers;
+    }
+
+    @Override
+    public String getDropPolicy() {
+        return dropPolicy.name();
+    }
+
+    public void setDropPolicy(DropPolicy dropPolicy) {
+        this.dropPolicy = dropPolicy;
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * Sets the rate of the {@link DropPolicy#SAMPLE} policy which keeps one request in every <code>sampleRate</code>
+     * once the queue is three quarters full
+     */
+    public void setSampleRate(int sampleRate) {
+        if (sampleRate <= 0) {
+            throw new IllegalArgumentException("sampleRate must be greater than 0 but was " + sampleRate);
+        }
+        this.sampleRate = sampleRate;
+    }
+
+    public long getBlockTimeout() {
+        return blockTimeout;
+    }
+
+    public void setBlockTimeout(long blockTimeout) {
+        this.blockTimeout = blockTimeout;
+    }
+
+    /**
+     * Takes requests off the queue and sends them to Elasticsearch in bulks until it is shut down
+     */
+    private class BulkWorker extends Thread {
+        private volatile boolean stopped;
+
+        BulkWorker(String name) {
+            super(name);
+        }
+
+        void shutdown() {
+            stopped = true;
+            interrupt();
+        }
+
+        @Override
+        public void run() {
+            List<ActionRequest> batch = new ArrayList<ActionRequest>(bulkSize);
+            while (!stopped) {
+                try {
+                    BlockingQueue<ActionRequest> queue = AbstractElasticsearchStorage.this.queue;
+                    batch.add(queue.take());
+                    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushInterval);
+                    while (batch.size() < bulkSize) {
+                        if (queue.drainTo(batch, bulkSize - batch.size()) == 0) {
+                            long remaining = deadline - System.nanoTime();
+                            ActionRequest next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : null;
+                            if (next == null) {
+                                break;
+                            }
+                            batch.add(next);
+                        }
+                    }
+                    sendBulk(batch);
+                } catch (InterruptedException e) {
+                    break;
+                } catch (Exception e) {
+                    if (!stopped) {
+                        LOGGER.warn("Error while sending requests", e);
+                    }
+                } finally {
+                    batch.clear();
+                }
+            }
+        }
+    }
 }
@@ -0,0 +1,35 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.insight.elasticsearch;
+
+/**
+ * What an {@link AbstractElasticsearchStorage} does with new requests once its queue has filled up because
+ * Elasticsearch is not keeping up
+ */
+public enum DropPolicy {
+    /**
+     * Discards the oldest queued requests to make room for the new ones
+     */
+    DROP_OLDEST,
+    /**
+     * Once the queue is three quarters full only every n-th new request is queued, the rest are discarded
+     */
+    SAMPLE,
+    /**
+     * Blocks the caller until there is room in the queue or the block timeout expires, then discards the request
+     */
+    BLOCK
+}
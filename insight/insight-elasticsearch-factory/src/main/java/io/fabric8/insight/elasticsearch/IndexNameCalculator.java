@@ -0,0 +1,60 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.insight.elasticsearch;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Calculates the daily index name for a timestamp, such as <code>insight-2016.01.31</code> for the UTC day it
+ * falls on. Safe to use from many threads; the name of the last day used is cached so that formatting is only done
+ * when the day changes.
+ */
+public class IndexNameCalculator {
+    private static final long DAY = TimeUnit.DAYS.toMillis(1);
+
+    private final String prefix;
+    private volatile Day lastDay = new Day(Long.MIN_VALUE, "");
+
+    public IndexNameCalculator(String prefix) {
+        this.prefix = prefix;
+    }
+
+    public String getIndexName(long timestamp) {
+        Day day = lastDay;
+        if (timestamp < day.start || timestamp >= day.start + DAY) {
+            long offset = timestamp % DAY;
+            long start = timestamp - (offset < 0 ? offset + DAY : offset);
+            SimpleDateFormat format = new SimpleDateFormat("yyyy.MM.dd");
+            format.setTimeZone(TimeZone.getTimeZone("UTC"));
+            day = new Day(start, prefix + format.format(new Date(start)));
+            lastDay = day;
+        }
+        return day.name;
+    }
+
+    private static class Day {
+        private final long start;
+        private final String name;
+
+        Day(long start, String name) {
+            this.start = start;
+            this.name = name;
+        }
+    }
+}
@@ -21,6 +21,9 @@ import io.fabric8.insight.storage.StorageService;
 import org.apache.felix.scr.annotations.*;
 import org.elasticsearch.node.Node;
 
+import javax.management.MBeanServer;
+import java.util.Map;
+
 @Component(immediate = true, name = "io.fabric8.insight.log.elasticsearch")
 @Service({StorageService.class})
 public class ElasticsearchLogStorage extends AbstractElasticsearchStorage {
@@ -28,20 +31,18 @@ public class ElasticsearchLogStorage extends AbstractElasticsearchStorage {
     @Reference(name = "node", referenceInterface = org.elasticsearch.node.Node.class, target = "(cluster.name=insight)")
     private final ValidatingReference<Node> node = new ValidatingReference<>();
 
+    @Reference
+    private MBeanServer mbeanServer;
+
     @Activate
-    public void activate() {
-        running = true;
+    public void activate(Map<String, ?> configuration) {
         putInsightTemplate();
-        thread = new Thread(this, "ElasticStorage");
-        thread.start();
+        start(configuration, "ElasticStorage", mbeanServer);
     }
 
     @Deactivate
     public void deactivate() {
-        running = false;
-        if (thread != null) {
-            thread.interrupt();
-        }
+        stop();
     }
 
     private void bindNode(Node node) {
@@ -21,28 +21,29 @@ import io.fabric8.insight.metrics.model.MetricsStorageService;
 import org.apache.felix.scr.annotations.*;
 import org.elasticsearch.node.Node;
 
+import javax.management.MBeanServer;
+import java.util.Map;
+
 @Component(immediate = true, name = "io.fabric8.insight.metrics.elasticsearch")
 @Service({MetricsStorageService.class})
 public class ElasticsearchMetricsStorage extends AbstractElasticsearchStorage {
 
     @Activate
-    public void activate() {
-        running = true;
-        thread = new Thread(this, "ElasticMetricsStorage");
-        thread.start();
+    public void activate(Map<String, ?> configuration) {
+        start(configuration, "ElasticMetricsStorage", mbeanServer);
     }
 
     @Deactivate
     public void deactivate() {
-        running = false;
-        if (thread != null) {
-            thread.interrupt();
-        }
+        stop();
     }
 
     @Reference(name = "node", referenceInterface = org.elasticsearch.node.Node.class, target = "(cluster.name=insight)")
     private final ValidatingReference<Node> node = new ValidatingReference<>();
 
+    @Reference
+    private MBeanServer mbeanServer;
+
     private void bindNode(Node node) {
         this.node.bind(node);
     }
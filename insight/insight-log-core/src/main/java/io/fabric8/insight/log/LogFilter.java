@@ -25,6 +25,7 @@ import java.util.Set;
 public class LogFilter {
     private int count;
     private String[] levels;
+    private String[] loggers;
     private String matchesText;
     private Long beforeTimestamp;
     private Long afterTimestamp;
@@ -46,6 +47,13 @@ public class LogFilter {
     }
 
 
+    public Set<String> getLoggersSet() {
+        if (loggers == null || loggers.length == 0) {
+            return Collections.EMPTY_SET;
+        }
+        return new HashSet<String>(Arrays.asList(loggers));
+    }
+
     // Properties
     //-------------------------------------------------------------------------
 
@@ -65,6 +73,17 @@ public class LogFilter {
         this.levels = levels;
     }
 
+    /**
+     * The names of the loggers to match, or all of them if empty
+     */
+    public String[] getLoggers() {
+        return loggers;
+    }
+
+    public void setLoggers(String[] loggers) {
+        this.loggers = loggers;
+    }
+
     public String getMatchesText() {
         return matchesText;
     }
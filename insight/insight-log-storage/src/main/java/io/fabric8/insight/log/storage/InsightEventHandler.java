@@ -25,9 +25,6 @@ import org.slf4j.LoggerFactory;
 
 import java.util.Map;
 
-import static io.fabric8.insight.log.storage.InsightUtils.formatDate;
-import static io.fabric8.insight.log.storage.InsightUtils.quote;
-
 @Component(immediate = true, name = "io.fabric8.insight.log.storage.events")
 @Service(EventHandler.class)
 @Properties({
@@ -65,53 +62,58 @@ public class InsightEventHandler implements EventHandler {
 
     public void handleEvent(final Event event) {
         try {
-            StringBuilder writer = new StringBuilder();
-            writer.append("{ \"host\": ");
-            quote(name, writer);
-            writer.append(", \"topic\": ");
-            quote(event.getTopic(), writer);
-            writer.append(", \"properties\": { ");
-            boolean first = true;
-
-            long timestamp = 0;
-
-            for (String name : event.getPropertyNames()) {
-                if (first) {
-                    first = false;
-                } else {
-                    writer.append(", ");
-                }
-                quote(name, writer);
-                writer.append(": ");
-                Object value = event.getProperty(name);
-                if (value == null) {
-                    writer.append("null");
-                } else if (EventConstants.TIMESTAMP.equals(name) && value instanceof Long) {
-                    timestamp = (Long) value;
-                    quote(formatDate(timestamp), writer);
-                } else if (value.getClass().isArray()) {
-                    writer.append(" [ ");
-                    boolean vfirst = true;
-                    for (Object v : ((Object[]) value)) {
-                        if (!vfirst) {
-                            writer.append(", ");
-                        } else {
-                            vfirst = false;
+            if (type == null || storageService == null) {
+                return;
+            }
+            JsonWriter writer = JsonWriter.acquire();
+            try {
+                writer.writeRaw("{ \"host\": ");
+                writer.writeString(name);
+                writer.writeRaw(", \"topic\": ");
+                writer.writeString(event.getTopic());
+                writer.writeRaw(", \"properties\": { ");
+                boolean first = true;
+
+                long timestamp = 0;
+
+                for (String name : event.getPropertyNames()) {
+                    if (first) {
+                        first = false;
+                    } else {
+                        writer.writeRaw(", ");
+                    }
+                    writer.writeString(name);
+                    writer.writeRaw(": ");
+                    Object value = event.getProperty(name);
+                    if (value == null) {
+                        writer.writeRaw("null");
+                    } else if (EventConstants.TIMESTAMP.equals(name) && value instanceof Long) {
+                        timestamp = (Long) value;
+                        writer.writeDate(timestamp);
+                    } else if (value.getClass().isArray()) {
+                        writer.writeRaw(" [ ");
+                        boolean vfirst = true;
+                        for (Object v : ((Object[]) value)) {
+                            if (!vfirst) {
+                                writer.writeRaw(", ");
+                            } else {
+                                vfirst = false;
+                            }
+                            writer.writeString(v.toString());
                         }
-                        quote(v.toString(), writer);
+                        writer.writeRaw(" ] ");
+                    } else {
+                        writer.writeString(value.toString());
                     }
-                    writer.append(" ] ");
-                } else {
-                    quote(value.toString(), writer);
                 }
-            }
-            writer.append(" } }");
+                writer.writeRaw(" } }");
 
-            if (timestamp == 0) {
-                timestamp = System.currentTimeMillis();
-            }
-            if (type != null && storageService != null) {
-                storageService.store(type, timestamp, writer.toString());
+                if (timestamp == 0) {
+                    timestamp = System.currentTimeMillis();
+                }
+                storageService.store(type, timestamp, writer.getBuffer(), 0, writer.size());
+            } finally {
+                writer.release();
             }
         } catch (Exception e) {
             LOGGER.warn("Error appending log to elastic search", e);
@@ -27,8 +27,6 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import static io.fabric8.insight.log.service.support.MavenCoordinates.addMavenCoord;
-import static io.fabric8.insight.log.storage.InsightUtils.formatDate;
-import static io.fabric8.insight.log.storage.InsightUtils.quote;
 
 @Component(immediate = true, name = "io.fabric8.insight.log.storage.logs")
 @Service(PaxAppender.class)
@@ -72,60 +70,65 @@ public class InsightLogAppender implements PaxAppender {
                     !paxLoggingEvent.getProperties().containsKey("trace-id")) {
                 return;
             }
-            StringBuilder writer = new StringBuilder();
-            writer.append("{ \"host\" : ");
-            quote(name, writer);
-            writer.append(",\n  \"@timestamp\" : ");
-            quote(formatDate(paxLoggingEvent.getTimeStamp()), writer);
-            writer.append(",\n  \"level\" : ");
-            quote(paxLoggingEvent.getLevel().toString(), writer);
-            writer.append(",\n  \"logger\" : ");
-            quote(paxLoggingEvent.getLoggerName(), writer);
-            writer.append(",\n  \"thread\" : ");
-            quote(paxLoggingEvent.getThreadName(), writer);
-            writer.append(",\n  \"message\" : ");
-            quote(paxLoggingEvent.getMessage(), writer);
-
-            String[] throwable = paxLoggingEvent.getThrowableStrRep();
-            if (throwable != null) {
-                throwable = addMavenCoord(throwable);
-                writer.append(",\n  \"exception\" : [");
-                for (int i = 0; i < throwable.length; i++) {
-                    if (i != 0)
-                        writer.append(", ");
-                    quote(throwable[i], writer);
-                }
-                writer.append("]");
+            if (type == null || storageService == null) {
+                return;
             }
-
-            writer.append(",\n  \"properties\" : { ");
-            boolean first = true;
-            Map<String, String> properties = new HashMap<String, String>();
-            Set<Map.Entry> set = paxLoggingEvent.getProperties().entrySet();
-            for (Map.Entry entry : set) {
-                Object key = entry.getKey();
-                Object value = entry.getValue();
-                if (key != null && value != null) {
-                    properties.put(key.toString(), value.toString());
+            JsonWriter writer = JsonWriter.acquire();
+            try {
+                writer.writeRaw("{ \"host\" : ");
+                writer.writeString(name);
+                writer.writeRaw(",\n  \"@timestamp\" : ");
+                writer.writeDate(paxLoggingEvent.getTimeStamp());
+                writer.writeRaw(",\n  \"level\" : ");
+                writer.writeString(paxLoggingEvent.getLevel().toString());
+                writer.writeRaw(",\n  \"logger\" : ");
+                writer.writeString(paxLoggingEvent.getLoggerName());
+                writer.writeRaw(",\n  \"thread\" : ");
+                writer.writeString(paxLoggingEvent.getThreadName());
+                writer.writeRaw(",\n  \"message\" : ");
+                writer.writeString(paxLoggingEvent.getMessage());
+
+                String[] throwable = paxLoggingEvent.getThrowableStrRep();
+                if (throwable != null) {
+                    throwable = addMavenCoord(throwable);
+                    writer.writeRaw(",\n  \"exception\" : [");
+                    for (int i = 0; i < throwable.length; i++) {
+                        if (i != 0)
+                            writer.writeRaw(", ");
+                        writer.writeString(throwable[i]);
+                    }
+                    writer.writeRaw(']');
                 }
-            }
-            addMavenCoord(properties);
 
-            for (Object key : properties.keySet()) {
-                if (first) {
-                    first = false;
-                } else {
-                    writer.append(", ");
+                writer.writeRaw(",\n  \"properties\" : { ");
+                boolean first = true;
+                Map<String, String> properties = new HashMap<String, String>();
+                Set<Map.Entry> set = paxLoggingEvent.getProperties().entrySet();
+                for (Map.Entry entry : set) {
+                    Object key = entry.getKey();
+                    Object value = entry.getValue();
+                    if (key != null && value != null) {
+                        properties.put(key.toString(), value.toString());
+                    }
                 }
-                quote(key.toString(), writer);
-                writer.append(": ");
-                quote(properties.get(key).toString(), writer);
-            }
-            writer.append(" }");
-            writer.append("\n}");
+                addMavenCoord(properties);
+
+                for (Map.Entry<String, String> entry : properties.entrySet()) {
+                    if (first) {
+                        first = false;
+                    } else {
+                        writer.writeRaw(", ");
+                    }
+                    writer.writeString(entry.getKey());
+                    writer.writeRaw(": ");
+                    writer.writeString(entry.getValue());
+                }
+                writer.writeRaw(" }");
+                writer.writeRaw("\n}");
 
-            if (type != null && storageService != null) {
-                storageService.store(type, paxLoggingEvent.getTimeStamp(), writer.toString());
+                storageService.store(type, paxLoggingEvent.getTimeStamp(), writer.getBuffer(), 0, writer.size());
+            } finally {
+                writer.release();
             }
         } catch (Exception e) {
             LOGGER.warn("Error appending log to storage", e);
@@ -0,0 +1,232 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.insight.log.storage;
+
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+
+/**
+ * Writes JSON as UTF-8 straight into a byte buffer which is reused by the thread, so that encoding a log event does
+ * not create any intermediate strings and, once the buffer has grown to fit, allocates nothing.
+ * <p/>
+ * Use {@link #acquire()} to get the writer of the current thread and {@link #release()} it once the bytes have been
+ * handed over; if the same thread acquires a writer again before releasing it (such as when storing an event logs
+ * another) a new writer is returned so the outer one is left untouched.
+ */
+public class JsonWriter {
+
+    private static final int INITIAL_SIZE = 1024;
+    private static final int MAX_RETAINED_SIZE = 64 * 1024;
+    private static final byte[] HEX = "0123456789abcdef".getBytes();
+
+    private static final ThreadLocal<JsonWriter> WRITERS = new ThreadLocal<JsonWriter>() {
+        @Override
+        protected JsonWriter initialValue() {
+            return new JsonWriter();
+        }
+    };
+
+    private byte[] buffer = new byte[INITIAL_SIZE];
+    private int size;
+    private boolean inUse;
+
+    // same format as InsightUtils.formatDate split so the seconds and time zone can be cached
+    private final SimpleDateFormat secondsFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.");
+    private final SimpleDateFormat zoneFormat = new SimpleDateFormat("X");
+    private long cachedSecond = Long.MIN_VALUE;
+    private String cachedSeconds;
+    private String cachedZone;
+
+    /**
+     * Returns the empty writer of the current thread
+     */
+    public static JsonWriter acquire() {
+        JsonWriter writer = WRITERS.get();
+        if (writer.inUse) {
+            writer = new JsonWriter();
+        }
+        writer.inUse = true;
+        writer.size = 0;
+        return writer;
+    }
+
+    /**
+     * Allows the writer to be reused by its thread; the bytes must not be used afterwards
+     */
+    public void release() {
+        inUse = false;
+        size = 0;
+        if (buffer.length > MAX_RETAINED_SIZE) {
+            buffer = new byte[INITIAL_SIZE];
+        }
+    }
+
+    /**
+     * Returns the buffer holding the encoded bytes from offset 0 up to {@link #size()}
+     */
+    public byte[] getBuffer() {
+        return buffer;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public String toString() {
+        try {
+            return new String(buffer, 0, size, "UTF-8");
+        } catch (java.io.UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Writes the given ASCII text as is, such as the punctuation between values
+     */
+    public JsonWriter writeRaw(String text) {
+        int len = text.length();
+        ensureCapacity(len);
+        for (int i = 0; i < len; i++) {
+            buffer[size++] = (byte) text.charAt(i);
+        }
+        return this;
+    }
+
+    public JsonWriter writeRaw(char c) {
+        ensureCapacity(1);
+        buffer[size++] = (byte) c;
+        return this;
+    }
+
+    /**
+     * Writes the string in double quotes escaping it in the same way as {@link InsightUtils#quote(String, StringBuilder)}
+     */
+    public JsonWriter writeString(String string) {
+        if (string == null || string.length() == 0) {
+            return writeRaw("\"\"");
+        }
+        int len = string.length();
+        // at most 6 bytes per char when escaped as \\uXXXX
+        ensureCapacity(len * 6 + 2);
+        byte[] buf = buffer;
+        int pos = size;
+        buf[pos++] = '"';
+        char b;
+        char c = 0;
+        for (int i = 0; i < len; i++) {
+            b = c;
+            c = string.charAt(i);
+            switch (c) {
+                case '\\':
+                case '"':
+                    buf[pos++] = '\\';
+                    buf[pos++] = (byte) c;
+                    break;
+                case '/':
+                    if (b == '<') {
+                        buf[pos++] = '\\';
+                    }
+                    buf[pos++] = '/';
+                    break;
+                case '\b':
+                    buf[pos++] = '\\';
+                    buf[pos++] = 'b';
+                    break;
+                case '\t':
+                    buf[pos++] = '\\';
+                    buf[pos++] = 't';
+                    break;
+                case '\n':
+                    buf[pos++] = '\\';
+                    buf[pos++] = 'n';
+                    break;
+                case '\f':
+                    buf[pos++] = '\\';
+                    buf[pos++] = 'f';
+                    break;
+                case '\r':
+                    buf[pos++] = '\\';
+                    buf[pos++] = 'r';
+                    break;
+                default:
+                    if (c < ' ' || (c >= '\u0080' && c < '\u00a0') || (c >= '\u2000' && c < '\u2100')) {
+                        buf[pos++] = '\\';
+                        buf[pos++] = 'u';
+                        buf[pos++] = HEX[(c >> 12) & 0xf];
+                        buf[pos++] = HEX[(c >> 8) & 0xf];
+                        buf[pos++] = HEX[(c >> 4) & 0xf];
+                        buf[pos++] = HEX[c & 0xf];
+                    } else if (c < 0x80) {
+                        buf[pos++] = (byte) c;
+                    } else if (c < 0x800) {
+                        buf[pos++] = (byte) (0xc0 | (c >> 6));
+                        buf[pos++] = (byte) (0x80 | (c & 0x3f));
+                    } else if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(string.charAt(i + 1))) {
+                        int codePoint = Character.toCodePoint(c, string.charAt(++i));
+                        buf[pos++] = (byte) (0xf0 | (codePoint >> 18));
+                        buf[pos++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+                        buf[pos++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+                        buf[pos++] = (byte) (0x80 | (codePoint & 0x3f));
+                    } else if (Character.isSurrogate(c)) {
+                        // unpaired surrogate, replaced like String.getBytes() does
+                        buf[pos++] = '?';
+                    } else {
+                        buf[pos++] = (byte) (0xe0 | (c >> 12));
+                        buf[pos++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                        buf[pos++] = (byte) (0x80 | (c & 0x3f));
+                    }
+            }
+        }
+        buf[pos++] = '"';
+        size = pos;
+        return this;
+    }
+
+    /**
+     * Writes the timestamp as a quoted ISO 8601 date in the local time zone
+     */
+    public JsonWriter writeDate(long timestamp) {
+        long second = timestamp / 1000;
+        int millis = (int) (timestamp % 1000);
+        if (millis < 0) {
+            second--;
+            millis += 1000;
+        }
+        if (second != cachedSecond) {
+            Date date = new Date(second * 1000);
+            cachedSeconds = secondsFormat.format(date);
+            cachedZone = zoneFormat.format(date);
+            cachedSecond = second;
+        }
+        writeRaw('"');
+        writeRaw(cachedSeconds);
+        ensureCapacity(3);
+        buffer[size++] = (byte) ('0' + millis / 100);
+        buffer[size++] = (byte) ('0' + millis / 10 % 10);
+        buffer[size++] = (byte) ('0' + millis % 10);
+        writeRaw(cachedZone);
+        return writeRaw('"');
+    }
+
+    private void ensureCapacity(int extra) {
+        int required = size + extra;
+        if (required > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(required, buffer.length * 2));
+        }
+    }
+}
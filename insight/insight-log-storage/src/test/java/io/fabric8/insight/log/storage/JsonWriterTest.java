@@ -0,0 +1,105 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.insight.log.storage;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Calendar;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks the {@link JsonWriter} produces the same bytes as {@link InsightUtils}
+ */
+public class JsonWriterTest {
+
+    @Test
+    public void testEveryCharMatchesQuote() throws Exception {
+        for (int c = 0; c <= Character.MAX_VALUE; c++) {
+            assertStringMatchesQuote("x" + (char) c + "/");
+        }
+    }
+
+    @Test
+    public void testStringsMatchQuote() throws Exception {
+        assertStringMatchesQuote(null);
+        assertStringMatchesQuote("");
+        assertStringMatchesQuote("plain text");
+        assertStringMatchesQuote("\"quoted\" back\\slash \b\t\n\f\r \u0000\u0001\u001f");
+        assertStringMatchesQuote("</script> a/b </ <<//");
+        assertStringMatchesQuote("\u007f\u0080\u0085\u009f\u00a0\u00e9");
+        assertStringMatchesQuote("\u1fff\u2000\u2028\u2029\u20ac\u20ff\u2100\uffff");
+        assertStringMatchesQuote("emoji \ud83d\ude00 and \ud800\udc00\udbff\udfff");
+        assertStringMatchesQuote("unpaired \ud800 \udc00 \ud800\ud800 \udc00\ud800 end \ud83d");
+    }
+
+    @Test
+    public void testLongStringGrowsTheBuffer() throws Exception {
+        char[] chars = new char[10000];
+        Arrays.fill(chars, '\u2028');
+        assertStringMatchesQuote(new String(chars));
+    }
+
+    @Test
+    public void testDateMatchesFormatDate() throws Exception {
+        Calendar calendar = Calendar.getInstance();
+        calendar.set(2016, Calendar.MARCH, 27, 1, 59, 58);
+        calendar.set(Calendar.MILLISECOND, 0);
+        long start = calendar.getTimeInMillis();
+
+        JsonWriter writer = JsonWriter.acquire();
+        try {
+            // walk over millisecond, second and minute boundaries using the cached seconds
+            for (long timestamp = start - 5; timestamp < start + 3005; timestamp += 7) {
+                assertDateMatchesFormatDate(writer, timestamp);
+            }
+            // going back to an earlier second must not reuse the cached one
+            assertDateMatchesFormatDate(writer, start + 999);
+            assertDateMatchesFormatDate(writer, start);
+            assertDateMatchesFormatDate(writer, start - 1);
+            assertDateMatchesFormatDate(writer, start + 1000);
+            assertDateMatchesFormatDate(writer, 0);
+            assertDateMatchesFormatDate(writer, -1);
+            assertDateMatchesFormatDate(writer, -1000);
+            assertDateMatchesFormatDate(writer, -1001);
+        } finally {
+            writer.release();
+        }
+    }
+
+    protected void assertStringMatchesQuote(String text) throws Exception {
+        StringBuilder builder = new StringBuilder();
+        InsightUtils.quote(text, builder);
+        byte[] expected = builder.toString().getBytes("UTF-8");
+
+        JsonWriter writer = JsonWriter.acquire();
+        try {
+            writer.writeString(text);
+            assertArrayEquals("Encoding of " + builder, expected, Arrays.copyOf(writer.getBuffer(), writer.size()));
+        } finally {
+            writer.release();
+        }
+    }
+
+    protected void assertDateMatchesFormatDate(JsonWriter writer, long timestamp) {
+        int start = writer.size();
+        writer.writeDate(timestamp);
+        String actual = new String(writer.getBuffer(), start, writer.size() - start);
+        assertEquals("Date of " + timestamp, "\"" + InsightUtils.formatDate(timestamp) + "\"", actual);
+    }
+}
@@ -105,6 +105,16 @@ public class Logs {
                 }
             });
         }
+        final Set<String> loggers = filter.getLoggersSet();
+        if (loggers.size() > 0) {
+            predicates.add(new Predicate<PaxLoggingEvent>() {
+                @Override
+                public boolean matches(PaxLoggingEvent event) {
+                    String logger = event.getLoggerName();
+                    return logger != null && loggers.contains(logger);
+                }
+            });
+        }
         final Long before = filter.getBeforeTimestamp();
         if (before != null) {
             predicates.add(new Predicate<PaxLoggingEvent>() {
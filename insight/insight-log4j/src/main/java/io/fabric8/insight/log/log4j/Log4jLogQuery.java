@@ -31,7 +31,6 @@ import io.fabric8.insight.log.LogEvent;
 import io.fabric8.insight.log.LogFilter;
 import io.fabric8.insight.log.LogResults;
 import io.fabric8.insight.log.support.LogQuerySupport;
-import io.fabric8.insight.log.support.LruList;
 import io.fabric8.insight.log.support.Predicate;
 import org.ops4j.util.property.PropertiesPropertyResolver;
 import org.slf4j.ILoggerFactory;
@@ -44,11 +43,11 @@ import java.io.File;
 import java.io.IOException;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
-import java.util.Set;
 import org.apache.felix.scr.annotations.Activate;
 import org.apache.felix.scr.annotations.Component;
 import org.apache.felix.scr.annotations.ConfigurationPolicy;
@@ -66,7 +65,7 @@ public class Log4jLogQuery extends LogQuerySupport implements Log4jLogQueryMBean
     private static final transient Logger LOG = LoggerFactory.getLogger(Log4jLogQuery.class);
 
     private int size = 1000;
-    private LruList<LoggingEvent> events;
+    private volatile LoggingEventBuffer events;
     private boolean addMavenCoordinates = true;
     private AetherBasedResolver resolver;
     private Properties properties = new Properties();
@@ -122,56 +121,24 @@ public class Log4jLogQuery extends LogQuerySupport implements Log4jLogQueryMBean
     }
 
     public LogResults queryLogResults(LogFilter filter) {
-        Predicate<LogEvent> predicate = createPredicate(filter);
         int maxCount = -1;
         if (filter != null) {
             maxCount = filter.getCount();
         }
-        return filterLogResults(predicate, maxCount);
+        return filterLogResults(filter, maxCount);
     }
 
+    /**
+     * Creates the predicate for the parts of the filter which need the whole {@link LogEvent}; the levels, loggers
+     * and timestamps are matched by the {@link LoggingEventBuffer} before the events are converted
+     */
     private Predicate<LogEvent> createPredicate(LogFilter filter) {
         if (filter == null) {
             return null;
         }
-        final List<Predicate<LogEvent>> predicates = new ArrayList<Predicate<LogEvent>>();
-
-        final Set<String> levels = filter.getLevelsSet();
-        if (levels.size() > 0) {
-            predicates.add(new Predicate<LogEvent>() {
-                @Override
-                public boolean matches(LogEvent event) {
-                    String level = event.getLevel();
-                    return level != null && levels.contains(level.toString());
-                }
-            });
-        }
-        final Long before = filter.getBeforeTimestamp();
-        if (before != null) {
-            final Date date = new Date(before);
-            predicates.add(new Predicate<LogEvent>() {
-                @Override
-                public boolean matches(LogEvent event) {
-                    Date time = event.getTimestamp();
-                    return time != null && time.before(date);
-                }
-            });
-        }
-        final Long after = filter.getAfterTimestamp();
-        if (after != null) {
-            final Date date = new Date(after);
-            predicates.add(new Predicate<LogEvent>() {
-                @Override
-                public boolean matches(LogEvent event) {
-                    Date time = event.getTimestamp();
-                    return time != null && time.after(date);
-                }
-            });
-        }
-
         final String matchesText = filter.getMatchesText();
         if (matchesText != null && matchesText.length() > 0) {
-            predicates.add(new Predicate<LogEvent>() {
+            return new Predicate<LogEvent>() {
                 @Override
                 public boolean matches(LogEvent event) {
                     if (contains(matchesText, event.getClassName(), event.getMessage(), event.getLogger(), event.getThread())) {
@@ -187,69 +154,43 @@ public class Log4jLogQuery extends LogQuerySupport implements Log4jLogQueryMBean
                     }
                     return false;
                 }
-            });
-        }
-
-        if (predicates.size() == 0) {
-            return null;
-        } else if (predicates.size() == 1) {
-            return predicates.get(0);
-        } else {
-            return new Predicate<LogEvent>() {
-                @Override
-                public String toString() {
-                    return "AndPredicate" + predicates;
-                }
-
-                @Override
-                public boolean matches(LogEvent event) {
-                    for (Predicate<LogEvent> predicate : predicates) {
-                        if (!predicate.matches(event)) {
-                            return false;
-                        }
-                    }
-                    return true;
-                }
             };
         }
+        return null;
     }
 
-    protected LogResults filterLogResults(Predicate<LogEvent> predicate, int maxCount) {
-        int matched = 0;
-        long from = Long.MAX_VALUE;
-        long to = Long.MIN_VALUE;
-        List<LogEvent> list = new ArrayList<LogEvent>();
-        Iterable<LoggingEvent> elements = getEvents().getElements();
-        for (LoggingEvent element : elements) {
-            LogEvent logEvent = toLogEvent(element);
-            long timestamp = element.getTimeStamp();
-            if (timestamp > to) {
-                to = timestamp;
-            }
-            if (timestamp < from) {
-                from = timestamp;
-            }
-            if (logEvent != null) {
-                if (predicate == null || predicate.matches(logEvent)) {
+    /**
+     * Returns the newest events matching the filter, up to the given count if it is greater than zero, oldest first
+     */
+    protected LogResults filterLogResults(LogFilter filter, final int maxCount) {
+        final Predicate<LogEvent> predicate = createPredicate(filter);
+        final List<LogEvent> list = new ArrayList<LogEvent>();
+        LoggingEventBuffer events = getEvents();
+        LoggingEventBuffer.Visitor visitor = new LoggingEventBuffer.Visitor() {
+            @Override
+            public boolean visit(LoggingEvent element) {
+                LogEvent logEvent = toLogEvent(element);
+                if (logEvent != null && (predicate == null || predicate.matches(logEvent))) {
                     list.add(logEvent);
-                    matched += 1;
-                    if (maxCount > 0 && matched >= maxCount) {
-                        break;
-                    }
+                    return maxCount <= 0 || list.size() < maxCount;
                 }
+                return true;
             }
+        };
+        if (filter != null) {
+            events.visitNewestFirst(filter.getLevelsSet(), filter.getLoggersSet(), filter.getAfterTimestamp(), filter.getBeforeTimestamp(), visitor);
+        } else {
+            events.visitNewestFirst(null, null, null, null, visitor);
         }
+        Collections.reverse(list);
+
         LogResults results = new LogResults();
         results.setEvents(list);
-        if (from < Long.MAX_VALUE) {
-            results.setFromTimestamp(from);
-        }
-        if (to > Long.MIN_VALUE) {
-            results.setToTimestamp(to);
-        }
+        results.setFromTimestamp(events.getOldestTimestamp());
+        results.setToTimestamp(events.getNewestTimestamp());
         if (LOG.isDebugEnabled()) {
             LOG.debug("Requested " + maxCount + " logging items. returning "
-                    + results.getEvents().size() + " event(s) from a possible " + getEvents().size());
+                    + results.getEvents().size() + " event(s) from a possible " + events.size());
 
         }
         return results;
@@ -358,14 +299,21 @@ public class Log4jLogQuery extends LogQuerySupport implements Log4jLogQueryMBean
 
     // Properties
     //-------------------------------------------------------------------------
-    public LruList<LoggingEvent> getEvents() {
-        if (events == null) {
-            events = new LruList<LoggingEvent>(LoggingEvent.class, getSize());
+    public LoggingEventBuffer getEvents() {
+        LoggingEventBuffer answer = events;
+        if (answer == null) {
+            synchronized (this) {
+                answer = events;
+                if (answer == null) {
+                    answer = new LoggingEventBuffer(getSize());
+                    events = answer;
+                }
+            }
         }
-        return events;
+        return answer;
     }
 
-    public void setEvents(LruList<LoggingEvent> events) {
+    public void setEvents(LoggingEventBuffer events) {
         this.events = events;
     }
 
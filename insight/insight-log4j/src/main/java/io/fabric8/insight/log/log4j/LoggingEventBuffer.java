@@ -0,0 +1,394 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.insight.log.log4j;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.spi.LoggingEvent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A fixed size ring buffer of the most recent logging events which can be queried newest first without locking.
+ * <p/>
+ * Each event is given a sequence number as it is added. Small indices of the sequence numbers of each level and
+ * of each logger are kept alongside the buffer, so that a query for particular levels or loggers only visits the
+ * events which can match rather than scanning the whole buffer. Level, logger and timestamp filters are evaluated on
+ * the buffered event itself, so a caller only has to convert the events it is handed.
+ */
+public class LoggingEventBuffer {
+    public static final int DEFAULT_LOGGER_INDEX_SIZE = 64;
+    public static final int DEFAULT_MAX_INDEXED_LOGGERS = 1024;
+
+    /**
+     * Events are appended in about but not exactly timestamp order, so a newest first scan for the events after a
+     * timestamp only stops once it reaches events older than this many milliseconds before it
+     */
+    static final long OUT_OF_ORDER_TOLERANCE = 1000;
+
+    private final int capacity;
+    private final AtomicReferenceArray<Entry> entries;
+    private final AtomicLong sequence = new AtomicLong();
+    private final ConcurrentMap<String, SequenceIndex> levelIndices = new ConcurrentHashMap<String, SequenceIndex>();
+    private final ConcurrentMap<String, SequenceIndex> loggerIndices = new ConcurrentHashMap<String, SequenceIndex>();
+    private final int loggerIndexSize;
+    private final int maxIndexedLoggers;
+    private volatile boolean loggerIndicesFull;
+
+    public LoggingEventBuffer(int capacity) {
+        this(capacity, DEFAULT_LOGGER_INDEX_SIZE, DEFAULT_MAX_INDEXED_LOGGERS);
+    }
+
+    public LoggingEventBuffer(int capacity, int loggerIndexSize, int maxIndexedLoggers) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("The size must be greater than 0");
+        }
+        this.capacity = capacity;
+        this.entries = new AtomicReferenceArray<Entry>(capacity);
+        this.loggerIndexSize = Math.max(1, loggerIndexSize);
+        this.maxIndexedLoggers = maxIndexedLoggers;
+    }
+
+    /**
+     * Callback for the events found by a query
+     */
+    public interface Visitor {
+        /**
+         * @return false to stop the query
+         */
+        boolean visit(LoggingEvent event);
+    }
+
+    public void add(LoggingEvent event) {
+        if (null == event) {
+            throw new NullPointerException("Attempted to add null object to buffer");
+        }
+        long seq = sequence.getAndIncrement();
+        Level level = event.getLevel();
+        String levelName = level != null ? level.toString() : null;
+        String loggerName = event.getLoggerName();
+        entries.set(slot(seq), new Entry(seq, event, levelName, loggerName));
+
+        if (levelName != null) {
+            // a level index as big as the buffer always holds every buffered event of its level
+            getOrCreateIndex(levelIndices, levelName, capacity).add(seq);
+        }
+        if (loggerName != null) {
+            SequenceIndex index = loggerIndices.get(loggerName);
+            if (index == null) {
+                if (loggerIndices.size() < maxIndexedLoggers) {
+                    index = getOrCreateIndex(loggerIndices, loggerName, loggerIndexSize);
+                } else {
+                    loggerIndicesFull = true;
+                }
+            }
+            if (index != null) {
+                index.add(seq);
+            }
+        }
+    }
+
+    /**
+     * Visits the buffered events which match the given filters newest first until the visitor returns false
+     *
+     * @param levels the level names to match or null for any level
+     * @param loggers the logger names to match or null for any logger
+     * @param after only match events with a timestamp after this one, if not null
+     * @param before only match events with a timestamp before this one, if not null
+     */
+    public void visitNewestFirst(Set<String> levels, Set<String> loggers, Long after, Long before, Visitor visitor) {
+        if (levels != null && levels.isEmpty()) {
+            levels = null;
+        }
+        if (loggers != null && loggers.isEmpty()) {
+            loggers = null;
+        }
+        Query query = new Query(levels, loggers, after, before, visitor);
+        long head = sequence.get();
+        long oldest = Math.max(0, head - capacity);
+
+        List<SequenceIndex> indices = null;
+        if (loggers != null) {
+            indices = findIndices(loggerIndices, loggers, loggerIndicesFull);
+        } else if (levels != null) {
+            indices = findIndices(levelIndices, levels, false);
+        }
+        if (indices == null) {
+            scan(query, head - 1, oldest);
+            return;
+        }
+        // the indices hold every matching event from the newest of their oldest entries onwards,
+        // anything older than that has to be found by scanning the buffer
+        long coverage = oldest;
+        for (SequenceIndex index : indices) {
+            coverage = Math.max(coverage, index.getCoveredFrom());
+        }
+        if (visitIndices(query, indices, coverage) && coverage > oldest) {
+            scan(query, Math.min(coverage, head) - 1, oldest);
+        }
+    }
+
+    public int size() {
+        return (int) Math.min(sequence.get(), capacity);
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the timestamp of the oldest buffered event or null if the buffer is empty
+     */
+    public Long getOldestTimestamp() {
+        long head = sequence.get();
+        for (long seq = Math.max(0, head - capacity); seq < head; seq++) {
+            Entry entry = getEntry(seq);
+            if (entry != null) {
+                return entry.timestamp;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the timestamp of the newest buffered event or null if the buffer is empty
+     */
+    public Long getNewestTimestamp() {
+        long head = sequence.get();
+        for (long seq = head - 1, oldest = Math.max(0, head - capacity); seq >= oldest; seq--) {
+            Entry entry = getEntry(seq);
+            if (entry != null) {
+                return entry.timestamp;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the buffered events oldest first
+     */
+    public List<LoggingEvent> getElements() {
+        long head = sequence.get();
+        List<LoggingEvent> answer = new ArrayList<LoggingEvent>(size());
+        for (long seq = Math.max(0, head - capacity); seq < head; seq++) {
+            Entry entry = getEntry(seq);
+            if (entry != null) {
+                answer.add(entry.event);
+            }
+        }
+        return answer;
+    }
+
+    public synchronized void clear() {
+        for (int i = 0; i < capacity; i++) {
+            entries.set(i, null);
+        }
+        levelIndices.clear();
+        loggerIndices.clear();
+        loggerIndicesFull = false;
+    }
+
+    /**
+     * Visits the events of the given indices newest first by merging them
+     *
+     * @return false if the query was stopped
+     */
+    private boolean visitIndices(Query query, List<SequenceIndex> indices, long coverage) {
+        int size = indices.size();
+        long[] positions = new long[size];
+        long[] limits = new long[size];
+        for (int i = 0; i < size; i++) {
+            SequenceIndex index = indices.get(i);
+            positions[i] = index.size() - 1;
+            limits[i] = Math.max(0, positions[i] + 1 - index.capacity);
+        }
+        long last = Long.MAX_VALUE;
+        while (true) {
+            int next = -1;
+            long nextSeq = -1;
+            for (int i = 0; i < size; i++) {
+                // skip any entries which are out of order due to concurrent writers
+                while (positions[i] >= limits[i] && indices.get(i).get(positions[i]) >= last) {
+                    positions[i]--;
+                }
+                if (positions[i] >= limits[i]) {
+                    long seq = indices.get(i).get(positions[i]);
+                    if (seq > nextSeq) {
+                        next = i;
+                        nextSeq = seq;
+                    }
+                }
+            }
+            if (next < 0 || nextSeq < coverage) {
+                return true;
+            }
+            positions[next]--;
+            last = nextSeq;
+            if (!query.visit(getEntry(nextSeq))) {
+                return false;
+            }
+        }
+    }
+
+    private void scan(Query query, long from, long to) {
+        for (long seq = from; seq >= to; seq--) {
+            if (!query.visit(getEntry(seq))) {
+                return;
+            }
+        }
+    }
+
+    private Entry getEntry(long seq) {
+        Entry entry = entries.get(slot(seq));
+        return entry != null && entry.seq == seq ? entry : null;
+    }
+
+    private int slot(long seq) {
+        return (int) (seq % capacity);
+    }
+
+    /**
+     * Returns the indices of the given keys or null if a key may have events which are not indexed
+     */
+    private static List<SequenceIndex> findIndices(ConcurrentMap<String, SequenceIndex> map, Set<String> keys, boolean full) {
+        List<SequenceIndex> answer = new ArrayList<SequenceIndex>(keys.size());
+        for (String key : keys) {
+            SequenceIndex index = map.get(key);
+            if (index != null) {
+                answer.add(index);
+            } else if (full) {
+                return null;
+            }
+        }
+        return answer;
+    }
+
+    private static SequenceIndex getOrCreateIndex(ConcurrentMap<String, SequenceIndex> map, String key, int size) {
+        SequenceIndex answer = map.get(key);
+        if (answer == null) {
+            SequenceIndex index = new SequenceIndex(size);
+            answer = map.putIfAbsent(key, index);
+            if (answer == null) {
+                answer = index;
+            }
+        }
+        return answer;
+    }
+
+    private static class Entry {
+        private final long seq;
+        private final LoggingEvent event;
+        private final String level;
+        private final String logger;
+        private final long timestamp;
+
+        Entry(long seq, LoggingEvent event, String level, String logger) {
+            this.seq = seq;
+            this.event = event;
+            this.level = level;
+            this.logger = logger;
+            this.timestamp = event.getTimeStamp();
+        }
+    }
+
+    /**
+     * A ring of the most recent sequence numbers of the events with the same level or logger.
+     * <p/>
+     * Positions are reserved up front and then published in order, so a reader never sees a position which
+     * has been reserved but not yet written.
+     */
+    private static class SequenceIndex {
+        private final int capacity;
+        private final AtomicLongArray sequences;
+        private final AtomicLong reserved = new AtomicLong();
+        private final AtomicLong published = new AtomicLong();
+
+        SequenceIndex(int capacity) {
+            this.capacity = capacity;
+            this.sequences = new AtomicLongArray(capacity);
+        }
+
+        void add(long seq) {
+            long position = reserved.getAndIncrement();
+            sequences.set((int) (position % capacity), seq);
+            // events are appended one at a time by log4j so this hardly ever has to wait
+            while (published.get() != position) {
+                Thread.yield();
+            }
+            published.set(position + 1);
+        }
+
+        long size() {
+            return published.get();
+        }
+
+        long get(long position) {
+            return sequences.get((int) (position % capacity));
+        }
+
+        /**
+         * Returns the sequence number from which this index holds every event of its key
+         */
+        long getCoveredFrom() {
+            long c = published.get();
+            return c <= capacity ? 0 : get(c - capacity);
+        }
+    }
+
+    private static class Query {
+        private final Set<String> levels;
+        private final Set<String> loggers;
+        private final Long after;
+        private final Long before;
+        private final Visitor visitor;
+
+        Query(Set<String> levels, Set<String> loggers, Long after, Long before, Visitor visitor) {
+            this.levels = levels;
+            this.loggers = loggers;
+            this.after = after;
+            this.before = before;
+            this.visitor = visitor;
+        }
+
+        /**
+         * @return false if the query should stop
+         */
+        boolean visit(Entry entry) {
+            if (entry == null) {
+                return true;
+            }
+            if (after != null && entry.timestamp <= after) {
+                return entry.timestamp > after - OUT_OF_ORDER_TOLERANCE;
+            }
+            if (before != null && entry.timestamp >= before) {
+                return true;
+            }
+            if (levels != null && (entry.level == null || !levels.contains(entry.level))) {
+                return true;
+            }
+            if (loggers != null && (entry.logger == null || !loggers.contains(entry.logger))) {
+                return true;
+            }
+            return visitor.visit(entry.event);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.insight.log.log4j;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.spi.LoggingEvent;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+
+public class LoggingEventBufferTest {
+
+    @Test
+    public void testNewestFirstWithCount() throws Exception {
+        LoggingEventBuffer buffer = new LoggingEventBuffer(10);
+        for (int i = 0; i < 25; i++) {
+            buffer.add(createEvent("a", Level.INFO, i));
+        }
+        assertEquals(10, buffer.size());
+        assertEquals(Arrays.asList("24", "23", "22"), query(buffer, null, null, null, 3));
+        assertEquals(Long.valueOf(15), buffer.getOldestTimestamp());
+        assertEquals(Long.valueOf(24), buffer.getNewestTimestamp());
+    }
+
+    @Test
+    public void testLevelAndLoggerFilters() throws Exception {
+        // a logger index of 2 entries so older events of a logger are found by scanning the buffer
+        LoggingEventBuffer buffer = new LoggingEventBuffer(100, 2, 10);
+        for (int i = 0; i < 20; i++) {
+            buffer.add(createEvent(i % 2 == 0 ? "even" : "odd", i % 5 == 0 ? Level.ERROR : Level.INFO, i));
+        }
+        assertEquals(Arrays.asList("15", "10", "5", "0"), query(buffer, set("ERROR"), null, null, 0));
+        assertEquals(Arrays.asList("19", "17", "15", "13", "11"), query(buffer, null, set("odd"), null, 5));
+        assertEquals(Arrays.asList("10", "0"), query(buffer, set("ERROR"), set("even"), null, 0));
+        assertEquals(Collections.<String>emptyList(), query(buffer, null, set("unknown"), null, 0));
+    }
+
+    @Test
+    public void testAfterTimestamp() throws Exception {
+        LoggingEventBuffer buffer = new LoggingEventBuffer(100);
+        for (int i = 0; i < 50; i++) {
+            buffer.add(createEvent("a", Level.INFO, i * 1000));
+        }
+        assertEquals(Arrays.asList("49000", "48000"), query(buffer, null, null, 47000L, 0));
+    }
+
+    protected static LoggingEvent createEvent(String logger, Level level, long timestamp) {
+        return new LoggingEvent(Logger.class.getName(), Logger.getLogger(logger), timestamp, level, "" + timestamp, null);
+    }
+
+    protected static List<String> query(LoggingEventBuffer buffer, Set<String> levels, Set<String> loggers, Long after, final int count) {
+        final List<String> answer = new ArrayList<String>();
+        buffer.visitNewestFirst(levels, loggers, after, null, new LoggingEventBuffer.Visitor() {
+            @Override
+            public boolean visit(LoggingEvent event) {
+                answer.add(event.getMessage().toString());
+                return count <= 0 || answer.size() < count;
+            }
+        });
+        return answer;
+    }
+
+    protected static Set<String> set(String... values) {
+        return new HashSet<String>(Arrays.asList(values));
+    }
+}
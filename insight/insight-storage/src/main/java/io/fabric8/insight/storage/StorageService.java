@@ -26,4 +26,17 @@ public interface StorageService {
      */
     void store(String type, long timestamp, String jsonData);
 
+    /**
+     * Store an event which has already been encoded as UTF-8 JSON.
+     * The caller may reuse the buffer once this method returns, so implementations which keep the data
+     * must copy it.
+     *
+     * @param type the type of document to store
+     * @param timestamp the date of the event
+     * @param jsonData the buffer holding the data to store
+     * @param offset the offset of the data in the buffer
+     * @param length the length of the data
+     */
+    void store(String type, long timestamp, byte[] jsonData, int offset, int length);
+
 }